@@ -20,6 +20,8 @@
 package org.apache.directory.server.core.api;
 
 
+import java.util.List;
+
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.name.Dn;
@@ -88,6 +90,16 @@ public interface ReferralManager
     Entry getParentReferral( Dn dn );
 
 
+    /**
+     * Get the referrals located below a Dn. The referral associated with the Dn
+     * itself, if any, is not returned.
+     *
+     * @param dn The Dn from which we want to get the descendant referrals
+     * @return The descendant referrals, or an empty list if there is none
+     */
+    List<Entry> getDescendantReferrals( Dn dn );
+
+
     /**
      * Add a referral to the manager.
      *
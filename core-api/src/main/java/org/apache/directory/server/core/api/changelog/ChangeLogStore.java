@@ -78,8 +78,9 @@ public interface ChangeLogStore
      * @param forward LDIF of the change going to the next state
      * @param reverse LDIF (anti-operation): the change required to revert this change
      * @return the new revision reached after having applied the forward LDIF
+     * @throws LdapException if the change can't be recorded
      */
-    ChangeLogEvent log( LdapPrincipal principal, LdifEntry forward, LdifEntry reverse );
+    ChangeLogEvent log( LdapPrincipal principal, LdifEntry forward, LdifEntry reverse ) throws LdapException;
 
 
     /**
@@ -90,8 +91,9 @@ public interface ChangeLogStore
      * @param forward LDIF of the change going to the next state
      * @param reverses LDIF (anti-operation): the changes required to revert this change
      * @return the new revision reached after having applied the forward LDIF
+     * @throws LdapException if the change can't be recorded
      */
-    ChangeLogEvent log( LdapPrincipal principal, LdifEntry forward, List<LdifEntry> reverses );
+    ChangeLogEvent log( LdapPrincipal principal, LdifEntry forward, List<LdifEntry> reverses ) throws LdapException;
 
 
     /**
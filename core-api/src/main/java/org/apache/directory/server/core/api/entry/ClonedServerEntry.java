@@ -23,9 +23,13 @@ package org.apache.directory.server.core.api.entry;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.directory.api.ldap.model.entry.Attribute;
 import org.apache.directory.api.ldap.model.entry.DefaultEntry;
@@ -41,6 +45,11 @@ import org.apache.directory.server.i18n.I18n;
 /**
  * A ServerEntry refers to the original entry before being modified by
  * EntryFilters or operations.
+ * <br>
+ * The copy is done lazily : the cloned entry initially shares the original entry's
+ * attributes, and an attribute is only copied when it's about to be modified, or handed
+ * to the caller, who may modify it. Removing attributes, which is what the returned
+ * attributes selection does, does not copy anything.
  *
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -52,6 +61,9 @@ public class ClonedServerEntry implements Entry
     /** The copied entry */
     protected Entry clonedEntry;
 
+    /** The attributes of the copied entry still shared with the original entry, null if there is none */
+    private Set<Attribute> sharedAttributes;
+
 
     /**
      * Creates a new instance of ClonedServerEntry.
@@ -64,14 +76,110 @@ public class ClonedServerEntry implements Entry
     /**
      * Creates a new instance of ClonedServerEntry.
      *
-     * The original entry is cloned in order to protect its content.
+     * The original entry is cloned in order to protect its content. Its attributes
+     * are copied when they are first modified or read.
      *
      * @param originalEntry The original entry
      */
     public ClonedServerEntry( Entry originalEntry )
     {
         this.originalEntry = originalEntry;
-        this.clonedEntry = originalEntry.clone();
+
+        if ( originalEntry instanceof DefaultEntry )
+        {
+            // The shallow clone has its own attribute map, referencing the original attributes
+            clonedEntry = originalEntry.shallowClone();
+            sharedAttributes = Collections.newSetFromMap( new IdentityHashMap<>() );
+
+            for ( Attribute attribute : clonedEntry )
+            {
+                sharedAttributes.add( attribute );
+            }
+        }
+        else
+        {
+            clonedEntry = originalEntry.clone();
+        }
+    }
+
+
+    /**
+     * Replaces an attribute shared with the original entry by a copy
+     *
+     * @param attribute The attribute of the cloned entry
+     * @return The attribute, or its copy if it was shared
+     */
+    private Attribute copyOnWrite( Attribute attribute )
+    {
+        if ( ( attribute == null ) || ( sharedAttributes == null ) || !sharedAttributes.remove( attribute ) )
+        {
+            return attribute;
+        }
+
+        Attribute copy = attribute.clone();
+
+        try
+        {
+            clonedEntry.put( copy );
+        }
+        catch ( LdapException le )
+        {
+            // Can't happen, the attribute is already in the entry
+            throw new IllegalStateException( le.getMessage(), le );
+        }
+
+        return copy;
+    }
+
+
+    private void copyOnWrite( AttributeType attributeType )
+    {
+        if ( ( sharedAttributes != null ) && ( attributeType != null ) )
+        {
+            copyOnWrite( clonedEntry.get( attributeType ) );
+        }
+    }
+
+
+    private void copyOnWrite( String upId )
+    {
+        if ( ( sharedAttributes != null ) && ( upId != null ) )
+        {
+            copyOnWrite( clonedEntry.get( upId ) );
+        }
+    }
+
+
+    private void copyOnWrite( Attribute... attributes )
+    {
+        if ( ( sharedAttributes != null ) && ( attributes != null ) )
+        {
+            for ( Attribute attribute : attributes )
+            {
+                if ( attribute != null )
+                {
+                    copyOnWrite( attribute.getAttributeType() != null ? clonedEntry.get( attribute.getAttributeType() )
+                        : clonedEntry.get( attribute.getId() ) );
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Copies all the attributes still shared with the original entry
+     */
+    private void copyAll()
+    {
+        if ( sharedAttributes != null )
+        {
+            for ( Attribute attribute : new ArrayList<>( clonedEntry.getAttributes() ) )
+            {
+                copyOnWrite( attribute );
+            }
+
+            sharedAttributes = null;
+        }
     }
 
 
@@ -85,10 +193,12 @@ public class ClonedServerEntry implements Entry
 
 
     /**
-     * @return the cloned Entry
+     * @return the cloned Entry, whose attributes are all copies of the original ones
      */
     public Entry getClonedEntry()
     {
+        copyAll();
+
         return clonedEntry;
     }
 
@@ -96,6 +206,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public Entry add( AttributeType attributeType, byte[]... values ) throws LdapException
     {
+        copyOnWrite( attributeType );
+
         return clonedEntry.add( attributeType, values );
     }
 
@@ -103,6 +215,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public Entry add( AttributeType attributeType, String... values ) throws LdapException
     {
+        copyOnWrite( attributeType );
+
         return clonedEntry.add( attributeType, values );
     }
 
@@ -110,6 +224,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public Entry add( AttributeType attributeType, Value... values ) throws LdapException
     {
+        copyOnWrite( attributeType );
+
         return clonedEntry.add( attributeType, values );
     }
 
@@ -117,6 +233,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public Entry add( String upId, AttributeType attributeType, byte[]... values ) throws LdapException
     {
+        copyOnWrite( attributeType );
+
         return clonedEntry.add( attributeType, values );
     }
 
@@ -124,6 +242,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public Entry add( String upId, AttributeType attributeType, String... values ) throws LdapException
     {
+        copyOnWrite( attributeType );
+
         return clonedEntry.add( attributeType, values );
     }
 
@@ -131,6 +251,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public Entry add( String upId, AttributeType attributeType, Value... values ) throws LdapException
     {
+        copyOnWrite( attributeType );
+
         return clonedEntry.add( attributeType, values );
     }
 
@@ -166,7 +288,7 @@ public class ClonedServerEntry implements Entry
     @Override
     public Attribute get( AttributeType attributeType )
     {
-        return clonedEntry.get( attributeType );
+        return copyOnWrite( clonedEntry.get( attributeType ) );
     }
 
 
@@ -176,6 +298,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public Collection<Attribute> getAttributes()
     {
+        copyAll();
+
         return clonedEntry.getAttributes();
     }
 
@@ -190,6 +314,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public Attribute put( AttributeType attributeType, byte[]... values ) throws LdapException
     {
+        copyOnWrite( attributeType );
+
         return clonedEntry.put( attributeType, values );
     }
 
@@ -197,6 +323,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public Attribute put( AttributeType attributeType, String... values ) throws LdapException
     {
+        copyOnWrite( attributeType );
+
         return clonedEntry.put( attributeType, values );
     }
 
@@ -204,6 +332,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public Attribute put( AttributeType attributeType, Value... values ) throws LdapException
     {
+        copyOnWrite( attributeType );
+
         return clonedEntry.put( attributeType, values );
     }
 
@@ -211,6 +341,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public Attribute put( String upId, AttributeType attributeType, byte[]... values ) throws LdapException
     {
+        copyOnWrite( attributeType );
+
         return clonedEntry.put( attributeType, values );
     }
 
@@ -218,6 +350,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public Attribute put( String upId, AttributeType attributeType, String... values ) throws LdapException
     {
+        copyOnWrite( attributeType );
+
         return clonedEntry.put( upId, attributeType, values );
     }
 
@@ -225,6 +359,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public Attribute put( String upId, AttributeType attributeType, Value... values ) throws LdapException
     {
+        copyOnWrite( attributeType );
+
         return clonedEntry.put( upId, attributeType, values );
     }
 
@@ -232,6 +368,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public boolean remove( AttributeType attributeType, byte[]... values ) throws LdapException
     {
+        copyOnWrite( attributeType );
+
         return clonedEntry.remove( attributeType, values );
     }
 
@@ -239,6 +377,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public boolean remove( AttributeType attributeType, String... values ) throws LdapException
     {
+        copyOnWrite( attributeType );
+
         return clonedEntry.remove( attributeType, values );
     }
 
@@ -246,6 +386,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public boolean remove( AttributeType attributeType, Value... values ) throws LdapException
     {
+        copyOnWrite( attributeType );
+
         return clonedEntry.remove( attributeType, values );
     }
 
@@ -253,6 +395,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public List<Attribute> remove( Attribute... attributes ) throws LdapException
     {
+        copyOnWrite( attributes );
+
         return clonedEntry.remove( attributes );
     }
 
@@ -267,6 +411,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public Entry add( Attribute... attributes ) throws LdapException
     {
+        copyOnWrite( attributes );
+
         return clonedEntry.add( attributes );
     }
 
@@ -274,6 +420,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public Entry add( String upId, String... values ) throws LdapException
     {
+        copyOnWrite( upId );
+
         return clonedEntry.add( upId, values );
     }
 
@@ -281,6 +429,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public Entry add( String upId, byte[]... values ) throws LdapException
     {
+        copyOnWrite( upId );
+
         return clonedEntry.add( upId, values );
     }
 
@@ -288,6 +438,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public Entry add( String upId, Value... values ) throws LdapException
     {
+        copyOnWrite( upId );
+
         return clonedEntry.add( upId, values );
     }
 
@@ -295,6 +447,7 @@ public class ClonedServerEntry implements Entry
     @Override
     public void clear()
     {
+        sharedAttributes = null;
         clonedEntry.clear();
     }
 
@@ -337,7 +490,7 @@ public class ClonedServerEntry implements Entry
     @Override
     public Attribute get( String alias )
     {
-        return clonedEntry.get( alias );
+        return copyOnWrite( clonedEntry.get( alias ) );
     }
 
 
@@ -368,6 +521,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public Iterator<Attribute> iterator()
     {
+        copyAll();
+
         return clonedEntry.iterator();
     }
 
@@ -375,6 +530,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public List<Attribute> put( Attribute... attributes ) throws LdapException
     {
+        copyOnWrite( attributes );
+
         return clonedEntry.put( attributes );
     }
 
@@ -382,6 +539,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public Attribute put( String upId, byte[]... values )
     {
+        copyOnWrite( upId );
+
         return clonedEntry.put( upId, values );
     }
 
@@ -389,6 +548,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public Attribute put( String upId, String... values )
     {
+        copyOnWrite( upId );
+
         return clonedEntry.put( upId, values );
     }
 
@@ -396,6 +557,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public Attribute put( String upId, Value... values )
     {
+        copyOnWrite( upId );
+
         return clonedEntry.put( upId, values );
     }
 
@@ -403,6 +566,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public boolean remove( String upId, byte[]... values ) throws LdapException
     {
+        copyOnWrite( upId );
+
         return clonedEntry.remove( upId, values );
     }
 
@@ -410,6 +575,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public boolean remove( String upId, String... values ) throws LdapException
     {
+        copyOnWrite( upId );
+
         return clonedEntry.remove( upId, values );
     }
 
@@ -417,6 +584,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public boolean remove( String upId, Value... values ) throws LdapException
     {
+        copyOnWrite( upId );
+
         return clonedEntry.remove( upId, values );
     }
 
@@ -455,9 +624,9 @@ public class ClonedServerEntry implements Entry
         Entry clientEntry = new DefaultEntry( clonedEntry.getDn() );
 
         // Convert each attribute
-        for ( Attribute clonedEntry : this )
+        for ( Attribute clonedAttribute : clonedEntry )
         {
-            Attribute clientAttribute = clonedEntry.clone();
+            Attribute clientAttribute = clonedAttribute.clone();
             clientEntry.add( clientAttribute );
         }
 
@@ -499,6 +668,8 @@ public class ClonedServerEntry implements Entry
     @Override
     public Entry shallowClone()
     {
+        copyAll();
+
         return clonedEntry.shallowClone();
     }
 
@@ -529,7 +700,7 @@ public class ClonedServerEntry implements Entry
 
         if ( obj instanceof ClonedServerEntry )
         {
-            other = ( ( ClonedServerEntry ) obj ).getClonedEntry();
+            other = ( ( ClonedServerEntry ) obj ).clonedEntry;
         }
         else if ( obj instanceof Entry )
         {
@@ -789,7 +789,7 @@ public final class ServerEntryUtils
                     continue;
                 }
 
-                entry.remove( entry.get( attributeType ) );
+                entry.removeAttributes( attributeType );
             }
 
             entry.removeAttributes( entryDnType );
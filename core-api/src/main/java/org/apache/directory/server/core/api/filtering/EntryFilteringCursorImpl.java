@@ -502,7 +502,14 @@ public class EntryFilteringCursorImpl extends AbstractCursor<Entry> implements E
                 continue;
             }
 
-            tempResult = new ClonedServerEntry/*Search*/( entry );
+            if ( entry instanceof ClonedServerEntry )
+            {
+                tempResult = entry;
+            }
+            else
+            {
+                tempResult = new ClonedServerEntry( entry );
+            }
 
             /*
              * O P T I M I Z A T I O N
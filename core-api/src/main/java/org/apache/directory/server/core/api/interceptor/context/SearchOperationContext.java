@@ -65,6 +65,9 @@ public class SearchOperationContext extends FilteringOperationContext
 
     /** flag to indicate if this search is done for replication */
     private boolean syncreplSearch;
+
+    /** flag to indicate if the parents must be returned before their children */
+    private boolean hierarchicalOrder;
     
     /**
      * Creates a new instance of SearchOperationContext.
@@ -221,6 +224,30 @@ public class SearchOperationContext extends FilteringOperationContext
     }
 
 
+    /**
+     * @return true if the entries are returned in a depth-first traversal of the DIT,
+     * each entry being returned before its children
+     */
+    public boolean isHierarchicalOrder()
+    {
+        return hierarchicalOrder;
+    }
+
+
+    /**
+     * Sets the flag to indicate if the entries must be returned in a depth-first
+     * traversal of the DIT. The partitions then stream the entries from their Rdn
+     * index, instead of collecting the candidates first, unless the aliases are
+     * dereferenced while searching.
+     *
+     * @param hierarchicalOrder The flag indicating the parents are returned first
+     */
+    public void setHierarchicalOrder( boolean hierarchicalOrder )
+    {
+        this.hierarchicalOrder = hierarchicalOrder;
+    }
+
+
     /**
      * @return The alias dereferencing mode
      */
@@ -158,6 +158,10 @@ public abstract class AbstractPartition implements Partition
         finally
         {
             initialized = false;
+
+            // The context CSN is read again from the context entry if the partition is reinitialized
+            contextCsn = null;
+            ctxCsnChanged = false;
         }
     }
 
@@ -20,6 +20,8 @@
 package org.apache.directory.server.core.api.partition;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * The Write Transaction interface
@@ -28,12 +30,94 @@ import java.io.IOException;
  */
 public class PartitionWriteTxn implements PartitionTxn
 {
+    /** The actions to run once the transaction has been committed */
+    private List<Runnable> commitActions;
+
+    /** The actions to run once the transaction has been aborted */
+    private List<Runnable> abortActions;
+
+
+    /**
+     * Registers an action to run once the transaction has been committed. The actions
+     * are dropped if the transaction is aborted.
+     *
+     * @param action The action to run
+     */
+    public void addCommitAction( Runnable action )
+    {
+        if ( commitActions == null )
+        {
+            commitActions = new ArrayList<>();
+        }
+
+        commitActions.add( action );
+    }
+
+
+    /**
+     * Registers an action to run once the transaction has been aborted. The actions
+     * are dropped if the transaction is committed.
+     *
+     * @param action The action to run
+     */
+    public void addAbortAction( Runnable action )
+    {
+        if ( abortActions == null )
+        {
+            abortActions = new ArrayList<>();
+        }
+
+        abortActions.add( action );
+    }
+
+
+    /**
+     * Runs the registered commit actions and drops the abort actions, to be called when
+     * the transaction has been committed.
+     */
+    protected void runCommitActions()
+    {
+        List<Runnable> actions = commitActions;
+        commitActions = null;
+        abortActions = null;
+
+        run( actions );
+    }
+
+
+    /**
+     * Runs the registered abort actions and drops the commit actions, to be called when
+     * the transaction has been aborted.
+     */
+    protected void runAbortActions()
+    {
+        List<Runnable> actions = abortActions;
+        commitActions = null;
+        abortActions = null;
+
+        run( actions );
+    }
+
+
+    private static void run( List<Runnable> actions )
+    {
+        if ( actions != null )
+        {
+            for ( Runnable action : actions )
+            {
+                action.run();
+            }
+        }
+    }
+
+
     /**
      * {@inheritDoc}
      */
     @Override
     public void commit() throws IOException
     {
+        runCommitActions();
     }
 
 
@@ -43,6 +127,7 @@ public class PartitionWriteTxn implements PartitionTxn
     @Override
     public void abort() throws IOException
     {
+        runAbortActions();
     }
 
 
@@ -62,5 +147,6 @@ public class PartitionWriteTxn implements PartitionTxn
     @Override
     public void close() throws IOException
     {
+        commit();
     }
 }
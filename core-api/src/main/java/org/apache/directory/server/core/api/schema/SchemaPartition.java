@@ -22,6 +22,7 @@ package org.apache.directory.server.core.api.schema;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.entry.DefaultAttribute;
@@ -132,6 +133,15 @@ public final class SchemaPartition extends AbstractPartition
     /** The ObjectClass AttributeType */
     private AttributeType objectClassAT;
 
+    /** The number of modifications applied to the schema */
+    private final AtomicLong schemaModificationCount = new AtomicLong();
+
+    /** The subschema subentry generated from the schema, cached for the SchemaService */
+    private Entry subschemaSubentry;
+
+    /** The schema modification count the subschema subentry has been generated for */
+    private long subschemaSubentryModificationCount;
+
 
     public SchemaPartition( SchemaManager schemaManager )
     {
@@ -179,6 +189,51 @@ public final class SchemaPartition extends AbstractPartition
     }
 
 
+    /**
+     * Gets the number of modifications applied to the schema since this partition
+     * has been created. The count is incremented once the registries and the
+     * partition have been updated, so a value which has not changed since some
+     * data has been derived from the schema means this data is still valid.
+     *
+     * @return the number of modifications applied to the schema
+     */
+    public long getSchemaModificationCount()
+    {
+        return schemaModificationCount.get();
+    }
+
+
+    /**
+     * Gets the subschema subentry generated from this schema, if the schema has not been
+     * modified since. The callers must synchronize on this partition.
+     *
+     * @return the subschema subentry, or null if it has to be generated
+     */
+    public Entry getSubschemaSubentry()
+    {
+        if ( subschemaSubentryModificationCount != schemaModificationCount.get() )
+        {
+            return null;
+        }
+
+        return subschemaSubentry;
+    }
+
+
+    /**
+     * Stores the subschema subentry generated from this schema. The callers must synchronize
+     * on this partition.
+     *
+     * @param subschemaSubentry the generated subschema subentry
+     * @param modificationCount the schema modification count read before generating it
+     */
+    public void setSubschemaSubentry( Entry subschemaSubentry, long modificationCount )
+    {
+        this.subschemaSubentry = subschemaSubentry;
+        this.subschemaSubentryModificationCount = modificationCount;
+    }
+
+
     /**
      * Has no affect: the id is fixed at {@link SchemaPartition#SCHEMA_ID}: 'schema'.
      * A warning is logged.
@@ -424,6 +479,11 @@ public final class SchemaPartition extends AbstractPartition
         {
             updateSchemaModificationAttributes( modifyContext );
         }
+        else
+        {
+            // Every schema modification ends with an update of this entry
+            schemaModificationCount.incrementAndGet();
+        }
     }
 
 
@@ -21,11 +21,15 @@
 package org.apache.directory.server.core.api.sp.java;
 
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.entry.Attribute;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.exception.LdapException;
@@ -34,9 +38,17 @@ import org.apache.directory.server.core.api.CoreSession;
 import org.apache.directory.server.core.api.sp.StoredProcEngine;
 import org.apache.directory.server.core.api.sp.StoredProcUtils;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
 
 /**
  * A {@link StoredProcEngine} implementation specific to Java stored procedures.
+ * <p>
+ * The classes loaded from the stored procedure units are cached, with the methods
+ * found for each signature, so that a procedure is not loaded again each time it's
+ * invoked. A unit is identified by its Dn and its entryCSN : a modified unit has
+ * a new CSN, and its class is loaded again.
  * 
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
  */
@@ -45,6 +57,13 @@ public class JavaStoredProcEngine implements StoredProcEngine
 
     public static final String STORED_PROC_LANG_ID = "Java";
 
+    /** The maximum number of stored procedure units kept in the cache */
+    private static final int MAX_CACHED_UNITS = 100;
+
+    /** The loaded units, per normalized Dn */
+    private static final Cache<String, LoadedUnit> UNITS = Caffeine.newBuilder().maximumSize( MAX_CACHED_UNITS )
+        .build();
+
     private Entry spUnit;
 
     private static final Class<?>[] EMPTY_CLASS_ARRAY = new Class[0];
@@ -55,38 +74,64 @@ public class JavaStoredProcEngine implements StoredProcEngine
     @Override
     public Object invokeProcedure( CoreSession session, String fullSPName, Object[] spArgs ) throws LdapException
     {
-        Attribute javaByteCode = spUnit.get( "javaByteCode" );
         String spName = StoredProcUtils.extractStoredProcName( fullSPName );
         String className = StoredProcUtils.extractStoredProcUnitName( fullSPName );
 
-        ClassLoader loader = new LdapJavaStoredProcClassLoader( javaByteCode );
-        Class<?> clazz;
+        LoadedUnit unit = getLoadedUnit( className );
+        Class<?>[] types = getTypesFromValues( spArgs );
+        MethodHandle proc = unit.getProcedure( spName, types );
 
         try
         {
-            clazz = loader.loadClass( className );
+            return ( Object ) proc.invokeExact( spArgs );
         }
-        catch ( ClassNotFoundException e )
+        catch ( Throwable t )
         {
-            throw new LdapException( e );
+            // The procedure has failed, even with an Error : it must not kill the thread
+            // processing the operation, the client gets an LDAP error instead
+            throw new LdapException( t );
         }
+    }
 
-        Class<?>[] types = getTypesFromValues( spArgs );
 
-        Method proc;
-        try
+    /**
+     * Gets the unit class from the cache, or loads it if the cache does not contain
+     * the current version of the unit
+     */
+    private LoadedUnit getLoadedUnit( String className ) throws LdapException
+    {
+        Attribute entryCsn = spUnit.get( SchemaConstants.ENTRY_CSN_AT );
+
+        if ( ( entryCsn == null ) || ( spUnit.getDn() == null ) )
         {
-            proc = MethodUtils.getAssignmentCompatibleMethod( clazz, spName, types );
+            // Can't tell if the unit has been modified, don't cache it
+            return new LoadedUnit( null, loadClass( className ) );
         }
-        catch ( NoSuchMethodException e )
+
+        String key = spUnit.getDn().getNormName();
+        String csn = entryCsn.getString();
+        LoadedUnit unit = UNITS.getIfPresent( key );
+
+        if ( ( unit == null ) || !csn.equals( unit.csn ) || !className.equals( unit.clazz.getName() ) )
         {
-            throw new LdapException( e );
+            unit = new LoadedUnit( csn, loadClass( className ) );
+            UNITS.put( key, unit );
         }
+
+        return unit;
+    }
+
+
+    private Class<?> loadClass( String className ) throws LdapException
+    {
+        Attribute javaByteCode = spUnit.get( "javaByteCode" );
+        ClassLoader loader = new LdapJavaStoredProcClassLoader( javaByteCode );
+
         try
         {
-            return proc.invoke( null, spArgs );
+            return loader.loadClass( className );
         }
-        catch ( IllegalArgumentException | IllegalAccessException | InvocationTargetException e )
+        catch ( ClassNotFoundException | LinkageError e )
         {
             throw new LdapException( e );
         }
@@ -124,4 +169,65 @@ public class JavaStoredProcEngine implements StoredProcEngine
 
         return types.toArray( EMPTY_CLASS_ARRAY );
     }
+
+
+    /**
+     * A class loaded from a stored procedure unit, and the procedures which have been
+     * found in it for each signature.
+     */
+    private static final class LoadedUnit
+    {
+        /** The entryCSN of the unit the class has been loaded from */
+        private final String csn;
+
+        /** The loaded class */
+        private final Class<?> clazz;
+
+        /** The procedures, per name and argument types */
+        private final Map<List<Object>, MethodHandle> procedures = new ConcurrentHashMap<>();
+
+
+        private LoadedUnit( String csn, Class<?> clazz )
+        {
+            this.csn = csn;
+            this.clazz = clazz;
+        }
+
+
+        /**
+         * Gets the procedure which can be called with the given argument types, as a
+         * MethodHandle taking an Object array and returning an Object.
+         */
+        private MethodHandle getProcedure( String spName, Class<?>[] types ) throws LdapException
+        {
+            List<Object> signature = new ArrayList<>( types.length + 1 );
+            signature.add( spName );
+
+            for ( Class<?> type : types )
+            {
+                signature.add( type );
+            }
+
+            MethodHandle procedure = procedures.get( signature );
+
+            if ( procedure == null )
+            {
+                try
+                {
+                    Method method = MethodUtils.getAssignmentCompatibleMethod( clazz, spName, types );
+                    MethodHandle handle = MethodHandles.lookup().unreflect( method );
+                    procedure = handle.asType( handle.type().generic() )
+                        .asSpreader( Object[].class, types.length );
+                }
+                catch ( NoSuchMethodException | IllegalAccessException | IllegalArgumentException e )
+                {
+                    throw new LdapException( e );
+                }
+
+                procedures.put( signature, procedure );
+            }
+
+            return procedure;
+        }
+    }
 }
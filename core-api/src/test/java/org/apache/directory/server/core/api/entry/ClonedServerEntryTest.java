@@ -22,6 +22,9 @@ package org.apache.directory.server.core.api.entry;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.apache.directory.api.ldap.model.entry.DefaultEntry;
 import org.apache.directory.api.ldap.model.entry.Entry;
@@ -142,4 +145,52 @@ public class ClonedServerEntryTest
         assertFalse( clonedServerEntryA1.equals( clonedServerEntryC1 ) );
         assertFalse( clonedServerEntryC1.equals( clonedServerEntryA1 ) );
     }
+
+
+    @Test
+    public void testModificationsDoNotAlterTheOriginalEntry() throws Exception
+    {
+        Entry original = new DefaultEntry( "dc=example,dc=com",
+            "cn: a",
+            "sn: b",
+            "description: x" );
+        Entry cloned = new ClonedServerEntry( original );
+
+        cloned.add( "cn", "c" );
+        cloned.get( "sn" ).add( "d" );
+        cloned.remove( "description", "x" );
+
+        assertTrue( cloned.contains( "cn", "a", "c" ) );
+        assertTrue( cloned.contains( "sn", "b", "d" ) );
+        assertFalse( cloned.containsAttribute( "description" ) );
+
+        assertEquals( 1, original.get( "cn" ).size() );
+        assertEquals( 1, original.get( "sn" ).size() );
+        assertTrue( original.contains( "description", "x" ) );
+    }
+
+
+    @Test
+    public void testAttributesAreCopiedWhenRead() throws Exception
+    {
+        Entry original = new DefaultEntry( "dc=example,dc=com",
+            "cn: a",
+            "sn: b" );
+        ClonedServerEntry cloned = new ClonedServerEntry( original );
+
+        // Removing an attribute leaves the original one untouched
+        cloned.removeAttributes( "sn" );
+
+        assertFalse( cloned.containsAttribute( "sn" ) );
+        assertTrue( original.contains( "sn", "b" ) );
+
+        // The attributes handed out are copies
+        assertNotSame( original.get( "cn" ), cloned.get( "cn" ) );
+        assertSame( cloned.get( "cn" ), cloned.get( "cn" ) );
+        assertNotSame( original.get( "cn" ), cloned.getClonedEntry().get( "cn" ) );
+
+        cloned.get( "cn" ).clear();
+
+        assertTrue( original.contains( "cn", "a" ) );
+    }
 }
@@ -0,0 +1,194 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.api.sp.java;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Collections;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Test the JavaStoredProcEngine, and the cache of the loaded stored procedures.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class JavaStoredProcEngineTest
+{
+    /** A stored procedure unit, which is not in the test class path */
+    private static final String UNIT_SOURCE =
+        "public class GreeterSP\n" +
+        "{\n" +
+        "    public static String sayHelloTo( String name )\n" +
+        "    {\n" +
+        "        return \"Hello \" + name + \"!\";\n" +
+        "    }\n" +
+        "\n" +
+        "    public static Object getLoader()\n" +
+        "    {\n" +
+        "        return GreeterSP.class.getClassLoader();\n" +
+        "    }\n" +
+        "\n" +
+        "    public static Object fail()\n" +
+        "    {\n" +
+        "        throw new AssertionError( \"failed\" );\n" +
+        "    }\n" +
+        "}\n";
+
+    private static byte[] byteCode;
+
+
+    @BeforeAll
+    public static void compileUnit() throws Exception
+    {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        JavaFileObject source = new SimpleJavaFileObject( URI.create( "string:///GreeterSP.java" ),
+            JavaFileObject.Kind.SOURCE )
+        {
+            @Override
+            public CharSequence getCharContent( boolean ignoreEncodingErrors )
+            {
+                return UNIT_SOURCE;
+            }
+        };
+
+        JavaFileManager fileManager = new ForwardingJavaFileManager<JavaFileManager>(
+            compiler.getStandardFileManager( null, null, null ) )
+        {
+            @Override
+            public JavaFileObject getJavaFileForOutput( Location location, String className,
+                JavaFileObject.Kind kind, FileObject sibling )
+            {
+                return new SimpleJavaFileObject( URI.create( "bytes:///" + className + ".class" ), kind )
+                {
+                    @Override
+                    public OutputStream openOutputStream()
+                    {
+                        return out;
+                    }
+                };
+            }
+        };
+
+        assertTrue( compiler.getTask( null, fileManager, null, null, null, Collections.singletonList( source ) )
+            .call() );
+        byteCode = out.toByteArray();
+    }
+
+
+    private Object invoke( Entry unit, String procedure, Object... args ) throws LdapException
+    {
+        JavaStoredProcEngine engine = new JavaStoredProcEngine();
+        engine.setSPUnitEntry( unit );
+
+        return engine.invokeProcedure( null, "GreeterSP:" + procedure, args );
+    }
+
+
+    private Entry createUnit( String dn, String csn ) throws LdapException
+    {
+        Entry unit = new DefaultEntry( dn,
+            "objectClass: javaStoredProcUnit",
+            "storedProcUnitName: GreeterSP",
+            "storedProcLangId: Java" );
+        unit.add( "javaByteCode", byteCode );
+
+        if ( csn != null )
+        {
+            unit.add( "entryCSN", csn );
+        }
+
+        return unit;
+    }
+
+
+    @Test
+    public void testInvokeProcedure() throws Exception
+    {
+        Entry unit = createUnit( "storedProcUnitName=GreeterSP,ou=invoke", "20241019000000.000000Z#000000#000#000000" );
+
+        assertEquals( "Hello Ersin!", invoke( unit, "sayHelloTo", "Ersin" ) );
+        assertEquals( "Hello World!", invoke( unit, "sayHelloTo", "World" ) );
+        assertThrows( LdapException.class, () -> invoke( unit, "sayGoodbye", "World" ) );
+    }
+
+
+    @Test
+    public void testProcedureErrorIsWrapped() throws Exception
+    {
+        Entry unit = createUnit( "storedProcUnitName=GreeterSP,ou=error", "20241019000000.000000Z#000000#000#000000" );
+
+        LdapException le = assertThrows( LdapException.class, () -> invoke( unit, "fail" ) );
+        assertTrue( le.getCause() instanceof AssertionError );
+    }
+
+
+    @Test
+    public void testLoadedUnitIsCached() throws Exception
+    {
+        String dn = "storedProcUnitName=GreeterSP,ou=cached";
+        Entry unit = createUnit( dn, "20241019000000.000000Z#000000#000#000000" );
+
+        Object loader = invoke( unit, "getLoader" );
+        assertTrue( loader instanceof LdapJavaStoredProcClassLoader );
+        assertSame( loader, invoke( unit, "getLoader" ) );
+
+        // The same unit, read again
+        assertSame( loader, invoke( createUnit( dn, "20241019000000.000000Z#000000#000#000000" ), "getLoader" ) );
+
+        // A modified unit has a new CSN : it's loaded again
+        Entry modified = createUnit( dn, "20241019000001.000000Z#000000#000#000000" );
+        Object newLoader = invoke( modified, "getLoader" );
+        assertNotSame( loader, newLoader );
+        assertSame( newLoader, invoke( modified, "getLoader" ) );
+    }
+
+
+    @Test
+    public void testUnitWithoutCsnIsNotCached() throws Exception
+    {
+        Entry unit = createUnit( "storedProcUnitName=GreeterSP,ou=noCsn", null );
+
+        assertNotSame( invoke( unit, "getLoader" ), invoke( unit, "getLoader" ) );
+    }
+}
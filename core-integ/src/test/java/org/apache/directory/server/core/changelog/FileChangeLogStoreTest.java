@@ -0,0 +1,267 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.changelog;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.File;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.ldif.ChangeType;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.api.ldap.model.ldif.LdifRevertor;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.ldap.schema.extractor.SchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.extractor.impl.DefaultSchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.loader.LdifSchemaLoader;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.api.util.FileUtils;
+import org.apache.directory.api.util.TimeProvider;
+import org.apache.directory.api.util.exception.Exceptions;
+import org.apache.directory.server.core.DefaultDirectoryService;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.InstanceLayout;
+import org.apache.directory.server.core.api.LdapPrincipal;
+import org.apache.directory.server.core.api.changelog.ChangeLogEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Tests the FileChangeLogStore.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class FileChangeLogStoreTest
+{
+    private static DirectoryService directoryService;
+
+    private static SchemaManager schemaManager;
+
+    private static File workingDirectory;
+
+    private FileChangeLogStore store;
+
+
+    @BeforeAll
+    public static void setUp() throws Exception
+    {
+        directoryService = new DefaultDirectoryService();
+        String tmpDirPath = System.getProperty( "workingDirectory", System.getProperty( "java.io.tmpdir" ) );
+        workingDirectory = new File( tmpDirPath + "/server-work-" + FileChangeLogStoreTest.class.getSimpleName() );
+        InstanceLayout instanceLayout = new InstanceLayout( workingDirectory );
+        directoryService.setInstanceLayout( instanceLayout );
+
+        if ( !workingDirectory.exists() )
+        {
+            workingDirectory.mkdirs();
+        }
+
+        File schemaRepository = new File( workingDirectory, "schema" );
+        SchemaLdifExtractor extractor = new DefaultSchemaLdifExtractor( workingDirectory );
+        extractor.extractOrCopy( true );
+        LdifSchemaLoader loader = new LdifSchemaLoader( schemaRepository );
+        schemaManager = new DefaultSchemaManager( loader );
+
+        boolean loaded = schemaManager.loadAllEnabled();
+
+        if ( !loaded )
+        {
+            fail( "Schema load failed : " + Exceptions.printErrors( schemaManager.getErrors() ) );
+        }
+
+        directoryService.setSchemaManager( schemaManager );
+    }
+
+
+    @BeforeEach
+    public void createStore() throws Exception
+    {
+        FileUtils.deleteDirectory( new File( directoryService.getInstanceLayout().getLogDirectory(), "changelog" ) );
+        store = new FileChangeLogStore();
+        store.init( directoryService );
+    }
+
+
+    @AfterEach
+    public void destroyStore() throws Exception
+    {
+        store.destroy();
+    }
+
+
+    private ChangeLogEvent log( int i ) throws Exception
+    {
+        LdifEntry forward = new LdifEntry();
+        forward.setDn( "ou=test" + i + ",ou=system" );
+        forward.setChangeType( ChangeType.Add );
+        forward.putAttribute( "objectClass", "organizationalUnit" );
+        forward.putAttribute( "ou", "test" + i );
+
+        LdifEntry reverse = LdifRevertor.reverseAdd( forward.getDn() );
+
+        return store.log( new LdapPrincipal( schemaManager ), forward, reverse );
+    }
+
+
+    @Test
+    public void testLogAndLookup() throws Exception
+    {
+        assertEquals( 0, store.getCurrentRevision(), "first revision is always 0" );
+
+        for ( int i = 1; i <= 10; i++ )
+        {
+            assertEquals( i, log( i ).getRevision() );
+        }
+
+        assertEquals( 10, store.getCurrentRevision() );
+
+        ChangeLogEvent event = store.lookup( 4 );
+        assertEquals( 4, event.getRevision() );
+        assertEquals( "ou=test4,ou=system", event.getForwardLdif().getDn().getName() );
+
+        assertThrows( IllegalArgumentException.class, () -> store.lookup( 11 ) );
+    }
+
+
+    @Test
+    public void testFindAfterAndBefore() throws Exception
+    {
+        for ( int i = 1; i <= 10; i++ )
+        {
+            log( i );
+        }
+
+        long expected = 8;
+
+        try ( Cursor<ChangeLogEvent> cursor = store.findAfter( 7 ) )
+        {
+            while ( cursor.next() )
+            {
+                assertEquals( expected++, cursor.get().getRevision() );
+            }
+        }
+
+        assertEquals( 11, expected );
+
+        try ( Cursor<ChangeLogEvent> cursor = store.findBefore( 4 ) )
+        {
+            cursor.afterLast();
+            assertTrue( cursor.previous() );
+            assertEquals( 3, cursor.get().getRevision() );
+            assertTrue( cursor.previous() );
+            assertTrue( cursor.previous() );
+            assertEquals( 1, cursor.get().getRevision() );
+            assertFalse( cursor.previous() );
+        }
+
+        try ( Cursor<ChangeLogEvent> cursor = store.find( 5, 6 ) )
+        {
+            assertTrue( cursor.first() );
+            assertEquals( 5, cursor.get().getRevision() );
+            assertTrue( cursor.last() );
+            assertEquals( 6, cursor.get().getRevision() );
+        }
+    }
+
+
+    @Test
+    public void testReloadAndPurge() throws Exception
+    {
+        store.setMaxSegmentSize( 1024L );
+
+        for ( int i = 1; i <= 50; i++ )
+        {
+            log( i );
+        }
+
+        store.tag( "fifty" );
+        store.destroy();
+
+        // Reopen the store : the events are still there
+        store = new FileChangeLogStore();
+        store.setMaxSegmentSize( 1024L );
+        store.init( directoryService );
+
+        assertEquals( 50, store.getCurrentRevision() );
+        assertEquals( "fifty", store.getLatest().getDescription() );
+        assertEquals( 1, store.getFirstRevision() );
+        assertEquals( 27, store.lookup( 27 ).getRevision() );
+        assertEquals( 51, log( 51 ).getRevision() );
+
+        // Remove the oldest segments
+        assertTrue( store.purge( 30 ) > 0 );
+
+        long first = store.getFirstRevision();
+        assertTrue( first > 1 );
+        assertTrue( first <= 30 );
+        assertEquals( 30, store.lookup( 30 ).getRevision() );
+        assertThrows( IllegalArgumentException.class, () -> store.lookup( first - 1 ) );
+
+        try ( Cursor<ChangeLogEvent> cursor = store.find() )
+        {
+            assertTrue( cursor.first() );
+            assertEquals( first, cursor.get().getRevision() );
+        }
+    }
+
+    @Test
+    public void testPurgeOlderThan() throws Exception
+    {
+        store.setMaxSegmentSize( 1024L );
+
+        for ( int i = 1; i <= 50; i++ )
+        {
+            log( i );
+        }
+
+        // The segments have just been written
+        assertEquals( 0, store.purgeOlderThan( 30L * 60L * 1000L ) );
+        assertEquals( 1, store.getFirstRevision() );
+        store.destroy();
+
+        // Reopen the store one hour later
+        TimeProvider timeProvider = directoryService.getTimeProvider();
+        directoryService.setTimeProvider( () -> System.currentTimeMillis() + 60L * 60L * 1000L );
+
+        try
+        {
+            store = new FileChangeLogStore();
+            store.setMaxSegmentSize( 1024L );
+            store.init( directoryService );
+        }
+        finally
+        {
+            directoryService.setTimeProvider( timeProvider );
+        }
+
+        // Only the current segment is kept
+        assertTrue( store.purgeOlderThan( 30L * 60L * 1000L ) > 0 );
+        assertTrue( store.getFirstRevision() > 1 );
+        assertEquals( 50, store.lookup( 50 ).getRevision() );
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.journal;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.ldif.ChangeType;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.api.util.FileUtils;
+import org.apache.directory.server.core.DefaultDirectoryService;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.InstanceLayout;
+import org.apache.directory.server.core.api.LdapPrincipal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Tests the BinaryJournalStore and the JournalReader.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class BinaryJournalStoreTest
+{
+    private static DirectoryService directoryService;
+
+    private File journalDirectory;
+
+    private BinaryJournalStore store;
+
+
+    @BeforeAll
+    public static void setUp() throws Exception
+    {
+        directoryService = new DefaultDirectoryService();
+        String tmpDirPath = System.getProperty( "workingDirectory", System.getProperty( "java.io.tmpdir" ) );
+        File workingDirectory = new File( tmpDirPath + "/server-work-"
+            + BinaryJournalStoreTest.class.getSimpleName() );
+        directoryService.setInstanceLayout( new InstanceLayout( workingDirectory ) );
+    }
+
+
+    @BeforeEach
+    public void createStore() throws Exception
+    {
+        journalDirectory = new File( directoryService.getInstanceLayout().getLogDirectory(), "journal" );
+        FileUtils.deleteDirectory( journalDirectory );
+        store = new BinaryJournalStore();
+        store.setWorkingDirectory( journalDirectory.getAbsolutePath() );
+        store.setMaxRecords( 10 );
+        store.init( directoryService );
+    }
+
+
+    @AfterEach
+    public void destroyStore() throws Exception
+    {
+        store.destroy();
+    }
+
+
+    private void log( int nbChanges ) throws Exception
+    {
+        LdapPrincipal principal = new LdapPrincipal();
+
+        for ( int i = 1; i <= nbChanges; i++ )
+        {
+            LdifEntry forward = new LdifEntry();
+            forward.setDn( "ou=test" + i + ",ou=system" );
+            forward.setChangeType( ChangeType.Add );
+            forward.putAttribute( "objectClass", "organizationalUnit" );
+            forward.putAttribute( "ou", "test" + i );
+
+            assertTrue( store.log( principal, i, forward ) );
+
+            if ( ( i % 2 ) == 0 )
+            {
+                assertTrue( store.ack( i ) );
+            }
+            else
+            {
+                assertTrue( store.nack( i ) );
+            }
+        }
+    }
+
+
+    @Test
+    public void testLogAndRead() throws Exception
+    {
+        log( 100 );
+        store.sync();
+
+        assertEquals( 100, store.getCurrentRevision() );
+
+        List<File> files = BinaryJournalStore.getJournalFiles( journalDirectory, BinaryJournalStore.DEFAULT_FILE_NAME );
+        assertEquals( 10, files.size() );
+
+        int nbRecords = 0;
+
+        for ( File file : files )
+        {
+            try ( JournalReader reader = new JournalReader( file ) )
+            {
+                for ( JournalRecord record = reader.next(); record != null; record = reader.next() )
+                {
+                    long revision = ( nbRecords / 2 ) + 1;
+                    assertEquals( revision, record.getRevision() );
+
+                    if ( ( nbRecords % 2 ) == 0 )
+                    {
+                        assertEquals( JournalRecord.LOG, record.getType() );
+                        assertEquals( "ou=test" + revision + ",ou=system", record.getForward().getDn().getName() );
+                    }
+                    else
+                    {
+                        assertEquals( ( revision % 2 ) == 0 ? JournalRecord.ACK : JournalRecord.NACK,
+                            record.getType() );
+                    }
+
+                    nbRecords++;
+                }
+            }
+        }
+
+        assertEquals( 200, nbRecords );
+
+        StringWriter ldif = new StringWriter();
+        JournalReader.exportLdif( files, ldif );
+
+        assertTrue( ldif.toString().contains( "# revision: 42\ndn: ou=test42,ou=system\n" ) );
+        assertTrue( ldif.toString().contains( "# ack-revision: 42\n" ) );
+        assertTrue( ldif.toString().contains( "# nack-revision: 43\n" ) );
+    }
+
+
+    @Test
+    public void testTornAndCorruptedRecords() throws Exception
+    {
+        log( 5 );
+        store.destroy();
+
+        List<File> files = BinaryJournalStore.getJournalFiles( journalDirectory, BinaryJournalStore.DEFAULT_FILE_NAME );
+        assertEquals( 1, files.size() );
+        File file = files.get( 0 );
+        long length = file.length();
+
+        // A partially written record at the end of the file is ignored
+        try ( RandomAccessFile raf = new RandomAccessFile( file, "rw" ) )
+        {
+            raf.seek( length );
+            raf.writeInt( 100 );
+            raf.writeByte( JournalRecord.LOG );
+        }
+
+        try ( JournalReader reader = new JournalReader( file ) )
+        {
+            for ( int i = 0; i < 10; i++ )
+            {
+                reader.next();
+            }
+
+            assertNull( reader.next() );
+        }
+
+        // A modified record is detected
+        try ( RandomAccessFile raf = new RandomAccessFile( file, "rw" ) )
+        {
+            raf.seek( 12 );
+            byte b = raf.readByte();
+            raf.seek( 12 );
+            raf.writeByte( b + 1 );
+        }
+
+        try ( JournalReader reader = new JournalReader( file ) )
+        {
+            assertThrows( IOException.class, reader::next );
+        }
+
+        // A new store starts a new file
+        store = new BinaryJournalStore();
+        store.setWorkingDirectory( journalDirectory.getAbsolutePath() );
+        store.init( directoryService );
+        log( 1 );
+        store.sync();
+
+        assertEquals( 2, BinaryJournalStore.getJournalFiles( journalDirectory,
+            BinaryJournalStore.DEFAULT_FILE_NAME ).size() );
+    }
+
+    @Test
+    public void testFailedWrite() throws Exception
+    {
+        // The journal file can't be created anymore
+        FileUtils.deleteDirectory( journalDirectory );
+
+        LdifEntry forward = new LdifEntry();
+        forward.setDn( "ou=test,ou=system" );
+        forward.setChangeType( ChangeType.Add );
+        forward.putAttribute( "objectClass", "organizationalUnit" );
+        forward.putAttribute( "ou", "test" );
+
+        assertFalse( store.log( new LdapPrincipal(), 1, forward ) );
+        assertEquals( 0, store.getCurrentRevision() );
+        assertThrows( IOException.class, store::destroy );
+    }
+}
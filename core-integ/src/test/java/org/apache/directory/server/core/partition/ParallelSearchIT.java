@@ -0,0 +1,214 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.directory.api.ldap.model.cursor.EntryCursor;
+import org.apache.directory.api.ldap.model.cursor.SearchCursor;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.message.controls.SortKey;
+import org.apache.directory.api.ldap.model.message.controls.SortRequest;
+import org.apache.directory.api.ldap.model.message.controls.SortRequestImpl;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.directory.server.core.annotations.ContextEntry;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.annotations.CreatePartition;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.ApacheDSTestExtension;
+import org.apache.directory.server.core.integ.IntegrationUtils;
+import org.apache.directory.server.core.shared.partition.DefaultPartitionNexus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+
+/**
+ * Test the subtree searches from the RootDSE done in all the partitions at the same time.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@ExtendWith( ApacheDSTestExtension.class )
+@CreateDS(name = "ParallelSearchIT-class",
+    partitions =
+        {
+            @CreatePartition(
+                name = "foo",
+                suffix = "dc=foo,dc=com",
+                contextEntry = @ContextEntry(
+                    entryLdif =
+                    "dn: dc=foo,dc=com\n" +
+                        "dc: foo\n" +
+                        "objectClass: top\n" +
+                        "objectClass: domain\n\n")),
+            @CreatePartition(
+                name = "bar",
+                suffix = "dc=bar,dc=com",
+                contextEntry = @ContextEntry(
+                    entryLdif =
+                    "dn: dc=bar,dc=com\n" +
+                        "dc: bar\n" +
+                        "objectClass: top\n" +
+                        "objectClass: domain\n\n"))
+    })
+public class ParallelSearchIT extends AbstractLdapTestUnit
+{
+    /** More entries than a partition search can push ahead of the reader */
+    private static final int NB_ENTRIES = 600;
+
+    private static final String USERS_FILTER = "(&(objectClass=person)(cn=user*))";
+
+    private LdapConnection connection;
+
+    private DefaultPartitionNexus nexus;
+
+
+    @BeforeEach
+    public void setUp() throws Exception
+    {
+        connection = IntegrationUtils.getAdminConnection( getService() );
+        nexus = ( DefaultPartitionNexus ) getService().getPartitionNexus();
+
+        if ( !connection.exists( "ou=people,dc=foo,dc=com" ) )
+        {
+            addEntries( "dc=foo,dc=com" );
+            addEntries( "dc=bar,dc=com" );
+        }
+    }
+
+
+    @AfterEach
+    public void tearDown() throws Exception
+    {
+        nexus.setSearchThreads( 0 );
+        connection.close();
+    }
+
+
+    private void addEntries( String suffix ) throws Exception
+    {
+        connection.add( new DefaultEntry( "ou=people," + suffix,
+            "objectClass: organizationalUnit",
+            "ou: people" ) );
+
+        for ( int i = 0; i < NB_ENTRIES; i++ )
+        {
+            connection.add( new DefaultEntry( "cn=user" + i + ",ou=people," + suffix,
+                "objectClass: person",
+                "cn", "user" + i,
+                "sn", "user " + i + " in " + suffix ) );
+        }
+    }
+
+
+    private Set<String> searchFromRoot( String filter ) throws Exception
+    {
+        Set<String> dns = new HashSet<>();
+
+        try ( EntryCursor cursor = connection.search( "", filter, SearchScope.SUBTREE, "cn" ) )
+        {
+            for ( Entry entry : cursor )
+            {
+                assertTrue( dns.add( entry.getDn().getNormName() ) );
+            }
+        }
+
+        return dns;
+    }
+
+
+    @Test
+    public void testParallelSearchReturnsAllEntries() throws Exception
+    {
+        Set<String> expected = searchFromRoot( "(objectClass=*)" );
+        Set<String> people = searchFromRoot( USERS_FILTER );
+
+        nexus.setSearchThreads( 2 );
+
+        assertEquals( expected, searchFromRoot( "(objectClass=*)" ) );
+        assertEquals( people, searchFromRoot( USERS_FILTER ) );
+        assertEquals( 2 * NB_ENTRIES, people.size() );
+        assertTrue( searchFromRoot( "(cn=nobody)" ).isEmpty() );
+    }
+
+
+    @Test
+    public void testClosedSearchesReleaseTheThreads() throws Exception
+    {
+        nexus.setSearchThreads( 1 );
+
+        // Each search is abandoned after the first entry : the single search thread has to be released
+        for ( int i = 0; i < 10; i++ )
+        {
+            try ( EntryCursor cursor = connection.search( "", USERS_FILTER, SearchScope.SUBTREE, "cn" ) )
+            {
+                assertTrue( cursor.next() );
+            }
+        }
+
+        assertEquals( 2 * NB_ENTRIES, searchFromRoot( USERS_FILTER ).size() );
+    }
+
+
+    @Test
+    public void testSortedParallelSearch() throws Exception
+    {
+        nexus.setSearchThreads( 2 );
+
+        SearchRequest request = new SearchRequestImpl();
+        request.setBase( Dn.ROOT_DSE );
+        request.setFilter( USERS_FILTER );
+        request.setScope( SearchScope.SUBTREE );
+        request.addAttributes( "sn" );
+
+        SortRequest sortRequest = new SortRequestImpl();
+        sortRequest.addSortKey( new SortKey( "sn" ) );
+        request.addControl( sortRequest );
+
+        List<String> sns = new ArrayList<>();
+
+        try ( SearchCursor cursor = connection.search( request ) )
+        {
+            while ( cursor.next() )
+            {
+                sns.add( cursor.getEntry().get( "sn" ).getString() );
+            }
+        }
+
+        List<String> sorted = new ArrayList<>( sns );
+        sorted.sort( String.CASE_INSENSITIVE_ORDER );
+
+        assertEquals( 2 * NB_ENTRIES, sns.size() );
+        assertEquals( sorted, sns );
+    }
+}
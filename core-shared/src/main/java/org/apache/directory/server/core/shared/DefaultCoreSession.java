@@ -1188,6 +1188,9 @@ public class DefaultCoreSession implements CoreSession
         SearchOperationContext searchContext = new SearchOperationContext( this, searchRequest );
         searchContext.setSyncreplSearch( searchRequest.getControls().containsKey( SyncRequestValue.OID ) );
 
+        // The replicated entries are sent parents first, so that the consumer can add them
+        searchContext.setHierarchicalOrder( searchContext.isSyncreplSearch() );
+
         OperationManager operationManager = directoryService.getOperationManager();
 
         // Check if we received serverside sort Control
@@ -1514,22 +1517,29 @@ public class DefaultCoreSession implements CoreSession
     @Override
     public void endSessionTransaction( boolean commit ) throws IOException
     {
-        if ( commit )
+        try
         {
-            for ( Map.Entry<String, PartitionTxn> partitionTxn : transactionMap.entrySet() )
+            if ( commit )
             {
-                partitionTxn.getValue().commit();
+                for ( Map.Entry<String, PartitionTxn> partitionTxn : transactionMap.entrySet() )
+                {
+                    partitionTxn.getValue().commit();
+                }
             }
-        }
-        else
-        {
-            for ( Map.Entry<String, PartitionTxn> partitionTxn : transactionMap.entrySet() )
+            else
             {
-                partitionTxn.getValue().abort();
+                for ( Map.Entry<String, PartitionTxn> partitionTxn : transactionMap.entrySet() )
+                {
+                    partitionTxn.getValue().abort();
+                }
             }
         }
-        
-        hasSessionTransaction = false;
+        finally
+        {
+            // The next session transaction will start new partition transactions
+            transactionMap.clear();
+            hasSessionTransaction = false;
+        }
     }
 
 
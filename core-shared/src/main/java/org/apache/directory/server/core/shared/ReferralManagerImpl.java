@@ -21,6 +21,7 @@ package org.apache.directory.server.core.shared;
 
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
@@ -300,6 +301,16 @@ public class ReferralManagerImpl implements ReferralManager
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Entry> getDescendantReferrals( Dn dn )
+    {
+        return referrals.getDescendantElements( dn );
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -50,8 +50,8 @@ import org.apache.directory.server.core.api.DirectoryService;
 import org.apache.directory.server.core.api.entry.ClonedServerEntry;
 import org.apache.directory.server.core.api.interceptor.context.FilteringOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.LookupOperationContext;
-import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.api.schema.SchemaPartition;
 
 
 /**
@@ -61,13 +61,6 @@ import org.apache.directory.server.core.api.partition.PartitionTxn;
  */
 public final class SchemaService
 {
-    /** cached version of the schema subentry with all attributes in it */
-    private static Entry schemaSubentry;
-
-    /** A lock to avid concurrent generation of the SubschemaSubentry */
-    private static Object schemaSubentrLock = new Object();
-
-
     private SchemaService()
     {
     }
@@ -235,7 +228,7 @@ public final class SchemaService
     /**
      * Creates the SSSE by extracting all the SchemaObjects from the registries.
      */
-    private static void generateSchemaSubentry( SchemaManager schemaManager, Entry mods ) throws LdapException
+    private static Entry generateSchemaSubentry( SchemaManager schemaManager, Entry mods ) throws LdapException
     {
         Entry attrs = new DefaultEntry( schemaManager, mods.getDn() );
 
@@ -283,16 +276,11 @@ public final class SchemaService
         Attribute schemaModifiersName = mods.get( ApacheSchemaConstants.SCHEMA_MODIFIERS_NAME_AT );
         attrs.put( SchemaConstants.MODIFIERS_NAME_AT, schemaModifiersName.get() );
 
-        // don't swap out if a request for the subentry is in progress or we
-        // can give back an inconsistent schema back to the client so we block
-        synchronized ( schemaSubentrLock )
-        {
-            schemaSubentry = attrs;
-        }
+        return attrs;
     }
 
 
-    private static void addAttribute( Entry attrs, String id ) throws LdapException
+    private static void addAttribute( Entry attrs, Entry schemaSubentry, String id ) throws LdapException
     {
         Attribute attr = schemaSubentry.get( id );
 
@@ -304,62 +292,32 @@ public final class SchemaService
 
 
     /**
-     * {@inheritDoc}
+     * Gets the schema subentry cached by the schema partition, generating it again if the schema
+     * has been modified since it was generated. Must be called while holding the partition lock,
+     * so that a request in progress doesn't see the subentry being swapped.
      */
-    public static Entry getSubschemaEntryImmutable( DirectoryService directoryService ) throws LdapException
+    private static Entry getSchemaSubentry( SchemaPartition partition, DirectoryService directoryService )
+        throws LdapException
     {
-        synchronized ( schemaSubentrLock )
-        {
-            if ( schemaSubentry == null )
-            {
-                Dn schemaModificationAttributesDn = new Dn( directoryService.getSchemaManager(),
-                    SchemaConstants.SCHEMA_MODIFICATIONS_DN );
-                
-                Partition partition = directoryService.getSchemaPartition();
-                
-                LookupOperationContext lookupContext = new LookupOperationContext( null, schemaModificationAttributesDn );
-                lookupContext.setPartition( partition );
-
-                try ( PartitionTxn partitionTxn = partition.beginReadTransaction() )
-                {
-                    lookupContext.setTransaction( partitionTxn );
-                    
-                    generateSchemaSubentry( directoryService.getSchemaManager(),
-                        directoryService.getSchemaPartition().lookup( lookupContext ) );
-                }
-                catch ( IOException ioe )
-                {
-                    throw new LdapOtherException( ioe.getMessage(), ioe );
-                }
-            }
-
-            return schemaSubentry.clone();
-        }
-    }
-
+        long modificationCount = partition.getSchemaModificationCount();
+        Entry schemaSubentry = partition.getSubschemaSubentry();
 
-    /* (non-Javadoc)
-     * @see org.apache.directory.server.core.schema.SchemaService#getSubschemaEntryCloned()
-     */
-    public static Entry getSubschemaEntryCloned( DirectoryService directoryService ) throws LdapException
-    {
         if ( schemaSubentry == null )
         {
             Dn schemaModificationAttributesDn = new Dn( directoryService.getSchemaManager(),
                 SchemaConstants.SCHEMA_MODIFICATIONS_DN );
 
-            Partition partition = directoryService.getSchemaPartition();
-            
-            LookupOperationContext lookupContext = new LookupOperationContext( null, schemaModificationAttributesDn );
+            LookupOperationContext lookupContext = new LookupOperationContext( null, schemaModificationAttributesDn,
+                SchemaConstants.ALL_ATTRIBUTES_ARRAY );
             lookupContext.setPartition( partition );
 
             try ( PartitionTxn partitionTxn = partition.beginReadTransaction() )
             {
                 lookupContext.setTransaction( partitionTxn );
-                
-                generateSchemaSubentry(
-                    directoryService.getSchemaManager(),
-                    directoryService.getSchemaPartition().lookup( lookupContext ) );
+
+                schemaSubentry = generateSchemaSubentry( directoryService.getSchemaManager(),
+                    partition.lookup( lookupContext ) );
+                partition.setSubschemaSubentry( schemaSubentry, modificationCount );
             }
             catch ( IOException ioe )
             {
@@ -367,7 +325,35 @@ public final class SchemaService
             }
         }
 
-        return schemaSubentry.clone();
+        return schemaSubentry;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public static Entry getSubschemaEntryImmutable( DirectoryService directoryService ) throws LdapException
+    {
+        SchemaPartition partition = directoryService.getSchemaPartition();
+
+        synchronized ( partition )
+        {
+            return getSchemaSubentry( partition, directoryService ).clone();
+        }
+    }
+
+
+    /* (non-Javadoc)
+     * @see org.apache.directory.server.core.schema.SchemaService#getSubschemaEntryCloned()
+     */
+    public static Entry getSubschemaEntryCloned( DirectoryService directoryService ) throws LdapException
+    {
+        SchemaPartition partition = directoryService.getSchemaPartition();
+
+        synchronized ( partition )
+        {
+            return getSchemaSubentry( partition, directoryService ).clone();
+        }
     }
 
 
@@ -381,92 +367,46 @@ public final class SchemaService
 
         Entry attrs = new DefaultEntry( schemaManager, Dn.ROOT_DSE );
 
-        synchronized ( schemaSubentrLock )
+        SchemaPartition partition = directoryService.getSchemaPartition();
+
+        synchronized ( partition )
         {
             // ---------------------------------------------------------------
-            // Check if we need an update by looking at timestamps on disk
+            // Generate the subentry again only if the schema has been modified
             // ---------------------------------------------------------------
-            Dn schemaModificationAttributesDn = new Dn( directoryService.getSchemaManager(),
-                SchemaConstants.SCHEMA_MODIFICATIONS_DN );
-
-            Partition partition = directoryService.getSchemaPartition();
-            
-            LookupOperationContext lookupContext = new LookupOperationContext( null, schemaModificationAttributesDn, SchemaConstants.ALL_ATTRIBUTES_ARRAY );
-            lookupContext.setPartition( partition );
-
-            try ( PartitionTxn partitionTxn = partition.beginReadTransaction() )
-            {
-                lookupContext.setTransaction( partitionTxn );
-
-                Entry mods =
-                    directoryService.getSchemaPartition().lookup( lookupContext );
-                // TODO enable this optimization at some point but for now it
-                // is causing some problems so I will just turn it off
-                //          Attribute modifyTimeDisk = mods.get( SchemaConstants.MODIFY_TIMESTAMP_AT );
-                //
-                //          Attribute modifyTimeMemory = null;
-                //
-                //            if ( schemaSubentry != null )
-                //            {
-                //                modifyTimeMemory = schemaSubentry.get( SchemaConstants.MODIFY_TIMESTAMP_AT );
-                //                if ( modifyTimeDisk == null && modifyTimeMemory == null )
-                //                {
-                //                    // do nothing!
-                //                }
-                //                else if ( modifyTimeDisk != null && modifyTimeMemory != null )
-                //                {
-                //                    Date disk = DateUtils.getDate( ( String ) modifyTimeDisk.get() );
-                //                    Date mem = DateUtils.getDate( ( String ) modifyTimeMemory.get() );
-                //                    if ( disk.after( mem ) )
-                //                    {
-                //                        generateSchemaSubentry( mods );
-                //                    }
-                //                }
-                //                else
-                //                {
-                //                    generateSchemaSubentry( mods );
-                //                }
-                //            }
-                //            else
-                //            {
-                generateSchemaSubentry( schemaManager, mods );
-            }
-            catch ( IOException ioe )
-            {
-                throw new LdapOtherException( ioe.getMessage(), ioe );
-            }
+            Entry schemaSubentry = getSchemaSubentry( partition, directoryService );
 
             // ---------------------------------------------------------------
             // Prep Work: Transform the attributes to their OID counterpart
             // ---------------------------------------------------------------
-            addAttribute( attrs, SchemaConstants.COMPARATORS_AT );
-            addAttribute( attrs, SchemaConstants.NORMALIZERS_AT );
-            addAttribute( attrs, SchemaConstants.SYNTAX_CHECKERS_AT );
-            addAttribute( attrs, SchemaConstants.OBJECT_CLASSES_AT );
-            addAttribute( attrs, SchemaConstants.ATTRIBUTE_TYPES_AT );
-            addAttribute( attrs, SchemaConstants.MATCHING_RULES_AT );
-            addAttribute( attrs, SchemaConstants.MATCHING_RULE_USE_AT );
-            addAttribute( attrs, SchemaConstants.LDAP_SYNTAXES_AT );
-            addAttribute( attrs, SchemaConstants.DIT_CONTENT_RULES_AT );
-            addAttribute( attrs, SchemaConstants.DIT_STRUCTURE_RULES_AT );
-            addAttribute( attrs, SchemaConstants.NAME_FORMS_AT );
-            addAttribute( attrs, SchemaConstants.SUBTREE_SPECIFICATION_AT );
+            addAttribute( attrs, schemaSubentry, SchemaConstants.COMPARATORS_AT );
+            addAttribute( attrs, schemaSubentry, SchemaConstants.NORMALIZERS_AT );
+            addAttribute( attrs, schemaSubentry, SchemaConstants.SYNTAX_CHECKERS_AT );
+            addAttribute( attrs, schemaSubentry, SchemaConstants.OBJECT_CLASSES_AT );
+            addAttribute( attrs, schemaSubentry, SchemaConstants.ATTRIBUTE_TYPES_AT );
+            addAttribute( attrs, schemaSubentry, SchemaConstants.MATCHING_RULES_AT );
+            addAttribute( attrs, schemaSubentry, SchemaConstants.MATCHING_RULE_USE_AT );
+            addAttribute( attrs, schemaSubentry, SchemaConstants.LDAP_SYNTAXES_AT );
+            addAttribute( attrs, schemaSubentry, SchemaConstants.DIT_CONTENT_RULES_AT );
+            addAttribute( attrs, schemaSubentry, SchemaConstants.DIT_STRUCTURE_RULES_AT );
+            addAttribute( attrs, schemaSubentry, SchemaConstants.NAME_FORMS_AT );
+            addAttribute( attrs, schemaSubentry, SchemaConstants.SUBTREE_SPECIFICATION_AT );
 
             // add the objectClass attribute if needed
-            addAttribute( attrs, SchemaConstants.OBJECT_CLASS_AT );
+            addAttribute( attrs, schemaSubentry, SchemaConstants.OBJECT_CLASS_AT );
 
             // add the cn attribute as required for the Rdn
-            addAttribute( attrs, SchemaConstants.CN_AT );
+            addAttribute( attrs, schemaSubentry, SchemaConstants.CN_AT );
 
             // -------------------------------------------------------------------
             // set standard operational attributes for the subentry
             // -------------------------------------------------------------------
-            addAttribute( attrs, SchemaConstants.CREATE_TIMESTAMP_AT );
-            addAttribute( attrs, SchemaConstants.CREATORS_NAME_AT );
-            addAttribute( attrs, SchemaConstants.MODIFY_TIMESTAMP_AT );
-            addAttribute( attrs, SchemaConstants.MODIFIERS_NAME_AT );
-            addAttribute( attrs, SchemaConstants.ENTRY_UUID_AT );
-            addAttribute( attrs, SchemaConstants.ENTRY_DN_AT );
+            addAttribute( attrs, schemaSubentry, SchemaConstants.CREATE_TIMESTAMP_AT );
+            addAttribute( attrs, schemaSubentry, SchemaConstants.CREATORS_NAME_AT );
+            addAttribute( attrs, schemaSubentry, SchemaConstants.MODIFY_TIMESTAMP_AT );
+            addAttribute( attrs, schemaSubentry, SchemaConstants.MODIFIERS_NAME_AT );
+            addAttribute( attrs, schemaSubentry, SchemaConstants.ENTRY_UUID_AT );
+            addAttribute( attrs, schemaSubentry, SchemaConstants.ENTRY_DN_AT );
         }
 
         return new ClonedServerEntry( attrs );
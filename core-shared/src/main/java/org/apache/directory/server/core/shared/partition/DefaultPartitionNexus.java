@@ -31,6 +31,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.cursor.CursorException;
@@ -52,6 +55,7 @@ import org.apache.directory.api.ldap.model.exception.LdapOtherException;
 import org.apache.directory.api.ldap.model.filter.ExprNode;
 import org.apache.directory.api.ldap.model.filter.ObjectClassNode;
 import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.message.controls.SortRequest;
 import org.apache.directory.api.ldap.model.message.extended.NoticeOfDisconnect;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.schema.AttributeType;
@@ -129,6 +133,12 @@ public class DefaultPartitionNexus extends AbstractPartition implements Partitio
     /** The cn=schema Dn */
     private Dn subschemaSubentryDn;
 
+    /** The number of threads searching the partitions concurrently, 0 if they are searched one after the other */
+    private int searchThreads;
+
+    /** The executor the partitions are searched in, when searched concurrently */
+    private volatile ExecutorService searchExecutor;
+
 
     /**
      * Creates the root nexus singleton of the entire system.  The root DSE has
@@ -244,6 +254,7 @@ public class DefaultPartitionNexus extends AbstractPartition implements Partitio
                 }
 
                 createContextCsnModList();
+                setSearchThreads( searchThreads );
 
                 initialized = true;
             }
@@ -288,6 +299,12 @@ public class DefaultPartitionNexus extends AbstractPartition implements Partitio
             return;
         }
 
+        if ( searchExecutor != null )
+        {
+            searchExecutor.shutdown();
+            searchExecutor = null;
+        }
+
         // make sure this loop is not fail fast so all backing stores can
         // have an attempt at closing down and synching their cached entries
         for ( String suffix : new HashSet<>( this.partitions.keySet() ) )
@@ -727,6 +744,10 @@ public class DefaultPartitionNexus extends AbstractPartition implements Partitio
 
             return new CursorList( cursors, searchContext );
         }
+        else if ( ( searchThreads > 0 ) && ( partitions.size() > 1 ) )
+        {
+            return searchInParallel( searchContext );
+        }
         else
         {
             // This is a SUBLEVEL search. We will do multiple searches and wrap
@@ -779,6 +800,75 @@ public class DefaultPartitionNexus extends AbstractPartition implements Partitio
     }
 
 
+    /**
+     * Do a SUBLEVEL search from the root of the DIT, searching all the partitions at the
+     * same time. The entries are returned as they are found, unless the parents have to be
+     * returned first or the entries sorted : the partitions are then read one after the
+     * other, the upper suffixes first.
+     */
+    private EntryFilteringCursor searchInParallel( SearchOperationContext searchContext )
+    {
+        List<Partition> searchedPartitions = new ArrayList<>( partitions.values() );
+        boolean ordered = searchContext.isHierarchicalOrder() || searchContext.hasRequestControl( SortRequest.OID );
+
+        if ( ordered )
+        {
+            searchedPartitions.sort( ( p1, p2 ) ->
+            {
+                int diff = p1.getSuffixDn().size() - p2.getSuffixDn().size();
+
+                return ( diff != 0 ) ? diff : p1.getSuffixDn().getNormName().compareTo( p2.getSuffixDn().getNormName() );
+            } );
+        }
+
+        ParallelSearchCursor cursor = new ParallelSearchCursor( searchedPartitions, searchContext, searchExecutor,
+            ordered );
+
+        return new EntryFilteringCursorImpl( cursor, searchContext, directoryService.getSchemaManager() );
+    }
+
+
+    /**
+     * @return The number of threads searching the partitions concurrently, 0 if they are
+     * searched one after the other
+     */
+    public int getSearchThreads()
+    {
+        return searchThreads;
+    }
+
+
+    /**
+     * Sets the number of threads searching the partitions concurrently when a subtree search
+     * starts at the RootDSE. The searches already started keep their threads.
+     *
+     * @param searchThreads The number of threads, 0 to search the partitions one after the other
+     */
+    public synchronized void setSearchThreads( int searchThreads )
+    {
+        if ( searchExecutor != null )
+        {
+            searchExecutor.shutdown();
+            searchExecutor = null;
+        }
+
+        this.searchThreads = Math.max( searchThreads, 0 );
+
+        if ( this.searchThreads > 0 )
+        {
+            AtomicInteger threadCount = new AtomicInteger();
+
+            searchExecutor = Executors.newFixedThreadPool( this.searchThreads, runnable ->
+            {
+                Thread thread = new Thread( runnable, "nexus-search-" + threadCount.incrementAndGet() );
+                thread.setDaemon( true );
+
+                return thread;
+            } );
+        }
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,513 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.shared.partition;
+
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.cursor.AbstractCursor;
+import org.apache.directory.api.ldap.model.cursor.CursorException;
+import org.apache.directory.api.ldap.model.cursor.InvalidCursorPositionException;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
+import org.apache.directory.server.core.api.interceptor.context.HasEntryOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.i18n.I18n;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A Cursor on the entries of a subtree search done in many partitions at the same time.
+ * Each partition is searched by a task running on an executor, in its own read transaction,
+ * and the found entries are pushed into a bounded queue the cursor reads.
+ * <p>
+ * The entries are returned as they arrive, unless they have to be returned in order - the
+ * parents first, or sorted - in which case all the entries of a partition are returned
+ * before the entries of the next one, the partitions being still searched concurrently.
+ * <p>
+ * The returned entries have all their attributes : this cursor is wrapped into an
+ * EntryFilteringCursor which applies the filters and the returned attributes selection
+ * in the thread reading it. The searches stop as soon as the cursor is closed - when
+ * abandoned, or when the size or time limit has been reached - or the search abandoned.
+ * This cursor can only be read forward.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ParallelSearchCursor extends AbstractCursor<Entry>
+{
+    /** A logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( ParallelSearchCursor.class );
+
+    /** The number of entries a partition task can push ahead of the reader */
+    private static final int QUEUE_SIZE = 256;
+
+    /** The delay after which a blocked reader or task checks if the search has stopped, in ms */
+    private static final long POLL_DELAY = 100L;
+
+    /** The searched partitions */
+    private final List<Partition> partitions;
+
+    /** The context of the global search */
+    private final SearchOperationContext searchContext;
+
+    /** The executor the partitions are searched in */
+    private final ExecutorService executor;
+
+    /** Tells if the entries of a partition have to be returned before those of the next one */
+    private final boolean ordered;
+
+    /** The queues the tasks push their entries into : one per partition if ordered, one otherwise */
+    private List<BlockingQueue<Object>> queues;
+
+    /** The running tasks */
+    private List<Future<?>> tasks;
+
+    /** The flag telling the current tasks to stop */
+    private AtomicBoolean stopped;
+
+    /** The queue being read */
+    private int queueIndex;
+
+    /** The number of partitions fully read */
+    private int done;
+
+    /** Tells if the searches have been started */
+    private boolean started;
+
+    /** Tells if something has been read since the searches have been started */
+    private boolean consumed;
+
+    /** The current entry */
+    private Entry current;
+
+
+    /**
+     * The marker a task pushes once its partition has been searched
+     */
+    private static final class Done
+    {
+        /** The error which has interrupted the search, if any */
+        private final Exception failure;
+
+
+        Done( Exception failure )
+        {
+            this.failure = failure;
+        }
+    }
+
+
+    /**
+     * Creates a new ParallelSearchCursor. The searches are started when the cursor is first read.
+     *
+     * @param partitions The partitions to search
+     * @param searchContext The context of the search
+     * @param executor The executor the partitions are searched in
+     * @param ordered If the entries of a partition have to be returned before those of the next one
+     */
+    public ParallelSearchCursor( List<Partition> partitions, SearchOperationContext searchContext,
+        ExecutorService executor, boolean ordered )
+    {
+        this.partitions = partitions;
+        this.searchContext = searchContext;
+        this.executor = executor;
+        this.ordered = ordered;
+    }
+
+
+    /**
+     * Starts the search of all the partitions
+     */
+    private void start()
+    {
+        int nbQueues = ordered ? partitions.size() : 1;
+        int queueSize = ordered ? QUEUE_SIZE : QUEUE_SIZE * partitions.size();
+
+        queues = new ArrayList<>( nbQueues );
+
+        for ( int i = 0; i < nbQueues; i++ )
+        {
+            queues.add( new ArrayBlockingQueue<>( queueSize ) );
+        }
+
+        tasks = new ArrayList<>( partitions.size() );
+        stopped = new AtomicBoolean( false );
+        queueIndex = 0;
+        done = 0;
+        current = null;
+        consumed = false;
+
+        for ( int i = 0; i < partitions.size(); i++ )
+        {
+            BlockingQueue<Object> queue = queues.get( ordered ? i : 0 );
+            Partition partition = partitions.get( i );
+            AtomicBoolean stop = stopped;
+
+            tasks.add( executor.submit( () -> searchPartition( partition, queue, stop ) ) );
+        }
+
+        started = true;
+    }
+
+
+    /**
+     * Stops the running tasks. They are not interrupted, as an interrupted I/O closes the
+     * partition files : they stop before reading their next entry.
+     */
+    private void stop()
+    {
+        if ( started )
+        {
+            stopped.set( true );
+
+            for ( Future<?> task : tasks )
+            {
+                task.cancel( false );
+            }
+
+            started = false;
+        }
+    }
+
+
+    /**
+     * Searches a partition, and pushes the found entries into a queue
+     *
+     * @param partition The partition to search
+     * @param queue The queue to feed
+     * @param stop The flag telling the search has to stop
+     */
+    private void searchPartition( Partition partition, BlockingQueue<Object> queue, AtomicBoolean stop )
+    {
+        Exception failure = null;
+
+        try ( PartitionTxn partitionTxn = partition.beginReadTransaction() )
+        {
+            HasEntryOperationContext hasEntryContext = new HasEntryOperationContext(
+                searchContext.getSession(), partition.getSuffixDn() );
+            hasEntryContext.setPartition( partition );
+            hasEntryContext.setTransaction( partitionTxn );
+
+            if ( partition.hasEntry( hasEntryContext ) )
+            {
+                try ( EntryFilteringCursor cursor = partition.search( createContext( partition, partitionTxn ) ) )
+                {
+                    while ( !isStopped( stop ) && cursor.next() )
+                    {
+                        if ( !put( queue, cursor.get(), stop ) )
+                        {
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        catch ( Exception e )
+        {
+            if ( !isStopped( stop ) )
+            {
+                LOG.warn( "Failed to search the partition {}", partition.getSuffixDn(), e );
+                failure = e;
+            }
+        }
+
+        put( queue, new Done( failure ), stop );
+    }
+
+
+    /**
+     * Creates the context of the search in a partition. The filter is copied, as the
+     * optimizer annotates it with the partition's counts, and all the attributes are
+     * returned, as they are selected once the entries have been filtered.
+     */
+    private SearchOperationContext createContext( Partition partition, PartitionTxn partitionTxn )
+    {
+        SearchOperationContext partitionContext = new SearchOperationContext( searchContext.getSession(),
+            partition.getSuffixDn(), searchContext.getScope(), searchContext.getFilter().clone(),
+            SchemaConstants.ALL_USER_ATTRIBUTES, SchemaConstants.ALL_OPERATIONAL_ATTRIBUTES );
+        partitionContext.setAliasDerefMode( searchContext.getAliasDerefMode() );
+        partitionContext.setHierarchicalOrder( searchContext.isHierarchicalOrder() );
+        partitionContext.setSyncreplSearch( searchContext.isSyncreplSearch() );
+        partitionContext.setPartition( partition );
+        partitionContext.setTransaction( partitionTxn );
+
+        return partitionContext;
+    }
+
+
+    /**
+     * Tells if a task has to stop : the cursor has been closed, possibly by the time limit
+     * monitor, or the search abandoned
+     */
+    private boolean isStopped( AtomicBoolean stop )
+    {
+        return stop.get() || isClosed() || searchContext.isAbandoned();
+    }
+
+
+    /**
+     * Pushes an element into a queue, waiting for some room
+     *
+     * @return false if the search has stopped in the meantime
+     */
+    private boolean put( BlockingQueue<Object> queue, Object element, AtomicBoolean stop )
+    {
+        try
+        {
+            while ( !queue.offer( element, POLL_DELAY, TimeUnit.MILLISECONDS ) )
+            {
+                if ( isStopped( stop ) )
+                {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+
+            return false;
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean available()
+    {
+        return current != null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void before( Entry element ) throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_07009_PARALLEL_SEARCH_FORWARD_ONLY ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void after( Entry element ) throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_07009_PARALLEL_SEARCH_FORWARD_ONLY ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * The searches are started again.
+     */
+    @Override
+    public void beforeFirst() throws LdapException, CursorException
+    {
+        checkNotClosed();
+
+        // Nothing to do if nothing has been read yet
+        if ( consumed )
+        {
+            stop();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterLast() throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_07009_PARALLEL_SEARCH_FORWARD_ONLY ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean first() throws LdapException, CursorException
+    {
+        beforeFirst();
+
+        return next();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean last() throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_07009_PARALLEL_SEARCH_FORWARD_ONLY ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean previous() throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_07009_PARALLEL_SEARCH_FORWARD_ONLY ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean next() throws LdapException, CursorException
+    {
+        checkNotClosed();
+
+        if ( !started )
+        {
+            start();
+        }
+
+        current = null;
+
+        while ( done < partitions.size() )
+        {
+            Object element;
+
+            try
+            {
+                element = queues.get( queueIndex ).poll( POLL_DELAY, TimeUnit.MILLISECONDS );
+            }
+            catch ( InterruptedException ie )
+            {
+                Thread.currentThread().interrupt();
+                throw new LdapOtherException( ie.getMessage(), ie );
+            }
+
+            if ( element == null )
+            {
+                // Nothing yet : check the time limit
+                checkNotClosed();
+
+                continue;
+            }
+
+            consumed = true;
+
+            if ( element instanceof Done )
+            {
+                done++;
+
+                if ( ordered )
+                {
+                    queueIndex++;
+                }
+
+                Exception failure = ( ( Done ) element ).failure;
+
+                if ( failure != null )
+                {
+                    stop();
+
+                    if ( failure instanceof LdapException )
+                    {
+                        throw ( LdapException ) failure;
+                    }
+                    else if ( failure instanceof CursorException )
+                    {
+                        throw ( CursorException ) failure;
+                    }
+                    else
+                    {
+                        throw new LdapOtherException( failure.getMessage(), failure );
+                    }
+                }
+
+                continue;
+            }
+
+            current = ( Entry ) element;
+
+            return true;
+        }
+
+        return false;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Entry get() throws CursorException
+    {
+        checkNotClosed();
+
+        if ( current == null )
+        {
+            throw new InvalidCursorPositionException();
+        }
+
+        return current;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        stop();
+        super.close();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close( Exception cause ) throws IOException
+    {
+        stop();
+        super.close( cause );
+    }
+}
@@ -1000,17 +1000,29 @@ public class DefaultOperationManager implements OperationManager
         try
         {
             Partition partition = directoryService.getPartitionNexus().getPartition( dn );
+            hasEntryContext.setPartition( partition );
 
-            try ( PartitionTxn partitionTxn = partition.beginReadTransaction() )
+            // Within a session transaction, we have to see the pending changes
+            PartitionTxn sessionTxn = hasEntryContext.getSession().getTransaction( partition );
+
+            if ( sessionTxn != null )
             {
-                hasEntryContext.setPartition( partition );
-                hasEntryContext.setTransaction( partitionTxn );
+                hasEntryContext.setTransaction( sessionTxn );
 
                 result = head.hasEntry( hasEntryContext );
             }
-            catch ( IOException ioe )
+            else
             {
-                throw new LdapOtherException( ioe.getMessage(), ioe );
+                try ( PartitionTxn partitionTxn = partition.beginReadTransaction() )
+                {
+                    hasEntryContext.setTransaction( partitionTxn );
+
+                    result = head.hasEntry( hasEntryContext );
+                }
+                catch ( IOException ioe )
+                {
+                    throw new LdapOtherException( ioe.getMessage(), ioe );
+                }
             }
         }
         finally
@@ -1066,26 +1078,38 @@ public class DefaultOperationManager implements OperationManager
         
         Partition partition = directoryService.getPartitionNexus().getPartition( dn );
         lookupContext.setPartition( partition );
-        
-        // Start a read transaction right away
-        try ( PartitionTxn transaction = partition.beginReadTransaction() )
+
+        lockRead();
+
+        try
         {
-            lookupContext.setTransaction( transaction );
+            // Within a session transaction, we have to see the pending changes
+            PartitionTxn sessionTxn = lookupContext.getSession().getTransaction( partition );
 
-            lockRead();
-    
-            try
+            if ( sessionTxn != null )
             {
+                lookupContext.setTransaction( sessionTxn );
+
                 entry = head.lookup( lookupContext );
             }
-            finally
+            else
             {
-                unlockRead();
+                // Start a read transaction right away
+                try ( PartitionTxn transaction = partition.beginReadTransaction() )
+                {
+                    lookupContext.setTransaction( transaction );
+
+                    entry = head.lookup( lookupContext );
+                }
+                catch ( IOException ioe )
+                {
+                    throw new LdapOtherException( ioe.getMessage(), ioe );
+                }
             }
         }
-        catch ( IOException ioe )
+        finally
         {
-            throw new LdapOtherException( ioe.getMessage(), ioe );
+            unlockRead();
         }
 
         if ( IS_DEBUG )
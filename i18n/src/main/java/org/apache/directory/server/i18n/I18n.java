@@ -259,6 +259,7 @@ public enum I18n
     ERR_07006_GROUPING_EXCEPTIONS_ON_ROOT_NEXUS("ERR_07006_GROUPING_EXCEPTIONS_ON_ROOT_NEXUS"),
     ERR_07007_PARTITION_HAS_NO_SUFFIX("ERR_07007_PARTITION_HAS_NO_SUFFIX"),
     ERR_07008_CANNOT_FIND_PARTITION("ERR_07008_CANNOT_FIND_PARTITION"),
+    ERR_07009_PARALLEL_SEARCH_FORWARD_ONLY("ERR_07009_PARALLEL_SEARCH_FORWARD_ONLY"),
 
     // apacheds-http-directory-bridge errors         8000 - 8999
     // No error
@@ -322,6 +323,8 @@ public enum I18n
     ERR_16002_CHANGLE_LOG_STORE_CANNOT_BE_SEARCHED("ERR_16002_CHANGLE_LOG_STORE_CANNOT_BE_SEARCHED"),
     ERR_16003_REVISION_TOO_HIGH("ERR_16003_REVISION_TOO_HIGH"),
     ERR_16004_FILE_CANNOT_BE_DELETED("ERR_16004_FILE_CANNOT_BE_DELETED"),
+    ERR_16005_REVISION_NOT_AVAILABLE("ERR_16005_REVISION_NOT_AVAILABLE"),
+    ERR_16006_CORRUPTED_CHANGELOG_SEGMENT("ERR_16006_CORRUPTED_CHANGELOG_SEGMENT"),
 
 
     // apacheds-interceptors-collective errors       17000 - 17999
@@ -344,7 +347,7 @@ public enum I18n
     // No error
 
     // apacheds-interceptors-journal errors          21000 - 21999
-    // No error
+    ERR_21000_CORRUPTED_JOURNAL("ERR_21000_CORRUPTED_JOURNAL"),
 
     // apacheds-interceptors-logger errors           22000 - 22999
     // No error
@@ -503,6 +506,20 @@ public enum I18n
     ERR_38031_UNEXPECTED_BASE_SCOPE("ERR_38031_UNEXPECTED_BASE_SCOPE"),
     ERR_38032_TIME_UNIT_NOT_SUPPORTED("ERR_38032_TIME_UNIT_NOT_SUPPORTED"),
     ERR_38033_CANNOT_PROCESS_REQUEST_WHILE_BINDING("ERR_38033_CANNOT_PROCESS_REQUEST_WHILE_BINDING"),
+    ERR_38034_NO_REQUEST_LANE("ERR_38034_NO_REQUEST_LANE"),
+    ERR_38035_REQUEST_LANE_FULL("ERR_38035_REQUEST_LANE_FULL"),
+    ERR_38036_VLV_WITHOUT_SORT_CONTROL("ERR_38036_VLV_WITHOUT_SORT_CONTROL"),
+    ERR_38037_VLV_CANNOT_SORT("ERR_38037_VLV_CANNOT_SORT"),
+    ERR_38038_VLV_OFFSET_RANGE("ERR_38038_VLV_OFFSET_RANGE"),
+    ERR_38039_NOT_A_PARTITION_SUFFIX("ERR_38039_NOT_A_PARTITION_SUFFIX"),
+    ERR_38040_CANNOT_SNAPSHOT_PARTITION("ERR_38040_CANNOT_SNAPSHOT_PARTITION"),
+    ERR_38041_SNAPSHOT_DIRECTORY_NOT_EMPTY("ERR_38041_SNAPSHOT_DIRECTORY_NOT_EMPTY"),
+    ERR_38042_INVALID_SNAPSHOT("ERR_38042_INVALID_SNAPSHOT"),
+    ERR_38043_SNAPSHOT_SUFFIX_MISMATCH("ERR_38043_SNAPSHOT_SUFFIX_MISMATCH"),
+    ERR_38044_INVALID_COMPRESSED_DATA("ERR_38044_INVALID_COMPRESSED_DATA"),
+    ERR_38045_COMPRESSION_ALREADY_STARTED("ERR_38045_COMPRESSION_ALREADY_STARTED"),
+    ERR_38046_INVALID_COMPRESSION_LEVEL("ERR_38046_INVALID_COMPRESSION_LEVEL"),
+    ERR_38047_INFLATED_DATA_TOO_LARGE("ERR_38047_INFLATED_DATA_TOO_LARGE"),
 
     // apacheds-protocol-ntp errors                  39000 - 39999
     // No error
@@ -593,7 +610,8 @@ public enum I18n
     ERR_49042_MUST_HAVE_2_SUB_EXPRESSIONS("ERR_49042_MUST_HAVE_2_SUB_EXPRESSIONS"),
     ERR_49043_PRESENCE_CURSOR_ONLY_SUPPORT_POSITIONING_WHEN_INDEX_EXISTS("ERR_49043_PRESENCE_CURSOR_ONLY_SUPPORT_POSITIONING_WHEN_INDEX_EXISTS"),
     ERR_49044_SUBSTRING_CURSOR_NOT_ORDERED("ERR_49044_SUBSTRING_CURSOR_NOT_ORDERED"),
-    ERR_49045_SCOPE_NODE_NOT_IN_SUBTREE_SCOPE("ERR_49045_SCOPE_NODE_NOT_IN_SUBTREE_SCOPE");
+    ERR_49045_SCOPE_NODE_NOT_IN_SUBTREE_SCOPE("ERR_49045_SCOPE_NODE_NOT_IN_SUBTREE_SCOPE"),
+    ERR_49046_CACHED_CURSOR_NOT_ORDERED("ERR_49046_CACHED_CURSOR_NOT_ORDERED");
 
     private static final ResourceBundle ERR_BUNDLE = ResourceBundle
         .getBundle( "org.apache.directory.server.i18n.errors", Locale.ROOT );
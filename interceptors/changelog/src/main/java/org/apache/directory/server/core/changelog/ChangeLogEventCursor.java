@@ -0,0 +1,246 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.changelog;
+
+
+import java.io.IOException;
+
+import org.apache.directory.api.ldap.model.cursor.AbstractCursor;
+import org.apache.directory.api.ldap.model.cursor.CursorException;
+import org.apache.directory.api.ldap.model.cursor.InvalidCursorPositionException;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.server.core.api.changelog.ChangeLogEvent;
+
+
+/**
+ * A Cursor over a range of revisions of a {@link FileChangeLogStore}. The events
+ * are read from the disk when they are fetched, so the range may be arbitrarily
+ * large.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+class ChangeLogEventCursor extends AbstractCursor<ChangeLogEvent>
+{
+    /** The store the events are read from */
+    private final FileChangeLogStore store;
+
+    /** The first revision, inclusive */
+    private final long start;
+
+    /** The last revision, inclusive */
+    private final long end;
+
+    /** The current revision, start - 1 if before first, end + 1 if after last */
+    private long position;
+
+    /** The event at the current position, if already read */
+    private ChangeLogEvent current;
+
+
+    /**
+     * Creates a new ChangeLogEventCursor, positioned before the first revision.
+     *
+     * @param store The store to read the events from
+     * @param start The first revision, inclusive
+     * @param end The last revision, inclusive
+     */
+    ChangeLogEventCursor( FileChangeLogStore store, long start, long end )
+    {
+        this.store = store;
+        this.start = start;
+        this.end = end;
+        this.position = start - 1;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean available()
+    {
+        return ( position >= start ) && ( position <= end );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void before( ChangeLogEvent element ) throws LdapException, CursorException
+    {
+        checkNotClosed();
+        moveTo( element.getRevision() - 1 );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void after( ChangeLogEvent element ) throws LdapException, CursorException
+    {
+        checkNotClosed();
+        moveTo( element.getRevision() );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void beforeFirst() throws LdapException, CursorException
+    {
+        checkNotClosed();
+        moveTo( start - 1 );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterLast() throws LdapException, CursorException
+    {
+        checkNotClosed();
+        moveTo( end + 1 );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean first() throws LdapException, CursorException
+    {
+        beforeFirst();
+
+        return next();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean last() throws LdapException, CursorException
+    {
+        afterLast();
+
+        return previous();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean previous() throws LdapException, CursorException
+    {
+        checkNotClosed();
+
+        if ( position < start )
+        {
+            return false;
+        }
+
+        moveTo( position - 1 );
+
+        return available();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean next() throws LdapException, CursorException
+    {
+        checkNotClosed();
+
+        if ( position > end )
+        {
+            return false;
+        }
+
+        moveTo( position + 1 );
+
+        return available();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ChangeLogEvent get() throws CursorException
+    {
+        checkNotClosed();
+
+        if ( !available() )
+        {
+            throw new InvalidCursorPositionException();
+        }
+
+        if ( current == null )
+        {
+            try
+            {
+                current = store.read( position );
+            }
+            catch ( IOException ioe )
+            {
+                throw new CursorException( ioe.getMessage(), ioe );
+            }
+        }
+
+        return current;
+    }
+
+
+    /**
+     * Moves to a revision, bounded to [start - 1, end + 1]
+     */
+    private void moveTo( long revision )
+    {
+        position = Math.max( start - 1, Math.min( end + 1, revision ) );
+        current = null;
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString( String tabs )
+    {
+        return tabs + "ChangeLogEventCursor [" + start + ", " + end + "], position " + position;
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return toString( "" );
+    }
+}
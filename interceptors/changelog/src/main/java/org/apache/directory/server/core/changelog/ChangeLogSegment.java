@@ -0,0 +1,411 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.changelog;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+import org.apache.directory.server.i18n.I18n;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * An append only file holding a contiguous range of serialized ChangeLogEvents,
+ * and its associated index file. Each record in the data file is stored as :
+ * <pre>
+ * [length : int][revision : long][serialized event : length bytes]
+ * </pre>
+ * The index file contains the offset of each record in the data file, as a long,
+ * so that the position of a revision is found without scanning the data file.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+class ChangeLogSegment
+{
+    /** A logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( ChangeLogSegment.class );
+
+    /** The data file extension */
+    static final String DATA_EXTENSION = ".log";
+
+    /** The index file extension */
+    static final String INDEX_EXTENSION = ".idx";
+
+    /** The size of a record header */
+    private static final int HEADER_SIZE = 12;
+
+    /** The size of an index slot */
+    private static final int OFFSET_SIZE = 8;
+
+    /** The first revision stored in this segment */
+    private final long firstRevision;
+
+    /** The data file */
+    private final File dataFile;
+
+    /** The index file */
+    private final File indexFile;
+
+    /** The channel used to read and write the data file */
+    private final FileChannel data;
+
+    /** The channel used to read and write the index file */
+    private final FileChannel index;
+
+    /** The number of records in this segment */
+    private volatile long count;
+
+    /** The size of the data file */
+    private volatile long size;
+
+
+    /**
+     * Opens a segment, creating its files if they don't exist. The index is
+     * rebuilt if it does not match the data file, and an incomplete record
+     * at the end of the data file is discarded.
+     *
+     * @param directory The directory containing the segment files
+     * @param firstRevision The first revision stored in this segment
+     * @throws IOException If the files can't be opened
+     */
+    ChangeLogSegment( File directory, long firstRevision ) throws IOException
+    {
+        this.firstRevision = firstRevision;
+        String name = getName( firstRevision );
+        dataFile = new File( directory, name + DATA_EXTENSION );
+        indexFile = new File( directory, name + INDEX_EXTENSION );
+
+        data = FileChannel.open( dataFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE );
+        index = FileChannel.open( indexFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE );
+
+        size = data.size();
+        count = index.size() / OFFSET_SIZE;
+
+        if ( !isIndexValid() )
+        {
+            rebuildIndex();
+        }
+    }
+
+
+    /**
+     * @return The name of a segment, without extension, given its first revision
+     */
+    static String getName( long firstRevision )
+    {
+        return String.format( Locale.ROOT, "changelog-%020d", firstRevision );
+    }
+
+
+    /**
+     * Gets the first revision of a segment from its data file name
+     *
+     * @param fileName The data file name
+     * @return The first revision, or -1 if the name is not a segment name
+     */
+    static long getFirstRevision( String fileName )
+    {
+        if ( !fileName.startsWith( "changelog-" ) || !fileName.endsWith( DATA_EXTENSION ) )
+        {
+            return -1L;
+        }
+
+        try
+        {
+            return Long.parseLong( fileName.substring( "changelog-".length(),
+                fileName.length() - DATA_EXTENSION.length() ) );
+        }
+        catch ( NumberFormatException nfe )
+        {
+            return -1L;
+        }
+    }
+
+
+    /**
+     * Checks that the last indexed record ends exactly at the end of the data file
+     */
+    private boolean isIndexValid() throws IOException
+    {
+        if ( ( index.size() % OFFSET_SIZE ) != 0 )
+        {
+            return false;
+        }
+
+        if ( count == 0 )
+        {
+            return size == 0;
+        }
+
+        long lastOffset = readLong( index, ( count - 1 ) * OFFSET_SIZE );
+
+        if ( ( lastOffset < 0 ) || ( lastOffset + HEADER_SIZE > size ) )
+        {
+            return false;
+        }
+
+        ByteBuffer header = read( data, lastOffset, HEADER_SIZE );
+
+        return lastOffset + HEADER_SIZE + header.getInt() == size;
+    }
+
+
+    /**
+     * Scans the data file to recreate the index, truncating any partially written record
+     */
+    private void rebuildIndex() throws IOException
+    {
+        LOG.warn( "Rebuilding the changelog index {}", indexFile );
+
+        index.truncate( 0L );
+        long offset = 0L;
+        long nbRecords = 0L;
+        ByteBuffer slot = ByteBuffer.allocate( OFFSET_SIZE );
+
+        while ( offset + HEADER_SIZE <= size )
+        {
+            ByteBuffer header = read( data, offset, HEADER_SIZE );
+            int length = header.getInt();
+            long revision = header.getLong();
+
+            if ( ( length < 0 ) || ( offset + HEADER_SIZE + length > size )
+                || ( revision != firstRevision + nbRecords ) )
+            {
+                break;
+            }
+
+            slot.clear();
+            slot.putLong( offset );
+            slot.flip();
+            write( index, nbRecords * OFFSET_SIZE, slot );
+
+            nbRecords++;
+            offset += HEADER_SIZE + length;
+        }
+
+        if ( offset != size )
+        {
+            LOG.warn( "Discarding {} bytes at the end of the changelog segment {}", size - offset, dataFile );
+            data.truncate( offset );
+            size = offset;
+        }
+
+        count = nbRecords;
+    }
+
+
+    /**
+     * Appends a record at the end of the segment. The revision must be the one
+     * following the last revision stored in the segment.
+     *
+     * @param revision The record revision
+     * @param payload The serialized event
+     * @throws IOException If the record can't be written
+     */
+    void append( long revision, byte[] payload ) throws IOException
+    {
+        long offset = size;
+        ByteBuffer record = ByteBuffer.allocate( HEADER_SIZE + payload.length );
+        record.putInt( payload.length );
+        record.putLong( revision );
+        record.put( payload );
+        record.flip();
+        write( data, offset, record );
+
+        ByteBuffer slot = ByteBuffer.allocate( OFFSET_SIZE );
+        slot.putLong( offset );
+        slot.flip();
+        write( index, count * OFFSET_SIZE, slot );
+
+        size = offset + HEADER_SIZE + payload.length;
+        count++;
+    }
+
+
+    /**
+     * Reads the serialized event stored for a revision
+     *
+     * @param revision The revision to read
+     * @return The serialized event
+     * @throws IOException If the record can't be read or is corrupted
+     */
+    byte[] read( long revision ) throws IOException
+    {
+        long position = revision - firstRevision;
+
+        if ( ( position < 0 ) || ( position >= count ) )
+        {
+            throw new IOException( I18n.err( I18n.ERR_16005_REVISION_NOT_AVAILABLE, revision ) );
+        }
+
+        long offset = readLong( index, position * OFFSET_SIZE );
+        ByteBuffer header = read( data, offset, HEADER_SIZE );
+        int length = header.getInt();
+        long stored = header.getLong();
+
+        if ( ( stored != revision ) || ( length < 0 ) || ( offset + HEADER_SIZE + length > size ) )
+        {
+            throw new IOException( I18n.err( I18n.ERR_16006_CORRUPTED_CHANGELOG_SEGMENT, dataFile, offset ) );
+        }
+
+        return read( data, offset + HEADER_SIZE, length ).array();
+    }
+
+
+    /**
+     * Flushes the segment's files on disk
+     *
+     * @throws IOException If the files can't be flushed
+     */
+    void sync() throws IOException
+    {
+        data.force( false );
+        index.force( false );
+    }
+
+
+    /**
+     * Closes the segment's files
+     *
+     * @throws IOException If the files can't be closed
+     */
+    void close() throws IOException
+    {
+        try
+        {
+            data.close();
+        }
+        finally
+        {
+            index.close();
+        }
+    }
+
+
+    /**
+     * Closes and deletes the segment's files
+     *
+     * @throws IOException If the files can't be deleted
+     */
+    void delete() throws IOException
+    {
+        close();
+
+        if ( !dataFile.delete() )
+        {
+            throw new IOException( I18n.err( I18n.ERR_16004_FILE_CANNOT_BE_DELETED, dataFile.getAbsolutePath() ) );
+        }
+
+        if ( !indexFile.delete() )
+        {
+            throw new IOException( I18n.err( I18n.ERR_16004_FILE_CANNOT_BE_DELETED, indexFile.getAbsolutePath() ) );
+        }
+    }
+
+
+    /**
+     * @return The first revision stored in this segment
+     */
+    long getFirstRevision()
+    {
+        return firstRevision;
+    }
+
+
+    /**
+     * @return The last revision stored in this segment, or firstRevision - 1 if the segment is empty
+     */
+    long getLastRevision()
+    {
+        return firstRevision + count - 1;
+    }
+
+
+    /**
+     * @return The size of the data file
+     */
+    long size()
+    {
+        return size;
+    }
+
+
+    /**
+     * @return The last time the segment has been written
+     */
+    long lastModified()
+    {
+        return dataFile.lastModified();
+    }
+
+
+    private ByteBuffer read( FileChannel channel, long position, int length ) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate( length );
+
+        while ( buffer.hasRemaining() )
+        {
+            if ( channel.read( buffer, position + buffer.position() ) < 0 )
+            {
+                throw new IOException( I18n.err( I18n.ERR_16006_CORRUPTED_CHANGELOG_SEGMENT, dataFile, position ) );
+            }
+        }
+
+        buffer.flip();
+
+        return buffer;
+    }
+
+
+    private long readLong( FileChannel channel, long position ) throws IOException
+    {
+        return read( channel, position, OFFSET_SIZE ).getLong();
+    }
+
+
+    private static void write( FileChannel channel, long position, ByteBuffer buffer ) throws IOException
+    {
+        long pos = position;
+
+        while ( buffer.hasRemaining() )
+        {
+            pos += channel.write( buffer, pos );
+        }
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return "ChangeLogSegment[" + dataFile.getName() + ", revisions " + firstRevision + " to "
+            + getLastRevision() + "]";
+    }
+}
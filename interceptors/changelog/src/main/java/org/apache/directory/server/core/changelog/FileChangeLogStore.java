@@ -0,0 +1,767 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.changelog;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.api.util.DateUtils;
+import org.apache.directory.api.util.TimeProvider;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.LdapPrincipal;
+import org.apache.directory.server.core.api.changelog.ChangeLogEvent;
+import org.apache.directory.server.core.api.changelog.ChangeLogEventSerializer;
+import org.apache.directory.server.core.api.changelog.Tag;
+import org.apache.directory.server.core.api.changelog.TaggableChangeLogStore;
+import org.apache.directory.server.i18n.I18n;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A change log store that keeps its events on disk, in append only segment
+ * files. Each event is written when it is logged, and read back from the disk
+ * when it is looked up, so the memory used by the store does not depend on the
+ * number of events.
+ * <br>
+ * A new segment is started when the current one reaches the maximum segment size.
+ * Old segments can be removed using {@link #purge(long)} or {@link #purgeOlderThan(long)},
+ * or automatically when a retention age has been configured.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class FileChangeLogStore implements TaggableChangeLogStore
+{
+    /** A logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( FileChangeLogStore.class );
+
+    /** The default maximum size of a segment : 16Mb */
+    public static final long DEFAULT_MAX_SEGMENT_SIZE = 16L * 1024L * 1024L;
+
+    private static final String CHANGELOG_DIR = "changelog";
+    private static final String TAG_FILE = "tags";
+
+    /** The segments, ordered by their first revision */
+    private final NavigableMap<Long, ChangeLogSegment> segments = new ConcurrentSkipListMap<>();
+
+    /** Protects the segments being read from being purged */
+    private final ReadWriteLock segmentsLock = new ReentrantReadWriteLock();
+
+    /** The segment new events are appended to */
+    private ChangeLogSegment current;
+
+    /** An incremental number giving the current revision */
+    private volatile long currentRevision;
+
+    /** The latest tag */
+    private Tag latest;
+
+    /** A Map of tags and revisions */
+    private final Map<Long, Tag> tags = new HashMap<>( 100 );
+
+    /** The maximum size of a segment before a new one is started */
+    private long maxSegmentSize = DEFAULT_MAX_SEGMENT_SIZE;
+
+    /** The age after which a segment is purged, 0 to keep all the segments */
+    private long retentionAge;
+
+    /** The directory containing the segments */
+    private File workingDirectory;
+
+    /** The DirectoryService */
+    private DirectoryService directoryService;
+
+    private TimeProvider timeProvider = TimeProvider.DEFAULT;
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void init( DirectoryService service ) throws LdapException
+    {
+        workingDirectory = new File( service.getInstanceLayout().getLogDirectory(), CHANGELOG_DIR );
+        this.directoryService = service;
+        this.timeProvider = service.getTimeProvider();
+
+        try
+        {
+            if ( !workingDirectory.exists() && !workingDirectory.mkdirs() )
+            {
+                throw new IOException( I18n.err( I18n.ERR_00004_COULD_NOT_CREATE_DIRECTORY, workingDirectory ) );
+            }
+
+            loadSegments();
+            loadTags();
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapException( ioe.getMessage(), ioe );
+        }
+    }
+
+
+    /**
+     * Opens all the segments found in the working directory. The current revision
+     * is the last revision of the last segment.
+     */
+    private void loadSegments() throws IOException
+    {
+        File[] files = workingDirectory.listFiles();
+
+        if ( files != null )
+        {
+            for ( File file : files )
+            {
+                long firstRevision = ChangeLogSegment.getFirstRevision( file.getName() );
+
+                if ( firstRevision > 0 )
+                {
+                    segments.put( firstRevision, new ChangeLogSegment( workingDirectory, firstRevision ) );
+                }
+            }
+        }
+
+        if ( segments.isEmpty() )
+        {
+            current = null;
+            currentRevision = 0L;
+        }
+        else
+        {
+            current = segments.lastEntry().getValue();
+            currentRevision = current.getLastRevision();
+        }
+
+        LOG.debug( "Loaded {} changelog segments, current revision {}", segments.size(), currentRevision );
+    }
+
+
+    private void saveTags() throws IOException
+    {
+        File tagFile = new File( workingDirectory, TAG_FILE );
+        Properties props = new Properties();
+
+        synchronized ( tags )
+        {
+            for ( Tag tag : tags.values() )
+            {
+                String key = String.valueOf( tag.getRevision() );
+
+                if ( tag.getDescription() == null )
+                {
+                    props.setProperty( key, "null" );
+                }
+                else
+                {
+                    props.setProperty( key, tag.getDescription() );
+                }
+            }
+        }
+
+        try ( OutputStream out = Files.newOutputStream( tagFile.toPath() ) )
+        {
+            props.store( out, null );
+            out.flush();
+        }
+    }
+
+
+    private void loadTags() throws IOException
+    {
+        File tagFile = new File( workingDirectory, TAG_FILE );
+
+        if ( !tagFile.exists() )
+        {
+            return;
+        }
+
+        Properties props = new Properties();
+
+        try ( InputStream in = Files.newInputStream( tagFile.toPath() ) )
+        {
+            props.load( in );
+        }
+
+        List<Long> revList = new ArrayList<>();
+
+        for ( Object key : props.keySet() )
+        {
+            revList.add( Long.valueOf( ( String ) key ) );
+        }
+
+        Collections.sort( revList );
+        Tag tag = null;
+
+        synchronized ( tags )
+        {
+            tags.clear();
+
+            for ( Long lkey : revList )
+            {
+                String desc = props.getProperty( String.valueOf( lkey ) );
+
+                if ( "null".equals( desc ) )
+                {
+                    tag = new Tag( lkey, null );
+                }
+                else
+                {
+                    tag = new Tag( lkey, desc );
+                }
+
+                tags.put( lkey, tag );
+            }
+
+            latest = tag;
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sync() throws LdapException
+    {
+        try
+        {
+            synchronized ( this )
+            {
+                if ( current != null )
+                {
+                    current.sync();
+                }
+            }
+
+            saveTags();
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapException( ioe.getMessage(), ioe );
+        }
+    }
+
+
+    /**
+     * Flush the logs and the tags on disk, and close the segments
+     */
+    @Override
+    public void destroy() throws LdapException
+    {
+        sync();
+
+        synchronized ( this )
+        {
+            try
+            {
+                for ( ChangeLogSegment segment : segments.values() )
+                {
+                    segment.close();
+                }
+            }
+            catch ( IOException ioe )
+            {
+                throw new LdapException( ioe.getMessage(), ioe );
+            }
+            finally
+            {
+                segments.clear();
+                current = null;
+            }
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCurrentRevision()
+    {
+        return currentRevision;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ChangeLogEvent log( LdapPrincipal principal, LdifEntry forward, LdifEntry reverse )
+        throws LdapException
+    {
+        synchronized ( this )
+        {
+            ChangeLogEvent event = new ChangeLogEvent( currentRevision + 1,
+                DateUtils.getGeneralizedTime( timeProvider ), principal, forward, reverse );
+
+            return append( event );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ChangeLogEvent log( LdapPrincipal principal, LdifEntry forward, List<LdifEntry> reverses )
+        throws LdapException
+    {
+        synchronized ( this )
+        {
+            ChangeLogEvent event = new ChangeLogEvent( currentRevision + 1,
+                DateUtils.getGeneralizedTime( timeProvider ), principal, forward, reverses );
+
+            return append( event );
+        }
+    }
+
+
+    /**
+     * Writes an event at the end of the current segment, starting a new segment
+     * if the current one is full. Must be called while holding the store lock.
+     */
+    private ChangeLogEvent append( ChangeLogEvent event ) throws LdapException
+    {
+        long revision = event.getRevision();
+
+        try
+        {
+            byte[] payload = serialize( event );
+
+            if ( ( current == null ) || ( current.size() >= maxSegmentSize ) )
+            {
+                if ( current != null )
+                {
+                    current.sync();
+                }
+
+                current = new ChangeLogSegment( workingDirectory, revision );
+                segments.put( revision, current );
+
+                if ( retentionAge > 0 )
+                {
+                    purgeOlderThan( retentionAge );
+                }
+            }
+
+            current.append( revision, payload );
+            currentRevision = revision;
+
+            return event;
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapException( ioe.getMessage(), ioe );
+        }
+    }
+
+
+    private byte[] serialize( ChangeLogEvent event ) throws IOException
+    {
+        try ( ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            ObjectOutputStream out = new ObjectOutputStream( baos ) )
+        {
+            ChangeLogEventSerializer.serialize( event, out );
+            out.flush();
+
+            return baos.toByteArray();
+        }
+    }
+
+
+    /**
+     * Reads the event stored for a revision.
+     *
+     * @param revision The revision to read
+     * @return The stored event
+     * @throws IOException If the revision is not available or can't be read
+     */
+    ChangeLogEvent read( long revision ) throws IOException
+    {
+        byte[] payload;
+
+        // The segment must not be deleted while it's read
+        segmentsLock.readLock().lock();
+
+        try
+        {
+            Map.Entry<Long, ChangeLogSegment> entry = segments.floorEntry( revision );
+
+            if ( entry == null )
+            {
+                throw new IOException( I18n.err( I18n.ERR_16005_REVISION_NOT_AVAILABLE, revision ) );
+            }
+
+            payload = entry.getValue().read( revision );
+        }
+        finally
+        {
+            segmentsLock.readLock().unlock();
+        }
+
+        try ( ObjectInputStream in = new ObjectInputStream( new ByteArrayInputStream( payload ) ) )
+        {
+            ChangeLogEvent event = ChangeLogEventSerializer.deserialize( directoryService.getSchemaManager(), in );
+            event.getCommitterPrincipal().setSchemaManager( directoryService.getSchemaManager() );
+
+            return event;
+        }
+    }
+
+
+    /**
+     * @return The first revision still available in the store
+     */
+    public long getFirstRevision()
+    {
+        Map.Entry<Long, ChangeLogSegment> first = segments.firstEntry();
+
+        if ( first == null )
+        {
+            return currentRevision + 1;
+        }
+
+        return first.getKey();
+    }
+
+
+    /**
+     * Removes the segments only containing revisions lower than the given revision.
+     * The segment events are currently appended to is never removed.
+     *
+     * @param revision The first revision to keep
+     * @return The number of removed segments
+     * @throws LdapException If a segment can't be deleted
+     */
+    public synchronized int purge( long revision ) throws LdapException
+    {
+        int nbPurged = 0;
+
+        segmentsLock.writeLock().lock();
+
+        try
+        {
+            for ( ChangeLogSegment segment : segments.values() )
+            {
+                if ( ( segment == current ) || ( segment.getLastRevision() >= revision ) )
+                {
+                    break;
+                }
+
+                segments.remove( segment.getFirstRevision() );
+                segment.delete();
+                nbPurged++;
+            }
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapException( ioe.getMessage(), ioe );
+        }
+        finally
+        {
+            segmentsLock.writeLock().unlock();
+        }
+
+        if ( nbPurged > 0 )
+        {
+            LOG.info( "Purged {} changelog segments, first available revision is now {}", nbPurged,
+                getFirstRevision() );
+        }
+
+        return nbPurged;
+    }
+
+
+    /**
+     * Removes the segments which have not been written since the given delay.
+     * The segment events are currently appended to is never removed.
+     *
+     * @param age The age, in milliseconds
+     * @return The number of removed segments
+     * @throws LdapException If a segment can't be deleted
+     */
+    public synchronized int purgeOlderThan( long age ) throws LdapException
+    {
+        long limit = timeProvider.currentIimeMillis() - age;
+        long firstKept = -1L;
+
+        for ( ChangeLogSegment segment : segments.values() )
+        {
+            if ( ( segment == current ) || ( segment.lastModified() >= limit ) )
+            {
+                firstKept = segment.getFirstRevision();
+                break;
+            }
+        }
+
+        if ( firstKept < 0 )
+        {
+            return 0;
+        }
+
+        return purge( firstKept );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ChangeLogEvent lookup( long revision )
+    {
+        if ( revision < 0 )
+        {
+            throw new IllegalArgumentException( I18n.err( I18n.ERR_00023_NEGATIVE_REVISION ) );
+        }
+
+        if ( revision > getCurrentRevision() )
+        {
+            throw new IllegalArgumentException( I18n.err( I18n.ERR_16003_REVISION_TOO_HIGH ) );
+        }
+
+        if ( revision < getFirstRevision() )
+        {
+            throw new IllegalArgumentException( I18n.err( I18n.ERR_16005_REVISION_NOT_AVAILABLE, revision ) );
+        }
+
+        try
+        {
+            return read( revision );
+        }
+        catch ( IOException ioe )
+        {
+            throw new IllegalStateException( ioe.getMessage(), ioe );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<ChangeLogEvent> find()
+    {
+        return new ChangeLogEventCursor( this, getFirstRevision(), currentRevision );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<ChangeLogEvent> findBefore( long revision )
+    {
+        return new ChangeLogEventCursor( this, getFirstRevision(), Math.min( revision - 1, currentRevision ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<ChangeLogEvent> findAfter( long revision )
+    {
+        return new ChangeLogEventCursor( this, Math.max( revision + 1, getFirstRevision() ), currentRevision );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Cursor<ChangeLogEvent> find( long startRevision, long endRevision )
+    {
+        if ( ( startRevision < 0 ) || ( endRevision < 0 ) )
+        {
+            throw new IllegalArgumentException( I18n.err( I18n.ERR_00023_NEGATIVE_REVISION ) );
+        }
+
+        if ( ( startRevision > currentRevision ) || ( endRevision > currentRevision ) )
+        {
+            throw new IllegalArgumentException( I18n.err( I18n.ERR_16003_REVISION_TOO_HIGH ) );
+        }
+
+        return new ChangeLogEventCursor( this, Math.max( startRevision, getFirstRevision() ), endRevision );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Tag tag( long revision )
+    {
+        return tag( revision, null );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Tag tag()
+    {
+        return tag( ( String ) null );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Tag tag( String description )
+    {
+        synchronized ( tags )
+        {
+            if ( ( latest != null ) && ( latest.getRevision() == currentRevision ) )
+            {
+                return latest;
+            }
+
+            latest = new Tag( currentRevision, description );
+            tags.put( currentRevision, latest );
+
+            return latest;
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Tag tag( long revision, String descrition )
+    {
+        synchronized ( tags )
+        {
+            if ( tags.containsKey( revision ) )
+            {
+                return tags.get( revision );
+            }
+
+            latest = new Tag( revision, descrition );
+            tags.put( revision, latest );
+
+            return latest;
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Tag getLatest()
+    {
+        return latest;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Tag removeTag( long revision )
+    {
+        synchronized ( tags )
+        {
+            return tags.remove( revision );
+        }
+    }
+
+
+    /**
+     * @return The maximum size of a segment, in bytes
+     */
+    public long getMaxSegmentSize()
+    {
+        return maxSegmentSize;
+    }
+
+
+    /**
+     * @param maxSegmentSize The maximum size of a segment, in bytes, before a new one is started
+     */
+    public void setMaxSegmentSize( long maxSegmentSize )
+    {
+        this.maxSegmentSize = maxSegmentSize;
+    }
+
+
+    /**
+     * @return The age, in milliseconds, after which a segment is purged. 0 means segments are never purged
+     */
+    public long getRetentionAge()
+    {
+        return retentionAge;
+    }
+
+
+    /**
+     * @param retentionAge The age, in milliseconds, after which a segment is purged. 0 means segments are never purged
+     */
+    public void setRetentionAge( long retentionAge )
+    {
+        this.retentionAge = retentionAge;
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append( "FileChangeLog\n" );
+        sb.append( "latest tag : " ).append( latest ).append( '\n' );
+        sb.append( "current revision : " ).append( currentRevision ).append( '\n' );
+
+        for ( ChangeLogSegment segment : segments.values() )
+        {
+            sb.append( segment ).append( '\n' );
+        }
+
+        return sb.toString();
+    }
+}
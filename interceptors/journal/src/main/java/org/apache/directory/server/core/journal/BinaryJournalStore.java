@@ -0,0 +1,791 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.journal;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.LdapPrincipal;
+import org.apache.directory.server.core.api.journal.JournalStore;
+import org.apache.directory.server.i18n.I18n;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A Journal Store writing compact binary records (see {@link JournalRecord}).
+ * <p>
+ * The records are serialized by the threads logging the changes, and pushed into a
+ * bounded queue. A single writer thread drains the queue and writes all the pending
+ * records with one gathering write, so that the cost of the write - and of the fsync,
+ * if requested - is shared by all the operations of the batch. A logged change is only
+ * reported as written once its batch has been written, the acks and nacks are just queued.
+ * When the queue is full, the logging threads wait for the writer to catch up.
+ * <p>
+ * The journal is split in files named &lt;fileName&gt;-&lt;sequence&gt;.jnl, which are
+ * rotated when they reach a maximum size, a maximum number of logged changes, or a
+ * maximum age. The {@link JournalReader} can be used to read them back.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class BinaryJournalStore implements JournalStore
+{
+    /** The class logger */
+    private static final Logger LOG = LoggerFactory.getLogger( BinaryJournalStore.class );
+
+    /** The default journal file name prefix */
+    public static final String DEFAULT_FILE_NAME = "journal";
+
+    /** The journal files extension */
+    public static final String EXTENSION = ".jnl";
+
+    /** The default queue capacity */
+    public static final int DEFAULT_QUEUE_SIZE = 4096;
+
+    /** The default maximum size of a journal file, 64Mb */
+    public static final long DEFAULT_MAX_FILE_SIZE = 64L * 1024L * 1024L;
+
+    /** The maximum number of records written at once */
+    private static final int MAX_BATCH_SIZE = 512;
+
+    /** The delay after which an idle writer checks the file age, in ms */
+    private static final long POLL_DELAY = 100L;
+
+    /** The directory where the journal is stored */
+    private File workingDirectory;
+
+    /** The journal files name prefix */
+    private String fileName;
+
+    /** The queue capacity */
+    private int queueSize = DEFAULT_QUEUE_SIZE;
+
+    /** The size above which a journal file is rotated */
+    private long maxFileSize = DEFAULT_MAX_FILE_SIZE;
+
+    /** The number of logged changes after which a journal file is rotated. 0 means no limit */
+    private int maxRecords;
+
+    /** The age after which a journal file is rotated, in ms. 0 means no limit */
+    private long rotationInterval;
+
+    /** Tells if the files are forced on disk after each batch */
+    private boolean syncOnWrite;
+
+    /** The queue containing the encoded records waiting to be written */
+    private BlockingQueue<PendingRecord> queue;
+
+    /** The writer thread */
+    private Thread writer;
+
+    /** Set to false when the store is destroyed */
+    private volatile boolean running;
+
+    /** The last logged revision */
+    private final AtomicLong currentRevision = new AtomicLong();
+
+    /** The number of records pushed into the queue */
+    private final AtomicLong submitted = new AtomicLong();
+
+    /** The number of records processed by the writer, protected by writtenLock */
+    private long written;
+
+    /** A lock used to wait for the writer */
+    private final Object writtenLock = new Object();
+
+    /** A lock protecting the current file against a concurrent sync */
+    private final Lock fileLock = new ReentrantLock();
+
+    /** The last error met by the writer */
+    private volatile IOException failure;
+
+    /** The current journal file, only modified by the writer */
+    private FileChannel channel;
+
+    /** The sequence number of the current file */
+    private long sequence;
+
+    /** The size of the current file */
+    private long fileSize;
+
+    /** The number of changes logged in the current file */
+    private long fileRecords;
+
+    /** The time the current file has been created */
+    private long fileCreated;
+
+
+    /**
+     * An encoded record waiting for the writer. Its state is protected by the writtenLock.
+     */
+    private static final class PendingRecord
+    {
+        /** The encoded record */
+        private final byte[] data;
+
+        /** Set when the batch containing the record has been processed */
+        private boolean processed;
+
+        /** Tells if the record has been successfully written */
+        private boolean written;
+
+
+        private PendingRecord( byte[] data )
+        {
+            this.data = data;
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void init( DirectoryService service ) throws IOException
+    {
+        if ( workingDirectory == null )
+        {
+            workingDirectory = service.getInstanceLayout().getLogDirectory();
+        }
+
+        if ( fileName == null )
+        {
+            fileName = DEFAULT_FILE_NAME;
+        }
+
+        if ( !workingDirectory.exists() && !workingDirectory.mkdirs() )
+        {
+            throw new IOException( I18n.err( I18n.ERR_00004_COULD_NOT_CREATE_DIRECTORY, workingDirectory ) );
+        }
+
+        // Never append to an existing file : its tail may be torn
+        List<File> files = getJournalFiles( workingDirectory, fileName );
+
+        if ( !files.isEmpty() )
+        {
+            sequence = getSequence( fileName, files.get( files.size() - 1 ).getName() );
+        }
+
+        queue = new ArrayBlockingQueue<>( queueSize );
+        running = true;
+
+        writer = new Thread( this::write, "JournalWriter-" + fileName );
+        writer.setDaemon( true );
+        writer.start();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void destroy() throws IOException
+    {
+        if ( writer == null )
+        {
+            return;
+        }
+
+        // The writer flushes the queue before exiting
+        running = false;
+
+        try
+        {
+            writer.join();
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        writer = null;
+
+        if ( failure != null )
+        {
+            throw failure;
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * The change is queued, and this method waits until the writer thread has written it.
+     */
+    @Override
+    public boolean log( LdapPrincipal principal, long revision, LdifEntry forward )
+    {
+        PendingRecord record;
+
+        try
+        {
+            record = submit( JournalRecord.encode( JournalRecord.LOG, revision, System.currentTimeMillis(),
+                principal.getName(), forward ) );
+        }
+        catch ( IOException ioe )
+        {
+            LOG.error( "Cannot serialize the change {} : {}", revision, ioe.getMessage() );
+
+            return false;
+        }
+
+        if ( ( record == null ) || !waitFor( record ) )
+        {
+            return false;
+        }
+
+        currentRevision.accumulateAndGet( revision, Math::max );
+
+        return true;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean ack( long revision )
+    {
+        return submitStatus( JournalRecord.ACK, revision );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean nack( long revision )
+    {
+        return submitStatus( JournalRecord.NACK, revision );
+    }
+
+
+    /**
+     * Waits until all the records logged so far have been written, and forces
+     * the current journal file on disk.
+     */
+    @Override
+    public void sync() throws IOException
+    {
+        if ( writer == null )
+        {
+            return;
+        }
+
+        long target = submitted.get();
+
+        synchronized ( writtenLock )
+        {
+            while ( ( written < target ) && writer.isAlive() )
+            {
+                try
+                {
+                    writtenLock.wait( POLL_DELAY );
+                }
+                catch ( InterruptedException ie )
+                {
+                    Thread.currentThread().interrupt();
+
+                    return;
+                }
+            }
+        }
+
+        fileLock.lock();
+
+        try
+        {
+            if ( channel != null )
+            {
+                channel.force( false );
+            }
+        }
+        finally
+        {
+            fileLock.unlock();
+        }
+
+        if ( failure != null )
+        {
+            throw failure;
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCurrentRevision()
+    {
+        return currentRevision.get();
+    }
+
+
+    private boolean submitStatus( byte type, long revision )
+    {
+        try
+        {
+            return submit( JournalRecord.encode( type, revision, System.currentTimeMillis(), null, null ) ) != null;
+        }
+        catch ( IOException ioe )
+        {
+            // Can't happen, there is no payload
+            return false;
+        }
+    }
+
+
+    /**
+     * Pushes a record into the queue, waiting for some room if it's full
+     *
+     * @return The queued record, or null if it can't be queued
+     */
+    private PendingRecord submit( byte[] data )
+    {
+        if ( !running )
+        {
+            return null;
+        }
+
+        PendingRecord record = new PendingRecord( data );
+
+        try
+        {
+            queue.put( record );
+            submitted.incrementAndGet();
+
+            return record;
+        }
+        catch ( InterruptedException ie )
+        {
+            Thread.currentThread().interrupt();
+
+            return null;
+        }
+    }
+
+
+    /**
+     * Waits until the writer has processed the batch containing a record
+     *
+     * @return <code>true</code> if the record has been written
+     */
+    private boolean waitFor( PendingRecord record )
+    {
+        Thread writerThread = writer;
+
+        synchronized ( writtenLock )
+        {
+            while ( !record.processed )
+            {
+                if ( ( writerThread == null ) || !writerThread.isAlive() )
+                {
+                    return false;
+                }
+
+                try
+                {
+                    writtenLock.wait( POLL_DELAY );
+                }
+                catch ( InterruptedException ie )
+                {
+                    Thread.currentThread().interrupt();
+
+                    return false;
+                }
+            }
+
+            return record.written;
+        }
+    }
+
+
+    /**
+     * The writer thread loop : drains the queue by batches until the store is destroyed
+     */
+    private void write()
+    {
+        List<PendingRecord> batch = new ArrayList<>( MAX_BATCH_SIZE );
+
+        while ( running || !queue.isEmpty() )
+        {
+            boolean batchWritten = false;
+
+            try
+            {
+                PendingRecord first = queue.poll( POLL_DELAY, TimeUnit.MILLISECONDS );
+
+                if ( first == null )
+                {
+                    closeIfExpired();
+                    continue;
+                }
+
+                batch.add( first );
+                queue.drainTo( batch, MAX_BATCH_SIZE - 1 );
+                writeBatch( batch );
+                batchWritten = true;
+            }
+            catch ( InterruptedException ie )
+            {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            catch ( IOException ioe )
+            {
+                LOG.error( "Failed to write {} records in the journal : {}", batch.size(), ioe.getMessage() );
+                failure = ioe;
+            }
+            finally
+            {
+                synchronized ( writtenLock )
+                {
+                    for ( PendingRecord record : batch )
+                    {
+                        record.processed = true;
+                        record.written = batchWritten;
+                    }
+
+                    written += batch.size();
+                    writtenLock.notifyAll();
+                }
+
+                batch.clear();
+            }
+        }
+
+        fileLock.lock();
+
+        try
+        {
+            closeFile();
+        }
+        catch ( IOException ioe )
+        {
+            LOG.error( "Failed to close the journal : {}", ioe.getMessage() );
+            failure = ioe;
+        }
+        finally
+        {
+            fileLock.unlock();
+        }
+    }
+
+
+    /**
+     * Writes a batch of records, rotating the file when needed
+     */
+    private void writeBatch( List<PendingRecord> batch ) throws IOException
+    {
+        List<ByteBuffer> pending = new ArrayList<>( batch.size() );
+
+        fileLock.lock();
+
+        try
+        {
+            for ( PendingRecord pendingRecord : batch )
+            {
+                byte[] record = pendingRecord.data;
+
+                if ( ( channel != null ) && mustRotate( record ) )
+                {
+                    flush( pending );
+                    closeFile();
+                }
+
+                if ( channel == null )
+                {
+                    openFile();
+                }
+
+                pending.add( ByteBuffer.wrap( record ) );
+                fileSize += record.length;
+
+                if ( record[4] == JournalRecord.LOG )
+                {
+                    fileRecords++;
+                }
+            }
+
+            flush( pending );
+
+            if ( syncOnWrite )
+            {
+                channel.force( false );
+            }
+        }
+        finally
+        {
+            fileLock.unlock();
+        }
+    }
+
+
+    /**
+     * Tells if the current file must be rotated before a record is added. The
+     * number of changes is only checked before a LOG record, so that the ack
+     * of the last change is kept in the same file.
+     */
+    private boolean mustRotate( byte[] record )
+    {
+        if ( fileSize == 0L )
+        {
+            return false;
+        }
+
+        if ( ( record[4] == JournalRecord.LOG ) && ( maxRecords > 0 ) && ( fileRecords >= maxRecords ) )
+        {
+            return true;
+        }
+
+        return ( fileSize + record.length > maxFileSize ) || isExpired();
+    }
+
+
+    private boolean isExpired()
+    {
+        return ( rotationInterval > 0L ) && ( System.currentTimeMillis() - fileCreated >= rotationInterval );
+    }
+
+
+    /**
+     * Closes the current file when it's too old, so that an idle journal is rotated too
+     */
+    private void closeIfExpired() throws IOException
+    {
+        if ( ( channel != null ) && ( fileSize > 0L ) && isExpired() )
+        {
+            fileLock.lock();
+
+            try
+            {
+                closeFile();
+            }
+            finally
+            {
+                fileLock.unlock();
+            }
+        }
+    }
+
+
+    private void flush( List<ByteBuffer> buffers ) throws IOException
+    {
+        if ( buffers.isEmpty() )
+        {
+            return;
+        }
+
+        ByteBuffer[] array = buffers.toArray( new ByteBuffer[buffers.size()] );
+        ByteBuffer last = array[array.length - 1];
+
+        while ( last.hasRemaining() )
+        {
+            channel.write( array );
+        }
+
+        buffers.clear();
+    }
+
+
+    private void openFile() throws IOException
+    {
+        sequence++;
+        File file = new File( workingDirectory, getName( fileName, sequence ) );
+        channel = FileChannel.open( file.toPath(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE );
+        fileSize = 0L;
+        fileRecords = 0L;
+        fileCreated = System.currentTimeMillis();
+
+        LOG.debug( "Opened the journal file {}", file );
+    }
+
+
+    private void closeFile() throws IOException
+    {
+        if ( channel != null )
+        {
+            try
+            {
+                channel.force( false );
+            }
+            finally
+            {
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+
+
+    /**
+     * @return The name of a journal file
+     */
+    static String getName( String fileName, long sequence )
+    {
+        return String.format( Locale.ROOT, "%s-%010d%s", fileName, sequence, EXTENSION );
+    }
+
+
+    /**
+     * @return The sequence number of a journal file, or -1 if it's not a journal file
+     */
+    static long getSequence( String fileName, String name )
+    {
+        if ( !name.startsWith( fileName + "-" ) || !name.endsWith( EXTENSION ) )
+        {
+            return -1L;
+        }
+
+        try
+        {
+            return Long.parseLong( name.substring( fileName.length() + 1, name.length() - EXTENSION.length() ) );
+        }
+        catch ( NumberFormatException nfe )
+        {
+            return -1L;
+        }
+    }
+
+
+    /**
+     * Lists the files of a journal, oldest first
+     *
+     * @param directory The directory containing the journal
+     * @param fileName The journal files name prefix
+     * @return The journal files
+     */
+    public static List<File> getJournalFiles( File directory, String fileName )
+    {
+        List<File> files = new ArrayList<>();
+        File[] candidates = directory.listFiles( ( dir, name ) -> getSequence( fileName, name ) >= 0 );
+
+        if ( candidates != null )
+        {
+            for ( File candidate : candidates )
+            {
+                files.add( candidate );
+            }
+        }
+
+        files.sort( ( f1, f2 ) -> Long.compare( getSequence( fileName, f1.getName() ),
+            getSequence( fileName, f2.getName() ) ) );
+
+        return files;
+    }
+
+
+    /**
+     * @return the fileName
+     */
+    public String getFileName()
+    {
+        return fileName;
+    }
+
+
+    /**
+     * @param fileName The journal files name prefix
+     */
+    @Override
+    public void setFileName( String fileName )
+    {
+        this.fileName = fileName;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setWorkingDirectory( String workingDirectoryName )
+    {
+        this.workingDirectory = new File( workingDirectoryName );
+    }
+
+
+    /**
+     * @param queueSize The number of records which can wait for the writer
+     */
+    public void setQueueSize( int queueSize )
+    {
+        this.queueSize = queueSize;
+    }
+
+
+    /**
+     * @param maxFileSize The size above which a journal file is rotated
+     */
+    public void setMaxFileSize( long maxFileSize )
+    {
+        this.maxFileSize = maxFileSize;
+    }
+
+
+    /**
+     * @return The number of logged changes after which a journal file is rotated
+     */
+    public int getMaxRecords()
+    {
+        return maxRecords;
+    }
+
+
+    /**
+     * @param maxRecords The number of logged changes after which a journal file is rotated, 0 for no limit
+     */
+    public void setMaxRecords( int maxRecords )
+    {
+        this.maxRecords = maxRecords;
+    }
+
+
+    /**
+     * @param rotationInterval The age after which a journal file is rotated, in ms, 0 for no limit
+     */
+    public void setRotationInterval( long rotationInterval )
+    {
+        this.rotationInterval = rotationInterval;
+    }
+
+
+    /**
+     * @param syncOnWrite If true, the journal is forced on disk after each batch of records
+     */
+    public void setSyncOnWrite( boolean syncOnWrite )
+    {
+        this.syncOnWrite = syncOnWrite;
+    }
+}
@@ -103,6 +103,12 @@ public class DefaultJournal implements Journal
             store = new DefaultJournalStore();
         }
 
+        if ( ( rotation > 0 ) && ( store instanceof BinaryJournalStore )
+            && ( ( ( BinaryJournalStore ) store ).getMaxRecords() == 0 ) )
+        {
+            ( ( BinaryJournalStore ) store ).setMaxRecords( rotation );
+        }
+
         try
         {
             store.init( directoryService );
@@ -132,7 +138,10 @@ public class DefaultJournal implements Journal
     @Override
     public void log( LdapPrincipal principal, long revision, LdifEntry entry ) throws LdapException
     {
-        store.log( principal, revision, entry );
+        if ( !store.log( principal, revision, entry ) )
+        {
+            LOG.error( "The change {} has not been written in the journal", revision );
+        }
     }
 
 
@@ -56,6 +56,9 @@ public class DefaultJournalStore implements JournalStore
     /** The stream used to write data into the journal */
     private Writer writer;
 
+    /** The last logged revision */
+    private volatile long currentRevision;
+
 
     /**
      * {@inheritDoc}
@@ -127,6 +130,8 @@ public class DefaultJournalStore implements JournalStore
                 // Write the entry
                 writer.write( LdifUtils.convertToLdif( forward, 80 ) );
                 writer.flush();
+
+                currentRevision = Math.max( currentRevision, revision );
             }
             catch ( LdapException | IOException e )
             {
@@ -198,19 +203,29 @@ public class DefaultJournalStore implements JournalStore
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
     @Override
     public void sync() throws IOException
     {
-        // TODO Auto-generated method stub
-
+        if ( writer != null )
+        {
+            synchronized ( writer )
+            {
+                writer.flush();
+            }
+        }
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
     @Override
     public long getCurrentRevision()
     {
-        // TODO Auto-generated method stub
-        return 0;
+        return currentRevision;
     }
 
 
@@ -312,7 +312,7 @@ public class JournalInterceptor extends BaseInterceptor
             ldif.setDn( moveAndRenameContext.getDn() );
             ldif.setNewRdn( moveAndRenameContext.getNewRdn().getName() );
             ldif.setDeleteOldRdn( moveAndRenameContext.getDeleteOldRdn() );
-            ldif.setNewSuperior( moveAndRenameContext.getNewDn().getName() );
+            ldif.setNewSuperior( moveAndRenameContext.getNewSuperiorDn().getName() );
 
             journal.log( getPrincipal( moveAndRenameContext ), opRevision, ldif );
         }
@@ -0,0 +1,333 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.journal;
+
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.ldif.ChangeType;
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+import org.apache.directory.api.ldap.model.ldif.LdifUtils;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.name.Rdn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.i18n.I18n;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Reads the files written by a {@link BinaryJournalStore}. The records are checked
+ * against their CRC, and an incomplete record at the end of a file - which is what
+ * a crash while writing leaves - is silently ignored.
+ * <p>
+ * This class can also be used as a command line tool, to dump some journal files
+ * as LDIF :
+ * <pre>
+ * java org.apache.directory.server.core.journal.JournalReader &lt;journal file or directory&gt;...
+ * </pre>
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class JournalReader implements Closeable
+{
+    /** The class logger */
+    private static final Logger LOG = LoggerFactory.getLogger( JournalReader.class );
+
+    /** The file being read */
+    private final File file;
+
+    /** The stream used to read the file */
+    private final DataInputStream in;
+
+    /** The position of the next record */
+    private long position;
+
+
+    /**
+     * Opens a journal file
+     *
+     * @param file The journal file
+     * @throws IOException If the file can't be opened
+     */
+    public JournalReader( File file ) throws IOException
+    {
+        this.file = file;
+        in = new DataInputStream( new BufferedInputStream( Files.newInputStream( file.toPath() ) ) );
+    }
+
+
+    /**
+     * Reads the next record
+     *
+     * @return The next record, or null if the end of the file has been reached
+     * @throws IOException If the file can't be read, or if a record is corrupted
+     */
+    public JournalRecord next() throws IOException
+    {
+        byte[] body;
+
+        try
+        {
+            int length = in.readInt();
+
+            if ( length < JournalRecord.HEADER_SIZE )
+            {
+                throw new IOException( I18n.err( I18n.ERR_21000_CORRUPTED_JOURNAL, file, position ) );
+            }
+
+            if ( length > file.length() - position - JournalRecord.FRAME_SIZE )
+            {
+                // The record has not been completely written
+                throw new EOFException();
+            }
+
+            body = new byte[length];
+            in.readFully( body );
+
+            if ( in.readInt() != JournalRecord.crc( body, 0, length ) )
+            {
+                throw new IOException( I18n.err( I18n.ERR_21000_CORRUPTED_JOURNAL, file, position ) );
+            }
+        }
+        catch ( EOFException eofe )
+        {
+            if ( position < file.length() )
+            {
+                LOG.warn( "Ignoring the incomplete record at position {} in the journal {}", position, file );
+            }
+
+            return null;
+        }
+
+        position += body.length + JournalRecord.FRAME_SIZE;
+
+        return JournalRecord.decode( body );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        in.close();
+    }
+
+
+    /**
+     * Writes the content of some journal files as LDIF, using the same format as
+     * the {@link DefaultJournalStore}.
+     *
+     * @param files The journal files, oldest first
+     * @param writer The writer the LDIF is written into
+     * @throws IOException If the journal can't be read, or the LDIF written
+     * @throws LdapException If a change can't be converted to LDIF
+     */
+    public static void exportLdif( List<File> files, Writer writer ) throws IOException, LdapException
+    {
+        for ( File file : files )
+        {
+            try ( JournalReader reader = new JournalReader( file ) )
+            {
+                JournalRecord record = reader.next();
+
+                while ( record != null )
+                {
+                    switch ( record.getType() )
+                    {
+                        case JournalRecord.LOG:
+                            writer.write( "# principal: " );
+                            writer.write( record.getPrincipalName() );
+                            writer.write( '\n' );
+                            writer.write( "# timestamp: " );
+                            writer.write( Long.toString( record.getTimestamp() ) );
+                            writer.write( '\n' );
+                            writer.write( "# revision: " );
+                            writer.write( Long.toString( record.getRevision() ) );
+                            writer.write( '\n' );
+                            writer.write( LdifUtils.convertToLdif( record.getForward(), 80 ) );
+                            break;
+
+                        case JournalRecord.ACK:
+                            writer.write( "# ack-revision: " );
+                            writer.write( Long.toString( record.getRevision() ) );
+                            writer.write( "\n\n" );
+                            break;
+
+                        default:
+                            writer.write( "# nack-revision: " );
+                            writer.write( Long.toString( record.getRevision() ) );
+                            writer.write( "\n\n" );
+                            break;
+                    }
+
+                    record = reader.next();
+                }
+            }
+        }
+
+        writer.flush();
+    }
+
+
+    /**
+     * Applies the acknowledged changes stored in some journal files. The changes
+     * which have been nacked, or which have no ack (the server crashed before the
+     * operation completed), are skipped.
+     *
+     * @param files The journal files, oldest first
+     * @param session The session used to apply the changes
+     * @return The number of applied changes
+     * @throws IOException If the journal can't be read
+     * @throws LdapException If a change can't be applied
+     */
+    public static int replay( List<File> files, CoreSession session ) throws IOException, LdapException
+    {
+        // First pass : gather the acked revisions
+        Set<Long> acked = new HashSet<>();
+
+        for ( File file : files )
+        {
+            try ( JournalReader reader = new JournalReader( file ) )
+            {
+                for ( JournalRecord record = reader.next(); record != null; record = reader.next() )
+                {
+                    if ( record.getType() == JournalRecord.ACK )
+                    {
+                        acked.add( record.getRevision() );
+                    }
+                }
+            }
+        }
+
+        // Second pass : apply the changes in the journal order
+        SchemaManager schemaManager = session.getDirectoryService().getSchemaManager();
+        int applied = 0;
+
+        for ( File file : files )
+        {
+            try ( JournalReader reader = new JournalReader( file ) )
+            {
+                for ( JournalRecord record = reader.next(); record != null; record = reader.next() )
+                {
+                    if ( ( record.getType() == JournalRecord.LOG ) && acked.contains( record.getRevision() ) )
+                    {
+                        apply( schemaManager, session, record.getForward() );
+                        applied++;
+                    }
+                }
+            }
+        }
+
+        return applied;
+    }
+
+
+    private static void apply( SchemaManager schemaManager, CoreSession session, LdifEntry forward )
+        throws LdapException
+    {
+        Dn dn = forward.getDn();
+
+        switch ( forward.getChangeType().getChangeType() )
+        {
+            case ChangeType.ADD_ORDINAL:
+                session.add( new DefaultEntry( schemaManager, forward.getEntry() ) );
+                break;
+
+            case ChangeType.DELETE_ORDINAL:
+                session.delete( dn );
+                break;
+
+            case ChangeType.MODIFY_ORDINAL:
+                session.modify( dn, forward.getModifications() );
+                break;
+
+            case ChangeType.MODDN_ORDINAL:
+                // NO BREAK - both ModDN and ModRDN handling is the same
+
+            case ChangeType.MODRDN_ORDINAL:
+                if ( forward.getNewRdn() == null )
+                {
+                    session.move( dn, new Dn( schemaManager, forward.getNewSuperior() ) );
+                }
+                else if ( forward.getNewSuperior() == null )
+                {
+                    session.rename( dn, new Rdn( schemaManager, forward.getNewRdn() ), forward.isDeleteOldRdn() );
+                }
+                else
+                {
+                    session.moveAndRename( dn, new Dn( schemaManager, forward.getNewSuperior() ),
+                        new Rdn( schemaManager, forward.getNewRdn() ), forward.isDeleteOldRdn() );
+                }
+
+                break;
+
+            default:
+                LOG.warn( "Skipping the change {} of unexpected type {}", forward.getDn(), forward.getChangeType() );
+                break;
+        }
+    }
+
+
+    /**
+     * Dumps some journal files as LDIF on the standard output.
+     *
+     * @param args The journal files, or the directories containing them
+     * @throws Exception If the files can't be read
+     */
+    public static void main( String[] args ) throws Exception
+    {
+        List<File> files = new ArrayList<>();
+
+        for ( String arg : args )
+        {
+            File file = new File( arg );
+
+            if ( file.isDirectory() )
+            {
+                files.addAll( BinaryJournalStore.getJournalFiles( file, BinaryJournalStore.DEFAULT_FILE_NAME ) );
+            }
+            else
+            {
+                files.add( file );
+            }
+        }
+
+        exportLdif( files, new OutputStreamWriter( System.out, StandardCharsets.UTF_8 ) );
+    }
+}
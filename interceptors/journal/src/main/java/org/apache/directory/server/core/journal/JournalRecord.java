@@ -0,0 +1,262 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.journal;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+import org.apache.directory.api.ldap.model.ldif.LdifEntry;
+
+
+/**
+ * A record stored in a binary journal. The record is stored as :
+ * <pre>
+ * [length : int][type : byte][revision : long][timestamp : long][payload][crc : int]
+ * </pre>
+ * where the length covers the type, revision, timestamp and payload, and the CRC32
+ * is computed on the same bytes. Only the LOG records have a payload, which contains
+ * the principal name and the externalized forward LDIF.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public final class JournalRecord
+{
+    /** A logged change */
+    public static final byte LOG = 1;
+
+    /** A change which has been applied */
+    public static final byte ACK = 2;
+
+    /** A change which has been rejected */
+    public static final byte NACK = 3;
+
+    /** The size of the type, revision and timestamp */
+    static final int HEADER_SIZE = 17;
+
+    /** The size of the length and of the CRC surrounding the record */
+    static final int FRAME_SIZE = 8;
+
+    /** The record type */
+    private final byte type;
+
+    /** The change revision */
+    private final long revision;
+
+    /** The time the record has been created */
+    private final long timestamp;
+
+    /** The principal who made the change, for LOG records */
+    private final String principalName;
+
+    /** The change, for LOG records */
+    private final LdifEntry forward;
+
+
+    /**
+     * Creates a new JournalRecord
+     *
+     * @param type The record type
+     * @param revision The change revision
+     * @param timestamp The time the record has been created
+     * @param principalName The principal who made the change, or null for ACK and NACK records
+     * @param forward The change, or null for ACK and NACK records
+     */
+    public JournalRecord( byte type, long revision, long timestamp, String principalName, LdifEntry forward )
+    {
+        this.type = type;
+        this.revision = revision;
+        this.timestamp = timestamp;
+        this.principalName = principalName;
+        this.forward = forward;
+    }
+
+
+    /**
+     * Encodes a record, including its length and CRC.
+     *
+     * @param type The record type
+     * @param revision The change revision
+     * @param timestamp The time the record has been created
+     * @param principalName The principal who made the change, for LOG records
+     * @param forward The change, for LOG records
+     * @return The encoded record
+     * @throws IOException If the change can't be serialized
+     */
+    static byte[] encode( byte type, long revision, long timestamp, String principalName, LdifEntry forward )
+        throws IOException
+    {
+        if ( type != LOG )
+        {
+            ByteBuffer buffer = ByteBuffer.allocate( FRAME_SIZE + HEADER_SIZE );
+            buffer.putInt( HEADER_SIZE );
+            buffer.put( type );
+            buffer.putLong( revision );
+            buffer.putLong( timestamp );
+            buffer.putInt( crc( buffer.array(), 4, HEADER_SIZE ) );
+
+            return buffer.array();
+        }
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ByteBuffer header = ByteBuffer.allocate( 4 + HEADER_SIZE );
+
+        // The length is not yet known, it will be set at the end
+        header.putInt( 0 );
+        header.put( type );
+        header.putLong( revision );
+        header.putLong( timestamp );
+        baos.write( header.array() );
+
+        try ( ObjectOutputStream out = new ObjectOutputStream( baos ) )
+        {
+            out.writeUTF( principalName == null ? "" : principalName );
+            forward.writeExternal( out );
+        }
+
+        // Room for the CRC
+        baos.write( new byte[4] );
+
+        byte[] record = baos.toByteArray();
+        int length = record.length - FRAME_SIZE;
+        ByteBuffer buffer = ByteBuffer.wrap( record );
+        buffer.putInt( 0, length );
+        buffer.putInt( record.length - 4, crc( record, 4, length ) );
+
+        return record;
+    }
+
+
+    /**
+     * Decodes a record from its body, ie the bytes covered by the length.
+     *
+     * @param body The record body
+     * @return The decoded record
+     * @throws IOException If the body is not a valid record
+     */
+    static JournalRecord decode( byte[] body ) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.wrap( body );
+        byte type = buffer.get();
+        long revision = buffer.getLong();
+        long timestamp = buffer.getLong();
+
+        if ( type != LOG )
+        {
+            return new JournalRecord( type, revision, timestamp, null, null );
+        }
+
+        try ( ObjectInputStream in = new ObjectInputStream(
+            new ByteArrayInputStream( body, HEADER_SIZE, body.length - HEADER_SIZE ) ) )
+        {
+            String principalName = in.readUTF();
+            LdifEntry forward = new LdifEntry();
+            forward.readExternal( in );
+
+            return new JournalRecord( type, revision, timestamp, principalName, forward );
+        }
+        catch ( ClassNotFoundException cnfe )
+        {
+            throw new IOException( cnfe.getMessage(), cnfe );
+        }
+    }
+
+
+    /**
+     * Computes the CRC32 of a part of a byte array
+     */
+    static int crc( byte[] bytes, int offset, int length )
+    {
+        CRC32 crc = new CRC32();
+        crc.update( bytes, offset, length );
+
+        return ( int ) crc.getValue();
+    }
+
+
+    /**
+     * @return The record type, one of LOG, ACK or NACK
+     */
+    public byte getType()
+    {
+        return type;
+    }
+
+
+    /**
+     * @return The change revision
+     */
+    public long getRevision()
+    {
+        return revision;
+    }
+
+
+    /**
+     * @return The time the record has been created
+     */
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+
+    /**
+     * @return The principal who made the change, or null for ACK and NACK records
+     */
+    public String getPrincipalName()
+    {
+        return principalName;
+    }
+
+
+    /**
+     * @return The change, or null for ACK and NACK records
+     */
+    public LdifEntry getForward()
+    {
+        return forward;
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        switch ( type )
+        {
+            case LOG:
+                return "LOG[" + revision + ", " + principalName + ", " + forward.getDn() + "]";
+
+            case ACK:
+                return "ACK[" + revision + "]";
+
+            default:
+                return "NACK[" + revision + "]";
+        }
+    }
+}
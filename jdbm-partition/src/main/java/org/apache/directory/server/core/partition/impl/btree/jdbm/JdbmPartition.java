@@ -949,8 +949,11 @@ public class JdbmPartition extends AbstractBTreePartition
                 || ( opCtx instanceof MoveAndRenameOperationContext )
                 || ( opCtx instanceof RenameOperationContext ) )
             {
-                // clear the cache it is not worth updating all the children
-                entryCache.invalidateAll();
+                // Only the moved entry and its descendants have a stale Dn
+                Dn oldDn = opCtx.getDn();
+
+                entryCache.asMap().values().removeIf( cachedEntry -> ( cachedEntry.getDn() == null )
+                    || cachedEntry.getDn().isDescendantOf( oldDn ) );
             }
             else if ( opCtx instanceof DeleteOperationContext )
             {
@@ -78,6 +78,8 @@ public class JdbmPartitionWriteTxn extends PartitionWriteTxn
         {
             baseRecordManager.getTransactionManager().synchronizeLog();
         }
+
+        runCommitActions();
     }
 
 
@@ -87,7 +89,14 @@ public class JdbmPartitionWriteTxn extends PartitionWriteTxn
     @Override
     public void abort() throws IOException
     {
-        recordManager.rollback();
+        try
+        {
+            recordManager.rollback();
+        }
+        finally
+        {
+            runAbortActions();
+        }
     }
 
 
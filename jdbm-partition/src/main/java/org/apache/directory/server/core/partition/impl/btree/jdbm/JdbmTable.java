@@ -117,7 +117,12 @@ public class JdbmTable<K, V> extends AbstractTable<K, V>
         // TODO make the size of the duplicate btree cache configurable via constructor
         duplicateBtrees = new SynchronizedLRUMap( 100 );
 
-        if ( valueSerializer != null )
+        if ( valueSerializer == UuidSerializer.INSTANCE )
+        {
+            // Entry IDs are stored in a packed form
+            marshaller = ( Marshaller ) new UuidArrayMarshaller( ( Comparator<String> ) valueComparator );
+        }
+        else if ( valueSerializer != null )
         {
             marshaller = new ArrayMarshaller<>( valueComparator,
                 new MarshallerSerializerBridge<V>( valueSerializer ) );
@@ -0,0 +1,237 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.jdbm;
+
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.UUID;
+
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.server.core.avltree.ArrayMarshaller;
+import org.apache.directory.server.core.avltree.ArrayTree;
+import org.apache.directory.server.core.avltree.Marshaller;
+import org.apache.directory.server.i18n.I18n;
+
+
+/**
+ * A Marshaller for the sorted arrays of entry UUIDs stored as duplicate values
+ * in the index tables. When every value is a canonical UUID string, the array
+ * is written in a packed form: a magic byte of value 2, the number of elements
+ * as a variable length integer, then 16 bytes per UUID. This is about 5 times
+ * smaller than the generic {@link ArrayMarshaller} form, which stores each UUID
+ * as a length prefixed 72 bytes string.
+ * <br>
+ * Arrays containing a value which is not a canonical UUID are written using the
+ * generic form. Both forms are accepted when deserializing, so tables written
+ * by older versions can still be read.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class UuidArrayMarshaller implements Marshaller<ArrayTree<String>>
+{
+    /** The magic number used for the packed form */
+    static final byte PACKED = 2;
+
+    /** The number of bytes used to store a UUID */
+    private static final int UUID_SIZE = 16;
+
+    /** The marshaller used for arrays which can't be packed */
+    private final ArrayMarshaller<String> fallback;
+
+    /** The values comparator */
+    private final Comparator<String> comparator;
+
+
+    /**
+     * Creates a new instance of UuidArrayMarshaller.
+     *
+     * @param comparator The comparator used to order the UUIDs
+     */
+    public UuidArrayMarshaller( Comparator<String> comparator )
+    {
+        this.comparator = comparator;
+        fallback = new ArrayMarshaller<>( comparator, new MarshallerSerializerBridge<String>( UuidSerializer.INSTANCE ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public byte[] serialize( ArrayTree<String> tree ) throws IOException
+    {
+        if ( ( tree == null ) || ( tree.size() == 0 ) || !isPackable( tree ) )
+        {
+            return fallback.serialize( tree );
+        }
+
+        int size = tree.size();
+        byte[] bytes = new byte[1 + varIntLength( size ) + size * UUID_SIZE];
+        bytes[0] = PACKED;
+        int pos = writeVarInt( bytes, 1, size );
+
+        for ( int i = 0; i < size; i++ )
+        {
+            UUID uuid = UUID.fromString( tree.get( i ) );
+            pos = writeLong( bytes, pos, uuid.getMostSignificantBits() );
+            pos = writeLong( bytes, pos, uuid.getLeastSignificantBits() );
+        }
+
+        return bytes;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ArrayTree<String> deserialize( byte[] bytes ) throws IOException
+    {
+        if ( ( bytes == null ) || ( bytes.length == 0 ) || ( bytes[0] != PACKED ) )
+        {
+            return fallback.deserialize( bytes );
+        }
+
+        // Read the number of elements
+        int size = 0;
+        int shift = 0;
+        int pos = 1;
+
+        while ( true )
+        {
+            if ( ( pos >= bytes.length ) || ( shift > 28 ) )
+            {
+                throw new IOException( I18n.err( I18n.ERR_03005_WRONG_ARRAY_SERIALIZED_DATA_FORMAT ) );
+            }
+
+            byte b = bytes[pos++];
+            size |= ( b & 0x7F ) << shift;
+
+            if ( ( b & 0x80 ) == 0 )
+            {
+                break;
+            }
+
+            shift += 7;
+        }
+
+        if ( ( size < 0 ) || ( bytes.length - pos != ( long ) size * UUID_SIZE ) )
+        {
+            throw new IOException( I18n.err( I18n.ERR_03006_BAD_TREE, Strings.dumpBytes( bytes ) ) );
+        }
+
+        String[] uuids = new String[size];
+
+        for ( int i = 0; i < size; i++ )
+        {
+            long msb = readLong( bytes, pos );
+            long lsb = readLong( bytes, pos + 8 );
+            pos += UUID_SIZE;
+            uuids[i] = new UUID( msb, lsb ).toString();
+        }
+
+        return new ArrayTree<>( comparator, uuids );
+    }
+
+
+    /**
+     * Checks if all the values of the array are canonical UUID strings, ie
+     * they will be restored unchanged from their binary form.
+     */
+    private static boolean isPackable( ArrayTree<String> tree )
+    {
+        for ( int i = 0; i < tree.size(); i++ )
+        {
+            String value = tree.get( i );
+
+            if ( ( value == null ) || ( value.length() != 36 ) )
+            {
+                return false;
+            }
+
+            try
+            {
+                if ( !UUID.fromString( value ).toString().equals( value ) )
+                {
+                    return false;
+                }
+            }
+            catch ( IllegalArgumentException iae )
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    private static int varIntLength( int value )
+    {
+        int length = 1;
+
+        while ( ( value & ~0x7F ) != 0 )
+        {
+            value >>>= 7;
+            length++;
+        }
+
+        return length;
+    }
+
+
+    private static int writeVarInt( byte[] bytes, int pos, int value )
+    {
+        while ( ( value & ~0x7F ) != 0 )
+        {
+            bytes[pos++] = ( byte ) ( ( value & 0x7F ) | 0x80 );
+            value >>>= 7;
+        }
+
+        bytes[pos++] = ( byte ) value;
+
+        return pos;
+    }
+
+
+    private static int writeLong( byte[] bytes, int pos, long value )
+    {
+        for ( int shift = 56; shift >= 0; shift -= 8 )
+        {
+            bytes[pos++] = ( byte ) ( 0xFF & ( value >> shift ) );
+        }
+
+        return pos;
+    }
+
+
+    private static long readLong( byte[] bytes, int pos )
+    {
+        long value = 0L;
+
+        for ( int i = 0; i < 8; i++ )
+        {
+            value = ( value << 8 ) | ( bytes[pos + i] & 0xFF );
+        }
+
+        return value;
+    }
+}
@@ -706,6 +706,56 @@ public class JdbmStoreTest
     }
 
 
+    @Test
+    public void testAbortedDeleteKeepsTheEntry() throws Exception
+    {
+        Dn dn = new Dn( schemaManager, "cn=JIM BEAN,ou=Sales,o=Good Times Co." );
+
+        // Commit the example data first, so that only the deletion is rolled back
+        PartitionTxn writeTxn = partition.beginWriteTransaction();
+        writeTxn.commit();
+
+        partition.delete( writeTxn, partition.getEntryId( writeTxn, dn ) );
+        writeTxn.abort();
+
+        // The DN is still in the Bloom filter, so the entry can be found
+        assertTrue( partition.getDnFilter().mightContain( dn ) );
+
+        LookupOperationContext lookupContext = new LookupOperationContext( session, dn );
+        lookupContext.setPartition( partition );
+
+        try ( PartitionTxn readTxn = partition.beginReadTransaction() )
+        {
+            lookupContext.setTransaction( readTxn );
+
+            assertNotNull( partition.getEntryId( readTxn, dn ) );
+            assertNotNull( partition.lookup( lookupContext ) );
+        }
+    }
+
+
+    @Test
+    public void testRenameSubtreeDnCache() throws Exception
+    {
+        Dn salesDn = new Dn( schemaManager, "ou=Sales,o=Good Times Co." );
+        Dn jimDn = new Dn( schemaManager, "cn=JIM BEAN,ou=Sales,o=Good Times Co." );
+        Dn jackDn = new Dn( schemaManager, "cn=Jack Daniels,ou=Engineering,o=Good Times Co." );
+        String jimId = partition.getEntryId( partitionTxn, jimDn );
+        String jackId = partition.getEntryId( partitionTxn, jackDn );
+
+        // Load the DN cache
+        assertEquals( jimDn, partition.getEntryDn( partitionTxn, jimId ) );
+        assertEquals( jackDn, partition.getEntryDn( partitionTxn, jackId ) );
+
+        partition.rename( partitionTxn, salesDn, new Rdn( schemaManager, "ou=Marketing" ), false, null );
+
+        // The descendants of the renamed entry get their new DN, the other entries are not impacted
+        assertEquals( new Dn( schemaManager, "cn=JIM BEAN,ou=Marketing,o=Good Times Co." ),
+            partition.getEntryDn( partitionTxn, jimId ) );
+        assertEquals( jackDn, partition.getEntryDn( partitionTxn, jackId ) );
+    }
+
+
     @Test
     public void testRenameEscaped() throws Exception
     {
@@ -0,0 +1,146 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree.jdbm;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.UUID;
+
+import org.apache.directory.api.ldap.model.schema.comparators.UuidComparator;
+import org.apache.directory.server.core.avltree.ArrayMarshaller;
+import org.apache.directory.server.core.avltree.ArrayTree;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+
+
+/**
+ * Test case for the packed UUID array serialization code.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@Execution(ExecutionMode.SAME_THREAD)
+public class UuidArrayMarshallerTest
+{
+    UuidArrayMarshaller marshaller = new UuidArrayMarshaller( UuidComparator.INSTANCE );
+
+
+    private ArrayTree<String> createTree( int size )
+    {
+        ArrayTree<String> tree = new ArrayTree<>( UuidComparator.INSTANCE );
+
+        for ( int i = 0; i < size; i++ )
+        {
+            tree.insert( UUID.randomUUID().toString() );
+        }
+
+        return tree;
+    }
+
+
+    private void assertSameTree( ArrayTree<String> expected, ArrayTree<String> actual )
+    {
+        assertEquals( expected.size(), actual.size() );
+
+        for ( int i = 0; i < expected.size(); i++ )
+        {
+            assertEquals( expected.get( i ), actual.get( i ) );
+        }
+    }
+
+
+    @Test
+    public void testEmptyTree() throws IOException
+    {
+        byte[] bytes = marshaller.serialize( new ArrayTree<String>( UuidComparator.INSTANCE ) );
+
+        assertEquals( 1, bytes.length );
+        assertTrue( marshaller.deserialize( bytes ).isEmpty() );
+    }
+
+
+    @Test
+    public void testRoundTrip() throws IOException
+    {
+        for ( int size : new int[]
+            { 1, 2, 127, 128, 512 } )
+        {
+            ArrayTree<String> tree = createTree( size );
+            byte[] bytes = marshaller.serialize( tree );
+
+            assertEquals( UuidArrayMarshaller.PACKED, bytes[0] );
+            assertFalse( BTreeRedirectMarshaller.isRedirect( bytes ) );
+            assertSameTree( tree, marshaller.deserialize( bytes ) );
+        }
+    }
+
+
+    @Test
+    public void testPackedIsSmaller() throws IOException
+    {
+        ArrayTree<String> tree = createTree( 100 );
+        ArrayMarshaller<String> generic = new ArrayMarshaller<>( UuidComparator.INSTANCE,
+            new MarshallerSerializerBridge<String>( UuidSerializer.INSTANCE ) );
+
+        assertTrue( marshaller.serialize( tree ).length * 4 < generic.serialize( tree ).length );
+    }
+
+
+    @Test
+    public void testReadGenericForm() throws IOException
+    {
+        ArrayTree<String> tree = createTree( 10 );
+        ArrayMarshaller<String> generic = new ArrayMarshaller<>( UuidComparator.INSTANCE,
+            new MarshallerSerializerBridge<String>( UuidSerializer.INSTANCE ) );
+
+        assertSameTree( tree, marshaller.deserialize( generic.serialize( tree ) ) );
+    }
+
+
+    @Test
+    public void testNonCanonicalValues() throws IOException
+    {
+        ArrayTree<String> tree = createTree( 5 );
+        tree.insert( UUID.randomUUID().toString().toUpperCase( Locale.ROOT ) );
+        tree.insert( "not-a-uuid" );
+
+        byte[] bytes = marshaller.serialize( tree );
+
+        assertEquals( 0, bytes[0] );
+        assertSameTree( tree, marshaller.deserialize( bytes ) );
+    }
+
+
+    @Test
+    public void testTruncatedData() throws IOException
+    {
+        byte[] bytes = marshaller.serialize( createTree( 3 ) );
+        byte[] truncated = new byte[bytes.length - 1];
+        System.arraycopy( bytes, 0, truncated, 0, truncated.length );
+
+        assertThrows( IOException.class, () -> marshaller.deserialize( truncated ) );
+    }
+}
@@ -316,6 +316,29 @@ public class SingleFileLdifPartitionTest
     }
 
 
+    private Entry lookup( Dn dn ) throws LdapException
+    {
+        LookupOperationContext lookupContext = new LookupOperationContext( mockSession, dn );
+        lookupContext.setPartition( partition );
+        Entry entry;
+
+        try ( PartitionTxn partitionTxn = partition.beginReadTransaction() )
+        {
+            lookupContext.setTransaction( partitionTxn );
+
+            entry = partition.lookup( lookupContext );
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+
+        assertNotNull( entry );
+
+        return entry;
+    }
+
+
     private void assertExists( SingleFileLdifPartition partition, String dn ) throws LdapException
     {
         LookupOperationContext opCtx = new LookupOperationContext( mockSession );
@@ -601,6 +624,92 @@ public class SingleFileLdifPartitionTest
     }
 
 
+    /**
+     * Test that modifying an entry does not change the copies of this entry
+     * which have been returned before the modification
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testModifyDoesNotChangeReturnedEntries() throws Exception
+    {
+        partition = injectEntries();
+
+        Dn childDn1 = new Dn( schemaManager, "cn=child1,ou=test,ou=system" );
+        Entry returned = lookup( childDn1 );
+        assertNull( returned.get( "description" ) );
+
+        ModifyOperationContext modOpCtx = new ModifyOperationContext( mockSession );
+        modOpCtx.setEntry( new ClonedServerEntry( returned ) );
+        modOpCtx.setDn( childDn1 );
+
+        List<Modification> modItems = new ArrayList<Modification>();
+
+        Attribute attribute = new DefaultAttribute( schemaManager.lookupAttributeTypeRegistry( "description" ) );
+        attribute.add( "desc of child1" );
+
+        Modification mod = new DefaultModification();
+        mod.setOperation( ModificationOperation.ADD_ATTRIBUTE );
+        mod.setAttribute( attribute );
+
+        modItems.add( mod );
+
+        attribute = new DefaultAttribute( schemaManager.lookupAttributeTypeRegistry( "cn" ) );
+        attribute.add( "another child1" );
+
+        mod = new DefaultModification();
+        mod.setOperation( ModificationOperation.ADD_ATTRIBUTE );
+        mod.setAttribute( attribute );
+
+        modItems.add( mod );
+        modOpCtx.setModItems( modItems );
+
+        partition.modify( modOpCtx );
+
+        // The entry returned before the modification is unchanged
+        assertNull( returned.get( "description" ) );
+        assertFalse( returned.get( "cn" ).contains( "another child1" ) );
+
+        Entry modified = lookup( childDn1 );
+        assertTrue( modified.get( "description" ).contains( "desc of child1" ) );
+        assertTrue( modified.get( "cn" ).contains( "another child1" ) );
+    }
+
+
+    /**
+     * Test that renaming an entry does not change the copies of this entry
+     * which have been returned before the rename
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testRenameDoesNotChangeReturnedEntries() throws Exception
+    {
+        partition = injectEntries();
+
+        Dn childDn1 = new Dn( schemaManager, "cn=child1,ou=test,ou=system" );
+        Entry returned = lookup( childDn1 );
+
+        Rdn newRdn = new Rdn( SchemaConstants.CN_AT + "=" + "renamedChild1" );
+        RenameOperationContext renameOpCtx = new RenameOperationContext( mockSession, childDn1, newRdn, true );
+        renameOpCtx.setPartition( partition );
+        renameOpCtx.setTransaction( partition.beginWriteTransaction() );
+
+        partition.rename( renameOpCtx );
+
+        // The entry returned before the rename is unchanged
+        assertEquals( childDn1, returned.getDn() );
+        assertTrue( returned.get( "cn" ).contains( "child1" ) );
+        assertFalse( returned.get( "cn" ).contains( "renamedChild1" ) );
+
+        partition = reloadPartition();
+
+        Entry renamed = lookup( new Dn( schemaManager, "cn=renamedChild1,ou=test,ou=system" ) );
+        assertFalse( renamed.get( "cn" ).contains( "child1" ) );
+        assertTrue( renamed.get( "cn" ).contains( "renamedChild1" ) );
+    }
+
+
     /**
      * Test that we can't add an existing entry
      *
@@ -38,6 +38,7 @@ import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.entry.Value;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.schema.AttributeType;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.util.exception.MultiException;
@@ -492,8 +493,11 @@ public class MavibotPartition extends AbstractBTreePartition
             else if ( ( opCtx instanceof MoveOperationContext ) || ( opCtx instanceof MoveAndRenameOperationContext )
                 || ( opCtx instanceof RenameOperationContext ) )
             {
-                // clear the cache it is not worth updating all the children
-                entryCache.invalidateAll();
+                // Only the moved entry and its descendants have a stale Dn
+                Dn oldDn = opCtx.getDn();
+
+                entryCache.asMap().values().removeIf( cachedEntry -> ( cachedEntry.getDn() == null )
+                    || cachedEntry.getDn().isDescendantOf( oldDn ) );
             }
             else if ( opCtx instanceof DeleteOperationContext )
             {
@@ -153,6 +153,14 @@ class LdapProtocolHandler extends DemuxingIoHandler
     @Override
     public void messageSent( IoSession session, Object message ) throws Exception
     {
+        // Resume the searches waiting for the client to read its data
+        LdapSession ldapSession = ldapServer.getLdapSessionManager().getLdapSession( session );
+
+        if ( ldapSession != null )
+        {
+            ldapSession.messageSent();
+        }
+
         // Do nothing : we have to ignore this message, otherwise we get an exception,
         // thanks to the way MINA 2 works ...
         if ( message instanceof IoBuffer )
@@ -30,6 +30,8 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.TrustManager;
@@ -68,6 +70,7 @@ import org.apache.directory.server.core.security.CertificateUtil;
 import org.apache.directory.server.i18n.I18n;
 import org.apache.directory.server.ldap.handlers.LdapRequestHandler;
 import org.apache.directory.server.ldap.handlers.LdapResponseHandler;
+import org.apache.directory.server.ldap.handlers.controls.PagedSearchCursors;
 import org.apache.directory.server.ldap.handlers.extended.StartTlsHandler;
 import org.apache.directory.server.ldap.handlers.request.AbandonRequestHandler;
 import org.apache.directory.server.ldap.handlers.request.AddRequestHandler;
@@ -92,11 +95,18 @@ import org.apache.directory.server.ldap.handlers.response.SearchResultEntryHandl
 import org.apache.directory.server.ldap.handlers.response.SearchResultReferenceHandler;
 import org.apache.directory.server.ldap.handlers.sasl.MechanismHandler;
 import org.apache.directory.server.ldap.handlers.ssl.LdapsInitializer;
+import org.apache.directory.server.ldap.handlers.ssl.TlsHandshakeFilter;
+import org.apache.directory.server.ldap.handlers.ssl.TlsHandshakeMetrics;
+import org.apache.directory.server.ldap.replication.ReplicaCompressionFactory;
+import org.apache.directory.server.ldap.replication.ReplicaCompressionMetrics;
 import org.apache.directory.server.ldap.replication.consumer.PingerThread;
 import org.apache.directory.server.ldap.replication.consumer.ReplicationConsumer;
 import org.apache.directory.server.ldap.replication.consumer.ReplicationStatusEnum;
+import org.apache.directory.server.ldap.replication.provider.ReplicaCompressionHandler;
 import org.apache.directory.server.ldap.replication.provider.ReplicationRequestHandler;
+import org.apache.directory.server.ldap.scheduler.RequestScheduler;
 import org.apache.directory.server.protocol.shared.DirectoryBackedService;
+import org.apache.directory.server.protocol.shared.VirtualThreadExecutors;
 import org.apache.directory.server.protocol.shared.transport.TcpTransport;
 import org.apache.directory.server.protocol.shared.transport.Transport;
 import org.apache.directory.server.protocol.shared.transport.UdpTransport;
@@ -109,6 +119,7 @@ import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.codec.ProtocolCodecFactory;
 import org.apache.mina.filter.codec.ProtocolCodecFilter;
 import org.apache.mina.filter.executor.ExecutorFilter;
+import org.apache.mina.filter.executor.OrderedThreadPoolExecutor;
 import org.apache.mina.filter.executor.UnorderedThreadPoolExecutor;
 import org.apache.mina.handler.demux.MessageHandler;
 import org.apache.mina.transport.socket.AbstractSocketSessionConfig;
@@ -147,6 +158,30 @@ public class LdapServer extends DirectoryBackedService
     /** The default maximum time limit. */
     private static final int MAX_TIME_LIMIT_DEFAULT = 10000;
 
+    /**
+     * The default number of bytes waiting to be written above which searches are suspended :
+     * disabled, as a suspended search holds a worker thread
+     */
+    public static final long WRITE_QUEUE_HIGH_WATERMARK_DEFAULT = 0L;
+
+    /** The default number of bytes waiting to be written below which suspended searches are resumed, 1Mb */
+    public static final long WRITE_QUEUE_LOW_WATERMARK_DEFAULT = 1024L * 1024L;
+
+    /** The default time a search waits for its client to read its results before closing the session, 10s */
+    public static final long WRITE_QUEUE_MAX_WAIT_DEFAULT = 10L * 1000L;
+
+    /** The default size of the buffers the search results are gathered into before being written : disabled */
+    public static final int SEARCH_RESPONSE_BATCH_SIZE_DEFAULT = 0;
+
+    /** The default maximum number of entries a Virtual List View can sort, for every user */
+    public static final int VIRTUAL_LIST_VIEW_MAX_SIZE_DEFAULT = 100000;
+
+    /** The default number of TLS sessions kept for resumption */
+    public static final int TLS_SESSION_CACHE_SIZE_DEFAULT = 20480;
+
+    /** The default lifetime of the TLS sessions kept for resumption, in seconds */
+    public static final int TLS_SESSION_TIMEOUT_DEFAULT = 86400;
+
     /** The default service pid. */
     private static final String SERVICE_PID_DEFAULT = "org.apache.directory.server.ldap";
 
@@ -174,6 +209,49 @@ public class LdapServer extends DirectoryBackedService
     /** The maximum size for an incoming PDU */
     private int maxPDUSize = Integer.MAX_VALUE;
 
+    /** The number of bytes waiting to be written above which searches are suspended, 0 to disable */
+    private long writeQueueHighWatermark = WRITE_QUEUE_HIGH_WATERMARK_DEFAULT;
+
+    /** The number of bytes waiting to be written below which suspended searches are resumed */
+    private long writeQueueLowWatermark = WRITE_QUEUE_LOW_WATERMARK_DEFAULT;
+
+    /** The time in ms a suspended search waits before closing the session, 0 to wait forever */
+    private long writeQueueMaxWait = WRITE_QUEUE_MAX_WAIT_DEFAULT;
+
+    /** The size of the buffers the search results are gathered into, 0 to write them one by one */
+    private int searchResponseBatchSize = SEARCH_RESPONSE_BATCH_SIZE_DEFAULT;
+
+    /** The maximum number of entries a Virtual List View can sort, including for the administrators */
+    private int virtualListViewMaxSize = VIRTUAL_LIST_VIEW_MAX_SIZE_DEFAULT;
+
+    /** The number of threads the TLS handshakes are done in, 0 to do them in the I/O processors */
+    private int tlsHandshakeThreads;
+
+    /** The number of TLS sessions kept for resumption, 0 for no limit */
+    private int tlsSessionCacheSize = TLS_SESSION_CACHE_SIZE_DEFAULT;
+
+    /** The lifetime of the TLS sessions kept for resumption, in seconds, 0 for no limit */
+    private int tlsSessionTimeout = TLS_SESSION_TIMEOUT_DEFAULT;
+
+    /** Tells if TLSv1.3 is part of the protocols enabled when the transport does not list them */
+    private boolean tls13Enabled;
+
+    /** The statistics about the TLS handshakes */
+    private final TlsHandshakeMetrics tlsHandshakeMetrics = new TlsHandshakeMetrics();
+
+    /** The statistics about the compression of the replication sessions */
+    private final ReplicaCompressionMetrics replicaCompressionMetrics = new ReplicaCompressionMetrics();
+
+    /** The filter doing the TLS handshakes, created when the server is started */
+    private TlsHandshakeFilter tlsHandshakeFilter;
+
+    /** The scheduler dispatching the requests to lanes. If null, a single thread pool is used */
+    private RequestScheduler requestScheduler;
+
+    /** The cursors kept open between the pages of the paged searches */
+    private final PagedSearchCursors pagedSearchCursors = new PagedSearchCursors(
+        PagedSearchCursors.MAX_CURSORS_DEFAULT );
+
     /** If LDAPS is activated : the external Keystore file, if defined */
     private String keystoreFile;
 
@@ -438,6 +516,10 @@ public class LdapServer extends DirectoryBackedService
          */
         installDefaultHandlers();
 
+        // The filter doing the TLS handshakes, for both LDAPS and StartTLS
+        tlsHandshakeFilter = new TlsHandshakeFilter( ( tlsHandshakeThreads > 0 ) ? new OrderedThreadPoolExecutor(
+            tlsHandshakeThreads, tlsHandshakeThreads ) : null, tlsHandshakeMetrics );
+
         PartitionNexus nexus = getDirectoryService().getPartitionNexus();
 
         for ( ExtendedOperationHandler<? extends ExtendedRequest, ? extends ExtendedResponse> h : extendedOperationHandlers )
@@ -452,6 +534,11 @@ public class LdapServer extends DirectoryBackedService
         // Install the replication handler if we have one
         startReplicationProducer();
 
+        if ( requestScheduler != null )
+        {
+            requestScheduler.start( this );
+        }
+
         for ( Transport transport : transports )
         {
             if ( !( transport instanceof TcpTransport ) )
@@ -476,10 +563,8 @@ public class LdapServer extends DirectoryBackedService
                 .getProtocolCodecFactory() ) );
 
             // Now inject an ExecutorFilter for the write operations
-            // We use the same number of thread than the number of IoProcessor
-            // (NOTE : this has to be double checked)
             ( ( DefaultIoFilterChainBuilder ) chain ).addLast( "executor", new ExecutorFilter(
-                new UnorderedThreadPoolExecutor( transport.getNbThreads() ), IoEventType.MESSAGE_RECEIVED ) );
+                createExecutor( transport ), IoEventType.MESSAGE_RECEIVED ) );
 
             /*
             // Trace all the incoming and outgoing message to the console
@@ -513,15 +598,58 @@ public class LdapServer extends DirectoryBackedService
     }
 
 
+    /**
+     * Creates the executor the requests received on a transport are processed in : the
+     * scheduler lanes if any, a virtual thread per request if the transport asks for it
+     * and the JVM supports them, or else a pool with the same number of threads than the
+     * number of IoProcessor (NOTE : this has to be double checked).
+     */
+    private Executor createExecutor( Transport transport )
+    {
+        if ( requestScheduler != null )
+        {
+            return requestScheduler;
+        }
+
+        if ( transport.isVirtualThreads() )
+        {
+            ExecutorService executor = VirtualThreadExecutors.newExecutor( "ldap-request-" );
+
+            if ( executor != null )
+            {
+                return executor;
+            }
+
+            LOG.warn( "The JVM does not support virtual threads, using {} threads for {}", transport.getNbThreads(),
+                transport );
+        }
+
+        return new UnorderedThreadPoolExecutor( transport.getNbThreads() );
+    }
+
+
     /**
      * Install the replication handler if we have one
+     *
+     * @throws LdapException If the replication extended operations cannot be registered
      */
-    public void startReplicationProducer()
+    public void startReplicationProducer() throws LdapException
     {
         if ( replicationReqHandler != null )
         {
             replicationReqHandler.start( this );
             ( ( SearchRequestHandler ) getSearchRequestHandler() ).setReplicationReqHandler( replicationReqHandler );
+
+            // The consumers may compress their session
+            if ( getExtendedOperationHandler( ReplicaCompressionHandler.EXTENSION_OID ) == null )
+            {
+                ReplicaCompressionHandler compressionHandler = new ReplicaCompressionHandler();
+                compressionHandler.setLdapServer( this );
+                ReplicaCompressionFactory.register( getDirectoryService().getLdapCodecService() );
+                extendedOperationHandlers.add( compressionHandler );
+                getDirectoryService().getPartitionNexus().registerSupportedExtensions(
+                    compressionHandler.getExtensionOids() );
+            }
         }
     }
 
@@ -564,7 +692,10 @@ public class LdapServer extends DirectoryBackedService
                 
                 // Kill the chain executor
                 ExecutorFilter executorFilter = ( ExecutorFilter ) transport.getAcceptor().getFilterChain().get( "executor" );
-                ( ( UnorderedThreadPoolExecutor ) executorFilter.getExecutor() ).shutdownNow();
+                if ( executorFilter.getExecutor() instanceof ExecutorService )
+                {
+                    ( ( ExecutorService ) executorFilter.getExecutor() ).shutdownNow();
+                }
 
                 // Shutdown the transport
                 getSocketAcceptor( transport ).dispose();
@@ -607,6 +738,17 @@ public class LdapServer extends DirectoryBackedService
             LOG.warn( "Failed to sent NoD.", e );
         }
 
+        // Kill the TLS handshake executor and the scheduler lanes
+        if ( tlsHandshakeFilter != null )
+        {
+            tlsHandshakeFilter.shutdown();
+        }
+
+        if ( requestScheduler != null )
+        {
+            requestScheduler.stop();
+        }
+
         started = false;
         LOG.info( "Ldap service stopped." );
     }
@@ -1705,6 +1847,274 @@ public class LdapServer extends DirectoryBackedService
     }
 
 
+    /**
+     * @return The number of bytes waiting to be written to a client above which the
+     * searches of this client are suspended. 0 means no limit
+     */
+    public long getWriteQueueHighWatermark()
+    {
+        return writeQueueHighWatermark;
+    }
+
+
+    /**
+     * Sets the number of bytes waiting to be written to a client above which the
+     * searches of this client stop reading their cursor, until the client has read
+     * enough data. This bounds the memory used by slow clients, but a suspended search
+     * holds its worker thread while it waits, for at most the write queue maximum wait.
+     * The limit is disabled by default.
+     *
+     * @param writeQueueHighWatermark The number of bytes, 0 or a negative value to disable the limit
+     */
+    public void setWriteQueueHighWatermark( long writeQueueHighWatermark )
+    {
+        this.writeQueueHighWatermark = Math.max( 0L, writeQueueHighWatermark );
+    }
+
+
+    /**
+     * @return The number of bytes waiting to be written to a client below which the
+     * suspended searches are resumed
+     */
+    public long getWriteQueueLowWatermark()
+    {
+        return writeQueueLowWatermark;
+    }
+
+
+    /**
+     * @param writeQueueLowWatermark The number of bytes waiting to be written to a client
+     * below which the suspended searches are resumed
+     */
+    public void setWriteQueueLowWatermark( long writeQueueLowWatermark )
+    {
+        this.writeQueueLowWatermark = Math.max( 0L, writeQueueLowWatermark );
+    }
+
+
+    /**
+     * @return The time in milliseconds a suspended search waits for its client to read
+     * its results before the session is closed. 0 means no limit
+     */
+    public long getWriteQueueMaxWait()
+    {
+        return writeQueueMaxWait;
+    }
+
+
+    /**
+     * Sets the time a suspended search waits for its client to read its results. A client
+     * which reads nothing during this time is disconnected, so that it does not hold a
+     * worker thread forever.
+     *
+     * @param writeQueueMaxWait The time in milliseconds, 0 or a negative value to wait forever
+     */
+    public void setWriteQueueMaxWait( long writeQueueMaxWait )
+    {
+        this.writeQueueMaxWait = Math.max( 0L, writeQueueMaxWait );
+    }
+
+
+    /**
+     * @return The size of the buffers the search results are gathered into before
+     * being written to the client. 0 means each result is written on its own
+     */
+    public int getSearchResponseBatchSize()
+    {
+        return searchResponseBatchSize;
+    }
+
+
+    /**
+     * Sets the size of the buffers the search results are encoded into before being
+     * written to the client. Gathering the results saves a write request - and often
+     * a system call - per entry, but delays the first results : a buffer is written
+     * when it is full, or at the latest when the next result is added 50ms after the
+     * first one it contains. 64Kb is a good value for searches returning many entries.
+     *
+     * @param searchResponseBatchSize The size in bytes, 0 or a negative value to write each result on its own
+     */
+    public void setSearchResponseBatchSize( int searchResponseBatchSize )
+    {
+        this.searchResponseBatchSize = Math.max( 0, searchResponseBatchSize );
+    }
+
+
+    /**
+     * @return The maximum number of entries a Virtual List View can sort
+     */
+    public int getVirtualListViewMaxSize()
+    {
+        return virtualListViewMaxSize;
+    }
+
+
+    /**
+     * Sets the maximum number of entries a Virtual List View can sort. The sort keys of
+     * all the entries are kept in the session for the life of the view, so this limit
+     * applies to every user, the administrators included. The other users are also limited
+     * by the maximum size limit, if it's lower.
+     *
+     * @param virtualListViewMaxSize The maximum number of entries, at least 1
+     */
+    public void setVirtualListViewMaxSize( int virtualListViewMaxSize )
+    {
+        this.virtualListViewMaxSize = Math.max( 1, virtualListViewMaxSize );
+    }
+
+
+    /**
+     * @return The number of threads the TLS handshakes are done in. 0 means they are
+     * done in the I/O processors
+     */
+    public int getTlsHandshakeThreads()
+    {
+        return tlsHandshakeThreads;
+    }
+
+
+    /**
+     * Sets the number of threads the TLS handshakes are done in, so that the established
+     * connections stay responsive when many clients connect at the same time.
+     *
+     * @param tlsHandshakeThreads The number of threads, 0 to do the handshakes in the I/O processors
+     */
+    public void setTlsHandshakeThreads( int tlsHandshakeThreads )
+    {
+        this.tlsHandshakeThreads = Math.max( 0, tlsHandshakeThreads );
+    }
+
+
+    /**
+     * @return The number of TLS sessions kept for resumption. 0 means there is no limit
+     */
+    public int getTlsSessionCacheSize()
+    {
+        return tlsSessionCacheSize;
+    }
+
+
+    /**
+     * @param tlsSessionCacheSize The number of TLS sessions kept for resumption, 0 for no limit
+     */
+    public void setTlsSessionCacheSize( int tlsSessionCacheSize )
+    {
+        this.tlsSessionCacheSize = Math.max( 0, tlsSessionCacheSize );
+    }
+
+
+    /**
+     * @return The lifetime of the TLS sessions kept for resumption, in seconds. 0 means there is no limit
+     */
+    public int getTlsSessionTimeout()
+    {
+        return tlsSessionTimeout;
+    }
+
+
+    /**
+     * @param tlsSessionTimeout The lifetime of the TLS sessions kept for resumption, in seconds, 0 for no limit
+     */
+    public void setTlsSessionTimeout( int tlsSessionTimeout )
+    {
+        this.tlsSessionTimeout = Math.max( 0, tlsSessionTimeout );
+    }
+
+
+    /**
+     * @return <code>true</code> if TLSv1.3 is part of the protocols enabled when the transport
+     * does not list them
+     */
+    public boolean isTls13Enabled()
+    {
+        return tls13Enabled;
+    }
+
+
+    /**
+     * Adds TLSv1.3 to the protocols enabled when the transport does not list them. The TLSv1.3
+     * sessions are resumed using the tickets the JVM provides, which are configured by the JVM
+     * properties, like <code>jdk.tls.server.enableSessionTicketExtension</code>.
+     *
+     * @param tls13Enabled <code>true</code> to enable TLSv1.3 by default
+     */
+    public void setTls13Enabled( boolean tls13Enabled )
+    {
+        this.tls13Enabled = tls13Enabled;
+    }
+
+
+    /**
+     * @return The statistics about the TLS handshakes done for LDAPS and StartTLS
+     */
+    public TlsHandshakeMetrics getTlsHandshakeMetrics()
+    {
+        return tlsHandshakeMetrics;
+    }
+
+
+    /**
+     * @return The statistics about the compression of the replication sessions
+     */
+    public ReplicaCompressionMetrics getReplicaCompressionMetrics()
+    {
+        return replicaCompressionMetrics;
+    }
+
+
+    /**
+     * @return The filter doing the TLS handshakes, null until the server is started
+     */
+    public TlsHandshakeFilter getTlsHandshakeFilter()
+    {
+        return tlsHandshakeFilter;
+    }
+
+
+    /**
+     * @return The scheduler dispatching the requests to lanes, or null if a single thread pool is used
+     */
+    public RequestScheduler getRequestScheduler()
+    {
+        return requestScheduler;
+    }
+
+
+    /**
+     * Sets the scheduler dispatching the requests to lanes, each of them having its own
+     * threads, so that the expensive requests can't delay the cheap ones. It must be set
+     * before the server is started.
+     *
+     * @param requestScheduler The scheduler, or null to process all the requests in a single thread pool
+     */
+    public void setRequestScheduler( RequestScheduler requestScheduler )
+    {
+        this.requestScheduler = requestScheduler;
+    }
+
+
+    /**
+     * @return The cursors kept open between the pages of the paged searches
+     */
+    public PagedSearchCursors getPagedSearchCursors()
+    {
+        return pagedSearchCursors;
+    }
+
+
+    /**
+     * Sets the maximum number of cursors kept open between the pages of the paged searches.
+     * When a paged search cursor has been closed, the next page is read by searching again,
+     * and skipping the entries already returned.
+     *
+     * @param maxPagedSearchCursors The maximum number of open cursors, 0 to never keep a cursor open
+     */
+    public void setMaxPagedSearchCursors( int maxPagedSearchCursors )
+    {
+        pagedSearchCursors.setMaxCursors( maxPagedSearchCursors );
+    }
+
+
     /**
      * @return the number of seconds pinger thread sleeps between subsequent pings
      */
@@ -24,8 +24,12 @@ import java.io.IOException;
 import java.net.SocketAddress;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -39,6 +43,7 @@ import org.apache.directory.server.core.api.LdapPrincipal;
 import org.apache.directory.server.core.api.SearchRequestContainer;
 import org.apache.directory.server.i18n.I18n;
 import org.apache.directory.server.ldap.handlers.controls.PagedSearchContext;
+import org.apache.directory.server.ldap.handlers.controls.VirtualListViewContext;
 import org.apache.mina.core.session.IoSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -61,6 +66,12 @@ public class LdapSession
     /** The list of requests we can abandon */
     private static final AbandonableRequest[] EMPTY_ABANDONABLES = new AbandonableRequest[0];
 
+    /** The delay after which a suspended writer checks the write queue again, in ms */
+    private static final long WRITE_QUEUE_POLL_DELAY = 100L;
+
+    /** The maximum number of Virtual List View contexts kept in a session */
+    private static final int MAX_VIRTUAL_LIST_VIEW_CONTEXTS = 4;
+
     /** A lock to protect the abandonableRequests against concurrent access */
     private final Lock outstandingLock;
 
@@ -96,6 +107,44 @@ public class LdapSession
     /** A map containing all the paged search context */
     private Map<Integer, PagedSearchContext> pagedSearchContexts;
 
+    /** The Virtual List View contexts, the least recently used first */
+    private final Map<Integer, VirtualListViewContext> virtualListViewContexts = Collections.synchronizedMap(
+        new LinkedHashMap<Integer, VirtualListViewContext>( 16, 0.75f, true )
+        {
+            private static final long serialVersionUID = 1L;
+
+
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<Integer, VirtualListViewContext> eldest )
+            {
+                return size() > MAX_VIRTUAL_LIST_VIEW_CONTEXTS;
+            }
+        } );
+
+    /**
+     * The lock the writers wait on when the write queue is full. It's not a monitor, as
+     * a virtual thread waiting on a monitor can't be unmounted from its carrier thread
+     */
+    private final Lock writeQueueLock = new ReentrantLock();
+
+    /** The condition signaled when the write queue has drained */
+    private final Condition writeQueueDrained = writeQueueLock.newCondition();
+
+    /** The number of writers waiting for the write queue to drain, protected by writeQueueLock */
+    private volatile int writeQueueWaiters;
+
+    /** The number of bytes below which the waiting writers are resumed */
+    private volatile long writeQueueResumeBytes;
+
+    /** The number of times a writer has been suspended because the write queue was full */
+    private final AtomicLong writeQueueSuspensions = new AtomicLong();
+
+    /** The total time spent waiting for the write queue to drain, in ms */
+    private final AtomicLong writeQueueWaitTime = new AtomicLong();
+
+    /** The highest number of bytes seen waiting to be written */
+    private final AtomicLong maxScheduledWriteBytes = new AtomicLong();
+
 
     /**
      * Creates a new instance of LdapSession associated with the underlying
@@ -523,18 +572,36 @@ public class LdapSession
         if ( oldContext != null )
         {
             // ??? Very unlikely to happen ...
-            Cursor<Entry> cursor = oldContext.getCursor();
+            closePagedSearchCursor( oldContext );
+        }
+    }
+
 
-            if ( cursor != null )
+    /**
+     * Close the cursor of a Paged Search, if it's still open
+     *
+     * @param context The paged search context
+     */
+    public void closePagedSearchCursor( PagedSearchContext context )
+    {
+        if ( ldapServer != null )
+        {
+            ldapServer.getPagedSearchCursors().close( context );
+
+            return;
+        }
+
+        Cursor<Entry> cursor = context.getCursor();
+
+        if ( cursor != null )
+        {
+            try
+            {
+                cursor.close();
+            }
+            catch ( Exception e )
             {
-                try
-                {
-                    cursor.close();
-                }
-                catch ( Exception e )
-                {
-                    LOG.error( I18n.err( I18n.ERR_38010_FAILING_ON_CURSOR_CLOSE, e.getLocalizedMessage() ) );
-                }
+                LOG.error( I18n.err( I18n.ERR_38010_FAILING_ON_CURSOR_CLOSE, e.getLocalizedMessage() ) );
             }
         }
     }
@@ -559,14 +626,9 @@ public class LdapSession
      */
     public void closeAllPagedSearches() throws IOException
     {
-        for ( Map.Entry<Integer, PagedSearchContext> entry : pagedSearchContexts.entrySet() )
+        for ( PagedSearchContext context : pagedSearchContexts.values() )
         {
-            Cursor<Entry> cursor = entry.getValue().getCursor();
-
-            if ( cursor != null )
-            {
-                cursor.close();
-            }
+            closePagedSearchCursor( context );
         }
     }
 
@@ -581,6 +643,169 @@ public class LdapSession
     }
 
 
+    /**
+     * Add a Virtual List View context. The least recently used context is removed
+     * if the session already stores too many of them.
+     *
+     * @param context The context to add
+     */
+    public void addVirtualListViewContext( VirtualListViewContext context )
+    {
+        virtualListViewContexts.put( context.getContextId(), context );
+    }
+
+
+    /**
+     * Get the Virtual List View context associated with an ID
+     *
+     * @param contextId The id for the context we want to get
+     * @return The associated context, if any
+     */
+    public VirtualListViewContext getVirtualListViewContext( int contextId )
+    {
+        return virtualListViewContexts.get( contextId );
+    }
+
+
+    /**
+     * Waits until the client has read enough data, if the number of bytes waiting to
+     * be written to it is above the high watermark. The writer is resumed when this
+     * number falls below the low watermark, when the session is closed, when the request
+     * is abandoned or when its time limit is reached. A client which doesn't read
+     * anything for longer than the maximum wait is disconnected.
+     *
+     * @param request The request the data is written for
+     * @param highWatermark The number of bytes above which the writer waits, 0 to never wait
+     * @param lowWatermark The number of bytes below which the writer is resumed
+     * @param deadline The time at which the request time limit is reached, in milliseconds
+     * @param maxWait The maximum time to wait before closing the session, in milliseconds, 0 to wait forever
+     * @return <code>false</code> if the session has been closed, the request abandoned
+     * or its time limit reached
+     * @throws InterruptedException If the thread has been interrupted while waiting
+     */
+    public boolean awaitWriteQueue( AbandonableRequest request, long highWatermark, long lowWatermark,
+        long deadline, long maxWait ) throws InterruptedException
+    {
+        long scheduled = ioSession.getScheduledWriteBytes();
+        maxScheduledWriteBytes.accumulateAndGet( scheduled, Math::max );
+
+        if ( ( highWatermark <= 0L ) || ( scheduled < highWatermark ) )
+        {
+            return !ioSession.isClosing();
+        }
+
+        if ( IS_DEBUG )
+        {
+            LOG.debug( "Suspending the writer, {} bytes are waiting to be written to {}", scheduled, this );
+        }
+
+        writeQueueSuspensions.incrementAndGet();
+        long start = System.currentTimeMillis();
+        long end = ( maxWait > 0L ) ? Math.min( deadline, start + maxWait ) : deadline;
+        long now = start;
+
+        writeQueueLock.lock();
+
+        try
+        {
+            writeQueueResumeBytes = Math.min( lowWatermark, highWatermark );
+            writeQueueWaiters++;
+
+            // Also poll, as messageSent may not be called if nothing is written anymore
+            while ( ( ioSession.getScheduledWriteBytes() > writeQueueResumeBytes ) && !ioSession.isClosing()
+                && !request.isAbandoned() && ( now < end ) )
+            {
+                writeQueueDrained.await( Math.min( WRITE_QUEUE_POLL_DELAY, end - now ), TimeUnit.MILLISECONDS );
+                now = System.currentTimeMillis();
+            }
+        }
+        finally
+        {
+            writeQueueWaiters--;
+            writeQueueWaitTime.addAndGet( System.currentTimeMillis() - start );
+            writeQueueLock.unlock();
+        }
+
+        if ( ( maxWait > 0L ) && ( now - start >= maxWait )
+            && ( ioSession.getScheduledWriteBytes() > writeQueueResumeBytes ) )
+        {
+            LOG.warn( "Closing the session {}, the client has not read its results for {} ms", this, now - start );
+            ioSession.closeNow();
+
+            return false;
+        }
+
+        return !ioSession.isClosing() && !request.isAbandoned() && ( now < deadline );
+    }
+
+
+    /**
+     * Called when a message has been written to the client : wakes up the writers
+     * waiting for the write queue to drain, if it's below the low watermark.
+     */
+    public void messageSent()
+    {
+        if ( ( writeQueueWaiters > 0 ) && ( ioSession.getScheduledWriteBytes() <= writeQueueResumeBytes ) )
+        {
+            writeQueueLock.lock();
+
+            try
+            {
+                writeQueueDrained.signalAll();
+            }
+            finally
+            {
+                writeQueueLock.unlock();
+            }
+        }
+    }
+
+
+    /**
+     * @return The number of bytes waiting to be written to the client
+     */
+    public long getScheduledWriteBytes()
+    {
+        return ioSession.getScheduledWriteBytes();
+    }
+
+
+    /**
+     * @return The number of messages waiting to be written to the client
+     */
+    public int getScheduledWriteMessages()
+    {
+        return ioSession.getScheduledWriteMessages();
+    }
+
+
+    /**
+     * @return The highest number of bytes seen waiting to be written to the client
+     */
+    public long getMaxScheduledWriteBytes()
+    {
+        return maxScheduledWriteBytes.get();
+    }
+
+
+    /**
+     * @return The number of times a writer has been suspended because the client was too slow
+     */
+    public long getWriteQueueSuspensions()
+    {
+        return writeQueueSuspensions.get();
+    }
+
+
+    /**
+     * @return The total time the writers have been suspended because the client was too slow, in ms
+     */
+    public long getWriteQueueWaitTime()
+    {
+        return writeQueueWaitTime.get();
+    }
+
+
     /**
      * The principal and remote address associated with this session.
      * @see Object#toString()
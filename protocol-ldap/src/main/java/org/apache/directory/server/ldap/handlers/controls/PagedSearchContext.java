@@ -58,9 +58,18 @@ public class PagedSearchContext
     /** The integer value for the cookie */
     private AtomicInteger cookieValue;
 
-    /** The associated cursor for the current search request */
+    /**
+     * The associated cursor for the current search request. It may be closed by the
+     * {@link PagedSearchCursors} between two pages
+     */
     private Cursor<Entry> cursor;
 
+    /** The normalized Dn of the last returned entry, to search again from there */
+    private String lastDn;
+
+    /** The referrals in the search scope which have not been returned yet */
+    private Set<Dn> referrals = new HashSet<>();
+
 
     /**
      * Creates a new instance of this class, storing the SearchRequest into it.
@@ -291,6 +300,26 @@ public class PagedSearchContext
     }
 
 
+    /**
+     * @return The normalized Dn of the last returned entry, or null if no entry has been returned
+     */
+    public String getLastDn()
+    {
+        return lastDn;
+    }
+
+
+    /**
+     * Set the last returned entry, from which the search continues if the cursor
+     * has been closed
+     * @param lastDn The normalized Dn of the last returned entry
+     */
+    public void setLastDn( String lastDn )
+    {
+        this.lastDn = lastDn;
+    }
+
+
     /**
      * @return The previous search request
      */
@@ -319,6 +348,26 @@ public class PagedSearchContext
     }
 
 
+    /**
+     * @return The referrals in the search scope which have not been returned yet
+     */
+    public Set<Dn> getReferrals()
+    {
+        return referrals;
+    }
+
+
+    /**
+     * Set the referrals in the search scope, which will be returned as
+     * continuation references once all the entries have been returned
+     * @param referrals The referrals in the search scope
+     */
+    public void setReferrals( Set<Dn> referrals )
+    {
+        this.referrals = referrals;
+    }
+
+
     /**
      * @see Object#toString()
      */
@@ -0,0 +1,203 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.handlers.controls;
+
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.server.i18n.I18n;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * The cursors kept open between the pages of the paged searches. A cursor holds the
+ * candidates of the search and a read transaction on the partition, so only the most
+ * recently used ones are kept, for the clients which ask for the next page quickly :
+ * when there are too many, the least recently used cursor is closed, and its paged
+ * search will search again and skip the entries already returned when the next page is
+ * requested, as stored in its {@link PagedSearchContext}.
+ * <p>
+ * A cursor is removed from this LRU while a page is being read, so that it's never
+ * closed while it's being used.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class PagedSearchCursors
+{
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( PagedSearchCursors.class );
+
+    /** The default maximum number of open cursors */
+    public static final int MAX_CURSORS_DEFAULT = 100;
+
+    /** The contexts with an open cursor, the least recently used first */
+    private final Set<PagedSearchContext> contexts = new LinkedHashSet<>();
+
+    /** The maximum number of open cursors */
+    private volatile int maxCursors;
+
+    /** The number of cursors closed because there were too many */
+    private final AtomicLong evictedCursors = new AtomicLong();
+
+
+    /**
+     * Creates a new PagedSearchCursors instance
+     *
+     * @param maxCursors The maximum number of open cursors
+     */
+    public PagedSearchCursors( int maxCursors )
+    {
+        this.maxCursors = maxCursors;
+    }
+
+
+    /**
+     * Takes the cursor of a paged search, to read its next page. The cursor won't be
+     * closed until it's given back with {@link #release(PagedSearchContext)}.
+     *
+     * @param context The paged search context
+     * @return The open cursor, or null if it has been closed
+     */
+    public synchronized Cursor<Entry> acquire( PagedSearchContext context )
+    {
+        contexts.remove( context );
+
+        return context.getCursor();
+    }
+
+
+    /**
+     * Gives back the cursor of a paged search, once a page has been read. The least
+     * recently used cursors are closed if there are too many.
+     *
+     * @param context The paged search context
+     */
+    public void release( PagedSearchContext context )
+    {
+        List<Cursor<Entry>> evicted = new ArrayList<>();
+
+        synchronized ( this )
+        {
+            if ( context.getCursor() != null )
+            {
+                contexts.add( context );
+            }
+
+            Iterator<PagedSearchContext> iterator = contexts.iterator();
+
+            while ( ( contexts.size() > maxCursors ) && iterator.hasNext() )
+            {
+                PagedSearchContext eldest = iterator.next();
+                iterator.remove();
+                evicted.add( eldest.getCursor() );
+                eldest.setCursor( null );
+            }
+        }
+
+        for ( Cursor<Entry> cursor : evicted )
+        {
+            evictedCursors.incrementAndGet();
+            close( cursor );
+        }
+    }
+
+
+    /**
+     * Closes the cursor of a paged search which is done or abandoned.
+     *
+     * @param context The paged search context
+     */
+    public void close( PagedSearchContext context )
+    {
+        Cursor<Entry> cursor;
+
+        synchronized ( this )
+        {
+            contexts.remove( context );
+            cursor = context.getCursor();
+            context.setCursor( null );
+        }
+
+        close( cursor );
+    }
+
+
+    private void close( Cursor<Entry> cursor )
+    {
+        if ( cursor == null )
+        {
+            return;
+        }
+
+        try
+        {
+            cursor.close();
+        }
+        catch ( Exception e )
+        {
+            LOG.error( I18n.err( I18n.ERR_38010_FAILING_ON_CURSOR_CLOSE, e.getLocalizedMessage() ) );
+        }
+    }
+
+
+    /**
+     * @return The number of cursors kept open between two pages
+     */
+    public synchronized int getCursorCount()
+    {
+        return contexts.size();
+    }
+
+
+    /**
+     * @return The number of cursors closed because there were too many
+     */
+    public long getEvictedCursorCount()
+    {
+        return evictedCursors.get();
+    }
+
+
+    /**
+     * @return The maximum number of cursors kept open between two pages
+     */
+    public int getMaxCursors()
+    {
+        return maxCursors;
+    }
+
+
+    /**
+     * @param maxCursors The maximum number of cursors kept open between two pages. If 0,
+     * each page is read with a new cursor.
+     */
+    public void setMaxCursors( int maxCursors )
+    {
+        this.maxCursors = maxCursors;
+    }
+}
@@ -0,0 +1,391 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.ldap.handlers.controls;
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.asn1.ber.tlv.BerValue;
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapInvalidAttributeValueException;
+import org.apache.directory.api.ldap.model.message.AliasDerefMode;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.message.controls.SortKey;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.LdapComparator;
+
+
+/**
+ * The sorted list of the entries a Virtual List View is moving into. Only the sort key
+ * of each entry - its smallest value for the sort attribute -, its Dn and its entryUUID are kept, so
+ * that the list is built once, when the first request of the view is received, and the
+ * following requests only have to find the target position, which is done by a binary
+ * search when the target is an assertion value, and to read the entries of the window.
+ * <p>
+ * The contexts are stored into the session, and retrieved using the contextId the
+ * client sends back with the next request of the view.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class VirtualListViewContext
+{
+    /** The context identifier */
+    private final int contextId;
+
+    /** The normalized search base */
+    private final String base;
+
+    /** The search scope */
+    private final SearchScope scope;
+
+    /** The search filter, as sent by the client */
+    private final String filter;
+
+    /** The aliases dereferencing mode */
+    private final AliasDerefMode derefAliases;
+
+    /** The sort attribute */
+    private final AttributeType attributeType;
+
+    /** The matching rule used to sort the entries, if not the attribute's default one */
+    private final String matchingRuleId;
+
+    /** Tells if the entries are sorted in reverse order */
+    private final boolean reverse;
+
+    /** The comparator used to sort the keys */
+    private final LdapComparator<Object> comparator;
+
+    /** Tells if the keys are Strings, or byte[] */
+    private final boolean humanReadable;
+
+    /** The entries, while the list is being built */
+    private List<Slot> slots = new ArrayList<>();
+
+    /** The sorted keys */
+    private Object[] keys;
+
+    /** The Dn of the sorted entries */
+    private Dn[] dns;
+
+    /** The entryUUID of the sorted entries */
+    private String[] uuids;
+
+
+    /**
+     * Creates a new instance of VirtualListViewContext.
+     *
+     * @param contextId The context identifier
+     * @param searchRequest The first search request of the view, with a normalized base
+     * @param sortKey The sort key
+     * @param attributeType The sort attribute
+     * @param comparator The comparator associated with the sort key matching rule
+     */
+    public VirtualListViewContext( int contextId, SearchRequest searchRequest, SortKey sortKey,
+        AttributeType attributeType, LdapComparator<Object> comparator )
+    {
+        this.contextId = contextId;
+        base = searchRequest.getBase().getNormName();
+        scope = searchRequest.getScope();
+        filter = String.valueOf( searchRequest.getFilter() );
+        derefAliases = searchRequest.getDerefAliases();
+        this.attributeType = attributeType;
+        matchingRuleId = sortKey.getMatchingRuleId();
+        reverse = sortKey.isReverseOrder();
+        this.comparator = comparator;
+        humanReadable = attributeType.getSyntax().isHumanReadable();
+    }
+
+
+    /**
+     * @return The context identifier
+     */
+    public int getContextId()
+    {
+        return contextId;
+    }
+
+
+    /**
+     * @return The context identifier, as sent to the client
+     */
+    public byte[] getContextIdBytes()
+    {
+        return BerValue.getBytes( contextId );
+    }
+
+
+    /**
+     * Tells if a request of a view is moving into the same list of entries. The base
+     * must be normalized.
+     *
+     * @param searchRequest The new SearchRequest
+     * @param sortKey The new sort key
+     * @param sortAttributeType The new sort attribute
+     * @return true if the entries to sort and the sort order are the same
+     */
+    public boolean hasSameRequest( SearchRequest searchRequest, SortKey sortKey, AttributeType sortAttributeType )
+    {
+        if ( ( searchRequest.getScope() != scope ) || ( searchRequest.getDerefAliases() != derefAliases )
+            || ( sortKey.isReverseOrder() != reverse ) )
+        {
+            return false;
+        }
+
+        if ( !attributeType.getOid().equals( sortAttributeType.getOid() ) )
+        {
+            return false;
+        }
+
+        if ( !base.equals( searchRequest.getBase().getNormName() )
+            || !filter.equals( String.valueOf( searchRequest.getFilter() ) ) )
+        {
+            return false;
+        }
+
+        if ( ( matchingRuleId == null ) ? ( sortKey.getMatchingRuleId() != null )
+            : !matchingRuleId.equals( sortKey.getMatchingRuleId() ) )
+        {
+            return false;
+        }
+
+        return true;
+    }
+
+
+    /**
+     * @return The sort attribute
+     */
+    public AttributeType getAttributeType()
+    {
+        return attributeType;
+    }
+
+
+    /**
+     * Adds an entry to the list. The entry only has to contain the sort attribute and
+     * the entryUUID.
+     *
+     * @param entry The entry to add
+     * @throws LdapInvalidAttributeValueException If the entryUUID can't be read
+     */
+    public void add( Entry entry ) throws LdapInvalidAttributeValueException
+    {
+        Attribute attribute = entry.get( attributeType );
+        Object key = null;
+
+        if ( attribute != null )
+        {
+            for ( Value value : attribute )
+            {
+                Object valueKey = getKey( value );
+
+                if ( ( key == null ) || ( ( valueKey != null ) && ( comparator.compare( valueKey, key ) < 0 ) ) )
+                {
+                    key = valueKey;
+                }
+            }
+        }
+
+        Attribute uuid = entry.get( SchemaConstants.ENTRY_UUID_AT );
+
+        slots.add( new Slot( key, entry.getDn(), ( uuid == null ) ? null : uuid.getString() ) );
+    }
+
+
+    /**
+     * Sorts the entries once they have all been added.
+     */
+    public void sort()
+    {
+        slots.sort( ( slot1, slot2 ) -> compareKeys( slot1.key, slot2.key ) );
+
+        keys = new Object[slots.size()];
+        dns = new Dn[slots.size()];
+        uuids = new String[slots.size()];
+
+        for ( int i = 0; i < keys.length; i++ )
+        {
+            keys[i] = slots.get( i ).key;
+            dns[i] = slots.get( i ).dn;
+            uuids[i] = slots.get( i ).uuid;
+        }
+
+        slots = null;
+    }
+
+
+    /**
+     * @return The number of entries in the list
+     */
+    public int getContentCount()
+    {
+        return dns.length;
+    }
+
+
+    /**
+     * Gets the Dn of an entry
+     *
+     * @param position The entry position, starting at 1
+     * @return The entry Dn
+     */
+    public Dn getDn( int position )
+    {
+        return dns[position - 1];
+    }
+
+
+    /**
+     * Gets the entryUUID of an entry
+     *
+     * @param position The entry position, starting at 1
+     * @return The entry entryUUID
+     */
+    public String getEntryUuid( int position )
+    {
+        return uuids[position - 1];
+    }
+
+
+    /**
+     * Finds the first entry whose key is greater than or equal to an assertion value,
+     * using a binary search.
+     *
+     * @param assertionValue The assertion value
+     * @return The entry position, starting at 1, or the number of entries plus one if
+     * all the entries are before the assertion value
+     */
+    public int find( Value assertionValue )
+    {
+        Object assertionKey = getKey( assertionValue );
+        int low = 0;
+        int high = keys.length;
+
+        while ( low < high )
+        {
+            int middle = ( low + high ) >>> 1;
+
+            if ( compareKeys( keys[middle], assertionKey ) < 0 )
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+
+        return low + 1;
+    }
+
+
+    /**
+     * Gets the key of a value, its normalized form
+     */
+    private Object getKey( Value value )
+    {
+        if ( humanReadable )
+        {
+            return value.getNormalized();
+        }
+        else
+        {
+            return value.getBytes();
+        }
+    }
+
+
+    /**
+     * Compares two keys in the sort order. As per section 2.2 of RFC 2891, the entries
+     * without the sort attribute are after all the others
+     */
+    private int compareKeys( Object key1, Object key2 )
+    {
+        if ( key1 == null )
+        {
+            if ( key2 == null )
+            {
+                return 0;
+            }
+
+            return reverse ? -1 : 1;
+        }
+        else if ( key2 == null )
+        {
+            return reverse ? 1 : -1;
+        }
+
+        int c = comparator.compare( key1, key2 );
+
+        return reverse ? -c : c;
+    }
+
+
+    /**
+     * @see Object#toString()
+     */
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+
+        sb.append( "VirtualListView context : <" );
+        sb.append( contextId );
+        sb.append( ", " );
+        sb.append( attributeType.getName() );
+
+        if ( dns != null )
+        {
+            sb.append( ", " );
+            sb.append( dns.length );
+        }
+
+        sb.append( ">" );
+
+        return sb.toString();
+    }
+
+
+    /**
+     * An entry added to the list, before it's sorted
+     */
+    private static final class Slot
+    {
+        private final Object key;
+
+        private final Dn dn;
+
+        private final String uuid;
+
+
+        private Slot( Object key, Dn dn, String uuid )
+        {
+            this.key = key;
+            this.dn = dn;
+            this.uuid = uuid;
+        }
+    }
+}
@@ -41,6 +41,8 @@ import org.apache.directory.server.i18n.I18n;
 import org.apache.directory.server.ldap.ExtendedOperationHandler;
 import org.apache.directory.server.ldap.LdapServer;
 import org.apache.directory.server.ldap.LdapSession;
+import org.apache.directory.server.ldap.handlers.ssl.LdapsInitializer;
+import org.apache.directory.server.ldap.handlers.ssl.TlsHandshakeFilter;
 import org.apache.directory.server.protocol.shared.transport.TcpTransport;
 import org.apache.directory.server.protocol.shared.transport.Transport;
 import org.apache.mina.core.filterchain.IoFilterChain;
@@ -77,6 +79,12 @@ public class StartTlsHandler implements ExtendedOperationHandler<ExtendedRequest
     /** The 'wantClientAuth' SSL flag */
     private boolean wantClientAuth;
 
+    /** The protocols enabled when the transport does not list them */
+    private String[] defaultProtocols;
+
+    /** The filter doing the TLS handshakes */
+    private TlsHandshakeFilter tlsHandshakeFilter;
+
     static
     {
         Set<String> set = new HashSet<>( 3 );
@@ -113,7 +121,7 @@ public class StartTlsHandler implements ExtendedOperationHandler<ExtendedRequest
             else
             {
                 // default to TLS only
-                sslFilter.setEnabledProtocols( new String[]{ "TLSv1", "TLSv1.1", "TLSv1.2" } );
+                sslFilter.setEnabledProtocols( defaultProtocols );
             }
 
             // Set the remaining SSL flags
@@ -123,6 +131,12 @@ public class StartTlsHandler implements ExtendedOperationHandler<ExtendedRequest
             StartTlsFilter startTlsFilter = new StartTlsFilter();
             chain.addFirst( "startTls", startTlsFilter );
             chain.addFirst( "sslFilter", sslFilter );
+
+            // The handshake is done out of the I/O processors, if configured
+            if ( tlsHandshakeFilter != null )
+            {
+                chain.addFirst( "tlsHandshake", tlsHandshakeFilter );
+            }
         }
 
         StartTlsResponse res = new StartTlsResponseImpl( req.getMessageId() );
@@ -175,12 +189,16 @@ public class StartTlsHandler implements ExtendedOperationHandler<ExtendedRequest
         {
             sslContext.init( ldapServer.getKeyManagerFactory().getKeyManagers(),
                     ldapServer.getTrustManagers(), new SecureRandom() );
+            LdapsInitializer.initSessionContext( ldapServer, sslContext );
         }
         catch ( Exception e )
         {
             throw new RuntimeException( I18n.err( I18n.ERR_38029_FAILED_TO_INIT_SSL_CONTEXT ), e );
         }
 
+        defaultProtocols = LdapsInitializer.getDefaultProtocols( ldapServer );
+        tlsHandshakeFilter = ldapServer.getTlsHandshakeFilter();
+
         // Get the transport
         Transport[] transports = ldapServer.getTransports();
 
@@ -24,12 +24,25 @@ import static java.lang.Math.min;
 import static org.apache.directory.server.ldap.LdapServer.NO_SIZE_LIMIT;
 import static org.apache.directory.server.ldap.LdapServer.NO_TIME_LIMIT;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.apache.directory.api.asn1.ber.tlv.BerValue;
+import org.apache.directory.api.asn1.ber.tlv.IntegerDecoder;
+import org.apache.directory.api.asn1.ber.tlv.IntegerDecoderException;
 import org.apache.directory.api.ldap.extras.controls.syncrepl.syncRequest.SyncRequestValue;
+import org.apache.directory.api.ldap.extras.controls.vlv.VirtualListViewRequest;
+import org.apache.directory.api.ldap.extras.controls.vlv.VirtualListViewResponse;
+import org.apache.directory.api.ldap.extras.controls.vlv.VirtualListViewResponseImpl;
+import org.apache.directory.api.ldap.extras.controls.vlv.VirtualListViewResultCode;
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.cursor.Cursor;
 import org.apache.directory.api.ldap.model.cursor.CursorClosedException;
@@ -37,9 +50,12 @@ import org.apache.directory.api.ldap.model.entry.Attribute;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.entry.Value;
 import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapInvalidAttributeValueException;
 import org.apache.directory.api.ldap.model.exception.LdapOperationException;
+import org.apache.directory.api.ldap.model.exception.LdapTimeLimitExceededException;
 import org.apache.directory.api.ldap.model.exception.LdapURLEncodingException;
 import org.apache.directory.api.ldap.model.exception.OperationAbandonedException;
+import org.apache.directory.api.ldap.model.filter.AndNode;
 import org.apache.directory.api.ldap.model.filter.EqualityNode;
 import org.apache.directory.api.ldap.model.filter.ExprNode;
 import org.apache.directory.api.ldap.model.filter.OrNode;
@@ -53,6 +69,7 @@ import org.apache.directory.api.ldap.model.message.Response;
 import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
 import org.apache.directory.api.ldap.model.message.ResultResponseRequest;
 import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
 import org.apache.directory.api.ldap.model.message.SearchResultDone;
 import org.apache.directory.api.ldap.model.message.SearchResultEntry;
 import org.apache.directory.api.ldap.model.message.SearchResultEntryImpl;
@@ -60,11 +77,20 @@ import org.apache.directory.api.ldap.model.message.SearchResultReference;
 import org.apache.directory.api.ldap.model.message.SearchResultReferenceImpl;
 import org.apache.directory.api.ldap.model.message.SearchScope;
 import org.apache.directory.api.ldap.model.message.controls.ManageDsaIT;
+import org.apache.directory.api.ldap.model.message.controls.ManageDsaITImpl;
 import org.apache.directory.api.ldap.model.message.controls.PagedResults;
 import org.apache.directory.api.ldap.model.message.controls.PagedResultsImpl;
 import org.apache.directory.api.ldap.model.message.controls.PersistentSearch;
+import org.apache.directory.api.ldap.model.message.controls.SortKey;
+import org.apache.directory.api.ldap.model.message.controls.SortRequest;
+import org.apache.directory.api.ldap.model.message.controls.SortResponse;
+import org.apache.directory.api.ldap.model.message.controls.SortResponseImpl;
+import org.apache.directory.api.ldap.model.message.controls.SortResultCode;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.LdapComparator;
+import org.apache.directory.api.ldap.model.schema.MatchingRule;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.ldap.model.url.LdapUrl;
 import org.apache.directory.api.util.Strings;
 import org.apache.directory.server.core.api.DirectoryService;
@@ -73,7 +99,6 @@ import org.apache.directory.server.core.api.entry.ClonedServerEntry;
 import org.apache.directory.server.core.api.event.EventType;
 import org.apache.directory.server.core.api.event.NotificationCriteria;
 import org.apache.directory.server.core.api.filtering.EntryFilteringCursor;
-import org.apache.directory.server.core.api.partition.PartitionNexus;
 import org.apache.directory.server.i18n.I18n;
 import org.apache.directory.server.ldap.LdapSession;
 import org.apache.directory.server.ldap.handlers.LdapRequestHandler;
@@ -81,6 +106,7 @@ import org.apache.directory.server.ldap.handlers.PersistentSearchListener;
 import org.apache.directory.server.ldap.handlers.SearchAbandonListener;
 import org.apache.directory.server.ldap.handlers.SearchTimeLimitingMonitor;
 import org.apache.directory.server.ldap.handlers.controls.PagedSearchContext;
+import org.apache.directory.server.ldap.handlers.controls.VirtualListViewContext;
 import org.apache.directory.server.ldap.replication.provider.ReplicationRequestHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -101,24 +127,14 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
     /** Speedup for logs */
     private static final boolean IS_DEBUG = LOG.isDebugEnabled();
 
+    /** The number of entries of a VLV window read with a single search */
+    private static final int VLV_READ_CHUNK_SIZE = 100;
+
     /** The replication handler */
     protected ReplicationRequestHandler replicationReqHandler;
 
-
-    /**
-     * Constructs a new filter EqualityNode asserting that a candidate
-     * objectClass is a referral.
-     *
-     * @param session the {@link LdapSession} to construct the node for
-     * @return the {@link org.apache.directory.api.ldap.model.filter.EqualityNode} (objectClass=referral) non-normalized
-     * @throws Exception in the highly unlikely event of schema related failures
-     */
-    private EqualityNode<String> newIsReferralEqualityNode( LdapSession session ) throws Exception
-    {
-        AttributeType objectClassAT = session.getCoreSession().getDirectoryService().getAtProvider().getObjectClass();
-
-        return new EqualityNode<>( objectClassAT, new Value( objectClassAT, SchemaConstants.REFERRAL_OC ) );
-    }
+    /** The encoded subschema subentry responses */
+    private final SubschemaResponseCache subschemaResponseCache = new SubschemaResponseCache();
 
 
     /**
@@ -293,11 +309,26 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
      */
     private void setTimeLimitsOnCursor( SearchRequest req, LdapSession session,
         final Cursor<Entry> cursor )
+    {
+        long timeLimit = getTimeLimit( req, session );
+
+        if ( timeLimit != Long.MAX_VALUE )
+        {
+            cursor.setClosureMonitor( new SearchTimeLimitingMonitor( timeLimit, TimeUnit.SECONDS ) );
+        }
+    }
+
+
+    /**
+     * Return the time limit of a search, in seconds, Long.MAX_VALUE if the search
+     * is not limited in time
+     */
+    private long getTimeLimit( SearchRequest req, LdapSession session )
     {
         // Don't bother setting time limits for administrators
         if ( session.getCoreSession().isAnAdministrator() && req.getTimeLimit() == NO_TIME_LIMIT )
         {
-            return;
+            return Long.MAX_VALUE;
         }
 
         /*
@@ -307,7 +338,7 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
          */
         if ( ldapServer.getMaxTimeLimit() == NO_TIME_LIMIT && req.getTimeLimit() == NO_TIME_LIMIT )
         {
-            return;
+            return Long.MAX_VALUE;
         }
 
         /*
@@ -317,8 +348,7 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
          */
         if ( req.getTimeLimit() == 0 )
         {
-            cursor.setClosureMonitor( new SearchTimeLimitingMonitor( ldapServer.getMaxTimeLimit(), TimeUnit.SECONDS ) );
-            return;
+            return ldapServer.getMaxTimeLimit();
         }
 
         /*
@@ -328,8 +358,7 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
          */
         if ( ldapServer.getMaxTimeLimit() >= req.getTimeLimit() )
         {
-            cursor.setClosureMonitor( new SearchTimeLimitingMonitor( req.getTimeLimit(), TimeUnit.SECONDS ) );
-            return;
+            return req.getTimeLimit();
         }
 
         /*
@@ -337,7 +366,24 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
          * than what the server's configured maximum limit allows so we limit
          * the search to the configured limit
          */
-        cursor.setClosureMonitor( new SearchTimeLimitingMonitor( ldapServer.getMaxTimeLimit(), TimeUnit.SECONDS ) );
+        return ldapServer.getMaxTimeLimit();
+    }
+
+
+    /**
+     * Return the time at which a search started now reaches its time limit, in
+     * milliseconds, Long.MAX_VALUE if the search is not limited in time
+     */
+    private long getDeadline( SearchRequest req, LdapSession session )
+    {
+        long timeLimit = getTimeLimit( req, session );
+
+        if ( timeLimit == Long.MAX_VALUE )
+        {
+            return Long.MAX_VALUE;
+        }
+
+        return System.currentTimeMillis() + TimeUnit.SECONDS.toMillis( timeLimit );
     }
 
 
@@ -372,47 +418,69 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
 
 
     private void writeResults( LdapSession session, SearchRequest req, LdapResult ldapResult,
-        Cursor<Entry> cursor, long sizeLimit ) throws Exception
+        Cursor<Entry> cursor, long sizeLimit, long schemaVersion ) throws Exception
     {
         long count = 0;
+        long deadline = getDeadline( req, session );
+        Set<Dn> referrals = getReferralsInScope( session, req );
+        SearchResponseBatch batch = newBatch( session );
 
-        while ( ( count < sizeLimit ) && cursor.next() )
+        try
         {
-            // Handle closed session
-            if ( session.getIoSession().isClosing() )
+            while ( ( count < sizeLimit ) && cursor.next() )
             {
-                // The client has closed the connection
-                if ( IS_DEBUG )
+                // Handle closed session
+                if ( session.getIoSession().isClosing() )
                 {
-                    LOG.debug( "Request terminated for message {}, the client has closed the session",
-                        req.getMessageId() );
+                    // The client has closed the connection
+                    if ( IS_DEBUG )
+                    {
+                        LOG.debug( "Request terminated for message {}, the client has closed the session",
+                            req.getMessageId() );
+                    }
+
+                    break;
                 }
 
-                break;
-            }
+                if ( req.isAbandoned() )
+                {
+                    cursor.close( new OperationAbandonedException() );
 
-            if ( req.isAbandoned() )
-            {
-                cursor.close( new OperationAbandonedException() );
+                    // The cursor has been closed by an abandon request.
+                    if ( IS_DEBUG )
+                    {
+                        LOG.debug( "Request terminated by an AbandonRequest for message {}", req.getMessageId() );
+                    }
 
-                // The cursor has been closed by an abandon request.
-                if ( IS_DEBUG )
+                    break;
+                }
+
+                // Don't read the cursor faster than the client reads the results
+                if ( !awaitWriteQueue( session, req, deadline ) )
                 {
-                    LOG.debug( "Request terminated by an AbandonRequest for message {}", req.getMessageId() );
+                    break;
                 }
 
-                break;
-            }
+                Entry entry = cursor.get();
+                referrals.remove( entry.getDn() );
+                writeResponse( session, req, entry, batch, schemaVersion );
 
-            Entry entry = cursor.get();
-            session.getIoSession().write( generateResponse( session, req, entry ) );
+                if ( IS_DEBUG )
+                {
+                    LOG.debug( "Sending {}", entry.getDn() );
+                }
 
-            if ( IS_DEBUG )
-            {
-                LOG.debug( "Sending {}", entry.getDn() );
+                count++;
             }
+        }
+        finally
+        {
+            batch.flush();
+        }
 
-            count++;
+        if ( !req.isAbandoned() && !session.getIoSession().isClosing() )
+        {
+            writeReferrals( session, req, referrals );
         }
 
         // check if the result code is not already set
@@ -435,12 +503,168 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
     }
 
 
+    /**
+     * Gets the referrals located in the scope of a search, the base excepted : a base
+     * which is a referral has already been handled. The filter is not modified to
+     * include the referrals, so the search only returns those which match it, and
+     * the other ones have to be sent as continuation references once the entries have
+     * been returned.
+     *
+     * @return The Dn of the referrals in the search scope, or an empty set if the
+     * ManageDsaIT control is present
+     */
+    private Set<Dn> getReferralsInScope( LdapSession session, SearchRequest req )
+    {
+        Set<Dn> inScope = new HashSet<>();
+
+        if ( req.hasControl( ManageDsaIT.OID ) || ( req.getScope() == SearchScope.OBJECT ) )
+        {
+            return inScope;
+        }
+
+        Dn base = req.getBase();
+        ReferralManager referralManager = session.getCoreSession().getDirectoryService().getReferralManager();
+        referralManager.lockRead();
+
+        try
+        {
+            for ( Entry referral : referralManager.getDescendantReferrals( base ) )
+            {
+                if ( ( req.getScope() == SearchScope.SUBTREE ) || ( referral.getDn().size() == base.size() + 1 ) )
+                {
+                    inScope.add( referral.getDn() );
+                }
+            }
+        }
+        finally
+        {
+            referralManager.unlock();
+        }
+
+        return inScope;
+    }
+
+
+    /**
+     * Writes a continuation reference for each referral in the search scope which
+     * has not been returned by the search cursor.
+     */
+    private void writeReferrals( LdapSession session, SearchRequest req, Set<Dn> referrals ) throws Exception
+    {
+        if ( referrals.isEmpty() )
+        {
+            return;
+        }
+
+        SearchResponseBatch batch = newBatch( session );
+
+        try
+        {
+            for ( Dn dn : referrals )
+            {
+                Entry referral;
+
+                try
+                {
+                    // Read the referral through the core session, so that the access controls are applied
+                    referral = session.getCoreSession().lookup( dn, SchemaConstants.REF_AT );
+                }
+                catch ( LdapException le )
+                {
+                    // The referral has been deleted, or the user is not allowed to read it
+                    if ( IS_DEBUG )
+                    {
+                        LOG.debug( "Not sending the referral {} : {}", dn, le.getMessage() );
+                    }
+
+                    continue;
+                }
+
+                if ( ( referral != null ) && referral.containsAttribute( SchemaConstants.REF_AT ) )
+                {
+                    batch.write( generateResponse( session, req, referral ) );
+                }
+            }
+        }
+        finally
+        {
+            batch.flush();
+        }
+    }
+
+
+    /**
+     * Writes the response for an entry. The subschema subentry, which is huge and often
+     * read, is not encoded again if it has already been returned with the same attributes.
+     */
+    private void writeResponse( LdapSession session, SearchRequest req, Entry entry, SearchResponseBatch batch,
+        long schemaVersion ) throws Exception
+    {
+        Response response = generateResponse( session, req, entry );
+        ByteBuffer[] encoded = subschemaResponseCache.getEncodedResponse( ldapServer.getDirectoryService(),
+            ldapServer.getDirectoryService().getLdapCodecService(), req, response, schemaVersion );
+
+        if ( encoded != null )
+        {
+            batch.write( encoded );
+        }
+        else
+        {
+            batch.write( response );
+        }
+    }
+
+
+    /**
+     * Gets the schema version, which has to be read before the search is done
+     * for the subschema subentry responses to be cached.
+     */
+    private long getSchemaVersion( LdapSession session )
+    {
+        return subschemaResponseCache.getSchemaVersion( session.getCoreSession().getDirectoryService() );
+    }
+
+
+    /**
+     * Creates the batch used to write the entries of a search to the client
+     */
+    private SearchResponseBatch newBatch( LdapSession session )
+    {
+        return new SearchResponseBatch( session.getIoSession(), ldapServer.getDirectoryService().getLdapCodecService(),
+            ldapServer.getSearchResponseBatchSize() );
+    }
+
+
+    /**
+     * Suspends the search while too many results are waiting to be written to the client.
+     *
+     * @return <code>false</code> if the session has been closed or the request abandoned
+     * @throws LdapTimeLimitExceededException If the search time limit has been reached while waiting
+     */
+    private boolean awaitWriteQueue( LdapSession session, SearchRequest req, long deadline ) throws Exception
+    {
+        if ( session.awaitWriteQueue( req, ldapServer.getWriteQueueHighWatermark(),
+            ldapServer.getWriteQueueLowWatermark(), deadline, ldapServer.getWriteQueueMaxWait() ) )
+        {
+            return true;
+        }
+
+        if ( !session.getIoSession().isClosing() && !req.isAbandoned() && ( System.currentTimeMillis() >= deadline ) )
+        {
+            throw new LdapTimeLimitExceededException();
+        }
+
+        return false;
+    }
+
+
     private void readPagedResults( LdapSession session, SearchRequest req, LdapResult ldapResult,
         Cursor<Entry> cursor, long sizeLimit, int pagedLimit, PagedSearchContext pagedContext,
         PagedResults pagedResultsControl ) throws Exception
     {
         req.addAbandonListener( new SearchAbandonListener( ldapServer, cursor ) );
         setTimeLimitsOnCursor( req, session, cursor );
+        long deadline = getDeadline( req, session );
 
         if ( IS_DEBUG )
         {
@@ -452,17 +676,28 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
         int count = pagedContext.getCurrentPosition();
         int pageCount = 0;
 
-        while ( ( count < sizeLimit ) && ( pageCount < pagedLimit ) && cursor.next() )
+        SearchResponseBatch batch = newBatch( session );
+
+        try
         {
-            if ( session.getIoSession().isClosing() )
+            while ( ( count < sizeLimit ) && ( pageCount < pagedLimit ) && cursor.next() )
             {
-                break;
-            }
+                if ( session.getIoSession().isClosing() || !awaitWriteQueue( session, req, deadline ) )
+                {
+                    break;
+                }
 
-            Entry entry = cursor.get();
-            session.getIoSession().write( generateResponse( session, req, entry ) );
-            count++;
-            pageCount++;
+                Entry entry = cursor.get();
+                pagedContext.getReferrals().remove( entry.getDn() );
+                pagedContext.setLastDn( entry.getDn().getNormName() );
+                batch.write( generateResponse( session, req, entry ) );
+                count++;
+                pageCount++;
+            }
+        }
+        finally
+        {
+            batch.flush();
         }
 
         // DO NOT WRITE THE RESPONSE - JUST RETURN IT
@@ -481,20 +716,13 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
         {
             // That means we don't have anymore entry
             // If we are here, it means we have returned all the entries
-            // We have to remove the cookie from the session
-            cookieValue = pagedContext.getCookieValue();
-            PagedSearchContext psCookie = session.removePagedSearchContext( cookieValue );
-
-            // Close the cursor if there is one
-            if ( psCookie != null )
-            {
-                cursor = psCookie.getCursor();
+            // We still have to return the referrals the cursor has not returned
+            writeReferrals( session, req, pagedContext.getReferrals() );
 
-                if ( cursor != null )
-                {
-                    cursor.close();
-                }
-            }
+            // We have to remove the cookie from the session, and close the cursor
+            cookieValue = pagedContext.getCookieValue();
+            session.removePagedSearchContext( cookieValue );
+            session.closePagedSearchCursor( pagedContext );
 
             pagedResultsControl = new PagedResultsImpl();
             pagedResultsControl.setCritical( true );
@@ -512,17 +740,18 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
                 ldapResult.setResultCode( ResultCodeEnum.SUCCESS );
                 req.getResultResponse().addControl( pagedResultsControl );
 
-                // Stores the cursor current position
+                // Stores the cursor current position, and keep the cursor open
+                // if the client is likely to ask for the next page soon
                 pagedContext.incrementCurrentPosition( pageCount );
+                ldapServer.getPagedSearchCursors().release( pagedContext );
             }
             else
             {
                 // Return an exception, close the cursor, and clean the session
                 ldapResult.setResultCode( ResultCodeEnum.SIZE_LIMIT_EXCEEDED );
 
-                cursor.close();
-
-                session.removePagedSearchContext( cookieValue );
+                session.removePagedSearchContext( pagedContext.getCookieValue() );
+                session.closePagedSearchCursor( pagedContext );
             }
         }
     }
@@ -543,16 +772,15 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
             // cursor stored into the session (if any)
             int cookieValue = pagedSearchControl.getCookieValue();
             PagedSearchContext psCookie = session.removePagedSearchContext( cookieValue );
-            pagedSearchControl.setCookie( psCookie.getCookie() );
             pagedSearchControl.setSize( 0 );
             pagedSearchControl.setCritical( true );
 
-            // Close the cursor
-            Cursor<Entry> cursor = psCookie.getCursor();
-
-            if ( cursor != null )
+            if ( psCookie != null )
             {
-                cursor.close();
+                pagedSearchControl.setCookie( psCookie.getCookie() );
+
+                // Close the cursor
+                session.closePagedSearchCursor( psCookie );
             }
         }
         else
@@ -587,6 +815,41 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
     }
 
 
+    /**
+     * Searches again the entries of a paged search whose cursor has been closed, and moves
+     * the new cursor after the last returned entry. The entries are skipped until this
+     * entry is found, or until as many entries as already returned have been skipped, if
+     * it has been deleted or if some entries have been added before it.
+     */
+    private Cursor<Entry> seekPagedSearch( LdapSession session, SearchRequest req, PagedSearchContext pagedContext )
+        throws Exception
+    {
+        Cursor<Entry> cursor = session.getCoreSession().search( req );
+        cursor.beforeFirst();
+
+        String lastDn = pagedContext.getLastDn();
+        int position = pagedContext.getCurrentPosition();
+        int skipped = 0;
+
+        if ( IS_DEBUG )
+        {
+            LOG.debug( "Searching again the paged search {}, skipping up to {}", pagedContext, lastDn );
+        }
+
+        while ( ( skipped < position ) && cursor.next() )
+        {
+            skipped++;
+
+            if ( cursor.get().getDn().getNormName().equals( lastDn ) )
+            {
+                break;
+            }
+        }
+
+        return cursor;
+    }
+
+
     /**
      * Handle a Paged Search request.
      */
@@ -635,6 +898,7 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
         if ( Strings.isEmpty( cookie ) )
         {
             // No cursor : do a search.
+            long schemaVersion = getSchemaVersion( session );
             cursor = session.getCoreSession().search( req );
 
             // Position the cursor at the beginning
@@ -649,7 +913,7 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
                 try
                 {
                     // And write the entries
-                    writeResults( session, req, ldapResult, cursor, sizeLimit );
+                    writeResults( session, req, ldapResult, cursor, sizeLimit, schemaVersion );
                 }
                 finally
                 {
@@ -672,6 +936,7 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
             {
                 // Case 2 : create the context
                 pagedContext = new PagedSearchContext( req );
+                pagedContext.setReferrals( getReferralsInScope( session, req ) );
 
                 session.addPagedSearchContext( pagedContext );
                 cookie = pagedContext.getCookie();
@@ -679,9 +944,6 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
                 pagedResultsControl.setCookie( cookie );
                 pagedResultsControl.setSize( 0 );
                 pagedResultsControl.setCritical( true );
-
-                // And stores the cursor into the session
-                pagedContext.setCursor( cursor );
             }
         }
         else
@@ -703,8 +965,13 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
 
             if ( pagedContext.hasSameRequest( req, session ) )
             {
-                // Case 3 : continue the search
-                cursor = pagedContext.getCursor();
+                // Case 3 : continue the search, searching again if the cursor has been closed
+                cursor = ldapServer.getPagedSearchCursors().acquire( pagedContext );
+
+                if ( cursor == null )
+                {
+                    cursor = seekPagedSearch( session, req, pagedContext );
+                }
 
                 // get the cookie
                 cookie = pagedContext.getCookie();
@@ -717,16 +984,15 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
             else
             {
                 // case 2 : create a new cursor
-                // We have to close the cursor
-                cursor = pagedContext.getCursor();
-
-                if ( cursor != null )
-                {
-                    cursor.close();
-                }
+                // We have to close the cursor, and remove the context
+                session.removePagedSearchContext( cookieValue );
+                session.closePagedSearchCursor( pagedContext );
+                cursor = session.getCoreSession().search( req );
+                cursor.beforeFirst();
 
                 // Now create a new context and stores it into the session
                 pagedContext = new PagedSearchContext( req );
+                pagedContext.setReferrals( getReferralsInScope( session, req ) );
 
                 session.addPagedSearchContext( pagedContext );
 
@@ -743,6 +1009,9 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
          * Iterate through all search results building and sending back responses
          * for each search result returned.
          */
+        // The cursor is stored into the context
+        pagedContext.setCursor( cursor );
+
         try
         {
             readPagedResults( session, req, ldapResult, cursor, sizeLimit, pagedLimit, pagedContext,
@@ -750,20 +1019,453 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
         }
         catch ( Exception e )
         {
-            if ( cursor != null )
+            session.closePagedSearchCursor( pagedContext );
+        }
+
+        return ( SearchResultDone ) req.getResultResponse();
+    }
+
+
+    /**
+     * Handles a search request containing a Virtual List View control. The entries are
+     * read and sorted once, when the view is created, into a {@link VirtualListViewContext}
+     * stored in the session. The following requests of the view only resolve the target
+     * position into this context, and read the entries of the requested window.
+     */
+    private SearchResultDone doVirtualListViewSearch( LdapSession session, SearchRequest req,
+        VirtualListViewRequest vlvControl ) throws Exception
+    {
+        SearchResultDone done = ( SearchResultDone ) req.getResultResponse();
+        LdapResult ldapResult = done.getLdapResult();
+        VirtualListViewResponse vlvResponse = new VirtualListViewResponseImpl();
+        done.addControl( vlvResponse );
+
+        SortRequest sortControl = ( SortRequest ) req.getControls().get( SortRequest.OID );
+
+        if ( sortControl == null )
+        {
+            // A VLV is a window on a sorted list of entries
+            vlvResponse.setVirtualListViewResult( VirtualListViewResultCode.SORTCONTROLMISSING );
+            ldapResult.setResultCode( ResultCodeEnum.UNWILLING_TO_PERFORM );
+            ldapResult.setDiagnosticMessage( I18n.err( I18n.ERR_38036_VLV_WITHOUT_SORT_CONTROL ) );
+
+            return done;
+        }
+
+        SortResponse sortResponse = new SortResponseImpl();
+        done.addControl( sortResponse );
+
+        // Only one sort key is supported, like for the sorted searches
+        SchemaManager schemaManager = session.getCoreSession().getDirectoryService().getSchemaManager();
+        SortKey sortKey = sortControl.getSortKeys().get( 0 );
+        AttributeType attributeType = schemaManager.getAttributeType( sortKey.getAttributeTypeDesc() );
+        LdapComparator<Object> comparator = getSortComparator( schemaManager, attributeType, sortKey );
+
+        if ( ( sortControl.getSortKeys().size() > 1 ) || ( comparator == null ) )
+        {
+            sortResponse.setSortResult( ( attributeType == null ) ? SortResultCode.NOSUCHATTRIBUTE
+                : SortResultCode.UNWILLINGTOPERFORM );
+            sortResponse.setAttributeName( sortKey.getAttributeTypeDesc() );
+            vlvResponse.setVirtualListViewResult( VirtualListViewResultCode.UNWILLINGTOPERFORM );
+            ldapResult.setResultCode( ResultCodeEnum.UNWILLING_TO_PERFORM );
+            ldapResult.setDiagnosticMessage( I18n.err( I18n.ERR_38037_VLV_CANNOT_SORT, sortControl ) );
+
+            return done;
+        }
+
+        if ( !req.getBase().isSchemaAware() )
+        {
+            req.setBase( new Dn( schemaManager, req.getBase() ) );
+        }
+
+        VirtualListViewContext context = getVirtualListViewContext( session, req, vlvControl, sortKey,
+            attributeType );
+
+        if ( context == null )
+        {
+            context = new VirtualListViewContext( req.getMessageId(), req, sortKey, attributeType, comparator );
+
+            if ( !readVirtualListView( session, req, context ) )
             {
-                try
+                sortResponse.setSortResult( SortResultCode.ADMINLIMITEXCEEDED );
+                vlvResponse.setVirtualListViewResult( VirtualListViewResultCode.ADMINLIMITEXCEEDED );
+                ldapResult.setResultCode( ResultCodeEnum.ADMIN_LIMIT_EXCEEDED );
+
+                return done;
+            }
+
+            session.addVirtualListViewContext( context );
+        }
+
+        sortResponse.setSortResult( SortResultCode.SUCCESS );
+        int contentCount = context.getContentCount();
+        int target;
+
+        if ( vlvControl.hasAssertionValue() )
+        {
+            try
+            {
+                target = context.find( getAssertionValue( attributeType, vlvControl.getAssertionValue() ) );
+            }
+            catch ( LdapInvalidAttributeValueException liave )
+            {
+                vlvResponse.setVirtualListViewResult( VirtualListViewResultCode.INAPPROPRIATEMATCHING );
+                ldapResult.setResultCode( ResultCodeEnum.INAPPROPRIATE_MATCHING );
+                ldapResult.setDiagnosticMessage( liave.getMessage() );
+
+                return done;
+            }
+        }
+        else if ( ( vlvControl.getOffset() < 1 ) || ( vlvControl.getContentCount() < 0 ) )
+        {
+            vlvResponse.setVirtualListViewResult( VirtualListViewResultCode.OFFSETRANGEERROR );
+            ldapResult.setResultCode( ResultCodeEnum.UNWILLING_TO_PERFORM );
+            ldapResult.setDiagnosticMessage( I18n.err( I18n.ERR_38038_VLV_OFFSET_RANGE, vlvControl.getOffset(),
+                vlvControl.getContentCount() ) );
+
+            return done;
+        }
+        else
+        {
+            target = getVirtualListViewOffset( vlvControl.getOffset(), vlvControl.getContentCount(), contentCount );
+        }
+
+        // The window around the target, which may be past the last entry
+        int first = Math.max( 1, target - vlvControl.getBeforeCount() );
+        long last = Math.min( contentCount, ( long ) target + vlvControl.getAfterCount() );
+        long sizeLimit = min( req.getSizeLimit() == 0L ? Long.MAX_VALUE : req.getSizeLimit(),
+            getServerSizeLimit( session, req ) );
+
+        if ( last - first + 1 > sizeLimit )
+        {
+            last = first + sizeLimit - 1;
+            ldapResult.setResultCode( ResultCodeEnum.SIZE_LIMIT_EXCEEDED );
+        }
+
+        writeVirtualListView( session, req, context, first, ( int ) last );
+
+        if ( ldapResult.getResultCode() == null )
+        {
+            ldapResult.setResultCode( ResultCodeEnum.SUCCESS );
+        }
+
+        vlvResponse.setTargetPosition( target );
+        vlvResponse.setContentCount( contentCount );
+        vlvResponse.setContextId( context.getContextIdBytes() );
+        vlvResponse.setVirtualListViewResult( VirtualListViewResultCode.SUCCESS );
+
+        return done;
+    }
+
+
+    /**
+     * Gets the comparator used to sort the entries, the one of the sort key matching
+     * rule, or of the attribute ordering matching rule, or of its equality matching rule.
+     *
+     * @return The comparator, or null if the entries can't be sorted
+     */
+    @SuppressWarnings("unchecked")
+    private LdapComparator<Object> getSortComparator( SchemaManager schemaManager, AttributeType attributeType,
+        SortKey sortKey )
+    {
+        if ( attributeType == null )
+        {
+            return null;
+        }
+
+        String mrOid = sortKey.getMatchingRuleId();
+
+        if ( mrOid == null )
+        {
+            MatchingRule mr = attributeType.getOrdering();
+
+            if ( mr == null )
+            {
+                mr = attributeType.getEquality();
+            }
+
+            if ( mr == null )
+            {
+                return null;
+            }
+
+            mrOid = mr.getOid();
+        }
+
+        try
+        {
+            LdapComparator<Object> comparator = ( LdapComparator<Object> ) schemaManager
+                .lookupComparatorRegistry( mrOid );
+            comparator.setSchemaManager( schemaManager );
+
+            return comparator;
+        }
+        catch ( LdapException le )
+        {
+            return null;
+        }
+    }
+
+
+    /**
+     * Gets the context of a VLV from the session, if the client has sent back its
+     * identifier, and the request is still moving in the same list of entries
+     */
+    private VirtualListViewContext getVirtualListViewContext( LdapSession session, SearchRequest req,
+        VirtualListViewRequest vlvControl, SortKey sortKey, AttributeType attributeType )
+    {
+        byte[] contextId = vlvControl.getContextId();
+
+        if ( Strings.isEmpty( contextId ) )
+        {
+            return null;
+        }
+
+        try
+        {
+            VirtualListViewContext context = session.getVirtualListViewContext( IntegerDecoder.parse(
+                new BerValue( contextId ) ) );
+
+            if ( ( context != null ) && context.hasSameRequest( req, sortKey, attributeType ) )
+            {
+                return context;
+            }
+        }
+        catch ( IntegerDecoderException ide )
+        {
+            // Not one of our context identifiers : create a new context
+            LOG.debug( "Invalid VLV context identifier {}", Strings.dumpBytes( contextId ) );
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Reads the sort keys of all the entries of a VLV.
+     *
+     * @return <code>false</code> if the entries are more than the server size limit
+     */
+    private boolean readVirtualListView( LdapSession session, SearchRequest req, VirtualListViewContext context )
+        throws Exception
+    {
+        // Only the sort attribute is read
+        SearchRequest keysRequest = new SearchRequestImpl();
+        keysRequest.setMessageId( req.getMessageId() );
+        keysRequest.setBase( req.getBase() );
+        keysRequest.setScope( req.getScope() );
+        keysRequest.setDerefAliases( req.getDerefAliases() );
+        keysRequest.setFilter( req.getFilter() );
+        keysRequest.setTimeLimit( req.getTimeLimit() );
+        keysRequest.addAttributes( context.getAttributeType().getOid(), SchemaConstants.ENTRY_UUID_AT );
+        keysRequest.addControl( new ManageDsaITImpl() );
+
+        // The hard limit applies to everyone, as the keys are kept in the session
+        long maxCount = ldapServer.getVirtualListViewMaxSize();
+
+        if ( !session.getCoreSession().isAnAdministrator() && ( ldapServer.getMaxSizeLimit() != NO_SIZE_LIMIT ) )
+        {
+            maxCount = min( maxCount, ldapServer.getMaxSizeLimit() );
+        }
+
+        Cursor<Entry> cursor = session.getCoreSession().search( keysRequest );
+
+        try
+        {
+            req.addAbandonListener( new SearchAbandonListener( ldapServer, cursor ) );
+            setTimeLimitsOnCursor( req, session, cursor );
+            cursor.beforeFirst();
+            long count = 0;
+
+            while ( cursor.next() )
+            {
+                if ( count >= maxCount )
                 {
-                    cursor.close();
+                    return false;
                 }
-                catch ( Exception ne )
+
+                context.add( cursor.get() );
+                count++;
+            }
+        }
+        finally
+        {
+            try
+            {
+                cursor.close();
+            }
+            catch ( Exception e )
+            {
+                LOG.error( I18n.err( I18n.ERR_38007_FAILED_ON_LIST_CLOSE ), e );
+            }
+        }
+
+        context.sort();
+
+        return true;
+    }
+
+
+    /**
+     * Creates the value the VLV entries keys are compared to
+     */
+    private Value getAssertionValue( AttributeType attributeType, byte[] assertionValue )
+        throws LdapInvalidAttributeValueException
+    {
+        if ( attributeType.getSyntax().isHumanReadable() )
+        {
+            return new Value( attributeType, Strings.utf8ToString( assertionValue ) );
+        }
+        else
+        {
+            return new Value( attributeType, assertionValue );
+        }
+    }
+
+
+    /**
+     * Computes the position of the target entry of a VLV from the offset sent by the
+     * client. If the client's estimate of the number of entries is not the server one,
+     * the offset is scaled, so that the target is at the same relative position in the
+     * list.
+     *
+     * @return The target position, starting at 1, or the number of entries plus one if
+     * the target is after the last entry
+     */
+    private int getVirtualListViewOffset( int offset, int clientCount, int contentCount )
+    {
+        if ( ( clientCount == 0 ) || ( clientCount == contentCount ) )
+        {
+            return Math.min( offset, contentCount + 1 );
+        }
+
+        if ( offset >= clientCount )
+        {
+            // The last entry, or after it
+            return ( offset == clientCount ) ? Math.max( 1, contentCount ) : contentCount + 1;
+        }
+
+        return ( int ) Math.max( 1L, Math.round( ( double ) offset * contentCount / clientCount ) );
+    }
+
+
+    /**
+     * Writes the entries of a VLV window. The entries are read again, with the requested
+     * attributes, by a search selecting them by their entryUUID, and checked against the
+     * filter, so that the entries which have been deleted, moved or modified since the list
+     * was sorted are skipped. The window is read by chunks of {@link #VLV_READ_CHUNK_SIZE}
+     * entries, each read with a single search.
+     */
+    private void writeVirtualListView( LdapSession session, SearchRequest req, VirtualListViewContext context,
+        int first, int last ) throws Exception
+    {
+        long schemaVersion = getSchemaVersion( session );
+        long deadline = getDeadline( req, session );
+        SearchResponseBatch batch = newBatch( session );
+
+        try
+        {
+            for ( int chunk = first; ( chunk <= last ) && !req.isAbandoned(); chunk += VLV_READ_CHUNK_SIZE )
+            {
+                int chunkLast = ( int ) min( last, ( long ) chunk + VLV_READ_CHUNK_SIZE - 1 );
+                Map<String, Entry> entries = readVirtualListViewChunk( session, req, context, chunk, chunkLast );
+
+                // The entries are found in any order, they are written in the list order
+                for ( int position = chunk; ( position <= chunkLast ) && !req.isAbandoned(); position++ )
                 {
-                    LOG.error( I18n.err( I18n.ERR_38007_FAILED_ON_LIST_CLOSE ), ne );
+                    Entry entry = entries.get( context.getDn( position ).getNormName() );
+
+                    if ( entry == null )
+                    {
+                        // The entry has been deleted, moved, or is not readable anymore
+                        if ( IS_DEBUG )
+                        {
+                            LOG.debug( "Not sending the entry {}", context.getDn( position ) );
+                        }
+
+                        continue;
+                    }
+
+                    if ( !awaitWriteQueue( session, req, deadline ) )
+                    {
+                        return;
+                    }
+
+                    writeResponse( session, req, entry, batch, schemaVersion );
                 }
             }
         }
+        finally
+        {
+            batch.flush();
+        }
+    }
 
-        return ( SearchResultDone ) req.getResultResponse();
+
+    /**
+     * Reads the entries of a part of a VLV window with a single search, the original
+     * filter being restricted to the entryUUIDs of these entries
+     *
+     * @return The found entries, per normalized Dn
+     */
+    private Map<String, Entry> readVirtualListViewChunk( LdapSession session, SearchRequest req,
+        VirtualListViewContext context, int first, int last ) throws Exception
+    {
+        List<ExprNode> uuidNodes = new ArrayList<>();
+
+        for ( int position = first; position <= last; position++ )
+        {
+            String uuid = context.getEntryUuid( position );
+
+            if ( uuid != null )
+            {
+                uuidNodes.add( new EqualityNode<String>( SchemaConstants.ENTRY_UUID_AT, uuid ) );
+            }
+        }
+
+        Map<String, Entry> entries = new HashMap<>();
+
+        if ( uuidNodes.isEmpty() )
+        {
+            return entries;
+        }
+
+        SearchRequest chunkRequest = new SearchRequestImpl();
+        chunkRequest.setMessageId( req.getMessageId() );
+        chunkRequest.setBase( req.getBase() );
+        chunkRequest.setScope( req.getScope() );
+        chunkRequest.setDerefAliases( req.getDerefAliases() );
+        chunkRequest.setFilter( new AndNode( req.getFilter(), new OrNode( uuidNodes ) ) );
+        chunkRequest.setTypesOnly( req.getTypesOnly() );
+        chunkRequest.addAttributes( req.getAttributes().toArray( new String[0] ) );
+        chunkRequest.addControl( new ManageDsaITImpl() );
+
+        Cursor<Entry> cursor = session.getCoreSession().search( chunkRequest );
+
+        try
+        {
+            setTimeLimitsOnCursor( req, session, cursor );
+            cursor.beforeFirst();
+
+            while ( cursor.next() )
+            {
+                Entry entry = cursor.get();
+                entries.put( entry.getDn().getNormName(), entry );
+            }
+        }
+        finally
+        {
+            try
+            {
+                cursor.close();
+            }
+            catch ( Exception e )
+            {
+                LOG.error( I18n.err( I18n.ERR_38007_FAILED_ON_LIST_CLOSE ), e );
+            }
+        }
+
+        return entries;
     }
 
 
@@ -782,6 +1484,15 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
     {
         LdapResult ldapResult = req.getResultResponse().getLdapResult();
 
+        // Check if we are using the Virtual List View Control
+        VirtualListViewRequest vlvControl = ( VirtualListViewRequest ) req.getControls().get(
+            VirtualListViewRequest.OID );
+
+        if ( vlvControl != null )
+        {
+            return doVirtualListViewSearch( session, req, vlvControl );
+        }
+
         // Check if we are using the Paged Search Control
         Object control = req.getControls().get( PagedResults.OID );
 
@@ -794,6 +1505,7 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
         // A normal search
         // Check that we have a cursor or not.
         // No cursor : do a search.
+        long schemaVersion = getSchemaVersion( session );
         Cursor<Entry> cursor = session.getCoreSession().search( req );
 
         // register the request in the session
@@ -824,7 +1536,7 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
 
             long sizeLimit = min( requestLimit, serverLimit );
 
-            writeResults( session, req, ldapResult, cursor, sizeLimit );
+            writeResults( session, req, ldapResult, cursor, sizeLimit, schemaVersion );
         }
         finally
         {
@@ -930,81 +1642,6 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
     }
 
 
-    /**
-     * Alters the filter expression based on the presence of the
-     * ManageDsaIT decorator.  If the decorator is not present, the search
-     * filter will be altered to become a disjunction with two terms.
-     * The first term is the original filter.  The second term is a
-     * (objectClass=referral) assertion.  When OR'd together these will
-     * make sure we get all referrals so we can process continuations
-     * properly without having the filter remove them from the result
-     * set.
-     *
-     * NOTE: original filter is first since most entries are not referrals
-     * so it has a higher probability on average of accepting and shorting
-     * evaluation before having to waste cycles trying to evaluate if the
-     * entry is a referral.
-     *
-     * @param session the session to use to construct the filter (schema access)
-     * @param req the request to get the original filter from
-     * @throws Exception if there are schema access problems
-     */
-    private void modifyFilter( LdapSession session, SearchRequest req ) throws Exception
-    {
-        if ( req.hasControl( ManageDsaIT.OID ) )
-        {
-            return;
-        }
-
-        /*
-         * Most of the time the search filter is just (objectClass=*) and if
-         * this is the case then there's no reason at all to OR this with an
-         * (objectClass=referral).  If we detect this case then we leave it
-         * as is to represent the OR condition:
-         *
-         *  (| (objectClass=referral)(objectClass=*)) == (objectClass=*)
-         */
-        if ( req.getFilter() instanceof PresenceNode )
-        {
-            PresenceNode presenceNode = ( PresenceNode ) req.getFilter();
-
-            if ( presenceNode.isSchemaAware() )
-            {
-                AttributeType attributeType = presenceNode.getAttributeType();
-
-                AttributeType objectClassAT = session.getCoreSession().getDirectoryService().getAtProvider().getObjectClass();
-                if ( attributeType.equals( objectClassAT ) )
-                {
-                    return;
-                }
-            }
-            else
-            {
-                String attribute = presenceNode.getAttribute();
-
-                if ( attribute.equalsIgnoreCase( SchemaConstants.OBJECT_CLASS_AT )
-                    || attribute.equalsIgnoreCase( SchemaConstants.OBJECT_CLASS_AT_OID ) )
-                {
-                    return;
-                }
-            }
-        }
-
-        /*
-         * Do not add the OR'd (objectClass=referral) expression if the user
-         * searches for the subSchemaSubEntry as the SchemaIntercepter can't
-         * handle an OR'd filter.
-         */
-        if ( isSubSchemaSubEntrySearch( session, req ) )
-        {
-            return;
-        }
-
-        // using varags to add two expressions to an OR node
-        req.setFilter( new OrNode( req.getFilter(), newIsReferralEqualityNode( session ) ) );
-    }
-
-
     /**
      * Handles the RootDSE and lookups searches
      */
@@ -1109,9 +1746,6 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
                 return;
             }
 
-            // modify the filter to affect continuation support
-            modifyFilter( session, req );
-
             // ===============================================================
             // Handle psearch differently
             // ===============================================================
@@ -1403,43 +2037,6 @@ public class SearchRequestHandler extends LdapRequestHandler<SearchRequest>
     }
 
 
-    /**
-     * <p>
-     * Determines if a search request is a subSchemaSubEntry search.
-     * </p>
-     * <p>
-     * It is a schema search if:
-     * - the base Dn is the Dn of the subSchemaSubEntry of the root DSE
-     * - and the scope is BASE OBJECT
-     * - and the filter is (objectClass=subschema)
-     * (RFC 4512, 4.4,)
-     * </p>
-     * <p>
-     * However in this method we only check the first condition to avoid
-     * performance issues.
-     * </p>
-     *
-     * @param session the LDAP session
-     * @param req the request issued
-     *
-     * @return true if the search is on the subSchemaSubEntry, false otherwise
-     *
-     * @throws Exception the exception
-     */
-    private boolean isSubSchemaSubEntrySearch( LdapSession session, SearchRequest req ) throws Exception
-    {
-        Dn base = req.getBase();
-
-        DirectoryService ds = session.getCoreSession().getDirectoryService();
-        PartitionNexus nexus = ds.getPartitionNexus();
-
-        Value subschemaSubentry = nexus.getRootDseValue( ds.getAtProvider().getSubschemaSubentry() );
-        Dn subschemaSubentryDn = ds.getDnFactory().create( subschemaSubentry.getString() );
-
-        return subschemaSubentryDn.equals( base );
-    }
-
-
     /**
      * Handles processing with referrals without ManageDsaIT decorator and with
      * an ancestor that is a referral.  The original entry was not found and
@@ -0,0 +1,282 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.handlers.request;
+
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.directory.api.asn1.EncoderException;
+import org.apache.directory.api.asn1.util.Asn1Buffer;
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.codec.api.LdapEncoder;
+import org.apache.directory.api.ldap.model.message.Response;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.session.IoSession;
+
+
+/**
+ * Encodes the responses of a search and writes them to the client in large
+ * buffers, instead of one buffer - and one write request - per response.
+ * The buffers are flushed when they are full, when the first response they
+ * contain has been waiting for more than {@link #MAX_DELAY}, and when the batch
+ * is completed, which must happen before the SearchResultDone is written.
+ * <p>
+ * The buffers are direct buffers, returned to a shared pool once they have been
+ * written to the socket.
+ * <p>
+ * This class is not thread safe : a batch is used by the single thread
+ * processing a search request.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+class SearchResponseBatch
+{
+    /** The maximum time a response waits in a buffer for the next ones, in nanoseconds (50ms) */
+    static final long MAX_DELAY = TimeUnit.MILLISECONDS.toNanos( 50L );
+
+    /** The maximum number of buffers kept in the pool */
+    private static final int MAX_POOLED_BUFFERS = 64;
+
+    /** The buffers which have been written and can be reused */
+    private static final Queue<IoBuffer> POOL = new ConcurrentLinkedQueue<>();
+
+    /** The number of buffers in the pool */
+    private static final AtomicInteger POOL_SIZE = new AtomicInteger();
+
+    /** The buffer used to encode the responses, one per thread */
+    private static final ThreadLocal<Asn1Buffer> ASN1_BUFFER = ThreadLocal.withInitial( Asn1Buffer::new );
+
+    /** The session the responses are written to */
+    private final IoSession ioSession;
+
+    /** The codec used to encode the responses */
+    private final LdapApiService codec;
+
+    /** The size of the buffers. 0 means responses are written one by one */
+    private final int bufferSize;
+
+    /** The buffer being filled */
+    private IoBuffer buffer;
+
+    /** The time the first response of the buffer being filled has been added at */
+    private long bufferStart;
+
+
+    /**
+     * Creates a new SearchResponseBatch
+     *
+     * @param ioSession The session the responses are written to
+     * @param codec The codec used to encode the responses
+     * @param bufferSize The size of the buffers. If 0, or if there is no codec, the responses are not batched
+     */
+    SearchResponseBatch( IoSession ioSession, LdapApiService codec, int bufferSize )
+    {
+        this.ioSession = ioSession;
+        this.codec = codec;
+        this.bufferSize = ( codec == null ) ? 0 : bufferSize;
+    }
+
+
+    /**
+     * Adds a response to the batch, writing the current buffer if it is full.
+     *
+     * @param response The response to write
+     * @throws EncoderException If the response can't be encoded
+     */
+    void write( Response response ) throws EncoderException
+    {
+        if ( bufferSize <= 0 )
+        {
+            ioSession.write( response );
+
+            return;
+        }
+
+        ByteBuffer encoded = encode( response );
+
+        if ( ( buffer != null ) && ( buffer.remaining() < encoded.remaining() ) )
+        {
+            flush();
+        }
+
+        if ( buffer == null )
+        {
+            buffer = acquire( encoded.remaining() );
+        }
+
+        buffer.put( encoded );
+
+        if ( !buffer.hasRemaining() || expired() )
+        {
+            flush();
+        }
+    }
+
+
+    /**
+     * Adds an already encoded response to the batch. A response which is larger than
+     * the buffers is copied in a buffer of its own, so that its parts are written at
+     * once : nothing else written to the session can come in between.
+     *
+     * @param encoded The encoded response, in one or more parts
+     */
+    void write( ByteBuffer... encoded )
+    {
+        int length = 0;
+
+        for ( ByteBuffer part : encoded )
+        {
+            length += part.remaining();
+        }
+
+        if ( ( buffer != null ) && ( buffer.remaining() >= length ) )
+        {
+            for ( ByteBuffer part : encoded )
+            {
+                buffer.put( part );
+            }
+
+            if ( expired() )
+            {
+                flush();
+            }
+
+            return;
+        }
+
+        flush();
+        buffer = acquire( length );
+
+        for ( ByteBuffer part : encoded )
+        {
+            buffer.put( part );
+        }
+
+        if ( ( bufferSize <= 0 ) || !buffer.hasRemaining() )
+        {
+            flush();
+        }
+    }
+
+
+    /**
+     * Writes the responses which have been added to the batch and not yet written
+     */
+    void flush()
+    {
+        if ( buffer == null )
+        {
+            return;
+        }
+
+        IoBuffer written = buffer;
+        buffer = null;
+
+        if ( written.position() == 0 )
+        {
+            release( written );
+
+            return;
+        }
+
+        written.flip();
+        ioSession.write( written ).addListener( future -> release( written ) );
+    }
+
+
+    /**
+     * Tells if the first response of the current buffer has been waiting for too long
+     */
+    private boolean expired()
+    {
+        return System.nanoTime() - bufferStart > MAX_DELAY;
+    }
+
+
+    private ByteBuffer encode( Response response ) throws EncoderException
+    {
+        Asn1Buffer asn1Buffer = ASN1_BUFFER.get();
+
+        try
+        {
+            LdapEncoder.encodeMessage( asn1Buffer, codec, response );
+
+            return asn1Buffer.getBytes();
+        }
+        finally
+        {
+            asn1Buffer.clear();
+        }
+    }
+
+
+    /**
+     * Gets a buffer from the pool, or allocates one if the pool is empty or
+     * the response is larger than the pooled buffers
+     */
+    private IoBuffer acquire( int minSize )
+    {
+        bufferStart = System.nanoTime();
+
+        if ( minSize > bufferSize )
+        {
+            return IoBuffer.allocate( minSize, false );
+        }
+
+        IoBuffer pooled = POOL.poll();
+
+        while ( pooled != null )
+        {
+            POOL_SIZE.decrementAndGet();
+
+            if ( pooled.capacity() == bufferSize )
+            {
+                pooled.clear();
+
+                return pooled;
+            }
+
+            // Pooled with another size, drop it
+            pooled = POOL.poll();
+        }
+
+        return IoBuffer.allocate( bufferSize, true );
+    }
+
+
+    /**
+     * Returns a direct buffer to the pool, if it's not full
+     */
+    private static void release( IoBuffer released )
+    {
+        if ( released.isDirect() && ( POOL_SIZE.incrementAndGet() <= MAX_POOLED_BUFFERS ) )
+        {
+            POOL.offer( released );
+        }
+        else if ( released.isDirect() )
+        {
+            POOL_SIZE.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.handlers.request;
+
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.directory.api.asn1.EncoderException;
+import org.apache.directory.api.asn1.ber.tlv.BerValue;
+import org.apache.directory.api.asn1.ber.tlv.TLV;
+import org.apache.directory.api.asn1.ber.tlv.UniversalTag;
+import org.apache.directory.api.asn1.util.Asn1Buffer;
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.codec.api.LdapEncoder;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Value;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.message.Response;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.schema.SchemaPartition;
+
+
+/**
+ * A cache for the encoded SearchResultEntry returned when the subschema subentry is
+ * read. This entry is huge - it contains a description of every schema element - and
+ * most clients read it each time they connect, so it's worth keeping the encoded
+ * entry instead of encoding it again for each request.
+ * <p>
+ * The cached value is the encoded protocolOp, the LdapMessage envelope - which
+ * contains the message ID - being added when the response is written. An encoded
+ * entry is stored for each set of returned attributes, and the cache is cleared when
+ * the schema is modified. The subschema subentry is not filtered by the access
+ * controls, so its content only depends on the schema and on the returned attributes.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+class SubschemaResponseCache
+{
+    /** The maximum number of cached responses */
+    private static final int MAX_CACHED_RESPONSES = 32;
+
+    /** The encoded protocolOps, per returned attribute set */
+    private final Map<String, ByteBuffer> responses = new ConcurrentHashMap<>();
+
+    /** The schema modification count the cached responses are valid for */
+    private volatile long schemaModificationCount = -1L;
+
+    /** The subschema subentry Dn */
+    private volatile Dn subschemaSubentryDn;
+
+
+    /**
+     * Gets the current schema version. It has to be read before the search is done,
+     * and given back to {@link #getEncodedResponse}, so that an entry read before a
+     * schema modification is not cached as if it were up to date.
+     *
+     * @param directoryService The DirectoryService
+     * @return The number of modifications applied to the schema, or -1 if there is no schema partition
+     */
+    long getSchemaVersion( DirectoryService directoryService )
+    {
+        SchemaPartition schemaPartition = directoryService.getSchemaPartition();
+
+        if ( schemaPartition == null )
+        {
+            return -1L;
+        }
+
+        return schemaPartition.getSchemaModificationCount();
+    }
+
+
+    /**
+     * Gets the encoded message for a response, if it contains the subschema subentry.
+     *
+     * @param directoryService The DirectoryService
+     * @param codec The codec used to encode the response
+     * @param req The search request
+     * @param response The response to encode
+     * @param schemaVersion The schema version read before the search was done
+     * @return The encoded message envelope and protocolOp, or null if the response does not
+     * contain the subschema subentry
+     * @throws LdapException If the subschema subentry Dn can't be read
+     * @throws EncoderException If the response can't be encoded
+     */
+    ByteBuffer[] getEncodedResponse( DirectoryService directoryService, LdapApiService codec, SearchRequest req,
+        Response response, long schemaVersion ) throws LdapException, EncoderException
+    {
+        if ( ( schemaVersion < 0L ) || ( codec == null ) || !( response instanceof SearchResultEntry )
+            || !response.getControls().isEmpty() )
+        {
+            return null;
+        }
+
+        Entry entry = ( ( SearchResultEntry ) response ).getEntry();
+
+        if ( ( entry == null ) || !getSubschemaSubentryDn( directoryService ).equals( entry.getDn() ) )
+        {
+            return null;
+        }
+
+        if ( schemaVersion > schemaModificationCount )
+        {
+            // The schema has been modified : drop the encoded responses
+            responses.clear();
+            schemaModificationCount = schemaVersion;
+        }
+
+        String key = getKey( req, entry, schemaVersion );
+        ByteBuffer protocolOp = responses.get( key );
+
+        if ( protocolOp == null )
+        {
+            protocolOp = encodeProtocolOp( codec, response );
+
+            if ( ( schemaVersion == schemaModificationCount ) && ( responses.size() < MAX_CACHED_RESPONSES ) )
+            {
+                responses.put( key, protocolOp );
+            }
+        }
+
+        // The message envelope : SEQUENCE { messageID, protocolOp }
+        Asn1Buffer header = new Asn1Buffer();
+        BerValue.encodeInteger( header, response.getMessageId() );
+        header.put( TLV.getBytes( header.getPos() + protocolOp.remaining() ) );
+        header.put( UniversalTag.SEQUENCE.getValue() );
+
+        return new ByteBuffer[]
+            { header.getBytes(), protocolOp.duplicate() };
+    }
+
+
+    private Dn getSubschemaSubentryDn( DirectoryService directoryService ) throws LdapException
+    {
+        Dn dn = subschemaSubentryDn;
+
+        if ( dn == null )
+        {
+            Value subschemaSubentry = directoryService.getPartitionNexus().getRootDseValue(
+                directoryService.getAtProvider().getSubschemaSubentry() );
+            dn = directoryService.getDnFactory().create( subschemaSubentry.getString() );
+            subschemaSubentryDn = dn;
+        }
+
+        return dn;
+    }
+
+
+    /**
+     * The key contains everything the encoded entry depends on, beside the schema :
+     * the Dn as it has been given by the user, the typesOnly flag and the returned
+     * attributes. The schema version is also part of the key, so that an entry
+     * cached while the cache is being cleared is not used with a newer schema.
+     */
+    private String getKey( SearchRequest req, Entry entry, long schemaVersion )
+    {
+        Set<String> ids = new TreeSet<>();
+
+        for ( Attribute attribute : entry )
+        {
+            ids.add( attribute.getUpId() );
+        }
+
+        StringBuilder key = new StringBuilder();
+        key.append( schemaVersion ).append( '|' ).append( req.getTypesOnly() ).append( '|' );
+        key.append( entry.getDn().getName() );
+
+        for ( String id : ids )
+        {
+            key.append( '|' ).append( id );
+        }
+
+        return key.toString();
+    }
+
+
+    /**
+     * Encodes the response, and extract its protocolOp : the message is a SEQUENCE
+     * containing the message ID and the protocolOp, the response having no control.
+     */
+    private ByteBuffer encodeProtocolOp( LdapApiService codec, Response response ) throws EncoderException
+    {
+        Asn1Buffer buffer = new Asn1Buffer();
+        LdapEncoder.encodeMessage( buffer, codec, response );
+        ByteBuffer message = buffer.getBytes();
+
+        // Skip the SEQUENCE tag and length
+        message.get();
+        int length = message.get() & 0xFF;
+
+        if ( length > 0x7F )
+        {
+            message.position( message.position() + ( length & 0x7F ) );
+        }
+
+        // Skip the message ID
+        message.get();
+        int idLength = message.get();
+        message.position( message.position() + idLength );
+
+        return message.slice().asReadOnlyBuffer();
+    }
+}
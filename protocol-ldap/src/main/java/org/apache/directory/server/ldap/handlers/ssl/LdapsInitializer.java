@@ -24,6 +24,7 @@ import java.security.SecureRandom;
 import java.util.List;
 
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
 
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.server.i18n.I18n;
@@ -66,6 +67,7 @@ public final class LdapsInitializer
             sslCtx = SSLContext.getInstance( "TLS" );
             sslCtx.init( ldapServer.getKeyManagerFactory().getKeyManagers(),
                     ldapServer.getTrustManagers(), new SecureRandom() );
+            initSessionContext( ldapServer, sslCtx );
         }
         catch ( Exception e )
         {
@@ -93,16 +95,56 @@ public final class LdapsInitializer
         else
         {
             // Be sure we disable SSLV3
-            sslFilter.setEnabledProtocols( new String[]
-                { "TLSv1", "TLSv1.1", "TLSv1.2" } );
+            sslFilter.setEnabledProtocols( getDefaultProtocols( ldapServer ) );
         }
 
         // The remaining SSL parameters
         sslFilter.setNeedClientAuth( transport.isNeedClientAuth() );
         sslFilter.setWantClientAuth( transport.isWantClientAuth() );
 
+        // The handshakes are done out of the I/O processors, if configured
+        if ( ldapServer.getTlsHandshakeFilter() != null )
+        {
+            chain.addLast( "tlsHandshake", ldapServer.getTlsHandshakeFilter() );
+        }
+
         chain.addLast( "sslFilter", sslFilter );
 
         return chain;
     }
+
+
+    /**
+     * Configures the cache of the TLS sessions which can be resumed by the clients.
+     *
+     * @param ldapServer The LDAP server instance
+     * @param sslContext The initialized SSLContext
+     */
+    public static void initSessionContext( LdapServer ldapServer, SSLContext sslContext )
+    {
+        SSLSessionContext sessionContext = sslContext.getServerSessionContext();
+
+        if ( sessionContext != null )
+        {
+            sessionContext.setSessionCacheSize( ldapServer.getTlsSessionCacheSize() );
+            sessionContext.setSessionTimeout( ldapServer.getTlsSessionTimeout() );
+        }
+    }
+
+
+    /**
+     * @param ldapServer The LDAP server instance
+     * @return The protocols enabled when the transport does not list them
+     */
+    public static String[] getDefaultProtocols( LdapServer ldapServer )
+    {
+        if ( ldapServer.isTls13Enabled() )
+        {
+            return new String[]
+                { "TLSv1", "TLSv1.1", "TLSv1.2", "TLSv1.3" };
+        }
+
+        return new String[]
+            { "TLSv1", "TLSv1.1", "TLSv1.2" };
+    }
 }
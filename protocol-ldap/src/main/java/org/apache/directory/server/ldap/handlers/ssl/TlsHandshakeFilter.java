@@ -0,0 +1,285 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.handlers.ssl;
+
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLSession;
+
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.filterchain.IoFilterEvent;
+import org.apache.mina.core.session.AttributeKey;
+import org.apache.mina.core.session.IoEventType;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.executor.OrderedThreadPoolExecutor;
+import org.apache.mina.filter.ssl.SslFilter;
+
+
+/**
+ * A filter installed in front of the {@link SslFilter}, which moves the TLS handshakes
+ * out of the MINA I/O processors. The SslFilter runs the handshake - including the key
+ * exchange and the signatures, which are expensive - in the thread which has received the
+ * client data, so without this filter a burst of new TLS connections blocks the I/O of
+ * all the established connections handled by the same processors.
+ * <p>
+ * Until the session is secured, the received messages are given to an executor, which
+ * must keep the events of a session ordered, like an {@link OrderedThreadPoolExecutor}.
+ * Once the handshake is completed, and the pending messages processed, the messages go
+ * through this filter without any thread switch. When there is no executor, the handshakes
+ * are done in the I/O processors, as if the filter was not present.
+ * <p>
+ * The filter also records the handshakes durations, and whether they have resumed a TLS
+ * session, in a {@link TlsHandshakeMetrics}.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class TlsHandshakeFilter extends IoFilterAdapter
+{
+    /** The session attribute storing the time the handshake has started */
+    private static final AttributeKey HANDSHAKE_START = new AttributeKey( TlsHandshakeFilter.class, "handshakeStart" );
+
+    /** The session attribute storing the number of events given to the executor and not yet processed */
+    private static final AttributeKey PENDING_EVENTS = new AttributeKey( TlsHandshakeFilter.class, "pendingEvents" );
+
+    /** The executor the handshakes are done in. May be null */
+    private final Executor executor;
+
+    /** The handshakes statistics */
+    private final TlsHandshakeMetrics metrics;
+
+
+    /**
+     * Creates a new TlsHandshakeFilter
+     *
+     * @param executor The executor the handshakes are done in, or null to do them in the I/O processors
+     * @param metrics The statistics the handshakes are recorded into
+     */
+    public TlsHandshakeFilter( Executor executor, TlsHandshakeMetrics metrics )
+    {
+        this.executor = executor;
+        this.metrics = metrics;
+    }
+
+
+    /**
+     * @return The executor the handshakes are done in, or null if they are done in the I/O processors
+     */
+    public Executor getExecutor()
+    {
+        return executor;
+    }
+
+
+    /**
+     * Stops the executor the handshakes are done in, if it's an ExecutorService
+     */
+    public void shutdown()
+    {
+        if ( executor instanceof ExecutorService )
+        {
+            ( ( ExecutorService ) executor ).shutdownNow();
+        }
+    }
+
+
+    /**
+     * @return The handshakes statistics
+     */
+    public TlsHandshakeMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void messageReceived( NextFilter nextFilter, IoSession session, Object message ) throws Exception
+    {
+        if ( isSecured( session ) )
+        {
+            // The handshake may have been completed by a task run by the SslFilter itself
+            handshakeDone( session );
+
+            if ( getPendingEvents( session ).get() == 0 )
+            {
+                nextFilter.messageReceived( session, message );
+
+                return;
+            }
+        }
+        else if ( !session.containsAttribute( HANDSHAKE_START ) )
+        {
+            session.setAttribute( HANDSHAKE_START, new HandshakeStart() );
+        }
+
+        fire( nextFilter, IoEventType.MESSAGE_RECEIVED, session, message );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sessionClosed( NextFilter nextFilter, IoSession session ) throws Exception
+    {
+        if ( !isSecured( session ) && ( session.removeAttribute( HANDSHAKE_START ) != null ) )
+        {
+            metrics.handshakeFailed();
+        }
+
+        if ( getPendingEvents( session ).get() == 0 )
+        {
+            nextFilter.sessionClosed( session );
+        }
+        else
+        {
+            // Don't close the session before the pending messages have been processed
+            fire( nextFilter, IoEventType.SESSION_CLOSED, session, null );
+        }
+    }
+
+
+    /**
+     * Processes an event in the executor, or in the current thread if there is no executor
+     */
+    private void fire( NextFilter nextFilter, IoEventType type, IoSession session, Object message )
+    {
+        if ( executor == null )
+        {
+            new HandshakeEvent( nextFilter, type, session, message ).fire();
+
+            return;
+        }
+
+        AtomicInteger pending = getPendingEvents( session );
+        pending.incrementAndGet();
+
+        try
+        {
+            executor.execute( new HandshakeEvent( nextFilter, type, session, message ) );
+        }
+        catch ( RuntimeException re )
+        {
+            pending.decrementAndGet();
+
+            throw re;
+        }
+    }
+
+
+    /**
+     * Records the handshake if it has been completed since the last time it was checked
+     */
+    private void handshakeDone( IoSession session )
+    {
+        HandshakeStart start = ( HandshakeStart ) session.getAttribute( HANDSHAKE_START );
+
+        if ( start == null )
+        {
+            return;
+        }
+
+        Object sslSession = session.getAttribute( SslFilter.SSL_SECURED );
+
+        if ( ( sslSession instanceof SSLSession ) && ( session.removeAttribute( HANDSHAKE_START ) != null ) )
+        {
+            // A resumed session has been created by a previous handshake
+            boolean resumed = ( ( SSLSession ) sslSession ).getCreationTime() < start.time;
+            metrics.handshakeCompleted( System.nanoTime() - start.nanoTime, resumed );
+        }
+    }
+
+
+    private static boolean isSecured( IoSession session )
+    {
+        return session.containsAttribute( SslFilter.SSL_SECURED );
+    }
+
+
+    private static AtomicInteger getPendingEvents( IoSession session )
+    {
+        AtomicInteger pending = ( AtomicInteger ) session.getAttribute( PENDING_EVENTS );
+
+        if ( pending == null )
+        {
+            pending = new AtomicInteger();
+            AtomicInteger existing = ( AtomicInteger ) session.setAttributeIfAbsent( PENDING_EVENTS, pending );
+
+            if ( existing != null )
+            {
+                pending = existing;
+            }
+        }
+
+        return pending;
+    }
+
+
+    /**
+     * The time a handshake has started
+     */
+    private static final class HandshakeStart
+    {
+        /** The start time, in ms since the epoch, to compare with the TLS session creation time */
+        private final long time = System.currentTimeMillis();
+
+        /** The start time, in ns, to compute the handshake duration */
+        private final long nanoTime = System.nanoTime();
+    }
+
+
+    /**
+     * An event processed by the executor, which checks whether the handshake has
+     * been completed once the event has gone through the SslFilter.
+     */
+    private final class HandshakeEvent extends IoFilterEvent
+    {
+        private HandshakeEvent( NextFilter nextFilter, IoEventType type, IoSession session, Object message )
+        {
+            super( nextFilter, type, session, message );
+        }
+
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void fire()
+        {
+            try
+            {
+                super.fire();
+                handshakeDone( getSession() );
+            }
+            finally
+            {
+                if ( executor != null )
+                {
+                    getPendingEvents( getSession() ).decrementAndGet();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.handlers.ssl;
+
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * The statistics about the TLS handshakes done by a LdapServer, for both the LDAPS
+ * and the StartTLS connections. A handshake is resumed when the client has reused a
+ * TLS session - through its session ID or a session ticket - instead of doing a full
+ * key exchange.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class TlsHandshakeMetrics
+{
+    /** The number of completed handshakes */
+    private final AtomicLong handshakes = new AtomicLong();
+
+    /** The number of completed handshakes which have resumed a TLS session */
+    private final AtomicLong resumedHandshakes = new AtomicLong();
+
+    /** The number of handshakes which have not completed before the connection was closed */
+    private final AtomicLong failedHandshakes = new AtomicLong();
+
+    /** The total duration of the completed handshakes, in ns */
+    private final AtomicLong handshakeTime = new AtomicLong();
+
+    /** The duration of the longest handshake, in ns */
+    private final AtomicLong maxHandshakeTime = new AtomicLong();
+
+
+    /**
+     * Records a completed handshake
+     *
+     * @param duration The handshake duration, in ns
+     * @param resumed <code>true</code> if a TLS session has been resumed
+     */
+    public void handshakeCompleted( long duration, boolean resumed )
+    {
+        handshakes.incrementAndGet();
+        handshakeTime.addAndGet( duration );
+        maxHandshakeTime.accumulateAndGet( duration, Math::max );
+
+        if ( resumed )
+        {
+            resumedHandshakes.incrementAndGet();
+        }
+    }
+
+
+    /**
+     * Records a handshake which has not completed
+     */
+    public void handshakeFailed()
+    {
+        failedHandshakes.incrementAndGet();
+    }
+
+
+    /**
+     * @return The number of completed handshakes
+     */
+    public long getHandshakeCount()
+    {
+        return handshakes.get();
+    }
+
+
+    /**
+     * @return The number of completed handshakes which have resumed a TLS session
+     */
+    public long getResumedHandshakeCount()
+    {
+        return resumedHandshakes.get();
+    }
+
+
+    /**
+     * @return The number of handshakes which have not completed before the connection was closed
+     */
+    public long getFailedHandshakeCount()
+    {
+        return failedHandshakes.get();
+    }
+
+
+    /**
+     * @return The ratio of completed handshakes which have resumed a TLS session, between 0 and 1
+     */
+    public double getResumptionRatio()
+    {
+        long count = handshakes.get();
+
+        if ( count == 0L )
+        {
+            return 0d;
+        }
+
+        return ( double ) resumedHandshakes.get() / count;
+    }
+
+
+    /**
+     * @return The average duration of the completed handshakes, in ms
+     */
+    public double getAverageHandshakeTime()
+    {
+        long count = handshakes.get();
+
+        if ( count == 0L )
+        {
+            return 0d;
+        }
+
+        return handshakeTime.get() / ( count * 1_000_000d );
+    }
+
+
+    /**
+     * @return The duration of the longest handshake, in ms
+     */
+    public double getMaxHandshakeTime()
+    {
+        return maxHandshakeTime.get() / 1_000_000d;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return String.format( Locale.ROOT,
+            "TLS handshakes : %d completed (%d resumed, %.1f%%), %d failed, avg %.2f ms, max %.2f ms",
+            getHandshakeCount(), getResumedHandshakeCount(), getResumptionRatio() * 100d,
+            getFailedHandshakeCount(), getAverageHandshakeTime(), getMaxHandshakeTime() );
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.ldap.replication;
+
+
+import org.apache.directory.api.asn1.util.Asn1Buffer;
+import org.apache.directory.api.ldap.codec.api.AbstractExtendedOperationFactory;
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.model.message.ExtendedRequest;
+import org.apache.directory.api.ldap.model.message.ExtendedResponse;
+import org.apache.directory.api.ldap.model.message.OpaqueExtendedRequest;
+import org.apache.directory.api.ldap.model.message.OpaqueExtendedResponse;
+import org.apache.directory.server.ldap.replication.provider.ReplicaCompressionHandler;
+
+
+/**
+ * The factory of the extended operation a consumer sends to compress its replication session.
+ * The request value is kept as is, and the response has no value. The codec only keeps the
+ * name and the value of the extended operations it has a factory for, so this one has to be
+ * registered on both ends of the session.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ReplicaCompressionFactory extends AbstractExtendedOperationFactory
+{
+    /**
+     * Creates a new instance of ReplicaCompressionFactory.
+     *
+     * @param codec The codec for this factory
+     */
+    public ReplicaCompressionFactory( LdapApiService codec )
+    {
+        super( codec, ReplicaCompressionHandler.EXTENSION_OID );
+    }
+
+
+    /**
+     * Registers the extended operation in a codec, so that its requests and responses can
+     * be encoded and decoded.
+     *
+     * @param codec The codec to update
+     */
+    public static void register( LdapApiService codec )
+    {
+        if ( !codec.isExtendedRequestRegistered( ReplicaCompressionHandler.EXTENSION_OID ) )
+        {
+            codec.registerExtendedRequest( new ReplicaCompressionFactory( codec ) );
+        }
+
+        if ( !codec.isExtendedResponseRegistered( ReplicaCompressionHandler.EXTENSION_OID ) )
+        {
+            codec.registerExtendedResponse( new ReplicaCompressionFactory( codec ) );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ExtendedRequest newRequest()
+    {
+        return new OpaqueExtendedRequest( ReplicaCompressionHandler.EXTENSION_OID );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ExtendedResponse newResponse()
+    {
+        return new OpaqueExtendedResponse( ReplicaCompressionHandler.EXTENSION_OID );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void encodeValue( Asn1Buffer buffer, ExtendedRequest extendedRequest )
+    {
+        byte[] value = ( ( OpaqueExtendedRequest ) extendedRequest ).getRequestValue();
+
+        if ( value != null )
+        {
+            buffer.put( value );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void decodeValue( ExtendedRequest extendedRequest, byte[] requestValue )
+    {
+        ( ( OpaqueExtendedRequest ) extendedRequest ).setRequestValue( requestValue );
+    }
+}
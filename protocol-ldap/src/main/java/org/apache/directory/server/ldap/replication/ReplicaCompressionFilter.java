@@ -0,0 +1,284 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.ldap.replication;
+
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.directory.server.i18n.I18n;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.filterchain.IoFilterChain;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.WriteRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A filter compressing the data exchanged on a replication session with deflate. The filter
+ * is installed between the LDAP codec and the network - or the TLS filter - on both ends of
+ * the session, once the compression has been negotiated with the
+ * {@link org.apache.directory.server.ldap.replication.provider.ReplicaCompressionHandler}
+ * extended operation.
+ * <p>
+ * Each direction is a single deflate stream, flushed after every PDU, so the attribute names,
+ * the DNs and the values repeated from one entry to the next are only sent once in a while.
+ * A filter instance belongs to a single session.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ReplicaCompressionFilter extends IoFilterAdapter
+{
+    /** The name of the filter in the session chain */
+    public static final String NAME = "replicaCompression";
+
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( ReplicaCompressionFilter.class );
+
+    /** The size of the buffers the data are compressed and decompressed into */
+    private static final int CHUNK_SIZE = 8192;
+
+    /** The compressor of the sent data */
+    private final Deflater deflater;
+
+    /** The decompressor of the received data */
+    private final Inflater inflater = new Inflater();
+
+    /** The maximum number of bytes a received buffer can be decompressed into */
+    private final int maxInflatedSize;
+
+    /** The compression statistics */
+    private final ReplicaCompressionMetrics metrics;
+
+    /** A message which has to be sent uncompressed, the response starting the compression */
+    private volatile Object uncompressedMessage;
+
+
+    /**
+     * Creates a new ReplicaCompressionFilter
+     *
+     * @param level The deflate level, between 1 and 9
+     * @param maxInflatedSize The maximum number of bytes a received buffer can be decompressed into,
+     * usually the maximum PDU size. The session is closed when a buffer exceeds it
+     * @param metrics The statistics the compression is recorded into
+     * @param uncompressedMessage A message written after the filter is installed which must not be
+     * compressed, or null
+     */
+    public ReplicaCompressionFilter( int level, int maxInflatedSize, ReplicaCompressionMetrics metrics,
+        Object uncompressedMessage )
+    {
+        deflater = new Deflater( level );
+        this.maxInflatedSize = maxInflatedSize;
+        this.metrics = metrics;
+        this.uncompressedMessage = uncompressedMessage;
+    }
+
+
+    /**
+     * Installs a compression filter on a session, right before its LDAP codec
+     *
+     * @param session The session
+     * @param codecName The name of the LDAP codec filter in the session chain
+     * @param filter The compression filter
+     */
+    public static void install( IoSession session, String codecName, ReplicaCompressionFilter filter )
+    {
+        session.getFilterChain().addBefore( codecName, NAME, filter );
+        filter.metrics.sessionStarted();
+    }
+
+
+    /**
+     * Tells if the compression has been started on a session
+     *
+     * @param session The session
+     * @return true if the session has a compression filter
+     */
+    public static boolean isInstalled( IoSession session )
+    {
+        return session.getFilterChain().contains( NAME );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void messageReceived( NextFilter nextFilter, IoSession session, Object message ) throws Exception
+    {
+        if ( !( message instanceof IoBuffer ) )
+        {
+            nextFilter.messageReceived( session, message );
+
+            return;
+        }
+
+        IoBuffer in = ( IoBuffer ) message;
+        int length = in.remaining();
+        byte[] input = new byte[length];
+        in.get( input );
+
+        long start = System.nanoTime();
+        IoBuffer out = IoBuffer.allocate( Math.min( Math.max( length * 4, 256 ), maxInflatedSize ) )
+            .setAutoExpand( true );
+        byte[] chunk = new byte[CHUNK_SIZE];
+        inflater.setInput( input );
+
+        try
+        {
+            while ( true )
+            {
+                int inflated = inflater.inflate( chunk );
+
+                if ( inflated > maxInflatedSize - out.position() )
+                {
+                    // Don't let a small stream be inflated into an unlimited amount of memory
+                    LOG.warn( I18n.err( I18n.ERR_38047_INFLATED_DATA_TOO_LARGE, session.getRemoteAddress(),
+                        maxInflatedSize ) );
+                    session.closeNow();
+
+                    return;
+                }
+
+                out.put( chunk, 0, inflated );
+
+                // Done when all the input is consumed, and all the output produced
+                if ( ( inflated < chunk.length ) && inflater.needsInput() )
+                {
+                    break;
+                }
+
+                if ( inflated == 0 )
+                {
+                    // The stream is finished, or needs a dictionary : the peer is not compressing
+                    throw new IOException( I18n.err( I18n.ERR_38044_INVALID_COMPRESSED_DATA,
+                        session.getRemoteAddress() ) );
+                }
+            }
+        }
+        catch ( DataFormatException dfe )
+        {
+            throw new IOException( I18n.err( I18n.ERR_38044_INVALID_COMPRESSED_DATA, session.getRemoteAddress() ),
+                dfe );
+        }
+
+        out.flip();
+        metrics.read( length, out.remaining(), System.nanoTime() - start );
+
+        if ( out.hasRemaining() )
+        {
+            nextFilter.messageReceived( session, out );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void filterWrite( NextFilter nextFilter, IoSession session, WriteRequest writeRequest ) throws Exception
+    {
+        Object message = writeRequest.getMessage();
+
+        if ( !( message instanceof IoBuffer ) )
+        {
+            nextFilter.filterWrite( session, writeRequest );
+
+            return;
+        }
+
+        if ( ( uncompressedMessage != null ) && ( writeRequest.getOriginalMessage() == uncompressedMessage ) )
+        {
+            // The peer only starts decompressing once it has received this message
+            uncompressedMessage = null;
+            nextFilter.filterWrite( session, writeRequest );
+
+            return;
+        }
+
+        IoBuffer in = ( IoBuffer ) message;
+        int length = in.remaining();
+        byte[] input = new byte[length];
+        in.get( input );
+
+        // The PDUs have to be compressed and written in the same order
+        synchronized ( deflater )
+        {
+            long start = System.nanoTime();
+            IoBuffer out = IoBuffer.allocate( Math.max( length / 2, 64 ) ).setAutoExpand( true );
+            byte[] chunk = new byte[CHUNK_SIZE];
+            deflater.setInput( input );
+
+            int deflated;
+
+            do
+            {
+                deflated = deflater.deflate( chunk, 0, chunk.length, Deflater.SYNC_FLUSH );
+                out.put( chunk, 0, deflated );
+            }
+            while ( deflated == chunk.length );
+
+            out.flip();
+            metrics.written( length, out.remaining(), System.nanoTime() - start );
+
+            writeRequest.setMessage( out );
+            nextFilter.filterWrite( session, writeRequest );
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onPostRemove( IoFilterChain parent, String name, NextFilter nextFilter ) throws Exception
+    {
+        end();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sessionClosed( NextFilter nextFilter, IoSession session ) throws Exception
+    {
+        end();
+        nextFilter.sessionClosed( session );
+    }
+
+
+    /**
+     * Releases the native resources of the compressor and the decompressor
+     */
+    private void end()
+    {
+        synchronized ( deflater )
+        {
+            deflater.end();
+        }
+
+        inflater.end();
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.ldap.replication;
+
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * The statistics about the compressed replication sessions, either on the provider - for
+ * all the consumers - or on a consumer. The ratio is the size of the compressed data divided
+ * by the size of the LDAP PDUs, and the CPU cost is the time spent compressing and
+ * decompressing them.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ReplicaCompressionMetrics
+{
+    /** The number of sessions the compression has been started on */
+    private final AtomicLong sessions = new AtomicLong();
+
+    /** The number of bytes of the PDUs sent */
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    /** The number of compressed bytes sent */
+    private final AtomicLong compressedBytesWritten = new AtomicLong();
+
+    /** The number of bytes of the PDUs received */
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    /** The number of compressed bytes received */
+    private final AtomicLong compressedBytesRead = new AtomicLong();
+
+    /** The time spent compressing the PDUs, in ns */
+    private final AtomicLong deflateTime = new AtomicLong();
+
+    /** The time spent decompressing the PDUs, in ns */
+    private final AtomicLong inflateTime = new AtomicLong();
+
+
+    /**
+     * Records a session on which the compression has been started
+     */
+    public void sessionStarted()
+    {
+        sessions.incrementAndGet();
+    }
+
+
+    /**
+     * Records some compressed data sent
+     *
+     * @param length The number of bytes of the PDUs
+     * @param compressedLength The number of bytes once compressed
+     * @param duration The compression duration, in ns
+     */
+    public void written( long length, long compressedLength, long duration )
+    {
+        bytesWritten.addAndGet( length );
+        compressedBytesWritten.addAndGet( compressedLength );
+        deflateTime.addAndGet( duration );
+    }
+
+
+    /**
+     * Records some compressed data received
+     *
+     * @param compressedLength The number of bytes received
+     * @param length The number of bytes once decompressed
+     * @param duration The decompression duration, in ns
+     */
+    public void read( long compressedLength, long length, long duration )
+    {
+        compressedBytesRead.addAndGet( compressedLength );
+        bytesRead.addAndGet( length );
+        inflateTime.addAndGet( duration );
+    }
+
+
+    /**
+     * @return The number of sessions the compression has been started on
+     */
+    public long getSessionCount()
+    {
+        return sessions.get();
+    }
+
+
+    /**
+     * @return The number of bytes of the PDUs sent
+     */
+    public long getBytesWritten()
+    {
+        return bytesWritten.get();
+    }
+
+
+    /**
+     * @return The number of compressed bytes sent
+     */
+    public long getCompressedBytesWritten()
+    {
+        return compressedBytesWritten.get();
+    }
+
+
+    /**
+     * @return The number of bytes of the PDUs received
+     */
+    public long getBytesRead()
+    {
+        return bytesRead.get();
+    }
+
+
+    /**
+     * @return The number of compressed bytes received
+     */
+    public long getCompressedBytesRead()
+    {
+        return compressedBytesRead.get();
+    }
+
+
+    /**
+     * @return The size of the compressed data divided by the size of the PDUs, sent and
+     * received, between 0 and 1 as long as the compression is efficient
+     */
+    public double getCompressionRatio()
+    {
+        long length = bytesWritten.get() + bytesRead.get();
+
+        if ( length == 0L )
+        {
+            return 1d;
+        }
+
+        return ( double ) ( compressedBytesWritten.get() + compressedBytesRead.get() ) / length;
+    }
+
+
+    /**
+     * @return The time spent compressing the PDUs, in ms
+     */
+    public double getDeflateTime()
+    {
+        return deflateTime.get() / 1_000_000d;
+    }
+
+
+    /**
+     * @return The time spent decompressing the PDUs, in ms
+     */
+    public double getInflateTime()
+    {
+        return inflateTime.get() / 1_000_000d;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return String.format( Locale.ROOT,
+            "Replica compression : %d sessions, %d/%d bytes sent, %d/%d bytes received, ratio %.1f%%, "
+                + "deflate %.2f ms, inflate %.2f ms",
+            getSessionCount(), getCompressedBytesWritten(), getBytesWritten(), getCompressedBytesRead(),
+            getBytesRead(), getCompressionRatio() * 100d, getDeflateTime(), getInflateTime() );
+    }
+}
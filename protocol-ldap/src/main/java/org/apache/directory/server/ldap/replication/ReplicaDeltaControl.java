@@ -0,0 +1,98 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.ldap.replication;
+
+
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.codec.controls.OpaqueControlFactory;
+import org.apache.directory.api.ldap.model.message.Control;
+import org.apache.directory.api.ldap.model.message.Message;
+import org.apache.directory.api.ldap.model.message.controls.OpaqueControl;
+import org.apache.directory.api.util.Strings;
+
+
+/**
+ * The control exchanged by the ApacheDS consumers and providers to replicate the
+ * modifications as deltas. It has no value.
+ * <p>
+ * A consumer sends it with its syncrepl request to tell the provider it accepts deltas.
+ * The provider then replicates a modified entry by sending only the attributes the
+ * modification has changed, with all their values - an attribute without any value has
+ * been removed - and attaches the control to the entry, so that the consumer does not
+ * remove the attributes which are absent from it.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public final class ReplicaDeltaControl
+{
+    /** The control OID */
+    public static final String OID = "1.3.6.1.4.1.18060.0.0.2";
+
+
+    private ReplicaDeltaControl()
+    {
+    }
+
+
+    /**
+     * Registers the control in a codec, so that it can be encoded in the requests
+     * and in the responses.
+     *
+     * @param codec The codec to update
+     */
+    public static void register( LdapApiService codec )
+    {
+        if ( !codec.getRequestControlFactories().containsKey( OID ) )
+        {
+            codec.registerRequestControl( new OpaqueControlFactory( codec, OID ) );
+        }
+
+        if ( !codec.getResponseControlFactories().containsKey( OID ) )
+        {
+            codec.registerResponseControl( new OpaqueControlFactory( codec, OID ) );
+        }
+    }
+
+
+    /**
+     * @return A new instance of the control
+     */
+    public static Control newControl()
+    {
+        OpaqueControl control = new OpaqueControl( OID );
+
+        // The codec expects a value, but an empty one is not encoded
+        control.setEncodedValue( Strings.EMPTY_BYTES );
+
+        return control;
+    }
+
+
+    /**
+     * Tells if a message carries the control
+     *
+     * @param message The request or the response
+     * @return true if the control is present
+     */
+    public static boolean isPresent( Message message )
+    {
+        return ( message != null ) && message.hasControl( OID );
+    }
+}
@@ -21,10 +21,18 @@
 package org.apache.directory.server.ldap.replication;
 
 
+import java.util.List;
+
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultAttribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
 import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.message.controls.ChangeType;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.server.core.api.entry.ClonedServerEntry;
 
 
@@ -41,14 +49,32 @@ public class ReplicaEventMessage
     /** The entry */
     private Entry entry;
 
+    /** The modifications applied on the entry, for a Modify operation */
+    private List<Modification> modifications;
+
     /**
      * Create a new ReplicaEvent instance for a Add/Delete+Modify operation
      * @param changeType The change type
      * @param entry The entry
      */
     public ReplicaEventMessage( ChangeType changeType, Entry entry )
+    {
+        this( changeType, entry, null );
+    }
+
+
+    /**
+     * Create a new ReplicaEvent instance for a Modify operation, keeping the modifications
+     * so that they can be replicated as a delta
+     *
+     * @param changeType The change type
+     * @param entry The modified entry
+     * @param modifications The modifications applied on the entry
+     */
+    public ReplicaEventMessage( ChangeType changeType, Entry entry, List<Modification> modifications )
     {
         this.changeType = changeType;
+        this.modifications = modifications;
         
         if ( entry instanceof ClonedServerEntry )
         {
@@ -79,6 +105,67 @@ public class ReplicaEventMessage
     }
 
 
+    /**
+     * @return The modifications applied on the entry, or null if they are unknown
+     */
+    public List<Modification> getModifications()
+    {
+        return modifications;
+    }
+
+
+    /**
+     * Tells if the event can be replicated as a delta : it must be a modification, and
+     * the applied modifications must be known
+     *
+     * @return true if the event can be replicated as a delta
+     */
+    public boolean hasDelta()
+    {
+        return ( changeType == ChangeType.MODIFY ) && ( modifications != null ) && !modifications.isEmpty();
+    }
+
+
+    /**
+     * Builds the entry to send to a consumer accepting the deltas : it contains the entryUUID,
+     * the entryCSN, and the attributes changed by the modifications with all their remaining
+     * values. The attributes which have been removed have no value.
+     *
+     * @param schemaManager The SchemaManager
+     * @return The entry containing the modified attributes
+     * @throws LdapException If the entry cannot be built
+     */
+    public Entry getDeltaEntry( SchemaManager schemaManager ) throws LdapException
+    {
+        Entry deltaEntry = new DefaultEntry( schemaManager, entry.getDn() );
+        deltaEntry.put( entry.get( SchemaConstants.ENTRY_UUID_AT ) );
+        deltaEntry.put( entry.get( SchemaConstants.ENTRY_CSN_AT ) );
+
+        for ( Modification modification : modifications )
+        {
+            AttributeType attributeType = modification.getAttribute().getAttributeType();
+
+            if ( deltaEntry.containsAttribute( attributeType ) )
+            {
+                continue;
+            }
+
+            Attribute attribute = entry.get( attributeType );
+
+            if ( attribute != null )
+            {
+                deltaEntry.put( attribute );
+            }
+            else
+            {
+                deltaEntry.put( new DefaultAttribute( attributeType ) );
+            }
+        }
+
+        return deltaEntry;
+    }
+
+
     /**
      * checks if the event's CSN is older than the given CSN
      *
@@ -22,15 +22,21 @@ package org.apache.directory.server.ldap.replication;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutput;
 import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 import jdbm.helper.Serializer;
 
 import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
 import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.message.controls.ChangeType;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
@@ -44,6 +50,8 @@ import org.apache.directory.api.ldap.model.schema.SchemaManager;
  * <li>byte : EventType</li>
  * <li>byte[] : the serialized DN</li>
  * <li>byte[] : the serialized entry</li>
+ * <li>int : the number of modifications applied on the entry, or -1 if they are unknown</li>
+ * <li>byte[]* : the serialized modifications</li>
  * </ul>
  * 
  * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
@@ -91,6 +99,23 @@ public class ReplicaEventMessageSerializer implements Serializer
             // The entry
             entry.writeExternal( out );
 
+            // The modifications, if any
+            List<Modification> modifications = replicaEventMessage.getModifications();
+
+            if ( modifications == null )
+            {
+                out.writeInt( -1 );
+            }
+            else
+            {
+                out.writeInt( modifications.size() );
+
+                for ( Modification modification : modifications )
+                {
+                    modification.writeExternal( out );
+                }
+            }
+
             out.flush();
 
             return baos.toByteArray();
@@ -126,14 +151,59 @@ public class ReplicaEventMessageSerializer implements Serializer
             entry.readExternal( in );
             entry.setDn( entryDn );
 
+            // The modifications
+            List<Modification> modifications = readModifications( in );
+
             // And create a ReplicaEventMessage
-            replicaEventMessage = new ReplicaEventMessage( changeType, entry );
+            replicaEventMessage = new ReplicaEventMessage( changeType, entry, modifications );
         }
         catch ( ClassNotFoundException cnfe )
         {
             // there is nothing we can do here...
         }
+        catch ( LdapException le )
+        {
+            // The message can't be read back with the current schema
+            throw new IOException( le.getMessage(), le );
+        }
 
         return replicaEventMessage;
     }
+
+
+    /**
+     * Reads the modifications stored after the entry. The messages logged by the
+     * previous versions don't have them.
+     */
+    private List<Modification> readModifications( ObjectInputStream in )
+        throws IOException, ClassNotFoundException, LdapException
+    {
+        int nbModifications;
+
+        try
+        {
+            nbModifications = in.readInt();
+        }
+        catch ( EOFException eofe )
+        {
+            return null;
+        }
+
+        if ( nbModifications < 0 )
+        {
+            return null;
+        }
+
+        List<Modification> modifications = new ArrayList<>( nbModifications );
+
+        for ( int i = 0; i < nbModifications; i++ )
+        {
+            Modification modification = new DefaultModification();
+            modification.readExternal( in );
+            modification.apply( schemaManager.lookupAttributeTypeRegistry( modification.getAttribute().getUpId() ) );
+            modifications.add( modification );
+        }
+
+        return modifications;
+    }
 }
@@ -0,0 +1,304 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.ldap.replication;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.exception.LdapUnwillingToPerformException;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.util.FileUtils;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.server.i18n.I18n;
+import org.apache.directory.server.ldap.replication.provider.ReplicaEventLog;
+
+
+/**
+ * A consistent copy of the files of a partition, taken by a provider, which can be installed
+ * on a new consumer in place of a full refresh. The snapshot directory contains the partition
+ * files, in the {@link #PARTITION_DIRECTORY} sub-directory, and a descriptor storing the
+ * partition suffix and the syncrepl cookie the consumer resumes the replication with. The cookie
+ * refers to a {@link ReplicaEventLog} the provider has created when taking the snapshot, so the
+ * consumer only receives the changes done after it.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ReplicaSnapshot
+{
+    /** The name of the file describing the snapshot */
+    public static final String DESCRIPTOR_FILE = "replica.snapshot";
+
+    /** The name of the directory containing the partition files */
+    public static final String PARTITION_DIRECTORY = "partition";
+
+    private static final String PARTITION_ID = "partitionId";
+    private static final String PARTITION_TYPE = "partitionType";
+    private static final String SUFFIX_DN = "suffixDn";
+    private static final String CONTEXT_CSN = "contextCsn";
+    private static final String COOKIE = "cookie";
+
+    /** The ID of the partition the snapshot has been taken from */
+    private String partitionId;
+
+    /** The class of the partition, as the files can only be installed in the same kind of partition */
+    private String partitionType;
+
+    /** The partition suffix */
+    private String suffixDn;
+
+    /** The partition contextCSN when the snapshot has been taken */
+    private String contextCsn;
+
+    /** The cookie the consumer has to send to the provider */
+    private String cookie;
+
+
+    /**
+     * Creates a new instance of ReplicaSnapshot
+     *
+     * @param partitionId The ID of the partition the snapshot has been taken from
+     * @param partitionType The class name of the partition
+     * @param suffixDn The partition suffix
+     * @param contextCsn The partition contextCSN
+     * @param cookie The syncrepl cookie to resume the replication with
+     */
+    public ReplicaSnapshot( String partitionId, String partitionType, String suffixDn, String contextCsn,
+        String cookie )
+    {
+        this.partitionId = partitionId;
+        this.partitionType = partitionType;
+        this.suffixDn = suffixDn;
+        this.contextCsn = contextCsn;
+        this.cookie = cookie;
+    }
+
+
+    /**
+     * Reads the descriptor of a snapshot
+     *
+     * @param directory The snapshot directory
+     * @return The snapshot
+     * @throws LdapException If the directory does not contain a snapshot
+     */
+    public static ReplicaSnapshot read( File directory ) throws LdapException
+    {
+        Properties props = new Properties();
+
+        try ( InputStream in = FileUtils.openInputStream( new File( directory, DESCRIPTOR_FILE ) ) )
+        {
+            props.load( in );
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( I18n.err( I18n.ERR_38042_INVALID_SNAPSHOT, directory ), ioe );
+        }
+
+        ReplicaSnapshot snapshot = new ReplicaSnapshot( props.getProperty( PARTITION_ID ),
+            props.getProperty( PARTITION_TYPE ), props.getProperty( SUFFIX_DN ), props.getProperty( CONTEXT_CSN ), props.getProperty( COOKIE ) );
+
+        if ( Strings.isEmpty( snapshot.partitionId ) || Strings.isEmpty( snapshot.partitionType )
+            || Strings.isEmpty( snapshot.suffixDn ) || Strings.isEmpty( snapshot.cookie ) || !new File( directory, PARTITION_DIRECTORY ).isDirectory() )
+        {
+            throw new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM,
+                I18n.err( I18n.ERR_38042_INVALID_SNAPSHOT, directory ) );
+        }
+
+        return snapshot;
+    }
+
+
+    /**
+     * Writes the descriptor of the snapshot. It must be written once all the partition
+     * files have been copied, as its presence tells that the snapshot is complete.
+     *
+     * @param directory The snapshot directory
+     * @throws LdapException If the descriptor cannot be written
+     */
+    public void write( File directory ) throws LdapException
+    {
+        Properties props = new Properties();
+        props.setProperty( PARTITION_ID, partitionId );
+        props.setProperty( PARTITION_TYPE, partitionType );
+        props.setProperty( SUFFIX_DN, suffixDn );
+        props.setProperty( COOKIE, cookie );
+
+        if ( contextCsn != null )
+        {
+            props.setProperty( CONTEXT_CSN, contextCsn );
+        }
+
+        try ( OutputStream out = FileUtils.openOutputStream( new File( directory, DESCRIPTOR_FILE ) ) )
+        {
+            props.store( out, "Replica snapshot of the " + suffixDn + " partition" );
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+    }
+
+
+    /**
+     * Copies the files of a partition directory. The files named after the source partition
+     * ID are renamed after the target partition ID, the other files keep their name.
+     *
+     * @param from The directory to copy the files from
+     * @param fromId The ID of the partition which owns the copied files
+     * @param to The directory to copy the files to
+     * @param toId The ID of the partition which will own the copied files
+     * @throws LdapException If the files cannot be copied
+     */
+    public static void copyPartitionFiles( File from, String fromId, File to, String toId ) throws LdapException
+    {
+        File[] files = from.listFiles();
+
+        if ( files == null )
+        {
+            throw new LdapOtherException( I18n.err( I18n.ERR_38042_INVALID_SNAPSHOT, from ) );
+        }
+
+        try
+        {
+            if ( !to.isDirectory() )
+            {
+                Files.createDirectories( to.toPath() );
+            }
+
+            for ( File file : files )
+            {
+                if ( !file.isFile() )
+                {
+                    continue;
+                }
+
+                String name = file.getName();
+
+                if ( name.startsWith( fromId + "." ) )
+                {
+                    name = toId + name.substring( fromId.length() );
+                }
+
+                Files.copy( file.toPath(), new File( to, name ).toPath(), StandardCopyOption.REPLACE_EXISTING );
+            }
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+    }
+
+
+    /**
+     * Replaces the files of a partition by the snapshot ones. The partition must not be
+     * initialized while they are.
+     *
+     * @param directory The snapshot directory
+     * @param partitionDir The partition directory
+     * @param toId The ID of the partition
+     * @throws LdapException If the files cannot be replaced
+     */
+    public void install( File directory, File partitionDir, String toId ) throws LdapException
+    {
+        File[] files = partitionDir.listFiles();
+
+        try
+        {
+            if ( files != null )
+            {
+                for ( File file : files )
+                {
+                    if ( file.isFile() )
+                    {
+                        FileUtils.forceDelete( file );
+                    }
+                }
+            }
+        }
+        catch ( IOException ioe )
+        {
+            throw new LdapOtherException( ioe.getMessage(), ioe );
+        }
+
+        copyPartitionFiles( new File( directory, PARTITION_DIRECTORY ), partitionId, partitionDir, toId );
+    }
+
+
+    /**
+     * @return The ID of the partition the snapshot has been taken from
+     */
+    public String getPartitionId()
+    {
+        return partitionId;
+    }
+
+
+    /**
+     * @return The class name of the partition the snapshot has been taken from
+     */
+    public String getPartitionType()
+    {
+        return partitionType;
+    }
+
+
+    /**
+     * @return The partition suffix
+     */
+    public String getSuffixDn()
+    {
+        return suffixDn;
+    }
+
+
+    /**
+     * @return The partition contextCSN when the snapshot has been taken
+     */
+    public String getContextCsn()
+    {
+        return contextCsn;
+    }
+
+
+    /**
+     * @return The syncrepl cookie the consumer resumes the replication with
+     */
+    public String getCookie()
+    {
+        return cookie;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return "ReplicaSnapshot[" + partitionId + ", '" + suffixDn + "', " + contextCsn + ", " + cookie + "]";
+    }
+}
@@ -133,6 +133,24 @@ public class SyncReplConfiguration implements ReplicationConsumerConfig
     /** flag to indicate if this node is part of a MMR setup, default value is true */
     private boolean mmrMode = true;
 
+    /** The default maximum number of changes applied in a single transaction */
+    public static final int DEFAULT_APPLY_BATCH_SIZE = 100;
+
+    /** the maximum number of changes applied in a single transaction, default value is 100 */
+    private int applyBatchSize = DEFAULT_APPLY_BATCH_SIZE;
+
+    /** The default maximum time a single transaction applies changes for, in milliseconds */
+    public static final long DEFAULT_APPLY_BATCH_MAX_TIME = 100L;
+
+    /** the maximum time a single transaction applies changes for, default value is 100ms */
+    private long applyBatchMaxTime = DEFAULT_APPLY_BATCH_MAX_TIME;
+
+    /** the directory containing a provider snapshot used to seed the consumer, if any */
+    private String snapshotDirectory;
+
+    /** the deflate level the session with the provider is compressed with, 0 if it is not compressed */
+    private int compressionLevel;
+
 
     /**
      * Creates a new instance of SyncreplConfiguration
@@ -580,6 +598,97 @@ public class SyncReplConfiguration implements ReplicationConsumerConfig
     }
 
 
+    /**
+     * @return the maximum number of consecutive changes the consumer applies in a single transaction
+     */
+    public int getApplyBatchSize()
+    {
+        return applyBatchSize;
+    }
+
+
+    /**
+     * Sets the maximum number of consecutive changes the consumer applies in a single
+     * transaction. A value of 1 or below applies each change in its own transaction.
+     *
+     * @param applyBatchSize The maximum number of changes per transaction
+     */
+    public void setApplyBatchSize( int applyBatchSize )
+    {
+        this.applyBatchSize = applyBatchSize;
+    }
+
+
+    /**
+     * @return the maximum time, in milliseconds, the consumer applies changes in a single transaction
+     */
+    public long getApplyBatchMaxTime()
+    {
+        return applyBatchMaxTime;
+    }
+
+
+    /**
+     * Sets the maximum time the consumer applies changes in a single transaction. The
+     * transaction holds the write lock, so no other update can be done meanwhile : it is
+     * committed once this time has elapsed, even if it has less than {@link #getApplyBatchSize()}
+     * changes.
+     *
+     * @param applyBatchMaxTime The maximum time per transaction, in milliseconds
+     */
+    public void setApplyBatchMaxTime( long applyBatchMaxTime )
+    {
+        this.applyBatchMaxTime = applyBatchMaxTime;
+    }
+
+
+    /**
+     * @return the directory containing the provider snapshot the consumer is seeded with,
+     * or null if the consumer starts with a full refresh
+     */
+    public String getSnapshotDirectory()
+    {
+        return snapshotDirectory;
+    }
+
+
+    /**
+     * Sets the directory containing a snapshot of the replicated partition, created by
+     * the provider. A consumer which has never been synchronized installs it as its local
+     * partition, and only replicates the changes done on the provider since the snapshot
+     * has been taken, instead of doing a full refresh.
+     *
+     * @param snapshotDirectory The snapshot directory
+     */
+    public void setSnapshotDirectory( String snapshotDirectory )
+    {
+        this.snapshotDirectory = snapshotDirectory;
+    }
+
+
+    /**
+     * @return the deflate level the session with the provider is compressed with, 0 if it is not compressed
+     */
+    public int getCompressionLevel()
+    {
+        return compressionLevel;
+    }
+
+
+    /**
+     * Sets the deflate level, between 1 and 9, the session with the provider is compressed
+     * with once the consumer is bound. The compression is negotiated with the provider, the
+     * session stays uncompressed if it does not support it. 0, the default, disables the
+     * compression.
+     *
+     * @param compressionLevel The deflate level
+     */
+    public void setCompressionLevel( int compressionLevel )
+    {
+        this.compressionLevel = compressionLevel;
+    }
+
+
     public String toString()
     {
         StringBuilder sb = new StringBuilder();
@@ -633,6 +742,18 @@ public class SyncReplConfiguration implements ReplicationConsumerConfig
             sb.append( "MS, " );
         }
 
+        sb.append( "batch:" ).append( applyBatchSize ).append( '/' ).append( applyBatchMaxTime ).append( "ms, " );
+
+        if ( snapshotDirectory != null )
+        {
+            sb.append( "snapshot:'" ).append( snapshotDirectory ).append( "', " );
+        }
+
+        if ( compressionLevel > 0 )
+        {
+            sb.append( "compression:" ).append( compressionLevel ).append( ", " );
+        }
+
         sb.append( "provider:" ).append( producer ).append( ", " );
         sb.append( "user:'" ).append( replUserDn ).append( "', " );
 
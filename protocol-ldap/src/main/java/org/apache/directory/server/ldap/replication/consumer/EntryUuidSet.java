@@ -0,0 +1,230 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.ldap.replication.consumer;
+
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import jdbm.RecordManager;
+import jdbm.btree.BTree;
+import jdbm.helper.ByteArrayComparator;
+import jdbm.helper.ByteArraySerializer;
+import jdbm.recman.BaseRecordManager;
+
+import org.apache.directory.api.util.Strings;
+
+
+/**
+ * A set of entryUUIDs received from a provider in a syncIdSet. The UUIDs are kept in memory
+ * up to a threshold, above which they are all moved to a temporary JDBM BTree, so that a
+ * refreshPresent phase listing millions of entries does not exhaust the heap.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class EntryUuidSet implements Closeable
+{
+    /** The default number of UUIDs kept in memory */
+    public static final int DEFAULT_MEMORY_THRESHOLD = 100000;
+
+    /** The value associated with the UUIDs in the BTree */
+    private static final byte[] PRESENT = new byte[]
+        { 1 };
+
+    /** The number of UUIDs above which they are stored on disk */
+    private final int memoryThreshold;
+
+    /** The directory the temporary file is created in */
+    private final File directory;
+
+    /** The UUIDs, as long as they are kept in memory */
+    private Set<UUID> memoryUuids = new HashSet<>();
+
+    /** The temporary file name, once the UUIDs have been moved to disk */
+    private File file;
+
+    /** The record manager of the temporary file */
+    private RecordManager recordManager;
+
+    /** The UUIDs, once they have been moved to disk */
+    private BTree<byte[], byte[]> diskUuids;
+
+    /** The number of UUIDs in the set */
+    private long size;
+
+
+    /**
+     * Creates a new instance of EntryUuidSet
+     *
+     * @param directory The directory to create the temporary file in
+     * @param memoryThreshold The number of UUIDs above which they are stored on disk
+     */
+    public EntryUuidSet( File directory, int memoryThreshold )
+    {
+        this.directory = directory;
+        this.memoryThreshold = memoryThreshold;
+    }
+
+
+    /**
+     * Adds a UUID in the set
+     *
+     * @param uuid The UUID, in its binary form
+     * @throws IOException If the UUID cannot be stored on disk
+     */
+    public void add( byte[] uuid ) throws IOException
+    {
+        if ( diskUuids != null )
+        {
+            if ( diskUuids.insert( uuid, PRESENT, true ) == null )
+            {
+                size++;
+            }
+
+            return;
+        }
+
+        if ( memoryUuids.add( toUuid( uuid ) ) )
+        {
+            size++;
+        }
+
+        if ( size > memoryThreshold )
+        {
+            spill();
+        }
+    }
+
+
+    /**
+     * Tells if the set contains a UUID
+     *
+     * @param uuid The UUID, in its String form
+     * @return true if the UUID has been added in the set
+     * @throws IOException If the UUID cannot be read from the disk
+     */
+    public boolean contains( String uuid ) throws IOException
+    {
+        if ( !Strings.isValidUuid( uuid ) )
+        {
+            return false;
+        }
+
+        if ( diskUuids != null )
+        {
+            return diskUuids.find( Strings.uuidToBytes( uuid ) ) != null;
+        }
+
+        return memoryUuids.contains( UUID.fromString( uuid ) );
+    }
+
+
+    /**
+     * @return The number of UUIDs in the set
+     */
+    public long size()
+    {
+        return size;
+    }
+
+
+    /**
+     * @return true if the UUIDs are stored on disk
+     */
+    public boolean isOnDisk()
+    {
+        return diskUuids != null;
+    }
+
+
+    /**
+     * Moves all the UUIDs to a temporary BTree
+     */
+    private void spill() throws IOException
+    {
+        file = File.createTempFile( "entryUUIDs", "", directory );
+
+        // Transactions are useless for a temporary file
+        BaseRecordManager baseRecordManager = new BaseRecordManager( file.getPath() );
+        baseRecordManager.disableTransactions();
+        recordManager = baseRecordManager;
+
+        diskUuids = new BTree<>( recordManager, new ByteArrayComparator(), ByteArraySerializer.INSTANCE,
+            ByteArraySerializer.INSTANCE );
+
+        for ( UUID uuid : memoryUuids )
+        {
+            diskUuids.insert( toBytes( uuid ), PRESENT, true );
+        }
+
+        memoryUuids = null;
+    }
+
+
+    private static UUID toUuid( byte[] uuid )
+    {
+        ByteBuffer buffer = ByteBuffer.wrap( uuid );
+
+        return new UUID( buffer.getLong(), buffer.getLong() );
+    }
+
+
+    private static byte[] toBytes( UUID uuid )
+    {
+        ByteBuffer buffer = ByteBuffer.allocate( 16 );
+        buffer.putLong( uuid.getMostSignificantBits() );
+        buffer.putLong( uuid.getLeastSignificantBits() );
+
+        return buffer.array();
+    }
+
+
+    /**
+     * Releases the UUIDs, and deletes the temporary files
+     */
+    @Override
+    public void close() throws IOException
+    {
+        memoryUuids = null;
+
+        if ( recordManager != null )
+        {
+            try
+            {
+                recordManager.close();
+            }
+            finally
+            {
+                recordManager = null;
+                diskUuids = null;
+
+                // The record manager uses a .db and a .lg file, besides the empty temporary file
+                new File( file.getPath() + ".db" ).delete();
+                new File( file.getPath() + ".lg" ).delete();
+                file.delete();
+            }
+        }
+    }
+}
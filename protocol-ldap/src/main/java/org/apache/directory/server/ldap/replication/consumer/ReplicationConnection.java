@@ -0,0 +1,120 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.ldap.replication.consumer;
+
+
+import org.apache.directory.api.ldap.model.constants.Loggers;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.message.ExtendedResponse;
+import org.apache.directory.api.ldap.model.message.OpaqueExtendedRequest;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.ldap.client.api.LdapNetworkConnection;
+import org.apache.directory.server.ldap.replication.ReplicaCompressionFactory;
+import org.apache.directory.server.ldap.replication.ReplicaCompressionFilter;
+import org.apache.directory.server.ldap.replication.ReplicaCompressionMetrics;
+import org.apache.directory.server.ldap.replication.provider.ReplicaCompressionHandler;
+import org.apache.mina.core.session.IoSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * The connection of a consumer to its provider. It keeps the MINA session, so that the
+ * compression filter can be installed on it.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ReplicationConnection extends LdapNetworkConnection
+{
+    /** Logger for this class */
+    private static final Logger CONSUMER_LOG = LoggerFactory.getLogger( Loggers.CONSUMER_LOG.getName() );
+
+    /** The name of the LDAP codec in the client session chain */
+    private static final String CODEC_FILTER = "ldapCodec";
+
+    /** The current session */
+    private volatile IoSession ioSession;
+
+
+    /**
+     * Creates a new instance of ReplicationConnection
+     *
+     * @param server The provider host
+     * @param port The provider port
+     */
+    public ReplicationConnection( String server, int port )
+    {
+        super( server, port );
+        ReplicaCompressionFactory.register( getCodecService() );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void sessionCreated( IoSession session ) throws Exception
+    {
+        super.sessionCreated( session );
+        ioSession = session;
+    }
+
+
+    /**
+     * Asks the provider to compress the session, and starts compressing it if it accepts.
+     * It must be called when no other request is pending.
+     *
+     * @param level The deflate level, between 1 and 9
+     * @param maxInflatedSize The maximum number of bytes a received buffer can be decompressed into
+     * @param metrics The statistics the compression is recorded into
+     * @return true if the session is compressed
+     */
+    public boolean startCompression( int level, int maxInflatedSize, ReplicaCompressionMetrics metrics )
+    {
+        try
+        {
+            ExtendedResponse response = extended( new OpaqueExtendedRequest( ReplicaCompressionHandler.EXTENSION_OID,
+                Strings.getBytesUtf8( Integer.toString( level ) ) ) );
+
+            if ( response.getLdapResult().getResultCode() != ResultCodeEnum.SUCCESS )
+            {
+                CONSUMER_LOG.warn( "The provider has refused to compress the session : {}",
+                    response.getLdapResult() );
+
+                return false;
+            }
+        }
+        catch ( LdapException le )
+        {
+            CONSUMER_LOG.warn( "Failed to start the compression", le );
+
+            return false;
+        }
+
+        // The provider compresses all the data sent after the response
+        ReplicaCompressionFilter.install( ioSession, CODEC_FILTER, new ReplicaCompressionFilter( level,
+            maxInflatedSize, metrics, null ) );
+
+        CONSUMER_LOG.info( "Compression started with level {}", level );
+
+        return true;
+    }
+}
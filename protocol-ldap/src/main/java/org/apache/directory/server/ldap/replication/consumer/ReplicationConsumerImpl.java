@@ -20,13 +20,22 @@
 package org.apache.directory.server.ldap.replication.consumer;
 
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.collections4.map.LRUMap;
+import org.apache.directory.api.ldap.codec.api.IntermediateOperationFactory;
 import org.apache.directory.api.ldap.extras.controls.SynchronizationModeEnum;
 import org.apache.directory.api.ldap.extras.controls.syncrepl.syncDone.SyncDoneValue;
 import org.apache.directory.api.ldap.extras.controls.syncrepl.syncRequest.SyncRequestValue;
@@ -34,10 +43,10 @@ import org.apache.directory.api.ldap.extras.controls.syncrepl.syncRequest.SyncRe
 import org.apache.directory.api.ldap.extras.controls.syncrepl.syncState.SyncStateTypeEnum;
 import org.apache.directory.api.ldap.extras.controls.syncrepl.syncState.SyncStateValue;
 import org.apache.directory.api.ldap.extras.intermediate.syncrepl.SyncInfoValue;
-import org.apache.directory.api.ldap.extras.intermediate.syncrepl.SyncInfoValueImpl;
 import org.apache.directory.api.ldap.model.constants.Loggers;
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.csn.Csn;
+import org.apache.directory.api.ldap.model.csn.InvalidCSNException;
 import org.apache.directory.api.ldap.model.cursor.Cursor;
 import org.apache.directory.api.ldap.model.entry.Attribute;
 import org.apache.directory.api.ldap.model.entry.DefaultAttribute;
@@ -46,13 +55,10 @@ import org.apache.directory.api.ldap.model.entry.DefaultModification;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.entry.Modification;
 import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.entry.Value;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.exception.LdapNoSuchObjectException;
-import org.apache.directory.api.ldap.model.filter.AndNode;
-import org.apache.directory.api.ldap.model.filter.EqualityNode;
-import org.apache.directory.api.ldap.model.filter.ExprNode;
-import org.apache.directory.api.ldap.model.filter.NotNode;
-import org.apache.directory.api.ldap.model.filter.OrNode;
+import org.apache.directory.api.ldap.model.exception.LdapUnwillingToPerformException;
 import org.apache.directory.api.ldap.model.filter.PresenceNode;
 import org.apache.directory.api.ldap.model.message.AliasDerefMode;
 import org.apache.directory.api.ldap.model.message.IntermediateResponse;
@@ -75,11 +81,12 @@ import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.util.StringConstants;
 import org.apache.directory.api.util.Strings;
 import org.apache.directory.ldap.client.api.ConnectionClosedEventListener;
-import org.apache.directory.ldap.client.api.LdapNetworkConnection;
 import org.apache.directory.ldap.client.api.future.SearchFuture;
 import org.apache.directory.server.constants.ApacheSchemaConstants;
 import org.apache.directory.server.core.api.CoreSession;
 import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.InterceptorEnum;
+import org.apache.directory.server.core.api.OperationEnum;
 import org.apache.directory.server.core.api.OperationManager;
 import org.apache.directory.server.core.api.interceptor.context.AddOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.DeleteOperationContext;
@@ -87,12 +94,20 @@ import org.apache.directory.server.core.api.interceptor.context.LookupOperationC
 import org.apache.directory.server.core.api.interceptor.context.ModifyOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.MoveAndRenameOperationContext;
 import org.apache.directory.server.core.api.interceptor.context.MoveOperationContext;
+import org.apache.directory.server.core.api.interceptor.context.OperationContext;
 import org.apache.directory.server.core.api.interceptor.context.RenameOperationContext;
 import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.core.api.partition.PartitionNexus;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.partition.impl.btree.AbstractBTreePartition;
+import org.apache.directory.server.i18n.I18n;
 import org.apache.directory.server.ldap.LdapProtocolUtils;
+import org.apache.directory.server.ldap.replication.ReplicaCompressionMetrics;
+import org.apache.directory.server.ldap.replication.ReplicaDeltaControl;
+import org.apache.directory.server.ldap.replication.ReplicaSnapshot;
 import org.apache.directory.server.ldap.replication.ReplicationConsumerConfig;
 import org.apache.directory.server.ldap.replication.SyncReplConfiguration;
+import org.apache.directory.server.xdbm.IndexEntry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
@@ -115,7 +130,7 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
     private byte[] syncCookie;
 
     /** connection to the syncrepl provider */
-    private LdapNetworkConnection connection;
+    private ReplicationConnection connection;
 
     /** the search request with control */
     private SearchRequest searchRequest;
@@ -129,7 +144,7 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
     /** flag to indicate whether the consumer was disconnected */
     private volatile boolean disconnected;
 
-    /** the core session */
+    /** the core session, dedicated to this consumer as it carries the transaction of the applied changes */
     private CoreSession session;
 
     /** attributes on which modification should be ignored */
@@ -164,7 +179,65 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
     private AttributeType adsReplCookieAT;
     private AttributeType adsDsReplicaIdAT;
 
-    private static final Map<String, Object> UUID_LOCK_MAP = new LRUMap( 1000 );
+    private static final Map<String, Lock> UUID_LOCK_MAP = new LRUMap<>( 1000 );
+
+    /**
+     * The interceptors the replicated changes don't go through, as the provider has already
+     * applied them :
+     * <ul>
+     *   <li>the ACI and default authorization interceptors : the change has been authorized
+     *   on the provider, and the consumer applies it as the administrator anyway</li>
+     *   <li>the password policy interceptor : the password has been checked on the provider,
+     *   and the replicated operational attributes must not be computed again</li>
+     * </ul>
+     * The trigger interceptor is kept : the triggers are local to each server.
+     */
+    private static final Set<String> BYPASSED_INTERCEPTORS = new HashSet<>();
+
+    static
+    {
+        BYPASSED_INTERCEPTORS.add( InterceptorEnum.ACI_AUTHORIZATION_INTERCEPTOR.getName() );
+        BYPASSED_INTERCEPTORS.add( InterceptorEnum.DEFAULT_AUTHORIZATION_INTERCEPTOR.getName() );
+        BYPASSED_INTERCEPTORS.add( InterceptorEnum.PASSWORD_POLICY_INTERCEPTOR.getName() );
+    }
+
+    /** The number of changes applied since the consumer has been started */
+    private AtomicLong appliedChanges = new AtomicLong();
+
+    /** The number of changes applied per second in the last batch */
+    private volatile long applyRate;
+
+    /** The delay between the last applied change and its creation on the provider, in milliseconds */
+    private volatile long replicationLag;
+
+    /** The statistics about the compression of the session with the provider */
+    private final ReplicaCompressionMetrics compressionMetrics = new ReplicaCompressionMetrics();
+
+
+    /**
+     * The consecutive changes applied in a single transaction. A batch is only used by
+     * the thread processing the responses of a synchronization request.
+     */
+    private static final class ApplyBatch
+    {
+        /** The time the batch has been started at, 0 if it is not started */
+        private long start;
+
+        /** The number of changes applied in the batch */
+        private int count;
+
+        /** Tells if the batch holds the write lock and a session transaction */
+        private boolean transaction;
+
+        /** The CSN of the last change applied in the batch */
+        private String lastCsn;
+
+        /** The entries applied in the batch transaction, applied again one by one if it's aborted */
+        private List<SearchResultEntry> entries = new ArrayList<>();
+
+        /** Tells if the changes are applied one by one, after a batch has been aborted */
+        private boolean single;
+    }
 
 
     /**
@@ -186,7 +259,7 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
     {
         this.directoryService = directoryservice;
 
-        session = directoryService.getAdminSession();
+        session = directoryService.getSession( directoryService.getAdminSession().getAuthenticatedPrincipal() );
 
         schemaManager = directoryservice.getSchemaManager();
 
@@ -219,8 +292,9 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
             // Create a connection
             if ( connection == null )
             {
-                connection = new LdapNetworkConnection( providerHost, port );
+                connection = new ReplicationConnection( providerHost, port );
                 connection.setSchemaManager( schemaManager );
+                ReplicaDeltaControl.register( connection.getCodecService() );
 
                 if ( config.isUseTls() )
                 {
@@ -242,6 +316,12 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
                     connection.bind( config.getReplUserDn(), Strings.utf8ToString( config.getReplUserPassword() ) );
                     disconnected = false;
 
+                    if ( config.getCompressionLevel() > 0 )
+                    {
+                        connection.startCompression( config.getCompressionLevel(), directoryService.getMaxPDUSize(),
+                            compressionMetrics );
+                    }
+
                     return true;
                 }
                 catch ( LdapException le )
@@ -298,6 +378,9 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
             searchRequest.addControl( new ManageDsaITImpl() );
         }
 
+        // We accept to receive only the modified attributes of the modified entries
+        searchRequest.addControl( ReplicaDeltaControl.newControl() );
+
         if ( CONSUMER_LOG.isDebugEnabled() )
         {
             MDC.put( "Replica", Integer.toString( config.getReplicaId() ) );
@@ -344,134 +427,227 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
      * - Present
      * @param syncResult
      */
-    private void handleSearchResultEntry( SearchResultEntry syncResult )
+    private void handleSearchResultEntry( SearchResultEntry syncResult, ApplyBatch batch )
     {
         CONSUMER_LOG.debug( "------------- starting handleSearchResult ------------" );
 
+        try
+        {
+            applySearchResultEntry( syncResult, batch );
+        }
+        catch ( Exception e )
+        {
+            if ( batch.transaction )
+            {
+                // The failed operation has rolled the batch transaction back
+                retryBatch( batch, e );
+            }
+            else
+            {
+                CONSUMER_LOG.error( e.getMessage(), e );
+            }
+        }
+
+        CONSUMER_LOG.debug( "------------- Ending handleSearchResult ------------" );
+    }
+
+
+    /**
+     * Applies the change a SearchResultEntry carries, in the current batch
+     */
+    private void applySearchResultEntry( SearchResultEntry syncResult, ApplyBatch batch ) throws Exception
+    {
         SyncStateValue syncStateCtrl = ( SyncStateValue ) syncResult.getControl( SyncStateValue.OID );
 
+        Entry remoteEntry = new DefaultEntry( schemaManager, syncResult.getEntry() );
+        String uuid = remoteEntry.get( directoryService.getAtProvider().getEntryUUID() ).getString();
+        Attribute csnAttr = remoteEntry.get( SchemaConstants.ENTRY_CSN_AT );
+        String csn = ( csnAttr != null ) ? csnAttr.getString() : null;
+
+        // lock on UUID to serialize the updates when there are multiple consumers
+        // connected to several producers and to the *same* base/partition
+        Lock lock = getLockFor( uuid );
+
+        if ( !lock.tryLock() )
+        {
+            // Another consumer is applying a change on this entry : it may be waiting for
+            // the write lock our batch holds, so we have to release it before waiting
+            endBatch( batch );
+            lock.lock();
+        }
+
         try
         {
-            Entry remoteEntry = new DefaultEntry( schemaManager, syncResult.getEntry() );
-            String uuid = remoteEntry.get( directoryService.getAtProvider().getEntryUUID() ).getString();
-            // lock on UUID to serialize the updates when there are multiple consumers
-            // connected to several producers and to the *same* base/partition
-            Object lock = getLockFor( uuid );
+            beginBatch( batch );
 
-            synchronized ( lock )
+            if ( batch.transaction )
             {
-                int rid = -1;
+                batch.entries.add( syncResult );
+            }
 
-                if ( syncStateCtrl.getCookie() != null )
-                {
-                    syncCookie = syncStateCtrl.getCookie();
-                    rid = LdapProtocolUtils.getReplicaId( Strings.utf8ToString( syncCookie ) );
-                    CONSUMER_LOG.debug( "assigning the cookie from sync state value control: {}",
-                        Strings.utf8ToString( syncCookie ) );
-                }
+            int rid = -1;
 
-                SyncStateTypeEnum state = syncStateCtrl.getSyncStateType();
+            if ( syncStateCtrl.getCookie() != null )
+            {
+                syncCookie = syncStateCtrl.getCookie();
+                rid = LdapProtocolUtils.getReplicaId( Strings.utf8ToString( syncCookie ) );
+                CONSUMER_LOG.debug( "assigning the cookie from sync state value control: {}",
+                    Strings.utf8ToString( syncCookie ) );
+            }
 
-                // check to avoid conversion of UUID from byte[] to String
-                if ( CONSUMER_LOG.isDebugEnabled() )
-                {
-                    CONSUMER_LOG.debug( "state name {}", state.name() );
-                    CONSUMER_LOG.debug( "entryUUID = {}", Strings.uuidToString( syncStateCtrl.getEntryUUID() ) );
-                }
+            SyncStateTypeEnum state = syncStateCtrl.getSyncStateType();
 
-                Dn remoteDn = remoteEntry.getDn();
+            // check to avoid conversion of UUID from byte[] to String
+            if ( CONSUMER_LOG.isDebugEnabled() )
+            {
+                CONSUMER_LOG.debug( "state name {}", state.name() );
+                CONSUMER_LOG.debug( "entryUUID = {}", Strings.uuidToString( syncStateCtrl.getEntryUUID() ) );
+            }
 
-                switch ( state )
-                {
-                    case ADD:
-                        boolean remoteDnExist = false;
+            Dn remoteDn = remoteEntry.getDn();
 
-                        try
-                        {
-                            remoteDnExist = session.exists( remoteDn );
-                        }
-                        catch ( LdapNoSuchObjectException lnsoe )
-                        {
-                            CONSUMER_LOG.error( lnsoe.getMessage() );
-                        }
+            switch ( state )
+            {
+                case ADD:
+                    boolean remoteDnExist = false;
+
+                    try
+                    {
+                        remoteDnExist = session.exists( remoteDn );
+                    }
+                    catch ( LdapNoSuchObjectException lnsoe )
+                    {
+                        CONSUMER_LOG.error( lnsoe.getMessage() );
+                    }
+
+                    if ( !remoteDnExist )
+                    {
+                        CONSUMER_LOG.debug( "adding entry with dn {}", remoteDn );
+                        CONSUMER_LOG.debug( remoteEntry.toString() );
+                        AddOperationContext addContext = new AddOperationContext( session, remoteEntry );
+                        addContext.setReplEvent( true );
+                        addContext.setRid( rid );
+                        bypassInterceptors( addContext, OperationEnum.ADD );
+
+                        OperationManager operationManager = directoryService.getOperationManager();
+                        operationManager.add( addContext );
+                    }
+                    else
+                    {
+                        CONSUMER_LOG.debug( "updating entry in refreshOnly mode {}", remoteDn );
+                        modify( remoteEntry, rid );
+                    }
 
-                        if ( !remoteDnExist )
-                        {
-                            CONSUMER_LOG.debug( "adding entry with dn {}", remoteDn );
-                            CONSUMER_LOG.debug( remoteEntry.toString() );
-                            AddOperationContext addContext = new AddOperationContext( session, remoteEntry );
-                            addContext.setReplEvent( true );
-                            addContext.setRid( rid );
-
-                            OperationManager operationManager = directoryService.getOperationManager();
-                            operationManager.add( addContext );
-                        }
-                        else
-                        {
-                            CONSUMER_LOG.debug( "updating entry in refreshOnly mode {}", remoteDn );
-                            modify( remoteEntry, rid );
-                        }
+                    break;
 
-                        break;
+                case MODIFY:
+                    CONSUMER_LOG.debug( "modifying entry with dn {}", remoteEntry.getDn().getName() );
 
-                    case MODIFY:
-                        CONSUMER_LOG.debug( "modifying entry with dn {}", remoteEntry.getDn().getName() );
+                    if ( ReplicaDeltaControl.isPresent( syncResult ) )
+                    {
+                        modifyDelta( remoteEntry, rid );
+                    }
+                    else
+                    {
                         modify( remoteEntry, rid );
+                    }
+
+                    break;
+
+                case MODDN:
+                    String entryUuid = Strings.uuidToString( syncStateCtrl.getEntryUUID() );
+                    applyModDnOperation( remoteEntry, entryUuid, rid );
+
+                    break;
+
+                case DELETE:
+                    CONSUMER_LOG.debug( "deleting entry with dn {}", remoteEntry.getDn().getName() );
+
+                    if ( !session.exists( remoteDn ) )
+                    {
+                        CONSUMER_LOG
+                            .debug(
+                                "looks like entry {} was already deleted in a prior update (possibly from another provider), skipping delete",
+                                remoteDn );
+                    }
+                    else
+                    {
+                        // incase of a MODDN operation resulting in a branch to be moved out of scope
+                        // ApacheDS replication provider sends a single delete event on the Dn of the moved branch
+                        // so the branch needs to be recursively deleted here
+                        deleteRecursive( remoteEntry.getDn(), rid );
+                    }
+
+                    break;
+
+                case PRESENT:
+                    CONSUMER_LOG.debug( "entry present {}", remoteEntry );
+                    break;
+
+                default:
+                    throw new IllegalArgumentException( "Unexpected sync state " + state );
+            }
 
-                        break;
+            batch.count++;
 
-                    case MODDN:
-                        String entryUuid = Strings.uuidToString( syncStateCtrl.getEntryUUID() );
-                        applyModDnOperation( remoteEntry, entryUuid, rid );
+            if ( csn != null )
+            {
+                batch.lastCsn = csn;
+            }
+        }
+        finally
+        {
+            lock.unlock();
+        }
 
-                        break;
+        // the cookie is stored with the batch, only if the above operations were successful
+        if ( isBatchFull( batch ) )
+        {
+            endBatch( batch );
+        }
+    }
 
-                    case DELETE:
-                        CONSUMER_LOG.debug( "deleting entry with dn {}", remoteEntry.getDn().getName() );
 
-                        if ( !session.exists( remoteDn ) )
-                        {
-                            CONSUMER_LOG
-                                .debug(
-                                    "looks like entry {} was already deleted in a prior update (possibly from another provider), skipping delete",
-                                    remoteDn );
-                        }
-                        else
-                        {
-                            // incase of a MODDN operation resulting in a branch to be moved out of scope
-                            // ApacheDS replication provider sends a single delete event on the Dn of the moved branch
-                            // so the branch needs to be recursively deleted here
-                            deleteRecursive( remoteEntry.getDn(), rid );
-                        }
+    /**
+     * Applies again one by one the entries of a batch which has failed. The failed operation has
+     * rolled the batch transaction back, so none of its changes has been applied.
+     */
+    private void retryBatch( ApplyBatch batch, Exception cause )
+    {
+        List<SearchResultEntry> entries = new ArrayList<>( batch.entries );
+        abortBatch( batch );
 
-                        break;
+        CONSUMER_LOG.warn( "Failed to apply a batch of {} changes received from {}, applying them one by one",
+            entries.size(), config.getProducer(), cause );
 
-                    case PRESENT:
-                        CONSUMER_LOG.debug( "entry present {}", remoteEntry );
-                        break;
+        batch.single = true;
 
-                    default:
-                        throw new IllegalArgumentException( "Unexpected sync state " + state );
+        try
+        {
+            for ( SearchResultEntry entry : entries )
+            {
+                try
+                {
+                    applySearchResultEntry( entry, batch );
                 }
-
-                // store the cookie only if the above operation was successful
-                if ( syncStateCtrl.getCookie() != null )
+                catch ( Exception e )
                 {
-                    storeCookie();
+                    CONSUMER_LOG.error( e.getMessage(), e );
                 }
             }
+
+            endBatch( batch );
         }
-        catch ( Exception e )
+        finally
         {
-            CONSUMER_LOG.error( e.getMessage(), e );
+            batch.single = false;
         }
-
-        CONSUMER_LOG.debug( "------------- Ending handleSearchResult ------------" );
     }
 
 
     /**
-     * {@inheritDoc}
+     * Handles a SyncInfo message : the entries listed in a refreshDeletes syncIdSet are deleted, and
+     * so are the entries not listed in a refreshPresent syncIdSet. The cookie is stored once they are.
      */
     private void handleSyncInfo( IntermediateResponse syncInfoResp )
     {
@@ -479,14 +655,27 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
         {
             CONSUMER_LOG.debug( "............... inside handleSyncInfo ..............." );
 
-            byte[] syncInfoBytes = syncInfoResp.getResponseValue();
+            SyncInfoValue syncInfoValue;
 
-            if ( syncInfoBytes == null )
+            if ( syncInfoResp instanceof SyncInfoValue )
             {
-                return;
+                // The codec has already decoded the message
+                syncInfoValue = ( SyncInfoValue ) syncInfoResp;
             }
+            else
+            {
+                byte[] syncInfoBytes = syncInfoResp.getResponseValue();
 
-            SyncInfoValue syncInfoValue = new SyncInfoValueImpl();
+                if ( syncInfoBytes == null )
+                {
+                    return;
+                }
+
+                IntermediateOperationFactory factory = connection.getCodecService()
+                    .getIntermediateResponseFactories().get( SyncInfoValue.OID );
+                syncInfoValue = ( SyncInfoValue ) factory.newResponse();
+                factory.decodeValue( syncInfoValue, syncInfoBytes );
+            }
 
             byte[] cookie = syncInfoValue.getCookie();
 
@@ -500,35 +689,28 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
 
             if ( cookie != null )
             {
-                if ( CONSUMER_LOG.isDebugEnabled() )
-                {
-                    CONSUMER_LOG.debug( "setting the cookie from the sync info: {}", Strings.utf8ToString( cookie ) );
-                    CONSUMER_LOG.debug( "setting the cookie from the sync info: {}", Strings.utf8ToString( cookie ) );
-                }
-
-                syncCookie = cookie;
-
-                String cookieString = Strings.utf8ToString( syncCookie );
-                replicaId = LdapProtocolUtils.getReplicaId( cookieString );
+                replicaId = LdapProtocolUtils.getReplicaId( Strings.utf8ToString( cookie ) );
             }
 
             CONSUMER_LOG.info( "refreshDeletes: {}", syncInfoValue.isRefreshDeletes() );
 
-            List<byte[]> uuidList = syncInfoValue.getSyncUUIDs();
-
             // if refreshDeletes set to true then delete all the entries with entryUUID
-            // present in the syncIdSet
-            if ( syncInfoValue.isRefreshDeletes() )
-            {
-                deleteEntries( uuidList, false, replicaId );
-            }
-            else
-            {
-                deleteEntries( uuidList, true, replicaId );
-            }
+            // present in the syncIdSet, otherwise delete all the entries which are not
+            deleteEntries( syncInfoValue.getSyncUUIDs(), !syncInfoValue.isRefreshDeletes(), replicaId );
 
             CONSUMER_LOG.info( "refreshDone: {}", syncInfoValue.isRefreshDone() );
 
+            // The cookie is only stored once the entries have been deleted
+            if ( cookie != null )
+            {
+                if ( CONSUMER_LOG.isDebugEnabled() )
+                {
+                    CONSUMER_LOG.debug( "setting the cookie from the sync info: {}", Strings.utf8ToString( cookie ) );
+                }
+
+                syncCookie = cookie;
+            }
+
             storeCookie();
         }
         catch ( Exception de )
@@ -568,6 +750,19 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
         // read the cookie if persisted
         readCookie();
 
+        if ( ( syncCookie == null ) && ( config.getSnapshotDirectory() != null ) )
+        {
+            try
+            {
+                installSnapshot();
+            }
+            catch ( Exception e )
+            {
+                CONSUMER_LOG.error( "Failed to install the snapshot {}, doing a full refresh",
+                    config.getSnapshotDirectory(), e );
+            }
+        }
+
         if ( config.isRefreshNPersist() )
         {
             try
@@ -774,28 +969,51 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
 
         CONSUMER_LOG.debug( "Response from {} : {}", config.getProducer(), resp );
 
-        // Now, process the responses. We loop until we have a connection termination or
-        // a SearchResultDone (RefreshOnly mode)
-        while ( !( resp instanceof SearchResultDone ) && !sf.isCancelled() && !disconnected )
+        ApplyBatch batch = new ApplyBatch();
+
+        try
         {
-            if ( resp instanceof SearchResultEntry )
+            // Now, process the responses. We loop until we have a connection termination or
+            // a SearchResultDone (RefreshOnly mode)
+            while ( !( resp instanceof SearchResultDone ) && !sf.isCancelled() && !disconnected )
             {
-                SearchResultEntry result = ( SearchResultEntry ) resp;
+                if ( resp instanceof SearchResultEntry )
+                {
+                    SearchResultEntry result = ( SearchResultEntry ) resp;
 
-                handleSearchResultEntry( result );
-            }
-            else if ( resp instanceof SearchResultReference )
-            {
-                handleSearchReference( ( SearchResultReference ) resp );
-            }
-            else if ( resp instanceof IntermediateResponse )
-            {
-                handleSyncInfo( ( IntermediateResponse ) resp );
-            }
+                    handleSearchResultEntry( result, batch );
+                }
+                else
+                {
+                    // Only the consecutive entries are applied in a single batch
+                    endBatch( batch );
+
+                    if ( resp instanceof SearchResultReference )
+                    {
+                        handleSearchReference( ( SearchResultReference ) resp );
+                    }
+                    else if ( resp instanceof IntermediateResponse )
+                    {
+                        handleSyncInfo( ( IntermediateResponse ) resp );
+                    }
+                }
+
+                // Next entry. If none has been received yet, commit the current batch before
+                // waiting, so that we don't keep the changes pending and the write lock held
+                resp = sf.get( 0L, TimeUnit.MILLISECONDS );
 
-            // Next entry
-            resp = sf.get();
-            CONSUMER_LOG.debug( "Response from {} : {}", config.getProducer(), resp );
+                if ( resp == null )
+                {
+                    endBatch( batch );
+                    resp = sf.get();
+                }
+
+                CONSUMER_LOG.debug( "Response from {} : {}", config.getProducer(), resp );
+            }
+        }
+        finally
+        {
+            endBatch( batch );
         }
 
         if ( sf.isCancelled() )
@@ -956,6 +1174,62 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
     }
 
 
+    /**
+     * Installs the snapshot taken by the provider as the local partition, and resumes the
+     * replication from the snapshot cookie : only the changes done on the provider after the
+     * snapshot will be replicated.
+     */
+    private void installSnapshot() throws LdapException
+    {
+        File directory = new File( config.getSnapshotDirectory() );
+        ReplicaSnapshot snapshot = ReplicaSnapshot.read( directory );
+
+        PartitionNexus nexus = directoryService.getPartitionNexus();
+        Dn baseDn = new Dn( schemaManager, config.getBaseDn() );
+        Partition partition = nexus.getPartition( baseDn );
+
+        // The snapshot contains the whole partition, it can only be installed in
+        // a partition of the same kind, with the same suffix
+        if ( !( partition instanceof AbstractBTreePartition ) || !baseDn.equals( partition.getSuffixDn() )
+            || !baseDn.equals( new Dn( schemaManager, snapshot.getSuffixDn() ) )
+            || !partition.getClass().getName().equals( snapshot.getPartitionType() ) )
+        {
+            throw new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM,
+                I18n.err( I18n.ERR_38043_SNAPSHOT_SUFFIX_MISMATCH, snapshot.getSuffixDn(), partition.getId() ) );
+        }
+
+        CONSUMER_LOG.info( "Installing the snapshot {} in the {} partition", snapshot, partition.getId() );
+
+        File partitionDir = new File( ( ( AbstractBTreePartition ) partition ).getPartitionPath() );
+        OperationManager operationManager = directoryService.getOperationManager();
+
+        operationManager.lockWrite();
+
+        try
+        {
+            nexus.removeContextPartition( partition.getSuffixDn().getNormName() );
+
+            try
+            {
+                snapshot.install( directory, partitionDir, partition.getId() );
+            }
+            finally
+            {
+                nexus.addContextPartition( partition );
+            }
+        }
+        finally
+        {
+            operationManager.unlockWrite();
+        }
+
+        syncCookie = Strings.getBytesUtf8( snapshot.getCookie() );
+        storeCookie();
+
+        CONSUMER_LOG.info( "Snapshot installed, resuming the replication from {}", snapshot.getContextCsn() );
+    }
+
+
     /**
      * Read the cookie for a consumer
      */
@@ -1089,6 +1363,7 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
             MoveOperationContext movCtx = new MoveOperationContext( session, localDn, remoteParentDn );
             movCtx.setReplEvent( true );
             movCtx.setRid( rid );
+            bypassInterceptors( movCtx, OperationEnum.MOVE );
             directoryService.getOperationManager().move( movCtx );
         }
         else if ( localParentDn.equals( remoteParentDn ) )
@@ -1101,6 +1376,7 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
                 deleteOldRdn );
             renCtx.setReplEvent( true );
             renCtx.setRid( rid );
+            bypassInterceptors( renCtx, OperationEnum.RENAME );
             directoryService.getOperationManager().rename( renCtx );
         }
         else
@@ -1117,6 +1393,7 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
                 remoteParentDn, remoteRdn, deleteOldRdn );
             movRenCtx.setReplEvent( true );
             movRenCtx.setRid( rid );
+            bypassInterceptors( movRenCtx, OperationEnum.MOVE_AND_RENAME );
             directoryService.getOperationManager().moveAndRename( movRenCtx );
         }
     }
@@ -1202,6 +1479,144 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
             serverModifications );
         modifyContext.setReplEvent( true );
         modifyContext.setRid( rid );
+        bypassInterceptors( modifyContext, OperationEnum.MODIFY );
+
+        OperationManager operationManager = directoryService.getOperationManager();
+        operationManager.modify( modifyContext );
+    }
+
+
+    /**
+     * Applies a modification received as a delta : the remote entry only contains the
+     * modified attributes, with all their values, and an attribute without value has been
+     * removed. Only the values which have changed are removed from or added to the local
+     * entry, so that the cost of the modification depends on the size of the change, not
+     * on the size of the entry.
+     */
+    private void modifyDelta( Entry remoteEntry, int rid ) throws Exception
+    {
+        remoteEntry.removeAttributes( MOD_IGNORE_AT );
+
+        // Only fetch the attributes we are going to modify
+        List<String> attributes = new ArrayList<>( remoteEntry.size() + 1 );
+
+        for ( Attribute remoteAttr : remoteEntry )
+        {
+            attributes.add( remoteAttr.getAttributeType().getOid() );
+        }
+
+        attributes.add( SchemaConstants.ENTRY_CSN_AT );
+
+        LookupOperationContext lookupCtx = new LookupOperationContext( session, remoteEntry.getDn(),
+            attributes.toArray( StringConstants.EMPTY_STRINGS ) );
+
+        lookupCtx.setSyncreplLookup( true );
+
+        Entry localEntry;
+
+        Partition partition = session.getDirectoryService().getPartitionNexus().getPartition( remoteEntry.getDn() );
+
+        try ( PartitionTxn partitionTxn = partition.beginReadTransaction() )
+        {
+            lookupCtx.setTransaction( partitionTxn );
+            localEntry = session.getDirectoryService().getOperationManager().lookup( lookupCtx );
+        }
+
+        if ( config.isMmrMode() )
+        {
+            Csn localCsn = new Csn( localEntry.get( SchemaConstants.ENTRY_CSN_AT ).getString() );
+            Csn remoteCsn = new Csn( remoteEntry.get( SchemaConstants.ENTRY_CSN_AT ).getString() );
+
+            if ( localCsn.compareTo( remoteCsn ) >= 0 )
+            {
+                // just discard the received modification, that is old
+                CONSUMER_LOG.debug( "local modification is latest, discarding the modification of dn {}",
+                    remoteEntry.getDn() );
+                return;
+            }
+        }
+
+        List<Modification> mods = new ArrayList<>();
+
+        for ( Attribute remoteAttr : remoteEntry )
+        {
+            AttributeType attributeType = remoteAttr.getAttributeType();
+            Attribute localAttr = localEntry.get( attributeType );
+
+            if ( remoteAttr.size() == 0 )
+            {
+                // The attribute has been removed
+                if ( localAttr != null )
+                {
+                    mods.add( new DefaultModification( ModificationOperation.REMOVE_ATTRIBUTE, attributeType ) );
+                }
+
+                continue;
+            }
+
+            if ( localAttr == null )
+            {
+                mods.add( new DefaultModification( ModificationOperation.ADD_ATTRIBUTE, remoteAttr ) );
+
+                continue;
+            }
+
+            Attribute removed = new DefaultAttribute( attributeType );
+
+            for ( Value localValue : localAttr )
+            {
+                if ( !remoteAttr.contains( localValue ) )
+                {
+                    removed.add( localValue );
+                }
+            }
+
+            Attribute added = new DefaultAttribute( attributeType );
+
+            for ( Value remoteValue : remoteAttr )
+            {
+                if ( !localAttr.contains( remoteValue ) )
+                {
+                    added.add( remoteValue );
+                }
+            }
+
+            if ( ( removed.size() == 0 ) && ( added.size() == 0 ) )
+            {
+                // Nothing has changed
+                continue;
+            }
+
+            if ( attributeType.isSingleValued() || ( removed.size() == localAttr.size() ) )
+            {
+                // All the values are replaced
+                mods.add( new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE, remoteAttr ) );
+
+                continue;
+            }
+
+            if ( removed.size() > 0 )
+            {
+                mods.add( new DefaultModification( ModificationOperation.REMOVE_ATTRIBUTE, removed ) );
+            }
+
+            if ( added.size() > 0 )
+            {
+                mods.add( new DefaultModification( ModificationOperation.ADD_ATTRIBUTE, added ) );
+            }
+        }
+
+        if ( mods.isEmpty() )
+        {
+            CONSUMER_LOG.debug( "the entry {} is already up to date", remoteEntry.getDn() );
+
+            return;
+        }
+
+        ModifyOperationContext modifyContext = new ModifyOperationContext( session, remoteEntry.getDn(), mods );
+        modifyContext.setReplEvent( true );
+        modifyContext.setRid( rid );
+        bypassInterceptors( modifyContext, OperationEnum.MODIFY );
 
         OperationManager operationManager = directoryService.getOperationManager();
         operationManager.modify( modifyContext );
@@ -1245,10 +1660,15 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
 
 
     /**
-     * deletes the entries having the UUID given in the list
+     * Deletes the entries having the UUIDs given in the list, or, for a refreshPresent list, all
+     * the entries below the base Dn whose UUID is not in the list. The UUIDs are stored in an
+     * {@link EntryUuidSet}, then the candidates are found by probing it while walking the
+     * partition entries, instead of searching them with a filter containing one assertion per UUID.
+     * The entries are deleted in batches, the deepest ones first.
      *
      * @param uuidList the list of UUIDs
-     * @param replicaId TODO
+     * @param isRefreshPresent tells if the list contains the UUIDs of the present entries
+     * @param replicaId The ID of the replica the changes are received from
      * @throws Exception in case of any problems while deleting the entries
      */
     private void deleteEntries( List<byte[]> uuidList, boolean isRefreshPresent, int replicaId ) throws Exception
@@ -1258,150 +1678,423 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
             return;
         }
 
-        // if it is refreshPresent list then send all the UUIDs for
-        // filtering, otherwise breaking the list will cause the
-        // other present entries to be deleted from DIT
-        if ( isRefreshPresent )
+        CONSUMER_LOG.debug( "{} syncinfo list has {} UUIDs", isRefreshPresent ? "refresh present" : "refresh deletes",
+            uuidList.size() );
+
+        Dn baseDn = new Dn( schemaManager, config.getBaseDn() );
+        List<Dn> deletedDns = new ArrayList<>();
+
+        try ( EntryUuidSet uuids = new EntryUuidSet( directoryService.getInstanceLayout().getTmpDirectory(),
+            EntryUuidSet.DEFAULT_MEMORY_THRESHOLD ) )
         {
-            CONSUMER_LOG.debug( "refresh present syncinfo list has {} UUIDs", uuidList.size() );
-            processDelete( uuidList, isRefreshPresent, replicaId );
-            return;
-        }
+            for ( byte[] uuid : uuidList )
+            {
+                uuids.add( uuid );
+            }
 
-        int nodeLimit = 10;
+            Partition partition = directoryService.getPartitionNexus().getPartition( baseDn );
 
-        int count = uuidList.size() / nodeLimit;
+            if ( partition instanceof AbstractBTreePartition )
+            {
+                AbstractBTreePartition btreePartition = ( AbstractBTreePartition ) partition;
 
-        int startIndex = 0;
-        int i = 0;
-        for ( ; i < count; i++ )
-        {
-            startIndex = i * nodeLimit;
-            processDelete( uuidList.subList( startIndex, startIndex + nodeLimit ), isRefreshPresent, replicaId );
+                try ( PartitionTxn partitionTxn = partition.beginReadTransaction() )
+                {
+                    if ( isRefreshPresent )
+                    {
+                        findAbsentEntries( btreePartition, partitionTxn, uuids, baseDn, deletedDns );
+                    }
+                    else
+                    {
+                        findEntries( btreePartition, partitionTxn, uuidList, baseDn, deletedDns );
+                    }
+                }
+            }
+            else
+            {
+                searchEntries( uuids, isRefreshPresent, baseDn, deletedDns );
+            }
         }
 
-        if ( ( uuidList.size() % nodeLimit ) != 0 )
+        // The children have to be deleted before their parent
+        deletedDns.sort( ( dn1, dn2 ) -> Integer.compare( dn2.size(), dn1.size() ) );
+
+        ApplyBatch batch = new ApplyBatch();
+
+        // The entries deleted in the current batch transaction
+        List<Dn> batchDns = new ArrayList<>();
+
+        try
         {
-            // remove the remaining entries
-            if ( count > 0 )
+            for ( Dn dn : deletedDns )
             {
-                startIndex = i * nodeLimit;
+                beginBatch( batch );
+
+                if ( !batch.transaction )
+                {
+                    deleteEntry( dn, replicaId, batch );
+                }
+                else
+                {
+                    batchDns.add( dn );
+
+                    try
+                    {
+                        applyDelete( dn, replicaId );
+                        batch.count++;
+                    }
+                    catch ( LdapException le )
+                    {
+                        // The failed deletion, even of an already deleted entry, has rolled the batch
+                        // transaction back : the deletions are done again, one by one
+                        abortBatch( batch );
+                        batch.single = true;
+
+                        try
+                        {
+                            for ( Dn batchDn : batchDns )
+                            {
+                                beginBatch( batch );
+                                deleteEntry( batchDn, replicaId, batch );
+                            }
+
+                            endBatch( batch );
+                        }
+                        finally
+                        {
+                            batch.single = false;
+                            batchDns.clear();
+                        }
+                    }
+                }
+
+                if ( isBatchFull( batch ) )
+                {
+                    endBatch( batch );
+                    batchDns.clear();
+                }
             }
+        }
+        finally
+        {
+            endBatch( batch );
+        }
+    }
+
 
-            processDelete( uuidList.subList( startIndex, uuidList.size() ), isRefreshPresent, replicaId );
+    /**
+     * Deletes an entry received in a syncIdSet, ignoring it if it has already been deleted
+     */
+    private void deleteEntry( Dn dn, int replicaId, ApplyBatch batch ) throws LdapException
+    {
+        try
+        {
+            applyDelete( dn, replicaId );
+            batch.count++;
+        }
+        catch ( LdapNoSuchObjectException lnsoe )
+        {
+            CONSUMER_LOG.debug( "entry {} has already been deleted", dn );
         }
     }
 
 
     /**
-     * do not call this method directly, instead call deleteEntries()
-     *
-     * @param limitedUuidList a list of UUIDs whose size is less than or equal to #NODE_LIMIT (node limit applies only for refreshDeletes list)
-     * @param isRefreshPresent a flag indicating the type of entries present in the UUID list
-     * @param replicaId TODO
+     * Deletes an entry received in a syncIdSet
      */
-    private void processDelete( List<byte[]> limitedUuidList, boolean isRefreshPresent, int replicaId )
-        throws Exception
+    private void applyDelete( Dn dn, int replicaId ) throws LdapException
     {
-        ExprNode filter = null;
-        int size = limitedUuidList.size();
-        if ( size == 1 )
+        DeleteOperationContext ctx = new DeleteOperationContext( session );
+        ctx.setReplEvent( true );
+        ctx.setRid( replicaId );
+        bypassInterceptors( ctx, OperationEnum.DELETE );
+
+        // DO NOT generate replication event if this is being deleted as part of
+        // e_sync_refresh_required
+        if ( reload )
         {
-            String uuid = Strings.uuidToString( limitedUuidList.get( 0 ) );
+            ctx.setGenerateNoReplEvt( true );
+        }
+
+        ctx.setDn( dn );
 
-            filter = new EqualityNode<String>( SchemaConstants.ENTRY_UUID_AT, uuid );
-            if ( isRefreshPresent )
+        directoryService.getOperationManager().delete( ctx );
+    }
+
+
+    /**
+     * Finds the entries below the base Dn having the given UUIDs, looking them up by their ID.
+     */
+    private void findEntries( AbstractBTreePartition partition, PartitionTxn partitionTxn, List<byte[]> uuidList,
+        Dn baseDn, List<Dn> deletedDns ) throws LdapException
+    {
+        for ( byte[] uuid : uuidList )
+        {
+            String id = Strings.uuidToString( uuid );
+
+            if ( partition.getRdnIndex().reverse( partitionTxn, id ) )
             {
-                filter = new NotNode( filter );
+                Dn dn = partition.getEntryDn( partitionTxn, id );
+
+                if ( dn.isDescendantOf( baseDn ) )
+                {
+                    deletedDns.add( dn );
+                }
             }
         }
-        else
+    }
+
+
+    /**
+     * Finds the entries below the base Dn whose UUID is not in the set, walking the IDs of all
+     * the partition entries.
+     */
+    private void findAbsentEntries( AbstractBTreePartition partition, PartitionTxn partitionTxn,
+        EntryUuidSet uuids, Dn baseDn, List<Dn> deletedDns ) throws Exception
+    {
+        try ( Cursor<IndexEntry<String, String>> cursor = partition.getEntryCsnIndex().forwardCursor( partitionTxn ) )
         {
-            if ( isRefreshPresent )
-            {
-                filter = new AndNode();
-            }
-            else
+            while ( cursor.next() )
             {
-                filter = new OrNode();
-            }
+                String id = cursor.get().getId();
 
-            for ( int i = 0; i < size; i++ )
-            {
-                String uuid = Strings.uuidToString( limitedUuidList.get( i ) );
-                ExprNode uuidEqNode = new EqualityNode<String>( SchemaConstants.ENTRY_UUID_AT, uuid );
+                if ( uuids.contains( id ) )
+                {
+                    continue;
+                }
 
-                if ( isRefreshPresent )
+                Dn dn = partition.getEntryDn( partitionTxn, id );
+
+                if ( dn.isDescendantOf( baseDn ) )
                 {
-                    uuidEqNode = new NotNode( uuidEqNode );
-                    ( ( AndNode ) filter ).addNode( uuidEqNode );
+                    deletedDns.add( dn );
                 }
-                else
+            }
+        }
+    }
+
+
+    /**
+     * Finds the entries to delete in a partition which has no index to walk, searching all the
+     * entries below the base Dn and probing the set with their entryUUID.
+     */
+    private void searchEntries( EntryUuidSet uuids, boolean isRefreshPresent, Dn baseDn, List<Dn> deletedDns )
+        throws Exception
+    {
+        SearchRequest req = new SearchRequestImpl();
+        req.setBase( baseDn );
+        req.setFilter( ENTRY_UUID_PRESENCE_FILTER );
+        req.setScope( SearchScope.SUBTREE );
+        req.setDerefAliases( AliasDerefMode.NEVER_DEREF_ALIASES );
+        req.addAttributes( SchemaConstants.ENTRY_UUID_AT );
+
+        try ( Cursor<Entry> cursor = session.search( req ) )
+        {
+            while ( cursor.next() )
+            {
+                Entry entry = cursor.get();
+                Attribute entryUuid = entry.get( directoryService.getAtProvider().getEntryUUID() );
+
+                if ( ( entryUuid != null ) && ( uuids.contains( entryUuid.getString() ) != isRefreshPresent ) )
                 {
-                    ( ( OrNode ) filter ).addNode( uuidEqNode );
+                    deletedDns.add( entry.getDn() );
                 }
             }
         }
+    }
 
-        Dn dn = new Dn( schemaManager, config.getBaseDn() );
 
-        if ( CONSUMER_LOG.isDebugEnabled() )
+    private synchronized Lock getLockFor( String uuid )
+    {
+        Lock lock = UUID_LOCK_MAP.get( uuid );
+
+        if ( lock == null )
         {
-            CONSUMER_LOG.debug( "selecting entries to be deleted using filter {}", filter );
+            lock = new ReentrantLock();
+            UUID_LOCK_MAP.put( uuid, lock );
         }
 
-        SearchRequest req = new SearchRequestImpl();
-        req.setBase( dn );
-        req.setFilter( filter );
-        req.setScope( SearchScope.SUBTREE );
-        req.setDerefAliases( AliasDerefMode.NEVER_DEREF_ALIASES );
-        // the ENTRY_DN_AT must be in the attribute list, otherwise sorting fails
-        req.addAttributes( SchemaConstants.ENTRY_DN_AT );
+        return lock;
+    }
 
-        SortKey sk = new SortKey( SchemaConstants.ENTRY_DN_AT, SchemaConstants.DISTINGUISHED_NAME_MATCH_MR_OID );
-        SortRequest ctrl = new SortRequestImpl();
-        ctrl.addSortKey( sk );
-        req.addControl( ctrl );
 
-        OperationManager operationManager = directoryService.getOperationManager();
+    /**
+     * Starts a batch of changes if none is in progress. When the batches are enabled, the
+     * changes are applied in a single session transaction, holding the write lock so that
+     * no other operation can commit or abort the pending changes.
+     */
+    private void beginBatch( ApplyBatch batch )
+    {
+        if ( batch.start != 0L )
+        {
+            return;
+        }
 
-        Cursor<Entry> cursor = session.search( req );
-        cursor.beforeFirst();
+        batch.start = System.nanoTime();
+        batch.count = 0;
+        batch.lastCsn = null;
+        batch.entries.clear();
 
-        while ( cursor.next() )
+        if ( ( config.getApplyBatchSize() > 1 ) && !batch.single )
         {
-            Entry entry = cursor.get();
+            directoryService.getOperationManager().lockWrite();
+            session.beginSessionTransaction();
+            batch.transaction = true;
+        }
+    }
 
-            DeleteOperationContext ctx = new DeleteOperationContext( session );
-            ctx.setReplEvent( true );
-            ctx.setRid( replicaId );
 
-            // DO NOT generate replication event if this is being deleted as part of
-            // e_sync_refresh_required
-            if ( reload )
+    /**
+     * Tells if a batch must be committed : it has reached the maximum number of changes, or
+     * it has been holding the write lock for the maximum time
+     */
+    private boolean isBatchFull( ApplyBatch batch )
+    {
+        return ( batch.count >= config.getApplyBatchSize() )
+            || ( System.nanoTime() - batch.start >= TimeUnit.MILLISECONDS.toNanos( config.getApplyBatchMaxTime() ) );
+    }
+
+
+    /**
+     * Aborts a batch of changes after an operation has failed : the batch transaction is rolled
+     * back, and neither the cookie nor the statistics are updated.
+     */
+    private void abortBatch( ApplyBatch batch )
+    {
+        if ( batch.transaction )
+        {
+            try
             {
-                ctx.setGenerateNoReplEvt( true );
+                session.endSessionTransaction( false );
+            }
+            catch ( IOException ioe )
+            {
+                CONSUMER_LOG.error( "Failed to abort the {} changes received from {}", batch.count,
+                    config.getProducer(), ioe );
+            }
+            finally
+            {
+                batch.transaction = false;
+                directoryService.getOperationManager().unlockWrite();
             }
-
-            ctx.setDn( entry.getDn() );
-            operationManager.delete( ctx );
         }
 
-        cursor.close();
+        batch.start = 0L;
+        batch.entries.clear();
     }
 
 
-    private synchronized Object getLockFor( String uuid )
+    /**
+     * Ends a batch of changes, if it has been started : the changes are committed, then the
+     * cookie is stored once for all of them, and the statistics are updated.
+     */
+    private void endBatch( ApplyBatch batch )
     {
-        Object lock = UUID_LOCK_MAP.get( uuid );
+        if ( batch.start == 0L )
+        {
+            return;
+        }
 
-        if ( lock == null )
+        boolean committed = true;
+
+        if ( batch.transaction )
         {
-            lock = new Object();
-            UUID_LOCK_MAP.put( uuid, lock );
+            try
+            {
+                session.endSessionTransaction( true );
+            }
+            catch ( IOException ioe )
+            {
+                CONSUMER_LOG.error( "Failed to commit the {} changes received from {}", batch.count,
+                    config.getProducer(), ioe );
+                committed = false;
+            }
+            finally
+            {
+                batch.transaction = false;
+                directoryService.getOperationManager().unlockWrite();
+            }
         }
 
-        return lock;
+        long elapsed = System.nanoTime() - batch.start;
+        batch.start = 0L;
+
+        if ( !committed || ( batch.count == 0 ) )
+        {
+            return;
+        }
+
+        storeCookie();
+
+        appliedChanges.addAndGet( batch.count );
+        applyRate = batch.count * TimeUnit.SECONDS.toNanos( 1 ) / Math.max( elapsed, 1L );
+
+        if ( batch.lastCsn != null )
+        {
+            try
+            {
+                replicationLag = Math.max( System.currentTimeMillis() - new Csn( batch.lastCsn ).getTimestamp(), 0L );
+            }
+            catch ( InvalidCSNException ice )
+            {
+                CONSUMER_LOG.warn( "Invalid CSN {} received from {}", batch.lastCsn, config.getProducer() );
+            }
+        }
+
+        if ( CONSUMER_LOG.isDebugEnabled() )
+        {
+            CONSUMER_LOG.debug( "Consumer {} applied {} changes in {} ms ({} changes/s), replication lag {} ms",
+                config.getReplicaId(), batch.count, TimeUnit.NANOSECONDS.toMillis( elapsed ), applyRate,
+                replicationLag );
+        }
+    }
+
+
+    /**
+     * Removes the interceptors which are useless for a replicated change from an operation
+     */
+    private void bypassInterceptors( OperationContext opContext, OperationEnum operation )
+    {
+        List<String> interceptors = directoryService.getInterceptors( operation );
+        interceptors.removeAll( BYPASSED_INTERCEPTORS );
+        opContext.setInterceptors( interceptors );
+    }
+
+
+    /**
+     * @return The number of changes applied since the consumer has been started
+     */
+    public long getAppliedChanges()
+    {
+        return appliedChanges.get();
+    }
+
+
+    /**
+     * @return The number of changes applied per second in the last batch
+     */
+    public long getApplyRate()
+    {
+        return applyRate;
+    }
+
+
+    /**
+     * @return The delay, in milliseconds, between the creation of the last applied change on
+     * the provider and its application
+     */
+    public long getReplicationLag()
+    {
+        return replicationLag;
+    }
+
+
+    /**
+     * @return The statistics about the compression of the session with the provider
+     */
+    public ReplicaCompressionMetrics getCompressionMetrics()
+    {
+        return compressionMetrics;
     }
 
 
@@ -1445,6 +2138,7 @@ public class ReplicationConsumerImpl implements ConnectionClosedEventListener, R
                 DeleteOperationContext ctx = new DeleteOperationContext( session );
                 ctx.setReplEvent( true );
                 ctx.setRid( rid );
+                bypassInterceptors( ctx, OperationEnum.DELETE );
 
                 // DO NOT generate replication event if this is being deleted as part of
                 // e_sync_refresh_required
@@ -0,0 +1,165 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.ldap.replication.provider;
+
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+import org.apache.directory.api.ldap.model.constants.Loggers;
+import org.apache.directory.api.ldap.model.message.ExtendedRequest;
+import org.apache.directory.api.ldap.model.message.ExtendedResponse;
+import org.apache.directory.api.ldap.model.message.LdapResult;
+import org.apache.directory.api.ldap.model.message.OpaqueExtendedRequest;
+import org.apache.directory.api.ldap.model.message.OpaqueExtendedResponse;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.server.i18n.I18n;
+import org.apache.directory.server.ldap.ExtendedOperationHandler;
+import org.apache.directory.server.ldap.LdapServer;
+import org.apache.directory.server.ldap.LdapSession;
+import org.apache.directory.server.ldap.replication.ReplicaCompressionFilter;
+import org.apache.mina.core.session.IoSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * An handler for the extended operation a replication consumer sends to compress its session.
+ * The request value, if any, is the deflate level, between 1 and 9. Only an administrator can
+ * start the compression. Once the response is sent, all the data exchanged on the session are
+ * compressed by a {@link ReplicaCompressionFilter}.
+ * The handler is registered by the LdapServer when it's a replication provider.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ReplicaCompressionHandler implements ExtendedOperationHandler<ExtendedRequest, ExtendedResponse>
+{
+    /** The extended operation OID */
+    public static final String EXTENSION_OID = "1.3.6.1.4.1.18060.0.1.10";
+
+    private static final Set<String> EXTENSION_OIDS = Collections.singleton( EXTENSION_OID );
+
+    /** The logger for this class */
+    private static final Logger PROVIDER_LOG = LoggerFactory.getLogger( Loggers.PROVIDER_LOG.getName() );
+
+    /** The name of the LDAP codec in the server sessions chain */
+    private static final String CODEC_FILTER = "codec";
+
+    /** The server the compression statistics are stored in */
+    private LdapServer ldapServer;
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getOid()
+    {
+        return EXTENSION_OID;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<String> getExtensionOids()
+    {
+        return EXTENSION_OIDS;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void handleExtendedOperation( LdapSession session, ExtendedRequest req ) throws Exception
+    {
+        OpaqueExtendedResponse res = new OpaqueExtendedResponse( req.getMessageId(), EXTENSION_OID );
+        LdapResult result = res.getLdapResult();
+        IoSession ioSession = session.getIoSession();
+
+        int level = Deflater.DEFAULT_COMPRESSION;
+        byte[] value = ( req instanceof OpaqueExtendedRequest ) ? ( ( OpaqueExtendedRequest ) req ).getRequestValue()
+            : null;
+
+        if ( !Strings.isEmpty( value ) )
+        {
+            try
+            {
+                level = Integer.parseInt( Strings.utf8ToString( value ) );
+            }
+            catch ( NumberFormatException nfe )
+            {
+                level = -1;
+            }
+
+            if ( ( level < Deflater.BEST_SPEED ) || ( level > Deflater.BEST_COMPRESSION ) )
+            {
+                result.setResultCode( ResultCodeEnum.PROTOCOL_ERROR );
+                result.setDiagnosticMessage( I18n.err( I18n.ERR_38046_INVALID_COMPRESSION_LEVEL,
+                    Strings.utf8ToString( value ) ) );
+                ioSession.write( res );
+
+                return;
+            }
+        }
+
+        // Only the administrators, which the consumers bind as, can compress a session
+        if ( !session.isAuthenticated() || !session.getCoreSession().isAnAdministrator() )
+        {
+            result.setResultCode( ResultCodeEnum.INSUFFICIENT_ACCESS_RIGHTS );
+            ioSession.write( res );
+
+            return;
+        }
+
+        if ( ReplicaCompressionFilter.isInstalled( ioSession ) )
+        {
+            result.setResultCode( ResultCodeEnum.UNWILLING_TO_PERFORM );
+            result.setDiagnosticMessage( I18n.err( I18n.ERR_38045_COMPRESSION_ALREADY_STARTED ) );
+            ioSession.write( res );
+
+            return;
+        }
+
+        // The response itself is sent uncompressed, the consumer starts decompressing when receiving it
+        result.setResultCode( ResultCodeEnum.SUCCESS );
+        ReplicaCompressionFilter.install( ioSession, CODEC_FILTER,
+            new ReplicaCompressionFilter( level, ldapServer.getDirectoryService().getMaxPDUSize(),
+                ldapServer.getReplicaCompressionMetrics(), res ) );
+
+        PROVIDER_LOG.info( "Compression started with level {} for {}", level, ioSession.getRemoteAddress() );
+
+        ioSession.write( res );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setLdapServer( LdapServer ldapServer )
+    {
+        this.ldapServer = ldapServer;
+    }
+}
@@ -48,6 +48,7 @@ import org.apache.directory.api.ldap.extras.controls.syncrepl.syncState.SyncStat
 import org.apache.directory.api.ldap.extras.intermediate.syncrepl.SyncInfoValue;
 import org.apache.directory.api.ldap.extras.intermediate.syncrepl.SyncInfoValueImpl;
 import org.apache.directory.api.ldap.extras.intermediate.syncrepl.SynchronizationInfoEnum;
+import org.apache.directory.api.ldap.model.constants.LdapConstants;
 import org.apache.directory.api.ldap.model.constants.Loggers;
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.cursor.Cursor;
@@ -57,6 +58,8 @@ import org.apache.directory.api.ldap.model.entry.Modification;
 import org.apache.directory.api.ldap.model.entry.Value;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.exception.LdapInvalidAttributeValueException;
+import org.apache.directory.api.ldap.model.exception.LdapOtherException;
+import org.apache.directory.api.ldap.model.exception.LdapUnwillingToPerformException;
 import org.apache.directory.api.ldap.model.exception.LdapURLEncodingException;
 import org.apache.directory.api.ldap.model.filter.AndNode;
 import org.apache.directory.api.ldap.model.filter.EqualityNode;
@@ -65,6 +68,8 @@ import org.apache.directory.api.ldap.model.filter.GreaterEqNode;
 import org.apache.directory.api.ldap.model.filter.LessEqNode;
 import org.apache.directory.api.ldap.model.filter.OrNode;
 import org.apache.directory.api.ldap.model.filter.PresenceNode;
+import org.apache.directory.api.ldap.model.message.AliasDerefMode;
+import org.apache.directory.api.ldap.model.message.Control;
 import org.apache.directory.api.ldap.model.message.LdapResult;
 import org.apache.directory.api.ldap.model.message.ReferralImpl;
 import org.apache.directory.api.ldap.model.message.Response;
@@ -78,15 +83,14 @@ import org.apache.directory.api.ldap.model.message.SearchResultReferenceImpl;
 import org.apache.directory.api.ldap.model.message.SearchScope;
 import org.apache.directory.api.ldap.model.message.controls.ChangeType;
 import org.apache.directory.api.ldap.model.message.controls.ManageDsaIT;
-import org.apache.directory.api.ldap.model.message.controls.SortKey;
 import org.apache.directory.api.ldap.model.message.controls.SortRequest;
-import org.apache.directory.api.ldap.model.message.controls.SortRequestImpl;
 import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.api.ldap.model.schema.AttributeType;
 import org.apache.directory.api.ldap.model.url.LdapUrl;
 import org.apache.directory.api.util.Strings;
 import org.apache.directory.server.constants.ServerDNConstants;
 import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.api.OperationManager;
 import org.apache.directory.server.core.api.event.DirectoryListenerAdapter;
 import org.apache.directory.server.core.api.event.EventService;
 import org.apache.directory.server.core.api.event.EventType;
@@ -96,13 +100,17 @@ import org.apache.directory.server.core.api.interceptor.context.ModifyOperationC
 import org.apache.directory.server.core.api.interceptor.context.OperationContext;
 import org.apache.directory.server.core.api.partition.Partition;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.partition.impl.avl.AvlPartition;
+import org.apache.directory.server.core.partition.impl.btree.AbstractBTreePartition;
 import org.apache.directory.server.i18n.I18n;
 import org.apache.directory.server.ldap.LdapProtocolUtils;
 import org.apache.directory.server.ldap.LdapServer;
 import org.apache.directory.server.ldap.LdapSession;
 import org.apache.directory.server.ldap.handlers.SearchAbandonListener;
 import org.apache.directory.server.ldap.handlers.SearchTimeLimitingMonitor;
+import org.apache.directory.server.ldap.replication.ReplicaDeltaControl;
 import org.apache.directory.server.ldap.replication.ReplicaEventMessage;
+import org.apache.directory.server.ldap.replication.ReplicaSnapshot;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -199,6 +207,10 @@ public class SyncReplRequestHandler implements ReplicationRequestHandler
                 throw new IOException( I18n.err( I18n.ERR_00004_COULD_NOT_CREATE_DIRECTORY, syncReplData ) );
             }
 
+            // The consumers may ask for the modifications to be sent as deltas
+            ReplicaDeltaControl.register( dirService.getLdapCodecService() );
+            ldapServer.getSupportedControls().add( ReplicaDeltaControl.OID );
+
             // Create the replication manager
             replicaUtil = new ReplConsumerManager( dirService );
 
@@ -403,7 +415,17 @@ public class SyncReplRequestHandler implements ReplicationRequestHandler
                         throw new IllegalStateException( I18n.err( I18n.ERR_38031_UNEXPECTED_BASE_SCOPE ) );
                 }
 
-                sendSearchResultEntry( session, req, entry, syncStateType );
+                if ( ( syncStateType == SyncStateTypeEnum.MODIFY ) && ReplicaDeltaControl.isPresent( req )
+                    && replicaEventMessage.hasDelta() )
+                {
+                    // Only send the modified attributes
+                    Entry deltaEntry = replicaEventMessage.getDeltaEntry( dirService.getSchemaManager() );
+                    sendSearchResultEntry( session, req, deltaEntry, syncStateType, ReplicaDeltaControl.newControl() );
+                }
+                else
+                {
+                    sendSearchResultEntry( session, req, entry, syncStateType );
+                }
 
                 clientMsgLog.setLastSentCsn( lastSentCsn );
 
@@ -484,6 +506,8 @@ public class SyncReplRequestHandler implements ReplicationRequestHandler
     {
         PROVIDER_LOG.debug( "Starting an initial refresh" );
 
+        // The entries are not sorted : the partition streams them parents first,
+        // as the core session searches the syncrepl requests in hierarchical order
         SortRequest ctrl = ( SortRequest ) request.getControl( SortRequest.OID );
 
         if ( ctrl != null )
@@ -493,18 +517,6 @@ public class SyncReplRequestHandler implements ReplicationRequestHandler
             request.removeControl( ctrl );
         }
 
-        PROVIDER_LOG
-            .debug( "Adding sort control to sort the entries by entryDn attribute to preserve order of insertion" );
-        SortKey sk = new SortKey( SchemaConstants.ENTRY_DN_AT );
-        // matchingrule for "entryDn"
-        sk.setMatchingRuleId( SchemaConstants.DISTINGUISHED_NAME_MATCH_MR_OID );
-        sk.setReverseOrder( true );
-
-        ctrl = new SortRequestImpl();
-        ctrl.addSortKey( sk );
-
-        request.addControl( ctrl );
-
         String originalFilter = request.getFilter().toString();
         InetSocketAddress address = ( InetSocketAddress ) session.getIoSession().getRemoteAddress();
         String hostName = address.getAddress().getHostName();
@@ -757,6 +769,16 @@ public class SyncReplRequestHandler implements ReplicationRequestHandler
      */
     private void sendSearchResultEntry( LdapSession session, SearchRequest req, Entry entry,
         SyncStateTypeEnum syncStateType ) throws Exception
+    {
+        sendSearchResultEntry( session, req, entry, syncStateType, null );
+    }
+
+
+    /**
+     * Send a SearchResultEntry to the consumer, with an additional control
+     */
+    private void sendSearchResultEntry( LdapSession session, SearchRequest req, Entry entry,
+        SyncStateTypeEnum syncStateType, Control control ) throws Exception
     {
         Attribute uuid = entry.get( SchemaConstants.ENTRY_UUID_AT );
 
@@ -775,6 +797,11 @@ public class SyncReplRequestHandler implements ReplicationRequestHandler
         Response resp = generateResponse( session, req, entry );
         resp.addControl( syncStateControl );
 
+        if ( control != null )
+        {
+            resp.addControl( control );
+        }
+
         PROVIDER_LOG.debug( "Sending the entry:\n {}", resp );
         session.getIoSession().write( resp );
     }
@@ -976,6 +1003,194 @@ public class SyncReplRequestHandler implements ReplicationRequestHandler
     }
 
 
+    /**
+     * Takes an online snapshot of a partition, to be installed on a new consumer instead of
+     * sending it all the entries with an initial refresh. The partition files are copied while
+     * the writes are blocked, and an event log is created for the future consumer : it stores the
+     * changes done after the snapshot, which the consumer will get when resuming the replication
+     * with the cookie stored in the snapshot descriptor.
+     *
+     * @param suffixDn The suffix of the partition to take a snapshot of
+     * @param directory The directory to write the snapshot into. It must not exist, or be empty
+     * @return The snapshot descriptor
+     * @throws LdapException If the snapshot cannot be taken
+     */
+    public ReplicaSnapshot createSnapshot( Dn suffixDn, File directory ) throws LdapException
+    {
+        if ( !suffixDn.isSchemaAware() )
+        {
+            suffixDn = new Dn( dirService.getSchemaManager(), suffixDn );
+        }
+
+        Partition partition = dirService.getPartitionNexus().getPartition( suffixDn );
+
+        if ( ( partition == null ) || !suffixDn.equals( partition.getSuffixDn() ) )
+        {
+            throw new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM,
+                I18n.err( I18n.ERR_38039_NOT_A_PARTITION_SUFFIX, suffixDn ) );
+        }
+
+        // The in-memory partitions have no file to copy
+        if ( !( partition instanceof AbstractBTreePartition ) || ( partition instanceof AvlPartition ) )
+        {
+            throw new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM,
+                I18n.err( I18n.ERR_38040_CANNOT_SNAPSHOT_PARTITION, partition.getId() ) );
+        }
+
+        String[] existingFiles = directory.list();
+
+        if ( ( existingFiles != null ) && ( existingFiles.length > 0 ) )
+        {
+            throw new LdapUnwillingToPerformException( ResultCodeEnum.UNWILLING_TO_PERFORM,
+                I18n.err( I18n.ERR_38041_SNAPSHOT_DIRECTORY_NOT_EMPTY, directory ) );
+        }
+
+        PROVIDER_LOG.info( "Taking a snapshot of the {} partition in {}", partition.getId(), directory );
+
+        File partitionDir = new File( ( ( AbstractBTreePartition ) partition ).getPartitionPath() );
+        OperationManager operationManager = dirService.getOperationManager();
+        ReplicaEventLog replicaLog = null;
+        SyncReplSearchListener replicationListener = null;
+        ReplicaSnapshot snapshot;
+
+        // No change can be done while the partition files are copied : the snapshot
+        // contains all the changes up to the contextCSN, and none after it. The write
+        // lock is only held to store the contextCSN and flush the partition on disk
+        operationManager.lockWrite();
+        boolean writeLocked = true;
+
+        try
+        {
+            String contextCsn;
+            PartitionTxn partitionTxn = partition.beginWriteTransaction();
+
+            try
+            {
+                contextCsn = partition.getContextCsn( partitionTxn );
+                partition.saveContextCsn( partitionTxn );
+                partitionTxn.commit();
+            }
+            catch ( LdapException | IOException e )
+            {
+                partitionTxn.abort();
+
+                throw e;
+            }
+
+            partition.sync();
+
+            // Downgrade to the read lock : the searches can go on while the files are
+            // copied, the writes are still blocked
+            operationManager.lockRead();
+            operationManager.unlockWrite();
+            writeLocked = false;
+
+            if ( contextCsn == null )
+            {
+                // Nothing has ever been written in the partition
+                contextCsn = dirService.getCSN().toString();
+            }
+
+            try ( PartitionTxn readTxn = partition.beginReadTransaction() )
+            {
+                replicaLog = createReplicaEventLog( readTxn, null, LdapConstants.OBJECT_CLASS_STAR );
+            }
+
+            replicaLog.setRefreshNPersist( true );
+            replicaLog.setLastSentCsn( contextCsn );
+
+            NotificationCriteria criteria = new NotificationCriteria( dirService.getSchemaManager() );
+            criteria.setAliasDerefMode( AliasDerefMode.NEVER_DEREF_ALIASES );
+            criteria.setBase( partition.getSuffixDn() );
+            criteria.setFilter( LdapConstants.OBJECT_CLASS_STAR );
+            criteria.setScope( SearchScope.SUBTREE );
+            criteria.setEventMask( EventType.ALL_EVENT_TYPES_MASK );
+
+            replicaLog.setSearchCriteria( criteria );
+
+            // The changes are stored in the log until the consumer connects
+            replicationListener = new SyncReplSearchListener( null, null, replicaLog, false );
+            replicaLog.setPersistentListener( replicationListener );
+            dirService.getEventService().addListener( replicationListener, criteria );
+
+            ReplicaSnapshot.copyPartitionFiles( partitionDir, partition.getId(),
+                new File( directory, ReplicaSnapshot.PARTITION_DIRECTORY ), partition.getId() );
+
+            byte[] cookie = LdapProtocolUtils.createCookie( replicaLog.getId(), contextCsn );
+            snapshot = new ReplicaSnapshot( partition.getId(), partition.getClass().getName(),
+                partition.getSuffixDn().getName(), contextCsn, Strings.utf8ToString( cookie ) );
+        }
+        catch ( Exception e )
+        {
+            PROVIDER_LOG.error( "Failed to take a snapshot of the {} partition", partition.getId(), e );
+            dropSnapshotLog( replicaLog, replicationListener );
+
+            if ( e instanceof LdapException )
+            {
+                throw ( LdapException ) e;
+            }
+
+            throw new LdapOtherException( e.getMessage(), e );
+        }
+        finally
+        {
+            if ( writeLocked )
+            {
+                operationManager.unlockWrite();
+            }
+            else
+            {
+                operationManager.unlockRead();
+            }
+        }
+
+        try
+        {
+            snapshot.write( directory );
+
+            replicaUtil.addConsumerEntry( replicaLog );
+        }
+        catch ( Exception e )
+        {
+            PROVIDER_LOG.error( "Failed to store the snapshot of the {} partition", partition.getId(), e );
+            dropSnapshotLog( replicaLog, replicationListener );
+
+            throw new LdapOtherException( e.getMessage(), e );
+        }
+
+        // add to the map only after storing in the DIT, else the Replica update thread barfs
+        replicaLogMap.put( replicaLog.getId(), replicaLog );
+
+        PROVIDER_LOG.info( "Snapshot {} taken", snapshot );
+
+        return snapshot;
+    }
+
+
+    /**
+     * Remove the event log created for a snapshot which has failed
+     */
+    private void dropSnapshotLog( ReplicaEventLog replicaLog, SyncReplSearchListener replicationListener )
+    {
+        if ( replicationListener != null )
+        {
+            dirService.getEventService().removeListener( replicationListener );
+        }
+
+        if ( replicaLog != null )
+        {
+            try
+            {
+                replicaLog.stop();
+            }
+            catch ( Exception e )
+            {
+                PROVIDER_LOG.warn( "Failed to stop the event log {}", replicaLog, e );
+            }
+        }
+    }
+
+
     private EqualityNode<String> newIsReferralEqualityNode( LdapSession session ) throws Exception
     {
         return new EqualityNode<>( SchemaConstants.OBJECT_CLASS_AT, 
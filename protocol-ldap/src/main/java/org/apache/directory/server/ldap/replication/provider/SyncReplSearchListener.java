@@ -49,6 +49,7 @@ import org.apache.directory.server.core.api.interceptor.context.RenameOperationC
 import org.apache.directory.server.i18n.I18n;
 import org.apache.directory.server.ldap.LdapProtocolUtils;
 import org.apache.directory.server.ldap.LdapSession;
+import org.apache.directory.server.ldap.replication.ReplicaDeltaControl;
 import org.apache.directory.server.ldap.replication.ReplicaEventMessage;
 import org.apache.mina.core.future.WriteFuture;
 import org.slf4j.Logger;
@@ -312,14 +313,27 @@ public class SyncReplSearchListener implements DirectoryListener, AbandonListene
         try
         {
             //System.out.println( "MODIFY Listener : log " + alteredEntry.getDn() );
-            consumerMsgLog.log( new ReplicaEventMessage( ChangeType.MODIFY, alteredEntry ) );
+            ReplicaEventMessage message = new ReplicaEventMessage( ChangeType.MODIFY, alteredEntry,
+                modifyContext.getModItems() );
+            consumerMsgLog.log( message );
             
             if ( pushInRealTime )
             {
 
                 SearchResultEntry resultEntry = new SearchResultEntryImpl( searchRequest.getMessageId() );
                 resultEntry.setObjectName( modifyContext.getDn() );
-                resultEntry.setEntry( alteredEntry );
+
+                // Only send the modified attributes if the consumer accepts it
+                if ( ReplicaDeltaControl.isPresent( searchRequest ) && message.hasDelta() )
+                {
+                    resultEntry.setEntry( message.getDeltaEntry( session.getCoreSession().getDirectoryService()
+                        .getSchemaManager() ) );
+                    resultEntry.addControl( ReplicaDeltaControl.newControl() );
+                }
+                else
+                {
+                    resultEntry.setEntry( alteredEntry );
+                }
 
                 SyncStateValue syncModify = createControl( session.getCoreSession().getDirectoryService(), SyncStateTypeEnum.MODIFY, alteredEntry );
 
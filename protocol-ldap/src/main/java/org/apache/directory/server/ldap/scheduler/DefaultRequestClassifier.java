@@ -0,0 +1,190 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.directory.server.ldap.scheduler;
+
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.directory.api.ldap.model.message.BindRequest;
+import org.apache.directory.api.ldap.model.message.CompareRequest;
+import org.apache.directory.api.ldap.model.message.ExtendedRequest;
+import org.apache.directory.api.ldap.model.message.Request;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.LdapPrincipal;
+import org.apache.directory.server.ldap.LdapSession;
+
+
+/**
+ * The default {@link RequestClassifier}. The requests are dispatched to four lanes,
+ * depending on their type and their estimated cost :
+ * <ul>
+ *   <li>{@link #BIND_LANE} : the bind and extended requests</li>
+ *   <li>{@link #READ_LANE} : the compare requests, and the searches which are cheap : base
+ *   object searches, and searches with a small size limit</li>
+ *   <li>{@link #SEARCH_LANE} : the other searches</li>
+ *   <li>{@link #WRITE_LANE} : the add, delete, modify and modifyDn requests</li>
+ * </ul>
+ * Some clients can also be given their own lane, whatever the request is : a client
+ * is identified by its IP address, or by the Dn of the principal it's bound as.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class DefaultRequestClassifier implements RequestClassifier
+{
+    /** The lane for the bind and extended requests */
+    public static final String BIND_LANE = "bind";
+
+    /** The lane for the compare requests and the cheap searches */
+    public static final String READ_LANE = "read";
+
+    /** The lane for the searches which may return many entries */
+    public static final String SEARCH_LANE = "search";
+
+    /** The lane for the updates */
+    public static final String WRITE_LANE = "write";
+
+    /** The default size limit below which a search is cheap */
+    public static final long SMALL_SEARCH_SIZE_LIMIT_DEFAULT = 10L;
+
+    /** The size limit below which a search is cheap */
+    private long smallSearchSizeLimit = SMALL_SEARCH_SIZE_LIMIT_DEFAULT;
+
+    /** The lanes of the clients, per IP address or normalized principal Dn */
+    private final Map<String, String> clientLanes = new ConcurrentHashMap<>();
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String classify( LdapSession session, Request request )
+    {
+        if ( !clientLanes.isEmpty() && ( session != null ) )
+        {
+            String clientLane = getClientLane( session );
+
+            if ( clientLane != null )
+            {
+                return clientLane;
+            }
+        }
+
+        if ( ( request instanceof BindRequest ) || ( request instanceof ExtendedRequest ) )
+        {
+            return BIND_LANE;
+        }
+
+        if ( request instanceof SearchRequest )
+        {
+            SearchRequest searchRequest = ( SearchRequest ) request;
+            long sizeLimit = searchRequest.getSizeLimit();
+
+            if ( ( searchRequest.getScope() == SearchScope.OBJECT )
+                || ( ( sizeLimit > 0L ) && ( sizeLimit <= smallSearchSizeLimit ) ) )
+            {
+                return READ_LANE;
+            }
+
+            return SEARCH_LANE;
+        }
+
+        if ( request instanceof CompareRequest )
+        {
+            return READ_LANE;
+        }
+
+        return WRITE_LANE;
+    }
+
+
+    private String getClientLane( LdapSession session )
+    {
+        CoreSession coreSession = session.getCoreSession();
+
+        if ( coreSession != null )
+        {
+            LdapPrincipal principal = coreSession.getAuthenticatedPrincipal();
+
+            if ( ( principal != null ) && ( principal.getDn() != null ) )
+            {
+                String lane = clientLanes.get( principal.getDn().getNormName() );
+
+                if ( lane != null )
+                {
+                    return lane;
+                }
+            }
+        }
+
+        SocketAddress address = session.getIoSession().getRemoteAddress();
+
+        if ( address instanceof InetSocketAddress )
+        {
+            return clientLanes.get( ( ( InetSocketAddress ) address ).getAddress().getHostAddress() );
+        }
+
+        return null;
+    }
+
+
+    /**
+     * @return The size limit up to which a search is processed in the {@link #READ_LANE}
+     */
+    public long getSmallSearchSizeLimit()
+    {
+        return smallSearchSizeLimit;
+    }
+
+
+    /**
+     * @param smallSearchSizeLimit The size limit up to which a search is processed in the {@link #READ_LANE}
+     */
+    public void setSmallSearchSizeLimit( long smallSearchSizeLimit )
+    {
+        this.smallSearchSizeLimit = smallSearchSizeLimit;
+    }
+
+
+    /**
+     * Processes all the requests of a client - except the unbind and abandon requests -
+     * in a given lane.
+     *
+     * @param client The client IP address, or the normalized Dn of the principal it's bound as
+     * @param lane The lane name
+     */
+    public void setClientLane( String client, String lane )
+    {
+        clientLanes.put( client, lane );
+    }
+
+
+    /**
+     * @return The lanes of the clients, per IP address or normalized principal Dn
+     */
+    public Map<String, String> getClientLanes()
+    {
+        return clientLanes;
+    }
+}
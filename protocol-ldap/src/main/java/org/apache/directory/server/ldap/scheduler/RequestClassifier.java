@@ -0,0 +1,43 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.directory.server.ldap.scheduler;
+
+
+import org.apache.directory.api.ldap.model.message.Request;
+import org.apache.directory.server.ldap.LdapSession;
+
+
+/**
+ * Selects the lane of the {@link RequestScheduler} a request is processed in.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public interface RequestClassifier
+{
+    /**
+     * Gets the name of the lane a request is processed in.
+     *
+     * @param session The session the request has been received on. May be null if
+     * the session has been closed
+     * @param request The request
+     * @return The lane name. If there is no such lane, the scheduler default lane is used
+     */
+    String classify( LdapSession session, Request request );
+}
@@ -0,0 +1,345 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.directory.server.ldap.scheduler;
+
+
+import java.util.Locale;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * A lane of the {@link RequestScheduler} : the requests dispatched to a lane are
+ * processed by its own threads, so that a slow kind of request can't delay the
+ * other ones. The number of requests waiting to be processed is bounded, the
+ * requests which don't fit in the queue being rejected.
+ * <p>
+ * The threads of a yielding lane run with a lower priority than the other lanes
+ * threads, so that the long requests they process - typically searches returning
+ * many entries - leave the CPU to the cheap ones when it is busy.
+ * <p>
+ * The lane also gathers some statistics about the time the requests have been
+ * waiting in the queue, and the time taken to process them.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class RequestLane
+{
+    /** The time an idle thread is kept, in seconds */
+    private static final long KEEP_ALIVE_TIME = 60L;
+
+    /** The lane name */
+    private final String name;
+
+    /** The maximum number of requests processed at the same time */
+    private final int maxThreads;
+
+    /** The maximum number of requests waiting to be processed */
+    private final int maxQueueSize;
+
+    /** Tells if the threads of this lane yield the CPU to the other lanes threads */
+    private final boolean yielding;
+
+    /** The executor processing the requests, created when the lane is started */
+    private volatile ThreadPoolExecutor executor;
+
+    /** The number of requests accepted in the lane */
+    private final AtomicLong submitted = new AtomicLong();
+
+    /** The number of requests rejected because the queue was full */
+    private final AtomicLong rejected = new AtomicLong();
+
+    /** The number of processed requests */
+    private final AtomicLong completed = new AtomicLong();
+
+    /** The total time spent by the requests in the queue, in ns */
+    private final AtomicLong queueTime = new AtomicLong();
+
+    /** The longest time spent by a request in the queue, in ns */
+    private final AtomicLong maxQueueTime = new AtomicLong();
+
+    /** The total time spent processing the requests, in ns */
+    private final AtomicLong processingTime = new AtomicLong();
+
+    /** The longest time spent processing a request, in ns */
+    private final AtomicLong maxProcessingTime = new AtomicLong();
+
+
+    /**
+     * Creates a new RequestLane
+     *
+     * @param name The lane name
+     * @param maxThreads The maximum number of requests processed at the same time
+     * @param maxQueueSize The maximum number of requests waiting to be processed
+     * @param yielding <code>true</code> if the threads of this lane yield the CPU to the
+     * other lanes threads, for the lanes processing long searches
+     */
+    public RequestLane( String name, int maxThreads, int maxQueueSize, boolean yielding )
+    {
+        this.name = name;
+        this.maxThreads = Math.max( 1, maxThreads );
+        this.maxQueueSize = Math.max( 1, maxQueueSize );
+        this.yielding = yielding;
+    }
+
+
+    /**
+     * Starts the lane threads
+     */
+    synchronized void start()
+    {
+        if ( executor != null )
+        {
+            return;
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+
+        ThreadPoolExecutor newExecutor = new ThreadPoolExecutor( maxThreads, maxThreads, KEEP_ALIVE_TIME,
+            TimeUnit.SECONDS, new LinkedBlockingQueue<>( maxQueueSize ),
+            runnable ->
+            {
+                Thread thread = new Thread( runnable, "ldap-" + name + "-" + threadCount.incrementAndGet() );
+
+                if ( yielding )
+                {
+                    thread.setPriority( Thread.NORM_PRIORITY - 1 );
+                }
+
+                return thread;
+            } );
+        newExecutor.allowCoreThreadTimeOut( true );
+
+        executor = newExecutor;
+    }
+
+
+    /**
+     * Stops the lane threads, without processing the waiting requests
+     */
+    synchronized void stop()
+    {
+        if ( executor != null )
+        {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+
+    /**
+     * Adds a request to the lane queue
+     *
+     * @param task The task processing the request
+     * @return <code>false</code> if the request has been rejected, because the queue is full
+     * or the lane is stopped
+     */
+    boolean submit( Runnable task )
+    {
+        ThreadPoolExecutor current = executor;
+
+        if ( current == null )
+        {
+            rejected.incrementAndGet();
+
+            return false;
+        }
+
+        long submitTime = System.nanoTime();
+
+        try
+        {
+            current.execute( () -> process( task, submitTime ) );
+            submitted.incrementAndGet();
+
+            return true;
+        }
+        catch ( RejectedExecutionException ree )
+        {
+            rejected.incrementAndGet();
+
+            return false;
+        }
+    }
+
+
+    private void process( Runnable task, long submitTime )
+    {
+        long start = System.nanoTime();
+        long waited = start - submitTime;
+        queueTime.addAndGet( waited );
+        maxQueueTime.accumulateAndGet( waited, Math::max );
+
+        try
+        {
+            task.run();
+        }
+        finally
+        {
+            long processed = System.nanoTime() - start;
+            processingTime.addAndGet( processed );
+            maxProcessingTime.accumulateAndGet( processed, Math::max );
+            completed.incrementAndGet();
+        }
+    }
+
+
+    /**
+     * @return The lane name
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+
+    /**
+     * @return The maximum number of requests processed at the same time
+     */
+    public int getMaxThreads()
+    {
+        return maxThreads;
+    }
+
+
+    /**
+     * @return The maximum number of requests waiting to be processed
+     */
+    public int getMaxQueueSize()
+    {
+        return maxQueueSize;
+    }
+
+
+    /**
+     * @return <code>true</code> if the threads of this lane yield the CPU to the other lanes threads
+     */
+    public boolean isYielding()
+    {
+        return yielding;
+    }
+
+
+    /**
+     * @return The number of requests waiting to be processed
+     */
+    public int getQueueSize()
+    {
+        ThreadPoolExecutor current = executor;
+
+        return ( current == null ) ? 0 : current.getQueue().size();
+    }
+
+
+    /**
+     * @return The number of requests being processed
+     */
+    public int getActiveCount()
+    {
+        ThreadPoolExecutor current = executor;
+
+        return ( current == null ) ? 0 : current.getActiveCount();
+    }
+
+
+    /**
+     * @return The number of requests accepted in the lane
+     */
+    public long getSubmittedCount()
+    {
+        return submitted.get();
+    }
+
+
+    /**
+     * @return The number of requests rejected because the queue was full
+     */
+    public long getRejectedCount()
+    {
+        return rejected.get();
+    }
+
+
+    /**
+     * @return The number of processed requests
+     */
+    public long getCompletedCount()
+    {
+        return completed.get();
+    }
+
+
+    /**
+     * @return The average time spent by the requests in the queue, in ms
+     */
+    public double getAverageQueueTime()
+    {
+        long count = completed.get();
+
+        return ( count == 0L ) ? 0d : queueTime.get() / ( count * 1_000_000d );
+    }
+
+
+    /**
+     * @return The longest time spent by a request in the queue, in ms
+     */
+    public double getMaxQueueTime()
+    {
+        return maxQueueTime.get() / 1_000_000d;
+    }
+
+
+    /**
+     * @return The average time spent processing the requests, in ms
+     */
+    public double getAverageProcessingTime()
+    {
+        long count = completed.get();
+
+        return ( count == 0L ) ? 0d : processingTime.get() / ( count * 1_000_000d );
+    }
+
+
+    /**
+     * @return The longest time spent processing a request, in ms
+     */
+    public double getMaxProcessingTime()
+    {
+        return maxProcessingTime.get() / 1_000_000d;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return String.format( Locale.ROOT,
+            "Lane %s : %d active, %d queued, %d completed, %d rejected, queue avg %.2f ms max %.2f ms, "
+                + "processing avg %.2f ms max %.2f ms",
+            name, getActiveCount(), getQueueSize(), getCompletedCount(), getRejectedCount(),
+            getAverageQueueTime(), getMaxQueueTime(), getAverageProcessingTime(), getMaxProcessingTime() );
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.directory.server.ldap.scheduler;
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import org.apache.directory.api.ldap.model.message.AbandonRequest;
+import org.apache.directory.api.ldap.model.message.LdapResult;
+import org.apache.directory.api.ldap.model.message.Request;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.ResultResponse;
+import org.apache.directory.api.ldap.model.message.ResultResponseRequest;
+import org.apache.directory.api.ldap.model.message.UnbindRequest;
+import org.apache.directory.server.i18n.I18n;
+import org.apache.directory.server.ldap.LdapServer;
+import org.apache.directory.server.ldap.LdapSessionManager;
+import org.apache.mina.core.session.IoEvent;
+import org.apache.mina.core.session.IoSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * An Executor dispatching the requests received by the LdapServer to some lanes, each
+ * of them having its own threads and queue. The lane of a request is selected by a
+ * {@link RequestClassifier}, so that the cheap requests - binds, base object searches -
+ * are not delayed by the expensive ones, like the unindexed subtree searches.
+ * <p>
+ * The scheduler is used by the ExecutorFilter of the LdapServer, which gives it the
+ * received requests as {@link IoEvent}s. When the lane queue is full, the request is
+ * rejected with a BUSY result code. The abandon and unbind requests, which are cheap and
+ * must not wait behind the requests they cancel, are not queued : they are processed in
+ * the I/O thread.
+ * <p>
+ * The lanes must be added before the LdapServer is started.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class RequestScheduler implements Executor
+{
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( RequestScheduler.class );
+
+    /** The default maximum number of requests waiting in a lane */
+    public static final int MAX_QUEUE_SIZE_DEFAULT = 1024;
+
+    /** The lanes, per name */
+    private final Map<String, RequestLane> lanes = new ConcurrentHashMap<>();
+
+    /** The classifier selecting the lane of a request */
+    private RequestClassifier classifier;
+
+    /** The lane used for the requests the classifier does not know about */
+    private RequestLane defaultLane;
+
+    /** The LdapSession manager of the LdapServer */
+    private LdapSessionManager sessionManager;
+
+
+    /**
+     * Creates a new RequestScheduler, with no lane
+     *
+     * @param classifier The classifier selecting the lane of a request
+     */
+    public RequestScheduler( RequestClassifier classifier )
+    {
+        this.classifier = classifier;
+    }
+
+
+    /**
+     * Creates a scheduler with the lanes of the {@link DefaultRequestClassifier}. The
+     * searches lane threads yield the CPU to the other lanes threads.
+     *
+     * @param nbThreads The number of threads of each lane
+     * @return The new RequestScheduler
+     */
+    public static RequestScheduler createDefault( int nbThreads )
+    {
+        RequestScheduler scheduler = new RequestScheduler( new DefaultRequestClassifier() );
+        scheduler.addLane( new RequestLane( DefaultRequestClassifier.BIND_LANE, nbThreads, MAX_QUEUE_SIZE_DEFAULT,
+            false ) );
+        scheduler.addLane( new RequestLane( DefaultRequestClassifier.READ_LANE, nbThreads, MAX_QUEUE_SIZE_DEFAULT,
+            false ) );
+        scheduler.addLane( new RequestLane( DefaultRequestClassifier.WRITE_LANE, nbThreads, MAX_QUEUE_SIZE_DEFAULT,
+            false ) );
+        scheduler.addLane( new RequestLane( DefaultRequestClassifier.SEARCH_LANE, nbThreads, MAX_QUEUE_SIZE_DEFAULT,
+            true ) );
+
+        return scheduler;
+    }
+
+
+    /**
+     * Adds a lane. The first added lane is the default lane.
+     *
+     * @param lane The lane to add
+     */
+    public void addLane( RequestLane lane )
+    {
+        lanes.put( lane.getName(), lane );
+
+        if ( defaultLane == null )
+        {
+            defaultLane = lane;
+        }
+    }
+
+
+    /**
+     * Starts the lanes threads. Called when the LdapServer is started.
+     *
+     * @param ldapServer The LdapServer the requests are received by
+     */
+    public void start( LdapServer ldapServer )
+    {
+        if ( defaultLane == null )
+        {
+            throw new IllegalStateException( I18n.err( I18n.ERR_38034_NO_REQUEST_LANE ) );
+        }
+
+        sessionManager = ldapServer.getLdapSessionManager();
+
+        for ( RequestLane lane : lanes.values() )
+        {
+            lane.start();
+        }
+    }
+
+
+    /**
+     * Stops the lanes threads. Called when the LdapServer is stopped.
+     */
+    public void stop()
+    {
+        for ( RequestLane lane : lanes.values() )
+        {
+            lane.stop();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute( Runnable task )
+    {
+        Request request = getRequest( task );
+
+        if ( ( request instanceof AbandonRequest ) || ( request instanceof UnbindRequest ) )
+        {
+            task.run();
+
+            return;
+        }
+
+        RequestLane lane = getLane( task, request );
+
+        if ( lane.submit( task ) )
+        {
+            return;
+        }
+
+        if ( request instanceof ResultResponseRequest )
+        {
+            LOG.debug( "The lane {} is full, rejecting the request {}", lane.getName(), request );
+
+            ResultResponse response = ( ( ResultResponseRequest ) request ).getResultResponse();
+            LdapResult result = response.getLdapResult();
+            result.setResultCode( ResultCodeEnum.BUSY );
+            result.setDiagnosticMessage( I18n.err( I18n.ERR_38035_REQUEST_LANE_FULL, lane.getName() ) );
+            ( ( IoEvent ) task ).getSession().write( response );
+        }
+        else
+        {
+            // Something which is not a request : can't be delayed
+            task.run();
+        }
+    }
+
+
+    private Request getRequest( Runnable task )
+    {
+        if ( task instanceof IoEvent )
+        {
+            Object message = ( ( IoEvent ) task ).getParameter();
+
+            if ( message instanceof Request )
+            {
+                return ( Request ) message;
+            }
+        }
+
+        return null;
+    }
+
+
+    private RequestLane getLane( Runnable task, Request request )
+    {
+        if ( ( request == null ) || ( classifier == null ) )
+        {
+            return defaultLane;
+        }
+
+        IoSession ioSession = ( ( IoEvent ) task ).getSession();
+        String name = classifier.classify( ( sessionManager == null ) ? null : sessionManager
+            .getLdapSession( ioSession ), request );
+        RequestLane lane = ( name == null ) ? null : lanes.get( name );
+
+        return ( lane == null ) ? defaultLane : lane;
+    }
+
+
+    /**
+     * @return The classifier selecting the lane of a request
+     */
+    public RequestClassifier getClassifier()
+    {
+        return classifier;
+    }
+
+
+    /**
+     * @param classifier The classifier selecting the lane of a request
+     */
+    public void setClassifier( RequestClassifier classifier )
+    {
+        this.classifier = classifier;
+    }
+
+
+    /**
+     * @param name The lane name
+     * @return The lane with this name, or null
+     */
+    public RequestLane getLane( String name )
+    {
+        return lanes.get( name );
+    }
+
+
+    /**
+     * @return The lanes, the default lane first
+     */
+    public Collection<RequestLane> getLanes()
+    {
+        List<RequestLane> result = new ArrayList<>();
+
+        if ( defaultLane != null )
+        {
+            result.add( defaultLane );
+        }
+
+        for ( RequestLane lane : lanes.values() )
+        {
+            if ( lane != defaultLane )
+            {
+                result.add( lane );
+            }
+        }
+
+        return result;
+    }
+}
@@ -21,17 +21,23 @@ package org.apache.directory.server.ldap;
 
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
 
 import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.csn.Csn;
 import org.apache.directory.api.ldap.model.csn.CsnFactory;
 import org.apache.directory.api.ldap.model.cursor.Cursor;
 import org.apache.directory.api.ldap.model.cursor.Tuple;
+import org.apache.directory.api.ldap.model.entry.DefaultAttribute;
 import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
 import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
 import org.apache.directory.api.ldap.model.message.controls.ChangeType;
 import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.ldap.model.schema.comparators.SerializableComparator;
@@ -380,4 +386,27 @@ public class JournalTest
 
         System.out.println( "Time to delete 100 000 ReplicaEventMessages : " + ( t5 - t4 ) );
     }
+
+    /**
+     * test that a ReplicaEventMessage which can't be read back with the schema is reported
+     */
+    @Test
+    public void testUnknownModificationAttribute() throws Exception
+    {
+        Entry entry = new DefaultEntry( schemaManager, "ou=test,ou=system",
+            "ObjectClass: top",
+            "ObjectClass: organizationalUnit",
+            "ou: test",
+            "entryCsn", csnFactory.newInstance().toString()
+            );
+
+        ReplicaEventMessage replicaEventMessage = new ReplicaEventMessage( ChangeType.MODIFY, entry,
+            Collections.singletonList( new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE,
+                new DefaultAttribute( "unknownAttribute", "value" ) ) ) );
+
+        ReplicaEventMessageSerializer serializer = new ReplicaEventMessageSerializer( schemaManager );
+        byte[] bytes = serializer.serialize( replicaEventMessage );
+
+        assertThrows( IOException.class, () -> serializer.deserialize( bytes ) );
+    }
 }
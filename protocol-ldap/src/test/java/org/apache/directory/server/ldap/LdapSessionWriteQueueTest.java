@@ -0,0 +1,164 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.mina.core.session.DummySession;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Test the write queue flow control of the LdapSession.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class LdapSessionWriteQueueTest
+{
+    @Test
+    public void testNoWaitBelowHighWatermark() throws Exception
+    {
+        DummySession ioSession = new DummySession();
+        LdapSession session = new LdapSession( ioSession );
+        ioSession.increaseScheduledWriteBytes( 100 );
+
+        assertTrue( session.awaitWriteQueue( new SearchRequestImpl(), 1000L, 10L, Long.MAX_VALUE, 0L ) );
+        assertTrue( session.awaitWriteQueue( new SearchRequestImpl(), 0L, 0L, Long.MAX_VALUE, 0L ) );
+        assertEquals( 0L, session.getWriteQueueSuspensions() );
+        assertEquals( 100L, session.getMaxScheduledWriteBytes() );
+    }
+
+
+    @Test
+    public void testWaitAboveHighWatermark() throws Exception
+    {
+        DummySession ioSession = new DummySession();
+        LdapSession session = new LdapSession( ioSession );
+        ioSession.increaseScheduledWriteBytes( 2000 );
+
+        CountDownLatch resumed = new CountDownLatch( 1 );
+        AtomicBoolean result = new AtomicBoolean();
+
+        Thread writer = new Thread( () ->
+        {
+            try
+            {
+                result.set( session.awaitWriteQueue( new SearchRequestImpl(), 1000L, 100L, Long.MAX_VALUE, 0L ) );
+                resumed.countDown();
+            }
+            catch ( InterruptedException ie )
+            {
+                Thread.currentThread().interrupt();
+            }
+        } );
+
+        writer.start();
+
+        while ( session.getWriteQueueSuspensions() == 0L )
+        {
+            Thread.sleep( 10L );
+        }
+
+        // Still above the low watermark : the writer keeps waiting
+        ioSession.increaseScheduledWriteBytes( -1500 );
+        session.messageSent();
+        assertFalse( resumed.await( 300L, TimeUnit.MILLISECONDS ) );
+
+        ioSession.increaseScheduledWriteBytes( -450 );
+        session.messageSent();
+        assertTrue( resumed.await( 5L, TimeUnit.SECONDS ) );
+        assertTrue( result.get() );
+        assertEquals( 2000L, session.getMaxScheduledWriteBytes() );
+    }
+
+
+    @Test
+    public void testAbandonStopsTheWait() throws Exception
+    {
+        DummySession ioSession = new DummySession();
+        LdapSession session = new LdapSession( ioSession );
+        ioSession.increaseScheduledWriteBytes( 2000 );
+
+        SearchRequest request = new SearchRequestImpl();
+        CountDownLatch resumed = new CountDownLatch( 1 );
+        AtomicBoolean result = new AtomicBoolean( true );
+
+        Thread writer = new Thread( () ->
+        {
+            try
+            {
+                result.set( session.awaitWriteQueue( request, 1000L, 100L, Long.MAX_VALUE, 0L ) );
+                resumed.countDown();
+            }
+            catch ( InterruptedException ie )
+            {
+                Thread.currentThread().interrupt();
+            }
+        } );
+
+        writer.start();
+
+        while ( session.getWriteQueueSuspensions() == 0L )
+        {
+            Thread.sleep( 10L );
+        }
+
+        request.abandon();
+        assertTrue( resumed.await( 5L, TimeUnit.SECONDS ) );
+        assertFalse( result.get() );
+        assertFalse( ioSession.isClosing() );
+    }
+
+
+    @Test
+    public void testTimeLimitStopsTheWait() throws Exception
+    {
+        DummySession ioSession = new DummySession();
+        LdapSession session = new LdapSession( ioSession );
+        ioSession.increaseScheduledWriteBytes( 2000 );
+
+        long deadline = System.currentTimeMillis() + 200L;
+
+        assertFalse( session.awaitWriteQueue( new SearchRequestImpl(), 1000L, 100L, deadline, 0L ) );
+        assertTrue( System.currentTimeMillis() >= deadline );
+        assertFalse( ioSession.isClosing() );
+    }
+
+
+    @Test
+    public void testMaxWaitClosesTheSession() throws Exception
+    {
+        DummySession ioSession = new DummySession();
+        LdapSession session = new LdapSession( ioSession );
+        ioSession.increaseScheduledWriteBytes( 2000 );
+
+        assertFalse( session.awaitWriteQueue( new SearchRequestImpl(), 1000L, 100L, Long.MAX_VALUE, 200L ) );
+        assertTrue( ioSession.isClosing() );
+    }
+}
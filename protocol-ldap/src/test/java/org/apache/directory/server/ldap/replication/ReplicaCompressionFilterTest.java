@@ -0,0 +1,106 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+package org.apache.directory.server.ldap.replication;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.service.IoHandlerAdapter;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoSession;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Test the decompression of the ReplicaCompressionFilter.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ReplicaCompressionFilterTest
+{
+    private DummySession session;
+
+    private List<IoBuffer> received;
+
+
+    @BeforeEach
+    public void init()
+    {
+        session = new DummySession();
+        received = new ArrayList<>();
+
+        session.setHandler( new IoHandlerAdapter()
+        {
+            @Override
+            public void messageReceived( IoSession ioSession, Object message )
+            {
+                received.add( ( IoBuffer ) message );
+            }
+        } );
+
+        session.getFilterChain().addLast( ReplicaCompressionFilter.NAME,
+            new ReplicaCompressionFilter( 6, 1000, new ReplicaCompressionMetrics(), null ) );
+    }
+
+
+    /**
+     * Compresses some data the way the peer does
+     */
+    private IoBuffer deflate( byte[] data )
+    {
+        Deflater deflater = new Deflater( 6 );
+        deflater.setInput( data );
+        byte[] out = new byte[data.length + 64];
+        int length = deflater.deflate( out, 0, out.length, Deflater.SYNC_FLUSH );
+        deflater.end();
+
+        return IoBuffer.wrap( out, 0, length );
+    }
+
+
+    @Test
+    public void testInflate()
+    {
+        session.getFilterChain().fireMessageReceived( deflate( new byte[1000] ) );
+
+        assertEquals( 1, received.size() );
+        assertEquals( 1000, received.get( 0 ).remaining() );
+        assertFalse( session.isClosing() );
+    }
+
+
+    @Test
+    public void testInflatedSizeLimit()
+    {
+        // A few hundred bytes inflated into 1Mb
+        session.getFilterChain().fireMessageReceived( deflate( new byte[1024 * 1024] ) );
+
+        assertTrue( received.isEmpty() );
+        assertTrue( session.isClosing() );
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap.replication.consumer;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.UUID;
+
+import org.apache.directory.api.util.FileUtils;
+import org.apache.directory.api.util.Strings;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Test the EntryUuidSet, in memory and once stored on disk.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class EntryUuidSetTest
+{
+    private File directory;
+
+
+    @BeforeEach
+    public void createDirectory() throws Exception
+    {
+        directory = Files.createTempDirectory( EntryUuidSetTest.class.getSimpleName() ).toFile();
+    }
+
+
+    @AfterEach
+    public void deleteDirectory() throws Exception
+    {
+        FileUtils.deleteDirectory( directory );
+    }
+
+
+    @Test
+    public void testInMemory() throws Exception
+    {
+        String uuid = UUID.randomUUID().toString();
+
+        try ( EntryUuidSet uuids = new EntryUuidSet( directory, 10 ) )
+        {
+            uuids.add( Strings.uuidToBytes( uuid ) );
+            uuids.add( Strings.uuidToBytes( uuid ) );
+
+            assertEquals( 1L, uuids.size() );
+            assertFalse( uuids.isOnDisk() );
+            assertTrue( uuids.contains( uuid ) );
+            assertFalse( uuids.contains( UUID.randomUUID().toString() ) );
+            assertFalse( uuids.contains( "not a uuid" ) );
+        }
+    }
+
+
+    @Test
+    public void testOnDisk() throws Exception
+    {
+        String[] added = new String[25];
+
+        try ( EntryUuidSet uuids = new EntryUuidSet( directory, 10 ) )
+        {
+            for ( int i = 0; i < added.length; i++ )
+            {
+                added[i] = UUID.randomUUID().toString();
+                uuids.add( Strings.uuidToBytes( added[i] ) );
+            }
+
+            uuids.add( Strings.uuidToBytes( added[0] ) );
+
+            assertEquals( added.length, uuids.size() );
+            assertTrue( uuids.isOnDisk() );
+
+            for ( String uuid : added )
+            {
+                assertTrue( uuids.contains( uuid ) );
+            }
+
+            assertFalse( uuids.contains( UUID.randomUUID().toString() ) );
+        }
+
+        // The temporary files are deleted when the set is closed
+        assertEquals( 0, directory.list().length );
+    }
+}
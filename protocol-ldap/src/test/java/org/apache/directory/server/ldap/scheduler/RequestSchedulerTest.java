@@ -0,0 +1,260 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *  
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *  
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License. 
+ *  
+ */
+package org.apache.directory.server.ldap.scheduler;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.directory.api.ldap.model.message.AbandonRequestImpl;
+import org.apache.directory.api.ldap.model.message.BindRequestImpl;
+import org.apache.directory.api.ldap.model.message.LdapResult;
+import org.apache.directory.api.ldap.model.message.ModifyRequestImpl;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.ResultResponse;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.server.ldap.LdapServer;
+import org.apache.mina.core.filterchain.IoFilter.NextFilter;
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.filterchain.IoFilterEvent;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoEventType;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.WriteRequest;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Test the RequestScheduler and the DefaultRequestClassifier.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class RequestSchedulerTest
+{
+    private static SearchRequest search( SearchScope scope, long sizeLimit )
+    {
+        SearchRequest request = new SearchRequestImpl();
+        request.setScope( scope );
+        request.setSizeLimit( sizeLimit );
+
+        return request;
+    }
+
+
+    /**
+     * Gets the NextFilter of a filter added to the session chain, the events needing one
+     */
+    private static NextFilter getNextFilter( IoSession session )
+    {
+        if ( !session.getFilterChain().contains( "capture" ) )
+        {
+            session.getFilterChain().addFirst( "capture", new IoFilterAdapter() );
+        }
+
+        return session.getFilterChain().getEntry( "capture" ).getNextFilter();
+    }
+
+
+    @Test
+    public void testDefaultClassification()
+    {
+        DefaultRequestClassifier classifier = new DefaultRequestClassifier();
+
+        assertEquals( DefaultRequestClassifier.BIND_LANE, classifier.classify( null, new BindRequestImpl() ) );
+        assertEquals( DefaultRequestClassifier.READ_LANE,
+            classifier.classify( null, search( SearchScope.OBJECT, 0L ) ) );
+        assertEquals( DefaultRequestClassifier.READ_LANE,
+            classifier.classify( null, search( SearchScope.SUBTREE, 5L ) ) );
+        assertEquals( DefaultRequestClassifier.SEARCH_LANE,
+            classifier.classify( null, search( SearchScope.SUBTREE, 0L ) ) );
+        assertEquals( DefaultRequestClassifier.SEARCH_LANE,
+            classifier.classify( null, search( SearchScope.ONELEVEL, 1000L ) ) );
+        assertEquals( DefaultRequestClassifier.WRITE_LANE, classifier.classify( null, new ModifyRequestImpl() ) );
+    }
+
+
+    @Test
+    public void testLanesAreIndependent() throws Exception
+    {
+        RequestScheduler scheduler = new RequestScheduler( new DefaultRequestClassifier() );
+        scheduler.addLane( new RequestLane( DefaultRequestClassifier.SEARCH_LANE, 1, 1, true ) );
+        scheduler.addLane( new RequestLane( DefaultRequestClassifier.BIND_LANE, 1, 10, false ) );
+        scheduler.start( new LdapServer() );
+
+        try
+        {
+            IoSession session = new DummySession();
+            CountDownLatch searchStarted = new CountDownLatch( 1 );
+            CountDownLatch releaseSearch = new CountDownLatch( 1 );
+            CountDownLatch bound = new CountDownLatch( 1 );
+
+            // A search blocking the only search thread
+            scheduler.execute( new IoFilterEvent( getNextFilter( session ), IoEventType.MESSAGE_RECEIVED, session,
+                search( SearchScope.SUBTREE, 0L ) )
+            {
+                @Override
+                public void fire()
+                {
+                    searchStarted.countDown();
+
+                    try
+                    {
+                        releaseSearch.await( 10L, TimeUnit.SECONDS );
+                    }
+                    catch ( InterruptedException ie )
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            } );
+
+            assertTrue( searchStarted.await( 10L, TimeUnit.SECONDS ) );
+
+            // A bind is still processed
+            scheduler.execute( new IoFilterEvent( getNextFilter( session ), IoEventType.MESSAGE_RECEIVED, session,
+                new BindRequestImpl() )
+            {
+                @Override
+                public void fire()
+                {
+                    bound.countDown();
+                }
+            } );
+
+            assertTrue( bound.await( 10L, TimeUnit.SECONDS ) );
+            releaseSearch.countDown();
+
+            RequestLane bindLane = scheduler.getLane( DefaultRequestClassifier.BIND_LANE );
+            RequestLane searchLane = scheduler.getLane( DefaultRequestClassifier.SEARCH_LANE );
+
+            while ( ( bindLane.getCompletedCount() < 1L ) || ( searchLane.getCompletedCount() < 1L ) )
+            {
+                Thread.sleep( 10L );
+            }
+
+            assertEquals( 1L, bindLane.getSubmittedCount() );
+            assertEquals( 1L, searchLane.getSubmittedCount() );
+            assertTrue( searchLane.getMaxProcessingTime() > 0d );
+        }
+        finally
+        {
+            scheduler.stop();
+        }
+    }
+
+
+    @Test
+    public void testAbandonIsNotQueued() throws Exception
+    {
+        RequestScheduler scheduler = new RequestScheduler( new DefaultRequestClassifier() );
+        scheduler.addLane( new RequestLane( DefaultRequestClassifier.BIND_LANE, 1, 10, false ) );
+        scheduler.start( new LdapServer() );
+
+        try
+        {
+            IoSession session = new DummySession();
+            List<Thread> threads = new ArrayList<>();
+
+            scheduler.execute( new IoFilterEvent( getNextFilter( session ), IoEventType.MESSAGE_RECEIVED, session,
+                new AbandonRequestImpl( 2 ) )
+            {
+                @Override
+                public void fire()
+                {
+                    threads.add( Thread.currentThread() );
+                }
+            } );
+
+            // Processed right away, in the calling thread
+            assertEquals( 1, threads.size() );
+            assertEquals( Thread.currentThread(), threads.get( 0 ) );
+            assertEquals( 0L, scheduler.getLane( DefaultRequestClassifier.BIND_LANE ).getSubmittedCount() );
+        }
+        finally
+        {
+            scheduler.stop();
+        }
+    }
+
+
+    @Test
+    public void testFullLaneRejectsWithBusy() throws Exception
+    {
+        RequestScheduler scheduler = new RequestScheduler( new DefaultRequestClassifier() );
+        RequestLane lane = new RequestLane( DefaultRequestClassifier.SEARCH_LANE, 1, 1, false );
+        scheduler.addLane( lane );
+        scheduler.start( new LdapServer() );
+
+        try
+        {
+            DummySession session = new DummySession();
+            List<Object> written = new ArrayList<>();
+            session.getFilterChain().addFirst( "capture", new IoFilterAdapter()
+            {
+                @Override
+                public void filterWrite( NextFilter nextFilter, IoSession ioSession, WriteRequest writeRequest )
+                {
+                    written.add( writeRequest.getMessage() );
+                }
+            } );
+
+            CountDownLatch release = new CountDownLatch( 1 );
+            Runnable blocking = () ->
+            {
+                try
+                {
+                    release.await( 10L, TimeUnit.SECONDS );
+                }
+                catch ( InterruptedException ie )
+                {
+                    Thread.currentThread().interrupt();
+                }
+            };
+
+            // One request processed, one queued
+            scheduler.execute( blocking );
+            scheduler.execute( blocking );
+
+            SearchRequest request = search( SearchScope.SUBTREE, 0L );
+            request.setMessageId( 12 );
+            scheduler.execute( new IoFilterEvent( getNextFilter( session ), IoEventType.MESSAGE_RECEIVED, session,
+                request ) );
+            release.countDown();
+
+            assertEquals( 1L, lane.getRejectedCount() );
+            assertEquals( 1, written.size() );
+
+            LdapResult result = ( ( ResultResponse ) written.get( 0 ) ).getLdapResult();
+            assertEquals( ResultCodeEnum.BUSY, result.getResultCode() );
+            assertEquals( 12, ( ( ResultResponse ) written.get( 0 ) ).getMessageId() );
+        }
+        finally
+        {
+            scheduler.stop();
+        }
+    }
+}
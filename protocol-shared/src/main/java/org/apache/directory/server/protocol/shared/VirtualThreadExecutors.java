@@ -0,0 +1,137 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.protocol.shared;
+
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Creates executors running each task in a new virtual thread. The server is built
+ * for Java 8, so the virtual threads API - final since Java 21 - is called through
+ * reflection, and no executor is created when the JVM does not support it.
+ * <p>
+ * A virtual thread blocked while holding a monitor - in a <code>synchronized</code>
+ * block, or in <code>Object.wait()</code> - keeps its carrier thread. The known places
+ * where it happens while processing a request are the partition modifications
+ * (<code>AbstractBTreePartition</code> modify, move and rename, and the JDBM tables and
+ * record manager), the replication event log and the journal writer : the updates on a
+ * partition are serialized anyway, so they should not be sent concurrently by thousands
+ * of clients.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public final class VirtualThreadExecutors
+{
+    /** The logger for this class */
+    private static final Logger LOG = LoggerFactory.getLogger( VirtualThreadExecutors.class );
+
+    /** The Thread.ofVirtual() method, or null if virtual threads are not supported */
+    private static final Method OF_VIRTUAL;
+
+    /** The Thread.Builder.name(String, long) method */
+    private static final Method NAME;
+
+    /** The Thread.Builder.factory() method */
+    private static final Method FACTORY;
+
+    /** The Executors.newThreadPerTaskExecutor(ThreadFactory) method */
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+    static
+    {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        Method newThreadPerTaskExecutor = null;
+
+        try
+        {
+            Class<?> builderClass = Class.forName( "java.lang.Thread$Builder" );
+            ofVirtual = Thread.class.getMethod( "ofVirtual" );
+            name = builderClass.getMethod( "name", String.class, long.class );
+            factory = builderClass.getMethod( "factory" );
+            newThreadPerTaskExecutor = Executors.class.getMethod( "newThreadPerTaskExecutor", ThreadFactory.class );
+
+            // Check that the virtual threads are enabled (they are a preview feature in Java 19 and 20)
+            ofVirtual.invoke( null );
+        }
+        catch ( ClassNotFoundException | NoSuchMethodException | IllegalAccessException
+            | InvocationTargetException e )
+        {
+            ofVirtual = null;
+        }
+
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        FACTORY = factory;
+        NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+    }
+
+
+    private VirtualThreadExecutors()
+    {
+    }
+
+
+    /**
+     * @return <code>true</code> if the JVM supports virtual threads
+     */
+    public static boolean isSupported()
+    {
+        return OF_VIRTUAL != null;
+    }
+
+
+    /**
+     * Creates an executor running each task in a new virtual thread.
+     *
+     * @param prefix The prefix of the threads names, followed by a counter
+     * @return The executor, or null if the JVM does not support virtual threads
+     */
+    public static ExecutorService newExecutor( String prefix )
+    {
+        if ( OF_VIRTUAL == null )
+        {
+            return null;
+        }
+
+        try
+        {
+            Object builder = NAME.invoke( OF_VIRTUAL.invoke( null ), prefix, 0L );
+            ThreadFactory threadFactory = ( ThreadFactory ) FACTORY.invoke( builder );
+
+            return ( ExecutorService ) NEW_THREAD_PER_TASK_EXECUTOR.invoke( null, threadFactory );
+        }
+        catch ( IllegalAccessException | InvocationTargetException e )
+        {
+            LOG.warn( "Cannot create a virtual thread executor : {}", e.getMessage() );
+
+            return null;
+        }
+    }
+}
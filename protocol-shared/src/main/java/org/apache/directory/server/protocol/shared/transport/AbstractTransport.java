@@ -37,6 +37,9 @@ public abstract class AbstractTransport implements Transport
     /** The number of threads to use for the IoAcceptor executor */
     private int nbThreads;
 
+    /** A flag set if the requests are processed in virtual threads */
+    private boolean virtualThreads = false;
+
     /** The backlog for the transport services */
     private int backlog;
 
@@ -196,6 +199,24 @@ public abstract class AbstractTransport implements Transport
     }
 
 
+    /**
+     * {@inheritDoc}
+     */
+    public boolean isVirtualThreads()
+    {
+        return virtualThreads;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void setVirtualThreads( boolean virtualThreads )
+    {
+        this.virtualThreads = virtualThreads;
+    }
+
+
     /**
      * {@inheritDoc}
      */
@@ -262,6 +283,11 @@ public abstract class AbstractTransport implements Transport
         sb.append( ">], backlog=" ).append( backlog );
         sb.append( ", nbThreads = " ).append( nbThreads );
 
+        if ( virtualThreads )
+        {
+            sb.append( ", virtual threads" );
+        }
+
         if ( sslEnabled )
         {
             sb.append( ", SSL" );
@@ -79,6 +79,22 @@ public interface Transport
     void setNbThreads( int nbThreads );
 
 
+    /**
+     * @return <code>true</code> if the requests are processed in virtual threads
+     */
+    boolean isVirtualThreads();
+
+
+    /**
+     * Process each request in its own virtual thread, instead of a pool of nbThreads
+     * threads. This is only possible on a JVM supporting virtual threads : the pool is
+     * used otherwise.
+     *
+     * @param virtualThreads if <code>true</code>, the requests are processed in virtual threads
+     */
+    void setVirtualThreads( boolean virtualThreads );
+
+
     /**
      * @return The number of messages stored into the backlog when the 
      * acceptor is being busy processing the current messages
@@ -69,6 +69,9 @@ public @interface CreateTransport
     /** @return The number of threads to use. Default to 3*/
     int nbThreads() default 3;
 
+    /** @return A flag to tell if the requests are processed in virtual threads, when supported. Default to false */
+    boolean virtualThreads() default false;
+
     /** @return A flag to tell if the transport should ask for client certificate. Default to false */
     boolean clientAuth() default false;
 }
\ No newline at end of file
@@ -430,11 +430,13 @@ public final class ServerAnnotationProcessor
         if ( protocol.equalsIgnoreCase( "TCP" ) || protocol.equalsIgnoreCase( "LDAP" ) )
         {
             Transport tcp = new TcpTransport( address, port, nbThreads, backlog );
+            tcp.setVirtualThreads( transportBuilder.virtualThreads() );
             return Collections.singletonList( tcp );
         }
         else if ( protocol.equalsIgnoreCase( "LDAPS" ) )
         {
             Transport tcp = new TcpTransport( address, port, nbThreads, backlog );
+            tcp.setVirtualThreads( transportBuilder.virtualThreads() );
             tcp.setEnableSSL( true );
             ( ( TcpTransport ) tcp ).setWantClientAuth( clientAuth );
             return Collections.singletonList( tcp );
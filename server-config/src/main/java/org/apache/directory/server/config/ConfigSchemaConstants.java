@@ -203,6 +203,8 @@ public enum ConfigSchemaConstants
 
     ADS_TRANSPORT_NBTHREADS("ads-transportNbThreads", ""),
 
+    ADS_TRANSPORT_VIRTUAL_THREADS("ads-transportVirtualThreads", ""),
+
     ADS_CHANGELOG_ENABLED("ads-changeLogEnabled", ""),
 
     ADS_CHANGELOG_EXPOSED("ads-changeLogExposed", ""),
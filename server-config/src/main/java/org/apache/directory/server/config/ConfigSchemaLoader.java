@@ -0,0 +1,158 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.config;
+
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.constants.MetaSchemaConstants;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.api.ldap.model.schema.registries.Schema;
+import org.apache.directory.api.ldap.schema.loader.LdifSchemaLoader;
+
+
+/**
+ * A schema loader reading the schema extracted on disk, which adds to the adsconfig schema
+ * the configuration elements the server knows about, but which are not yet defined by
+ * the adsconfig schema published with the LDAP API. An element defined on disk is left
+ * as is.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class ConfigSchemaLoader extends LdifSchemaLoader
+{
+    /** The name of the configuration schema */
+    private static final String ADSCONFIG_SCHEMA = "adsconfig";
+
+    /** The ads-transportVirtualThreads attribute type OID */
+    private static final String ADS_TRANSPORT_VIRTUAL_THREADS_OID = "1.3.6.1.4.1.18060.0.4.1.2.939";
+
+    /** The ads-transport object class OID */
+    private static final String ADS_TRANSPORT_OC_OID = "1.3.6.1.4.1.18060.0.4.1.3.18";
+
+
+    /**
+     * Creates a new ConfigSchemaLoader
+     *
+     * @param baseDirectory The directory the schema has been extracted into
+     * @throws LdapException If the schema can't be read
+     * @throws IOException If the schema can't be read
+     */
+    public ConfigSchemaLoader( File baseDirectory ) throws LdapException, IOException
+    {
+        super( baseDirectory );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Entry> loadAttributeTypes( Schema... schemas ) throws LdapException, IOException
+    {
+        List<Entry> attributeTypes = super.loadAttributeTypes( schemas );
+
+        if ( hasConfigSchema( schemas ) && ( find( attributeTypes, ADS_TRANSPORT_VIRTUAL_THREADS_OID ) == null ) )
+        {
+            attributeTypes.add( new DefaultEntry(
+                "m-oid=" + ADS_TRANSPORT_VIRTUAL_THREADS_OID + ",ou=attributeTypes,cn=adsconfig,ou=schema",
+                "objectclass: top",
+                "objectclass: metaTop",
+                "objectclass: metaAttributeType",
+                "m-oid", ADS_TRANSPORT_VIRTUAL_THREADS_OID,
+                "m-name", ConfigSchemaConstants.ADS_TRANSPORT_VIRTUAL_THREADS.getValue(),
+                "m-description: Tells if the requests are processed in virtual threads",
+                "m-syntax: 1.3.6.1.4.1.1466.115.121.1.7",
+                "m-equality: booleanMatch",
+                "m-singlevalue: TRUE" ) );
+        }
+
+        return attributeTypes;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Entry> loadObjectClasses( Schema... schemas ) throws LdapException, IOException
+    {
+        List<Entry> objectClasses = super.loadObjectClasses( schemas );
+
+        if ( hasConfigSchema( schemas ) )
+        {
+            Entry transport = find( objectClasses, ADS_TRANSPORT_OC_OID );
+
+            if ( transport != null )
+            {
+                Attribute may = transport.get( MetaSchemaConstants.M_MAY_AT );
+                String virtualThreads = ConfigSchemaConstants.ADS_TRANSPORT_VIRTUAL_THREADS.getValue();
+
+                if ( ( may == null ) || !may.contains( virtualThreads ) )
+                {
+                    transport.add( MetaSchemaConstants.M_MAY_AT, virtualThreads );
+                }
+            }
+        }
+
+        return objectClasses;
+    }
+
+
+    /**
+     * Tells if the configuration schema is one of the loaded schemas
+     */
+    private static boolean hasConfigSchema( Schema... schemas )
+    {
+        for ( Schema schema : schemas )
+        {
+            if ( ADSCONFIG_SCHEMA.equalsIgnoreCase( schema.getSchemaName() ) )
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+
+    /**
+     * Finds the schema object having an OID in a list of loaded schema objects
+     */
+    private static Entry find( List<Entry> entries, String oid ) throws LdapException
+    {
+        for ( Entry entry : entries )
+        {
+            Attribute attribute = entry.get( MetaSchemaConstants.M_OID_AT );
+
+            if ( ( attribute != null ) && oid.equals( attribute.getString() ) )
+            {
+                return entry;
+            }
+        }
+
+        return null;
+    }
+}
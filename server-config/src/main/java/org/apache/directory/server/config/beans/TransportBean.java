@@ -60,6 +60,10 @@ public class TransportBean extends AdsBaseBean
     @ConfigurationElement(attributeType = "ads-transportNbThreads", isOptional = true, defaultValue = "3")
     private int transportNbThreads = DEFAULT_NB_THREADS;
 
+    /** A flag set if the requests are processed in virtual threads */
+    @ConfigurationElement(attributeType = "ads-transportVirtualThreads", isOptional = true, defaultValue = "false")
+    private boolean transportVirtualThreads = false;
+
     /** The backlog for the transport services */
     @ConfigurationElement(attributeType = "ads-transportBackLog", isOptional = true, defaultValue = "50")
     private int transportBackLog = DEFAULT_BACKLOG_NB;
@@ -165,6 +169,26 @@ public class TransportBean extends AdsBaseBean
     }
 
 
+    /**
+     * @return <code>true</code> if the incoming requests are processed in virtual threads
+     */
+    public boolean isTransportVirtualThreads()
+    {
+        return transportVirtualThreads;
+    }
+
+
+    /**
+     * Process each incoming request in its own virtual thread, if the JVM supports them
+     * 
+     * @param transportVirtualThreads if <code>true</code>, the requests are processed in virtual threads
+     */
+    public void setTransportVirtualThreads( boolean transportVirtualThreads )
+    {
+        this.transportVirtualThreads = transportVirtualThreads;
+    }
+
+
     /**
      * @return the size of the incoming request waiting queue
      */
@@ -332,6 +356,7 @@ public class TransportBean extends AdsBaseBean
         sb.append( tabs ).append( "transport port : " ).append( systemPort ).append( '\n' );
         sb.append( tabs ).append( "transport backlog : " ).append( transportBackLog ).append( '\n' );
         sb.append( tabs ).append( "transport nb threads : " ).append( transportNbThreads ).append( '\n' );
+        sb.append( toString( tabs, "transport virtual threads", transportVirtualThreads ) );
         sb.append( toString( tabs, "SSL enabled", transportEnableSsl ) );
         sb.append( toString( tabs, "Need Client Auth", needClientAuth ) );
         sb.append( toString( tabs, "Want Client Auth", wantClientAuth ) );
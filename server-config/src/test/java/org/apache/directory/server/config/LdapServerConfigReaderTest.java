@@ -21,6 +21,7 @@
 package org.apache.directory.server.config;
 
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 
 import java.io.File;
@@ -31,12 +32,12 @@ import org.apache.directory.api.ldap.model.schema.SchemaManager;
 import org.apache.directory.api.ldap.model.schema.registries.SchemaLoader;
 import org.apache.directory.api.ldap.schema.extractor.SchemaLdifExtractor;
 import org.apache.directory.api.ldap.schema.extractor.impl.DefaultSchemaLdifExtractor;
-import org.apache.directory.api.ldap.schema.loader.LdifSchemaLoader;
 import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
 import org.apache.directory.api.util.FileUtils;
 import org.apache.directory.api.util.exception.Exceptions;
 import org.apache.directory.server.config.beans.ConfigBean;
 import org.apache.directory.server.config.beans.LdapServerBean;
+import org.apache.directory.server.config.beans.TransportBean;
 import org.apache.directory.server.core.api.DnFactory;
 import org.apache.directory.server.core.partition.ldif.SingleFileLdifPartition;
 import org.apache.directory.server.core.shared.DefaultDnFactory;
@@ -75,7 +76,7 @@ public class LdapServerConfigReaderTest
         SchemaLdifExtractor extractor = new DefaultSchemaLdifExtractor( new File( workingDirectory ) );
         extractor.extractOrCopy();
 
-        SchemaLoader loader = new LdifSchemaLoader( schemaRepository );
+        SchemaLoader loader = new ConfigSchemaLoader( schemaRepository );
         schemaManager = new DefaultSchemaManager( loader );
 
         // We have to load the schema now, otherwise we won't be able
@@ -119,4 +120,37 @@ public class LdapServerConfigReaderTest
 
         configPartition.destroy( configPartition.beginReadTransaction() );
     }
+
+
+    @Test
+    public void testTransportVirtualThreads() throws Exception
+    {
+        File configDir = new File( workDir, "ldapServerTransports" );
+        String configFile = LdifConfigExtractor.extractSingleFileConfig( configDir, "ldapServer.ldif", true );
+
+        SingleFileLdifPartition configPartition = new SingleFileLdifPartition( schemaManager, dnFactory );
+        configPartition.setId( "config" );
+        configPartition.setPartitionPath( new File( configFile ).toURI() );
+        configPartition.setSuffixDn( new Dn( schemaManager, "ou=config" ) );
+        configPartition.setSchemaManager( schemaManager );
+
+        configPartition.initialize();
+        ConfigPartitionReader cpReader = new ConfigPartitionReader( configPartition );
+
+        ConfigBean configBean = cpReader.readConfig( new Dn( schemaManager,
+            "ou=servers,ads-directoryServiceId=default,ou=config" ), ConfigSchemaConstants.ADS_LDAP_SERVER_OC
+            .getValue() );
+
+        LdapServerBean ldapServerBean = ( LdapServerBean ) configBean.getDirectoryServiceBeans().get( 0 );
+        TransportBean[] transports = ldapServerBean.getTransports();
+        assertEquals( 2, transports.length );
+
+        for ( TransportBean transport : transports )
+        {
+            // Only the ldaps transport is configured to use virtual threads
+            assertEquals( "ldaps".equals( transport.getTransportId() ), transport.isTransportVirtualThreads() );
+        }
+
+        configPartition.destroy( configPartition.beginReadTransaction() );
+    }
 }
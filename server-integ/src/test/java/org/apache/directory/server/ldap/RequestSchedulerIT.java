@@ -0,0 +1,101 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap;
+
+
+import static org.apache.directory.server.integ.ServerIntegrationUtils.getAdminConnection;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.apache.directory.api.ldap.model.cursor.EntryCursor;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.directory.server.annotations.CreateLdapServer;
+import org.apache.directory.server.annotations.CreateTransport;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.ApacheDSTestExtension;
+import org.apache.directory.server.ldap.scheduler.DefaultRequestClassifier;
+import org.apache.directory.server.ldap.scheduler.RequestLane;
+import org.apache.directory.server.ldap.scheduler.RequestScheduler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+
+/**
+ * Test the requests dispatched in the RequestScheduler lanes.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@ExtendWith( { ApacheDSTestExtension.class } )
+@CreateDS(name = "RequestSchedulerIT-class")
+@CreateLdapServer(transports =
+    { @CreateTransport(protocol = "LDAP") })
+public class RequestSchedulerIT extends AbstractLdapTestUnit
+{
+    @AfterEach
+    public void resetScheduler() throws Exception
+    {
+        LdapServer server = getLdapServer();
+        server.stop();
+        server.setRequestScheduler( null );
+        server.start();
+    }
+
+
+    @Test
+    public void testRequestsDispatchedInLanes() throws Exception
+    {
+        LdapServer server = getLdapServer();
+        server.stop();
+        RequestScheduler scheduler = RequestScheduler.createDefault( 2 );
+        server.setRequestScheduler( scheduler );
+        server.start();
+
+        try ( LdapConnection connection = getAdminConnection( server ) )
+        {
+            assertNotNull( connection.lookup( "ou=system" ) );
+            assertTrue( connection.compare( "uid=admin,ou=system", "uid", "admin" ) );
+
+            int count = 0;
+
+            try ( EntryCursor cursor = connection.search( "ou=system", "(objectClass=*)", SearchScope.SUBTREE, "*" ) )
+            {
+                while ( cursor.next() )
+                {
+                    count++;
+                }
+            }
+
+            assertTrue( count > 1 );
+        }
+
+        RequestLane bindLane = scheduler.getLane( DefaultRequestClassifier.BIND_LANE );
+        RequestLane readLane = scheduler.getLane( DefaultRequestClassifier.READ_LANE );
+        RequestLane searchLane = scheduler.getLane( DefaultRequestClassifier.SEARCH_LANE );
+
+        assertEquals( 1L, bindLane.getSubmittedCount() );
+        assertEquals( 2L, readLane.getSubmittedCount() );
+        assertEquals( 1L, searchLane.getSubmittedCount() );
+        assertEquals( 0L, searchLane.getRejectedCount() );
+    }
+}
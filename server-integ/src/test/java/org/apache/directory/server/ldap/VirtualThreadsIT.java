@@ -0,0 +1,114 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ldap;
+
+
+import static org.apache.directory.server.integ.ServerIntegrationUtils.getAdminConnection;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.directory.api.ldap.model.cursor.EntryCursor;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.directory.server.annotations.CreateLdapServer;
+import org.apache.directory.server.annotations.CreateTransport;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.ApacheDSTestExtension;
+import org.apache.directory.server.protocol.shared.VirtualThreadExecutors;
+import org.apache.directory.server.protocol.shared.transport.Transport;
+import org.apache.mina.filter.executor.ExecutorFilter;
+import org.apache.mina.filter.executor.UnorderedThreadPoolExecutor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+
+/**
+ * Test the requests processed in virtual threads. When the JVM does not support them,
+ * the requests are processed in a thread pool.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@ExtendWith( { ApacheDSTestExtension.class } )
+@CreateDS(name = "VirtualThreadsIT-class")
+@CreateLdapServer(transports =
+    { @CreateTransport(protocol = "LDAP", virtualThreads = true) })
+public class VirtualThreadsIT extends AbstractLdapTestUnit
+{
+    private static final int NB_CLIENTS = 20;
+
+
+    @Test
+    public void testConcurrentSearches() throws Exception
+    {
+        LdapServer server = getLdapServer();
+        Transport transport = server.getTransports()[0];
+        assertTrue( transport.isVirtualThreads() );
+
+        ExecutorFilter executorFilter = ( ExecutorFilter ) transport.getAcceptor().getFilterChain().get( "executor" );
+        assertEquals( !VirtualThreadExecutors.isSupported(),
+            executorFilter.getExecutor() instanceof UnorderedThreadPoolExecutor );
+
+        ExecutorService clients = Executors.newFixedThreadPool( NB_CLIENTS );
+
+        try
+        {
+            List<Future<Integer>> results = new ArrayList<>();
+
+            for ( int i = 0; i < NB_CLIENTS; i++ )
+            {
+                results.add( clients.submit( () ->
+                {
+                    int count = 0;
+
+                    try ( LdapConnection connection = getAdminConnection( server );
+                        EntryCursor cursor = connection.search( "ou=system", "(objectClass=*)", SearchScope.SUBTREE,
+                            "*" ) )
+                    {
+                        while ( cursor.next() )
+                        {
+                            count++;
+                        }
+                    }
+
+                    return count;
+                } ) );
+            }
+
+            int expected = results.get( 0 ).get();
+            assertTrue( expected > 1 );
+
+            for ( Future<Integer> result : results )
+            {
+                assertEquals( expected, result.get().intValue() );
+            }
+        }
+        finally
+        {
+            clients.shutdownNow();
+        }
+    }
+}
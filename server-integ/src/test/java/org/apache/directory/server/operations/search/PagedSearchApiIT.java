@@ -59,6 +59,7 @@ import org.apache.directory.server.core.annotations.ApplyLdifs;
 import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
 import org.apache.directory.server.core.integ.ApacheDSTestExtension;
 import org.apache.directory.server.ldap.LdapServer;
+import org.apache.directory.server.ldap.handlers.controls.PagedSearchCursors;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 
@@ -1227,4 +1228,137 @@ public class PagedSearchApiIT extends AbstractLdapTestUnit
             checkResults( results, 10 );
         }
     }
-}
\ No newline at end of file
+
+
+    /**
+     * Reads the next page of a paged search
+     *
+     * @return The cookie to send to get the next page, or null if all the entries have been read
+     */
+    private byte[] readPage( LdapConnection connection, SearchRequest searchRequest, PagedResults pagedControl,
+        List<Entry> results ) throws Exception
+    {
+        searchRequest.addControl( pagedControl );
+
+        try ( SearchCursor cursor = connection.search( searchRequest ) )
+        {
+            while ( cursor.next() )
+            {
+                results.add( cursor.getEntry() );
+            }
+
+            PagedResults responseControl = ( PagedResults ) cursor.getSearchResultDone().getControls()
+                .get( PagedResults.OID );
+            byte[] cookie = responseControl.getCookie();
+
+            return Strings.isEmpty( cookie ) ? null : cookie;
+        }
+    }
+
+
+    private SearchRequest createUsersSearch() throws Exception
+    {
+        SearchRequest searchRequest = new SearchRequestImpl();
+        searchRequest.setBase( new Dn( "dc=users,ou=system" ) );
+        searchRequest.setFilter( "(cn=*)" );
+        searchRequest.setScope( SearchScope.SUBTREE );
+
+        return searchRequest;
+    }
+
+
+    /**
+     * Do a paged search without keeping any cursor open between the pages : each
+     * page is read searching again, and skipping the entries already returned.
+     */
+    @Test
+    public void testPagedSearchWithoutOpenCursor() throws Exception
+    {
+        getLdapServer().setMaxSizeLimit( LdapServer.NO_SIZE_LIMIT );
+        getLdapServer().setMaxPagedSearchCursors( 0 );
+
+        try ( LdapConnection connection = new LdapNetworkConnection( Network.LOOPBACK_HOSTNAME, getLdapServer().getPort() ) )
+        {
+            connection.bind( "uid=admin,ou=system", "secret" );
+
+            SearchRequest searchRequest = createUsersSearch();
+            PagedResults pagedControl = new PagedResultsImpl();
+            pagedControl.setSize( 3 );
+            List<Entry> results = new ArrayList<>();
+            int loop = 0;
+            byte[] cookie;
+
+            do
+            {
+                loop++;
+                cookie = readPage( connection, searchRequest, pagedControl, results );
+                pagedControl.setCookie( cookie );
+                assertEquals( 0, getLdapServer().getPagedSearchCursors().getCursorCount() );
+            }
+            while ( cookie != null );
+
+            assertEquals( 4, loop );
+            checkResults( results, 10 );
+        }
+        finally
+        {
+            getLdapServer().setMaxPagedSearchCursors( PagedSearchCursors.MAX_CURSORS_DEFAULT );
+        }
+    }
+
+
+    /**
+     * Interleave two paged searches, only one cursor being kept open : the other one
+     * is closed, and its search continues from its last returned entry.
+     */
+    @Test
+    public void testInterleavedPagedSearchesWithEvictedCursor() throws Exception
+    {
+        getLdapServer().setMaxSizeLimit( LdapServer.NO_SIZE_LIMIT );
+        getLdapServer().setMaxPagedSearchCursors( 1 );
+        long evicted = getLdapServer().getPagedSearchCursors().getEvictedCursorCount();
+
+        try ( LdapConnection connection1 = new LdapNetworkConnection( Network.LOOPBACK_HOSTNAME, getLdapServer().getPort() );
+            LdapConnection connection2 = new LdapNetworkConnection( Network.LOOPBACK_HOSTNAME, getLdapServer().getPort() ) )
+        {
+            connection1.bind( "uid=admin,ou=system", "secret" );
+            connection2.bind( "uid=admin,ou=system", "secret" );
+
+            SearchRequest searchRequest1 = createUsersSearch();
+            SearchRequest searchRequest2 = createUsersSearch();
+            PagedResults pagedControl1 = new PagedResultsImpl();
+            pagedControl1.setSize( 4 );
+            PagedResults pagedControl2 = new PagedResultsImpl();
+            pagedControl2.setSize( 4 );
+            List<Entry> results1 = new ArrayList<>();
+            List<Entry> results2 = new ArrayList<>();
+            byte[] cookie1 = new byte[0];
+            byte[] cookie2 = new byte[0];
+
+            while ( ( cookie1 != null ) || ( cookie2 != null ) )
+            {
+                if ( cookie1 != null )
+                {
+                    cookie1 = readPage( connection1, searchRequest1, pagedControl1, results1 );
+                    pagedControl1.setCookie( cookie1 );
+                }
+
+                if ( cookie2 != null )
+                {
+                    cookie2 = readPage( connection2, searchRequest2, pagedControl2, results2 );
+                    pagedControl2.setCookie( cookie2 );
+                }
+
+                assertTrue( getLdapServer().getPagedSearchCursors().getCursorCount() <= 1 );
+            }
+
+            checkResults( results1, 10 );
+            checkResults( results2, 10 );
+            assertTrue( getLdapServer().getPagedSearchCursors().getEvictedCursorCount() > evicted );
+        }
+        finally
+        {
+            getLdapServer().setMaxPagedSearchCursors( PagedSearchCursors.MAX_CURSORS_DEFAULT );
+        }
+    }
+}
@@ -45,9 +45,16 @@ import javax.naming.directory.SearchResult;
 import javax.naming.ldap.LdapContext;
 import javax.naming.ldap.ManageReferralControl;
 
+import org.apache.directory.api.ldap.model.cursor.SearchCursor;
 import org.apache.directory.api.ldap.model.entry.DefaultEntry;
 import org.apache.directory.api.ldap.model.ldif.LdifEntry;
 import org.apache.directory.api.ldap.model.ldif.LdifReader;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.util.Network;
+import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.directory.ldap.client.api.LdapNetworkConnection;
 import org.apache.directory.server.annotations.CreateLdapServer;
 import org.apache.directory.server.annotations.CreateTransport;
 import org.apache.directory.server.core.annotations.ApplyLdifs;
@@ -340,6 +347,56 @@ public class ReferralSearchIT extends AbstractLdapTestUnit
     }
 
 
+    /**
+     * Check that the referrals in the search scope are returned as continuation
+     * references even when they don't match the search filter
+     */
+    @Test
+    public void testSearchContinuationsNotMatchingFilter() throws Exception
+    {
+        try ( LdapConnection connection = new LdapNetworkConnection( Network.LOOPBACK_HOSTNAME,
+            getLdapServer().getPort() ) )
+        {
+            connection.bind( "uid=admin,ou=system", "secret" );
+            String france = "ldap://localhost:" + getLdapServer().getPort() + "/c=france,ou=system";
+            String usa = "ldap://localhost:" + getLdapServer().getPort() + "/c=usa,ou=system";
+
+            Set<String> urls = getReferences( connection, SearchScope.SUBTREE );
+            assertEquals( 2, urls.size() );
+            assertTrue( urls.contains( france + "??sub" ) );
+            assertTrue( urls.contains( usa + "??sub" ) );
+
+            urls = getReferences( connection, SearchScope.ONELEVEL );
+            assertEquals( 2, urls.size() );
+            assertTrue( urls.contains( france + "??base" ) );
+            assertTrue( urls.contains( usa + "??base" ) );
+
+            assertTrue( getReferences( connection, SearchScope.OBJECT ).isEmpty() );
+        }
+    }
+
+
+    private Set<String> getReferences( LdapConnection connection, SearchScope scope ) throws Exception
+    {
+        Set<String> urls = new HashSet<>();
+
+        try ( SearchCursor cursor = connection.search( new SearchRequestImpl()
+            .setBase( new Dn( "ou=Countries,ou=system" ) )
+            .setFilter( "(cn=alex karasulu)" )
+            .setScope( scope ) ) )
+        {
+            while ( cursor.next() )
+            {
+                // No entry matches the filter
+                assertTrue( cursor.isReferral() );
+                urls.addAll( cursor.getReferral().getLdapUrls() );
+            }
+        }
+
+        return urls;
+    }
+
+
     /**
      * Test of an search operation with a referral
      *
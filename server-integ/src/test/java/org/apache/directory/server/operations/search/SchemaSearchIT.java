@@ -364,4 +364,56 @@ public class SchemaSearchIT extends AbstractLdapTestUnit
 
         results.close();
     }
+
+
+    /**
+     * Check that the subschema subentry returned to the client, which is cached once
+     * encoded, is updated when the schema is modified.
+     */
+    @Test
+    public void testSubSchemaSubEntryAfterSchemaModification() throws Exception
+    {
+        DirContext ctx = getWiredContext( getLdapServer() );
+        String description = "( 1.3.6.1.4.1.18060.0.4.1.2.99999 NAME 'cachedSchemaTest' "
+            + "SYNTAX 1.3.6.1.4.1.1466.115.121.1.15 X-SCHEMA 'other' )";
+
+        Attribute attributeTypes = getSubschemaAttribute( ctx, "attributeTypes" );
+        int nbAttributeTypes = attributeTypes.size();
+
+        // The same request, returned from the cache
+        assertEquals( nbAttributeTypes, getSubschemaAttribute( ctx, "attributeTypes" ).size() );
+
+        ctx.modifyAttributes( DN, DirContext.ADD_ATTRIBUTE, new BasicAttributes( "attributeTypes", description,
+            true ) );
+
+        attributeTypes = getSubschemaAttribute( ctx, "attributeTypes" );
+        assertEquals( nbAttributeTypes + 1, attributeTypes.size() );
+        boolean found = false;
+
+        for ( int i = 0; i < attributeTypes.size(); i++ )
+        {
+            found |= ( ( String ) attributeTypes.get( i ) ).contains( "'cachedSchemaTest'" );
+        }
+
+        assertTrue( found );
+
+        ctx.close();
+    }
+
+
+    private Attribute getSubschemaAttribute( DirContext ctx, String attributeName ) throws Exception
+    {
+        SearchControls searchControls = new SearchControls();
+        searchControls.setSearchScope( SearchControls.OBJECT_SCOPE );
+        searchControls.setReturningAttributes( new String[]
+            { attributeName } );
+        NamingEnumeration<SearchResult> results = ctx.search( DN, FILTER, searchControls );
+
+        assertTrue( results.hasMore() );
+        Attribute attribute = results.next().getAttributes().get( attributeName );
+        assertFalse( results.hasMore() );
+        results.close();
+
+        return attribute;
+    }
 }
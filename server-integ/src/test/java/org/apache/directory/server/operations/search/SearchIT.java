@@ -2226,4 +2226,68 @@ public class SearchIT extends AbstractLdapTestUnit
 
         connection.close();
     }
+
+
+    /**
+     * Test that the responses of a search are all received, and complete, when they
+     * are gathered in buffers : several entries in one buffer, and entries larger than
+     * the buffers.
+     */
+    @Test
+    public void testSearchResponseBatching() throws Exception
+    {
+        LdapConnection connection = getAdminConnection( getLdapServer() );
+        int batchSize = getLdapServer().getSearchResponseBatchSize();
+        int nbEntries = 200;
+        char[] largeValue = new char[2048];
+        Arrays.fill( largeValue, 'x' );
+        String largeDescription = new String( largeValue );
+
+        try
+        {
+            connection.add( new DefaultEntry(
+                "ou=Batch,dc=example,dc=com",
+                "objectClass: top",
+                "objectClass: organizationalUnit",
+                "ou: Batch" ) );
+
+            for ( int i = 0; i < nbEntries; i++ )
+            {
+                // One entry out of 10 is larger than the buffers
+                String description = ( i % 10 == 0 ) ? largeDescription : "User " + i;
+
+                connection.add( new DefaultEntry(
+                    "cn=batch" + i + ",ou=Batch,dc=example,dc=com",
+                    "objectClass: top",
+                    "objectClass: person",
+                    "sn: Batch",
+                    "cn", "batch" + i,
+                    "description", description ) );
+            }
+
+            getLdapServer().setSearchResponseBatchSize( 1024 );
+            Set<String> found = new HashSet<>();
+
+            try ( EntryCursor cursor = connection.search( "ou=Batch,dc=example,dc=com", "(objectClass=person)",
+                SearchScope.ONELEVEL, "*" ) )
+            {
+                while ( cursor.next() )
+                {
+                    Entry entry = cursor.get();
+                    int i = Integer.parseInt( entry.get( "cn" ).getString().substring( 5 ) );
+                    String description = ( i % 10 == 0 ) ? largeDescription : "User " + i;
+
+                    assertEquals( description, entry.get( "description" ).getString() );
+                    assertTrue( found.add( entry.getDn().getName() ) );
+                }
+            }
+
+            assertEquals( nbEntries, found.size() );
+        }
+        finally
+        {
+            getLdapServer().setSearchResponseBatchSize( batchSize );
+            connection.close();
+        }
+    }
 }
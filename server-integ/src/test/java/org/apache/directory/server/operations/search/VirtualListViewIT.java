@@ -0,0 +1,386 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.operations.search;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.ldap.extras.controls.vlv.VirtualListViewRequest;
+import org.apache.directory.api.ldap.extras.controls.vlv.VirtualListViewRequestImpl;
+import org.apache.directory.api.ldap.extras.controls.vlv.VirtualListViewResponse;
+import org.apache.directory.api.ldap.extras.controls.vlv.VirtualListViewResultCode;
+import org.apache.directory.api.ldap.model.cursor.SearchCursor;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.message.Response;
+import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultDone;
+import org.apache.directory.api.ldap.model.message.SearchResultEntry;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.message.controls.SortKey;
+import org.apache.directory.api.ldap.model.message.controls.SortRequest;
+import org.apache.directory.api.ldap.model.message.controls.SortRequestImpl;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.util.Network;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.directory.ldap.client.api.LdapNetworkConnection;
+import org.apache.directory.server.annotations.CreateLdapServer;
+import org.apache.directory.server.annotations.CreateTransport;
+import org.apache.directory.server.core.annotations.ApplyLdifs;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.ApacheDSTestExtension;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+
+/**
+ * Tests for searching with the Virtual List View control.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@ExtendWith( { ApacheDSTestExtension.class } )
+@CreateLdapServer(transports =
+    { @CreateTransport(protocol = "LDAP") })
+@ApplyLdifs(
+    {
+        "dn: ou=vlv,ou=system",
+        "objectClass: top",
+        "objectClass: organizationalUnit",
+        "ou: vlv",
+        "",
+        "dn: cn=user0,ou=vlv,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user0",
+        "sn: Hotel",
+        "",
+        "dn: cn=user1,ou=vlv,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user1",
+        "sn: charlie",
+        "",
+        "dn: cn=user2,ou=vlv,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user2",
+        "sn: Juliett",
+        "",
+        "dn: cn=user3,ou=vlv,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user3",
+        "sn: alpha",
+        "",
+        "dn: cn=user4,ou=vlv,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user4",
+        "sn: Golf",
+        "",
+        "dn: cn=user5,ou=vlv,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user5",
+        "sn: echo",
+        "",
+        "dn: cn=user6,ou=vlv,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user6",
+        "sn: India",
+        "",
+        "dn: cn=user7,ou=vlv,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user7",
+        "sn: bravo",
+        "",
+        "dn: cn=user8,ou=vlv,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user8",
+        "sn: Foxtrot",
+        "",
+        "dn: cn=user9,ou=vlv,ou=system",
+        "objectClass: top",
+        "objectClass: person",
+        "cn: user9",
+        "sn: delta"
+})
+public class VirtualListViewIT extends AbstractLdapTestUnit
+{
+    private LdapConnection con;
+
+    private SortKey sortKey;
+
+    private VirtualListViewRequest vlv;
+
+    private SearchRequest req;
+
+    /** The response control of the last search */
+    private VirtualListViewResponse vlvResponse;
+
+    /** The result of the last search */
+    private ResultCodeEnum resultCode;
+
+
+    @BeforeEach
+    public void createConnection() throws Exception
+    {
+        con = new LdapNetworkConnection( Network.LOOPBACK_HOSTNAME, getLdapServer().getPort() );
+        con.bind( "uid=admin,ou=system", "secret" );
+
+        req = new SearchRequestImpl();
+        req.setBase( new Dn( "ou=vlv,ou=system" ) );
+        req.setFilter( "(objectClass=person)" );
+        req.setScope( SearchScope.ONELEVEL );
+        req.addAttributes( "sn" );
+
+        sortKey = new SortKey( "sn" );
+        SortRequest sortControl = new SortRequestImpl();
+        sortControl.addSortKey( sortKey );
+        req.addControl( sortControl );
+
+        vlv = new VirtualListViewRequestImpl();
+        req.addControl( vlv );
+    }
+
+
+    @AfterEach
+    public void closeConnection() throws Exception
+    {
+        con.close();
+    }
+
+
+    /**
+     * Sends the request, and returns the sn of the returned entries
+     */
+    private List<String> search() throws Exception
+    {
+        List<String> names = new ArrayList<>();
+        SearchCursor cursor = con.search( req );
+
+        while ( cursor.next() )
+        {
+            Response response = cursor.get();
+
+            if ( response instanceof SearchResultEntry )
+            {
+                names.add( ( ( SearchResultEntry ) response ).getEntry().get( "sn" ).getString() );
+            }
+        }
+
+        SearchResultDone done = cursor.getSearchResultDone();
+        cursor.close();
+
+        resultCode = done.getLdapResult().getResultCode();
+        vlvResponse = ( VirtualListViewResponse ) done.getControl( VirtualListViewResponse.OID );
+
+        return names;
+    }
+
+
+    private List<String> list( String... names )
+    {
+        List<String> list = new ArrayList<>();
+
+        for ( String name : names )
+        {
+            list.add( name );
+        }
+
+        return list;
+    }
+
+
+    private void setOffset( int offset, int contentCount, int before, int after )
+    {
+        vlv.setOffset( offset );
+        vlv.setContentCount( contentCount );
+        vlv.setBeforeCount( before );
+        vlv.setAfterCount( after );
+    }
+
+
+    private void setAssertionValue( String value, int before, int after )
+    {
+        vlv.setAssertionValue( Strings.getBytesUtf8( value ) );
+        vlv.setBeforeCount( before );
+        vlv.setAfterCount( after );
+    }
+
+
+    @Test
+    public void testOffset() throws Exception
+    {
+        setOffset( 1, 0, 0, 2 );
+        assertEquals( list( "alpha", "bravo", "charlie" ), search() );
+        assertEquals( ResultCodeEnum.SUCCESS, resultCode );
+        assertEquals( VirtualListViewResultCode.SUCCESS, vlvResponse.getVirtualListViewResult() );
+        assertEquals( 1, vlvResponse.getTargetPosition() );
+        assertEquals( 10, vlvResponse.getContentCount() );
+        assertNotNull( vlvResponse.getContextId() );
+
+        // Move in the same view
+        vlv.setContextId( vlvResponse.getContextId() );
+        setOffset( 5, 10, 1, 1 );
+        assertEquals( list( "delta", "echo", "Foxtrot" ), search() );
+        assertEquals( 5, vlvResponse.getTargetPosition() );
+
+        // The last entries
+        setOffset( 10, 10, 2, 5 );
+        assertEquals( list( "Hotel", "India", "Juliett" ), search() );
+        assertEquals( 10, vlvResponse.getTargetPosition() );
+
+        // The client thinks there are 20 entries : the offset is scaled
+        setOffset( 10, 20, 0, 0 );
+        assertEquals( list( "echo" ), search() );
+        assertEquals( 5, vlvResponse.getTargetPosition() );
+    }
+
+
+    @Test
+    public void testReverseOffset() throws Exception
+    {
+        sortKey.setReverseOrder( true );
+        setOffset( 1, 0, 0, 1 );
+        assertEquals( list( "Juliett", "India" ), search() );
+        assertEquals( 10, vlvResponse.getContentCount() );
+    }
+
+
+    @Test
+    public void testOffsetAfterLastEntry() throws Exception
+    {
+        setOffset( 15, 10, 1, 3 );
+        assertEquals( list( "Juliett" ), search() );
+        assertEquals( ResultCodeEnum.SUCCESS, resultCode );
+        assertEquals( 11, vlvResponse.getTargetPosition() );
+    }
+
+
+    @Test
+    public void testAssertionValue() throws Exception
+    {
+        setAssertionValue( "E", 1, 1 );
+        assertEquals( list( "delta", "echo", "Foxtrot" ), search() );
+        assertEquals( 5, vlvResponse.getTargetPosition() );
+        assertEquals( 10, vlvResponse.getContentCount() );
+
+        // Between two values
+        vlv.setContextId( vlvResponse.getContextId() );
+        setAssertionValue( "gamma", 0, 0 );
+        assertEquals( list( "Golf" ), search() );
+        assertEquals( 7, vlvResponse.getTargetPosition() );
+
+        // After the last value
+        setAssertionValue( "zulu", 2, 0 );
+        assertEquals( list( "India", "Juliett" ), search() );
+        assertEquals( 11, vlvResponse.getTargetPosition() );
+    }
+
+
+    @Test
+    public void testContextReuse() throws Exception
+    {
+        setOffset( 1, 0, 0, 0 );
+        search();
+        byte[] contextId = vlvResponse.getContextId();
+        assertEquals( 10, vlvResponse.getContentCount() );
+
+        Dn added = new Dn( "cn=user10,ou=vlv,ou=system" );
+        con.add( new DefaultEntry( added,
+            "objectClass: top",
+            "objectClass: person",
+            "cn: user10",
+            "sn: bob" ) );
+
+        try
+        {
+            // The entries of the view have been sorted once
+            vlv.setContextId( contextId );
+            setAssertionValue( "b", 0, 1 );
+            assertEquals( list( "bravo", "charlie" ), search() );
+            assertEquals( 10, vlvResponse.getContentCount() );
+
+            // A new view sees the new entry
+            vlv.setContextId( null );
+            assertEquals( list( "bob", "bravo" ), search() );
+            assertEquals( 11, vlvResponse.getContentCount() );
+
+            // The deleted entries are not returned
+            contextId = vlvResponse.getContextId();
+            con.delete( added );
+            vlv.setContextId( contextId );
+            assertEquals( list( "bravo" ), search() );
+            assertEquals( 11, vlvResponse.getContentCount() );
+        }
+        finally
+        {
+            if ( con.exists( added ) )
+            {
+                con.delete( added );
+            }
+        }
+    }
+
+
+    @Test
+    public void testWithoutSortControl() throws Exception
+    {
+        req.removeControl( req.getControl( SortRequest.OID ) );
+        setOffset( 1, 0, 0, 2 );
+
+        assertEquals( list(), search() );
+        assertEquals( ResultCodeEnum.UNWILLING_TO_PERFORM, resultCode );
+        assertEquals( VirtualListViewResultCode.SORTCONTROLMISSING, vlvResponse.getVirtualListViewResult() );
+    }
+
+
+    @Test
+    public void testMaxSizeAppliesToAdministrators() throws Exception
+    {
+        int maxSize = getLdapServer().getVirtualListViewMaxSize();
+        getLdapServer().setVirtualListViewMaxSize( 5 );
+
+        try
+        {
+            setOffset( 1, 0, 0, 2 );
+
+            assertEquals( list(), search() );
+            assertEquals( ResultCodeEnum.ADMIN_LIMIT_EXCEEDED, resultCode );
+            assertEquals( VirtualListViewResultCode.ADMINLIMITEXCEEDED, vlvResponse.getVirtualListViewResult() );
+        }
+        finally
+        {
+            getLdapServer().setVirtualListViewMaxSize( maxSize );
+        }
+    }
+}
@@ -87,6 +87,8 @@ public class ClientServerReplicationIT
 
     private static CoreSession consumerSession;
 
+    private static ReplicationConsumerImpl replicationConsumer;
+
     private static AtomicInteger entryCount = new AtomicInteger();
 
 
@@ -289,6 +291,86 @@ public class ClientServerReplicationIT
     }
 
 
+    @Test
+    public void testModifyDelta() throws Exception
+    {
+        Entry provUser = createEntry();
+        provUser.add( "description", "d1", "d2", "d3" );
+        provUser.add( "telephoneNumber", "123" );
+
+        providerSession.add( provUser );
+        assertTrue( checkEntryReplicated( provUser.getDn() ) );
+
+        // Remove and add some values, and remove an attribute
+        ModifyRequest modReq = new ModifyRequestImpl();
+        modReq.setName( provUser.getDn() );
+        modReq.remove( "description", "d2" );
+        modReq.add( "description", "d4" );
+        modReq.remove( "telephoneNumber" );
+        modReq.add( "seeAlso", "dc=example,dc=com" );
+        providerSession.modify( modReq );
+
+        assertTrue( checkEntryReplicated( provUser.getDn() ) );
+        compareEntries( provUser.getDn() );
+
+        Entry consumerEntry = consumerSession.lookup( provUser.getDn() );
+        assertTrue( consumerEntry.contains( "description", "d1", "d3", "d4" ) );
+        assertFalse( consumerEntry.contains( "description", "d2" ) );
+        assertFalse( consumerEntry.containsAttribute( "telephoneNumber" ) );
+
+        // Replace a single value, and remove all the values of an attribute
+        modReq = new ModifyRequestImpl();
+        modReq.setName( provUser.getDn() );
+        modReq.replace( "sn", "newSn" );
+        modReq.remove( "description", "d1", "d3", "d4" );
+        providerSession.modify( modReq );
+
+        assertTrue( checkEntryReplicated( provUser.getDn() ) );
+        compareEntries( provUser.getDn() );
+
+        consumerEntry = consumerSession.lookup( provUser.getDn() );
+        assertFalse( consumerEntry.containsAttribute( "description" ) );
+        assertTrue( consumerEntry.contains( "sn", "newSn" ) );
+    }
+
+
+    @Test
+    public void testAddManyEntries() throws Exception
+    {
+        long appliedChanges = replicationConsumer.getAppliedChanges();
+        List<Dn> dns = new ArrayList<>();
+
+        // Those entries are likely to be applied in a few batches
+        for ( int i = 0; i < 50; i++ )
+        {
+            Entry provUser = createEntry();
+            providerSession.add( provUser );
+            dns.add( provUser.getDn() );
+        }
+
+        for ( Dn dn : dns )
+        {
+            assertTrue( checkEntryReplicated( dn ) );
+            compareEntries( dn );
+        }
+
+        // The statistics are updated when the batch is committed
+        for ( int i = 0; i < 100; i++ )
+        {
+            if ( replicationConsumer.getAppliedChanges() >= appliedChanges + dns.size() )
+            {
+                break;
+            }
+
+            Thread.sleep( 100 );
+        }
+
+        assertTrue( replicationConsumer.getAppliedChanges() >= appliedChanges + dns.size() );
+        assertTrue( replicationConsumer.getApplyRate() > 0L );
+        assertTrue( replicationConsumer.getReplicationLag() >= 0L );
+    }
+
+
     @Test
     public void testModDn() throws Exception
     {
@@ -630,6 +712,7 @@ public class ClientServerReplicationIT
         consumerServer = ServerAnnotationProcessor.getLdapServer( provDirService );
 
         final ReplicationConsumerImpl consumer = ( ReplicationConsumerImpl ) ServerAnnotationProcessor.createConsumer();
+        replicationConsumer = consumer;
 
         List<ReplicationConsumer> replConsumers = new ArrayList<ReplicationConsumer>();
         replConsumers.add( consumer );
@@ -0,0 +1,337 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+
+package org.apache.directory.server.replication;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.extras.controls.syncrepl_impl.SyncDoneValueFactory;
+import org.apache.directory.api.ldap.extras.controls.syncrepl_impl.SyncRequestValueFactory;
+import org.apache.directory.api.ldap.extras.controls.syncrepl_impl.SyncStateValueFactory;
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.server.annotations.CreateConsumer;
+import org.apache.directory.server.annotations.CreateLdapServer;
+import org.apache.directory.server.annotations.CreateTransport;
+import org.apache.directory.server.core.annotations.ContextEntry;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.annotations.CreateIndex;
+import org.apache.directory.server.core.annotations.CreatePartition;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.factory.DSAnnotationProcessor;
+import org.apache.directory.server.core.integ.ApacheDSTestExtension;
+import org.apache.directory.server.factory.ServerAnnotationProcessor;
+import org.apache.directory.server.ldap.LdapServer;
+import org.apache.directory.server.ldap.replication.ReplicaCompressionMetrics;
+import org.apache.directory.server.ldap.replication.consumer.ReplicationConnection;
+import org.apache.directory.server.ldap.replication.consumer.ReplicationConsumer;
+import org.apache.directory.server.ldap.replication.consumer.ReplicationConsumerImpl;
+import org.apache.directory.server.ldap.replication.provider.SyncReplRequestHandler;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Tests the replication over a compressed session.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class CompressedReplicationIT
+{
+    private static LdapServer providerServer;
+
+    private static LdapServer consumerServer;
+
+    private static SchemaManager schemaManager;
+
+    private static CoreSession providerSession;
+
+    private static CoreSession consumerSession;
+
+    private static ReplicationConsumerImpl replicationConsumer;
+
+    /** The entries added before the consumer is started */
+    private static List<Dn> refreshedDns = new ArrayList<>();
+
+    private static int entryCount = 0;
+
+
+    @BeforeAll
+    public static void setUp() throws Exception
+    {
+        Class.forName( ApacheDSTestExtension.class.getName() );
+
+        startProvider();
+
+        for ( int i = 0; i < 50; i++ )
+        {
+            refreshedDns.add( addEntry() );
+        }
+
+        startConsumer();
+    }
+
+
+    @AfterAll
+    public static void tearDown() throws Exception
+    {
+        consumerServer.stop();
+        consumerServer.getDirectoryService().shutdown();
+        providerServer.stop();
+        providerServer.getDirectoryService().shutdown();
+    }
+
+
+    private static Dn addEntry() throws Exception
+    {
+        entryCount++;
+        String user = "user" + entryCount;
+
+        Entry entry = new DefaultEntry( schemaManager, "cn=" + user + ",dc=example,dc=com",
+            "objectClass", "person",
+            "cn", user,
+            "sn", user,
+            "description", "A user replicated over a compressed session" );
+
+        providerSession.add( entry );
+
+        return entry.getDn();
+    }
+
+
+    /**
+     * Wait up to 10 seconds for the entry to exist in the consumer
+     */
+    private boolean waitForEntry( Dn dn ) throws Exception
+    {
+        for ( int i = 0; i < 100; i++ )
+        {
+            if ( consumerSession.exists( dn ) )
+            {
+                return true;
+            }
+
+            Thread.sleep( 100 );
+        }
+
+        return false;
+    }
+
+
+    private void compareEntries( Dn dn ) throws Exception
+    {
+        Entry providerEntry = providerSession.lookup( dn, SchemaConstants.ALL_USER_ATTRIBUTES,
+            SchemaConstants.ENTRY_UUID_AT );
+        Entry consumerEntry = consumerSession.lookup( dn, SchemaConstants.ALL_USER_ATTRIBUTES,
+            SchemaConstants.ENTRY_UUID_AT );
+
+        assertEquals( providerEntry, consumerEntry );
+    }
+
+
+    @Test
+    public void testCompressedReplication() throws Exception
+    {
+        // The initial refresh
+        for ( Dn dn : refreshedDns )
+        {
+            assertTrue( waitForEntry( dn ) );
+            compareEntries( dn );
+        }
+
+        // The changes pushed in the persist phase
+        for ( int i = 0; i < 10; i++ )
+        {
+            Dn dn = addEntry();
+            assertTrue( waitForEntry( dn ) );
+            compareEntries( dn );
+        }
+
+        providerSession.delete( refreshedDns.get( 0 ) );
+
+        for ( int i = 0; i < 100 && consumerSession.exists( refreshedDns.get( 0 ) ); i++ )
+        {
+            Thread.sleep( 100 );
+        }
+
+        assertFalse( consumerSession.exists( refreshedDns.get( 0 ) ) );
+
+        // Both ends of the session have compressed the data they have sent
+        ReplicaCompressionMetrics providerMetrics = providerServer.getReplicaCompressionMetrics();
+        ReplicaCompressionMetrics consumerMetrics = replicationConsumer.getCompressionMetrics();
+
+        assertEquals( 1L, providerMetrics.getSessionCount() );
+        assertEquals( 1L, consumerMetrics.getSessionCount() );
+        assertTrue( providerMetrics.getCompressedBytesWritten() < providerMetrics.getBytesWritten() );
+        assertTrue( consumerMetrics.getCompressedBytesRead() < consumerMetrics.getBytesRead() );
+        assertTrue( consumerMetrics.getCompressedBytesWritten() > 0L );
+        assertTrue( consumerMetrics.getCompressionRatio() < 0.5d );
+    }
+
+
+    @Test
+    public void testCompressionRefusedToNonAdministrators() throws Exception
+    {
+        Entry user = new DefaultEntry( schemaManager, "cn=compressor,dc=example,dc=com",
+            "objectClass", "person",
+            "cn", "compressor",
+            "sn", "compressor",
+            "userPassword", "secret" );
+
+        providerSession.add( user );
+
+        try ( ReplicationConnection connection = new ReplicationConnection( "localhost", 16200 ) )
+        {
+            connection.bind( user.getDn(), "secret" );
+
+            assertFalse( connection.startCompression( 6, Integer.MAX_VALUE, new ReplicaCompressionMetrics() ) );
+
+            // The session is still usable, uncompressed
+            assertTrue( connection.exists( user.getDn() ) );
+        }
+    }
+
+
+    @CreateDS(
+        allowAnonAccess = true,
+        name = "CompressedReplicationIT-provider-replication",
+        enableChangeLog = false,
+        partitions =
+            {
+                @CreatePartition(
+                    name = "example",
+                    suffix = "dc=example,dc=com",
+                    indexes =
+                        {
+                            @CreateIndex(attribute = "objectClass"),
+                            @CreateIndex(attribute = "dc"),
+                            @CreateIndex(attribute = "ou")
+                    },
+                    contextEntry = @ContextEntry(entryLdif =
+                        "dn: dc=example,dc=com\n" +
+                            "objectClass: domain\n" +
+                            "dc: example"))
+        })
+    @CreateLdapServer(transports =
+        { @CreateTransport(port = 16200, protocol = "LDAP") })
+    public static void startProvider() throws Exception
+    {
+        DirectoryService provDirService = DSAnnotationProcessor.getDirectoryService();
+
+        // Load the replication controls
+        LdapApiService codec = provDirService.getLdapCodecService();
+        codec.registerRequestControl( new SyncRequestValueFactory( codec ) );
+        codec.registerResponseControl( new SyncDoneValueFactory( codec ) );
+        codec.registerResponseControl( new SyncStateValueFactory( codec ) );
+
+        providerServer = ServerAnnotationProcessor.getLdapServer( provDirService );
+        providerServer.setReplicationReqHandler( new SyncReplRequestHandler() );
+        providerServer.startReplicationProducer();
+
+        schemaManager = provDirService.getSchemaManager();
+        providerSession = provDirService.getAdminSession();
+    }
+
+
+    @CreateDS(
+        allowAnonAccess = true,
+        enableChangeLog = false,
+        name = "CompressedReplicationIT-consumer-replication",
+        partitions =
+            {
+                @CreatePartition(
+                    name = "example",
+                    suffix = "dc=example,dc=com",
+                    indexes =
+                        {
+                            @CreateIndex(attribute = "objectClass"),
+                            @CreateIndex(attribute = "dc"),
+                            @CreateIndex(attribute = "ou")
+                    },
+                    contextEntry = @ContextEntry(entryLdif =
+                        "dn: dc=example,dc=com\n" +
+                            "objectClass: domain\n" +
+                            "dc: example"))
+        })
+    @CreateLdapServer(transports =
+        { @CreateTransport(port = 17200, protocol = "LDAP") })
+    @CreateConsumer
+        (
+            remotePort = 16200,
+            replUserDn = "uid=admin,ou=system",
+            replUserPassword = "secret",
+            useTls = false,
+            baseDn = "dc=example,dc=com",
+            refreshInterval = 1000,
+            replicaId = 1
+        )
+    public static void startConsumer() throws Exception
+    {
+        DirectoryService consDirService = DSAnnotationProcessor.getDirectoryService();
+        consumerServer = ServerAnnotationProcessor.getLdapServer( consDirService );
+
+        replicationConsumer = ( ReplicationConsumerImpl ) ServerAnnotationProcessor.createConsumer();
+        replicationConsumer.getConfig().setCompressionLevel( 6 );
+
+        List<ReplicationConsumer> replConsumers = new ArrayList<>();
+        replConsumers.add( replicationConsumer );
+
+        consumerServer.setReplConsumers( replConsumers );
+
+        Dn configDn = new Dn( consDirService.getSchemaManager(), "ads-replConsumerId=localhost,ou=system" );
+        replicationConsumer.getConfig().setConfigEntryDn( configDn );
+
+        Entry consumerConfigEntry = new DefaultEntry( consDirService.getSchemaManager(), configDn,
+            "objectClass: ads-replConsumer",
+            "ads-replConsumerId: localhost",
+            "ads-searchBaseDN", replicationConsumer.getConfig().getBaseDn(),
+            "ads-replProvHostName", replicationConsumer.getConfig().getRemoteHost(),
+            "ads-replProvPort", String.valueOf( replicationConsumer.getConfig().getRemotePort() ),
+            "ads-replRefreshInterval", String.valueOf( replicationConsumer.getConfig().getRefreshInterval() ),
+            "ads-replRefreshNPersist", String.valueOf( replicationConsumer.getConfig().isRefreshNPersist() ),
+            "ads-replSearchScope", replicationConsumer.getConfig().getSearchScope().getLdapUrlValue(),
+            "ads-replSearchFilter", replicationConsumer.getConfig().getFilter(),
+            "ads-replSearchSizeLimit", String.valueOf( replicationConsumer.getConfig().getSearchSizeLimit() ),
+            "ads-replSearchTimeOut", String.valueOf( replicationConsumer.getConfig().getSearchTimeout() ),
+            "ads-replUserDn", replicationConsumer.getConfig().getReplUserDn(),
+            "ads-replUserPassword", replicationConsumer.getConfig().getReplUserPassword() );
+
+        consumerConfigEntry.put( "ads-replAliasDerefMode", replicationConsumer.getConfig().getAliasDerefMode()
+            .getJndiValue() );
+        consumerConfigEntry.put( "ads-replAttributes", replicationConsumer.getConfig().getAttributes() );
+
+        consumerSession = consDirService.getAdminSession();
+        consumerSession.add( consumerConfigEntry );
+
+        consumerServer.startReplicationConsumers();
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ *   Licensed to the Apache Software Foundation (ASF) under one
+ *   or more contributor license agreements.  See the NOTICE file
+ *   distributed with this work for additional information
+ *   regarding copyright ownership.  The ASF licenses this file
+ *   to you under the Apache License, Version 2.0 (the
+ *   "License"); you may not use this file except in compliance
+ *   with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing,
+ *   software distributed under the License is distributed on an
+ *   "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *   KIND, either express or implied.  See the License for the
+ *   specific language governing permissions and limitations
+ *   under the License.
+ *
+ */
+
+package org.apache.directory.server.replication;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.ldap.codec.api.LdapApiService;
+import org.apache.directory.api.ldap.extras.controls.syncrepl_impl.SyncDoneValueFactory;
+import org.apache.directory.api.ldap.extras.controls.syncrepl_impl.SyncRequestValueFactory;
+import org.apache.directory.api.ldap.extras.controls.syncrepl_impl.SyncStateValueFactory;
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapUnwillingToPerformException;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.SchemaManager;
+import org.apache.directory.api.util.FileUtils;
+import org.apache.directory.api.util.Strings;
+import org.apache.directory.server.annotations.CreateConsumer;
+import org.apache.directory.server.annotations.CreateLdapServer;
+import org.apache.directory.server.annotations.CreateTransport;
+import org.apache.directory.server.core.annotations.ContextEntry;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.annotations.CreateIndex;
+import org.apache.directory.server.core.annotations.CreatePartition;
+import org.apache.directory.server.core.api.CoreSession;
+import org.apache.directory.server.core.api.DirectoryService;
+import org.apache.directory.server.core.factory.DSAnnotationProcessor;
+import org.apache.directory.server.core.integ.ApacheDSTestExtension;
+import org.apache.directory.server.factory.ServerAnnotationProcessor;
+import org.apache.directory.server.ldap.LdapProtocolUtils;
+import org.apache.directory.server.ldap.LdapServer;
+import org.apache.directory.server.ldap.replication.ReplicaSnapshot;
+import org.apache.directory.server.ldap.replication.consumer.ReplicationConsumer;
+import org.apache.directory.server.ldap.replication.consumer.ReplicationConsumerImpl;
+import org.apache.directory.server.ldap.replication.provider.SyncReplRequestHandler;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Tests the seeding of a consumer with a snapshot of the provider partition.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SnapshotReplicationIT
+{
+    private static LdapServer providerServer;
+
+    private static LdapServer consumerServer;
+
+    private static SchemaManager schemaManager;
+
+    private static CoreSession providerSession;
+
+    private static CoreSession consumerSession;
+
+    private static ReplicationConsumerImpl replicationConsumer;
+
+    private static ReplicaSnapshot snapshot;
+
+    /** The entries added before the snapshot */
+    private static List<Dn> snapshotDns = new ArrayList<>();
+
+    /** The entries added after the snapshot */
+    private static List<Dn> addedDns = new ArrayList<>();
+
+    /** The entry deleted after the snapshot */
+    private static Dn deletedDn;
+
+    private static int entryCount = 0;
+
+
+    @BeforeAll
+    public static void setUp() throws Exception
+    {
+        Class.forName( ApacheDSTestExtension.class.getName() );
+
+        startProvider();
+
+        for ( int i = 0; i < 20; i++ )
+        {
+            snapshotDns.add( addEntry() );
+        }
+
+        File snapshotDir = new File( providerServer.getDirectoryService().getInstanceLayout().getInstanceDirectory(),
+            "snapshot" );
+        FileUtils.deleteDirectory( snapshotDir );
+
+        SyncReplRequestHandler replicationHandler = ( SyncReplRequestHandler ) providerServer.getReplicationReqHandler();
+        snapshot = replicationHandler.createSnapshot( new Dn( schemaManager, "dc=example,dc=com" ), snapshotDir );
+
+        // Those changes are not in the snapshot
+        for ( int i = 0; i < 5; i++ )
+        {
+            addedDns.add( addEntry() );
+        }
+
+        deletedDn = snapshotDns.remove( 0 );
+        providerSession.delete( deletedDn );
+
+        startConsumer( snapshotDir );
+    }
+
+
+    @AfterAll
+    public static void tearDown() throws Exception
+    {
+        consumerServer.stop();
+        consumerServer.getDirectoryService().shutdown();
+        providerServer.stop();
+        providerServer.getDirectoryService().shutdown();
+    }
+
+
+    private static Dn addEntry() throws Exception
+    {
+        entryCount++;
+        String user = "user" + entryCount;
+
+        Entry entry = new DefaultEntry( schemaManager, "cn=" + user + ",dc=example,dc=com",
+            "objectClass", "person",
+            "cn", user,
+            "sn", user );
+
+        providerSession.add( entry );
+
+        return entry.getDn();
+    }
+
+
+    /**
+     * Wait up to 10 seconds for the entry to exist, or not, in the consumer
+     */
+    private boolean waitForEntry( Dn dn, boolean exists ) throws Exception
+    {
+        for ( int i = 0; i < 100; i++ )
+        {
+            if ( consumerSession.exists( dn ) == exists )
+            {
+                return true;
+            }
+
+            Thread.sleep( 100 );
+        }
+
+        return false;
+    }
+
+
+    private void compareEntries( Dn dn ) throws Exception
+    {
+        Entry providerEntry = providerSession.lookup( dn, SchemaConstants.ALL_USER_ATTRIBUTES,
+            SchemaConstants.ENTRY_UUID_AT );
+        Entry consumerEntry = consumerSession.lookup( dn, SchemaConstants.ALL_USER_ATTRIBUTES,
+            SchemaConstants.ENTRY_UUID_AT );
+
+        assertEquals( providerEntry, consumerEntry );
+    }
+
+
+    @Test
+    public void testSeedConsumerWithSnapshot() throws Exception
+    {
+        // The changes done after the snapshot have been replicated
+        for ( Dn dn : addedDns )
+        {
+            assertTrue( waitForEntry( dn, true ) );
+            compareEntries( dn );
+        }
+
+        assertTrue( waitForEntry( deletedDn, false ) );
+
+        // The entries of the snapshot have been installed
+        for ( Dn dn : snapshotDns )
+        {
+            assertTrue( consumerSession.exists( dn ) );
+            compareEntries( dn );
+        }
+
+        // The consumer has resumed the replication with the snapshot event log,
+        // instead of starting a full refresh which would have created a new one
+        SyncReplRequestHandler replicationHandler = ( SyncReplRequestHandler ) providerServer.getReplicationReqHandler();
+        int replicaId = LdapProtocolUtils.getReplicaId( snapshot.getCookie() );
+
+        assertEquals( 1, replicationHandler.getReplicaLogMap().size() );
+        assertTrue( replicationHandler.getReplicaLogMap().containsKey( replicaId ) );
+
+        // Only the changes done after the snapshot have been applied
+        assertTrue( replicationConsumer.getAppliedChanges() <= addedDns.size() + 1 );
+
+        // Further changes are replicated too
+        Dn dn = addEntry();
+        assertTrue( waitForEntry( dn, true ) );
+        compareEntries( dn );
+    }
+
+
+    @Test
+    public void testSnapshotErrors() throws Exception
+    {
+        SyncReplRequestHandler replicationHandler = ( SyncReplRequestHandler ) providerServer.getReplicationReqHandler();
+        File directory = new File( providerServer.getDirectoryService().getInstanceLayout().getInstanceDirectory(),
+            "snapshot" );
+
+        // The directory already contains a snapshot
+        assertThrows( LdapUnwillingToPerformException.class,
+            () -> replicationHandler.createSnapshot( new Dn( schemaManager, "dc=example,dc=com" ), directory ) );
+
+        // Not a partition suffix
+        assertThrows( LdapUnwillingToPerformException.class,
+            () -> replicationHandler.createSnapshot( new Dn( schemaManager, "cn=user2,dc=example,dc=com" ),
+                new File( directory, "entry" ) ) );
+
+        assertFalse( Strings.isEmpty( ReplicaSnapshot.read( directory ).getCookie() ) );
+    }
+
+
+    @CreateDS(
+        allowAnonAccess = true,
+        name = "SnapshotReplicationIT-provider-replication",
+        enableChangeLog = false,
+        partitions =
+            {
+                @CreatePartition(
+                    name = "example",
+                    suffix = "dc=example,dc=com",
+                    indexes =
+                        {
+                            @CreateIndex(attribute = "objectClass"),
+                            @CreateIndex(attribute = "dc"),
+                            @CreateIndex(attribute = "ou")
+                    },
+                    contextEntry = @ContextEntry(entryLdif =
+                        "dn: dc=example,dc=com\n" +
+                            "objectClass: domain\n" +
+                            "dc: example"))
+        })
+    @CreateLdapServer(transports =
+        { @CreateTransport(port = 16100, protocol = "LDAP") })
+    public static void startProvider() throws Exception
+    {
+        DirectoryService provDirService = DSAnnotationProcessor.getDirectoryService();
+
+        // Load the replication controls
+        LdapApiService codec = provDirService.getLdapCodecService();
+        codec.registerRequestControl( new SyncRequestValueFactory( codec ) );
+        codec.registerResponseControl( new SyncDoneValueFactory( codec ) );
+        codec.registerResponseControl( new SyncStateValueFactory( codec ) );
+
+        providerServer = ServerAnnotationProcessor.getLdapServer( provDirService );
+        providerServer.setReplicationReqHandler( new SyncReplRequestHandler() );
+        providerServer.startReplicationProducer();
+
+        schemaManager = provDirService.getSchemaManager();
+        providerSession = provDirService.getAdminSession();
+    }
+
+
+    @CreateDS(
+        allowAnonAccess = true,
+        enableChangeLog = false,
+        name = "SnapshotReplicationIT-consumer-replication",
+        partitions =
+            {
+                @CreatePartition(
+                    name = "example",
+                    suffix = "dc=example,dc=com",
+                    indexes =
+                        {
+                            @CreateIndex(attribute = "objectClass"),
+                            @CreateIndex(attribute = "dc"),
+                            @CreateIndex(attribute = "ou")
+                    },
+                    contextEntry = @ContextEntry(entryLdif =
+                        "dn: dc=example,dc=com\n" +
+                            "objectClass: domain\n" +
+                            "dc: example"))
+        })
+    @CreateLdapServer(transports =
+        { @CreateTransport(port = 17100, protocol = "LDAP") })
+    @CreateConsumer
+        (
+            remotePort = 16100,
+            replUserDn = "uid=admin,ou=system",
+            replUserPassword = "secret",
+            useTls = false,
+            baseDn = "dc=example,dc=com",
+            refreshInterval = 1000,
+            replicaId = 1
+        )
+    public static void startConsumer( File snapshotDir ) throws Exception
+    {
+        DirectoryService consDirService = DSAnnotationProcessor.getDirectoryService();
+        consumerServer = ServerAnnotationProcessor.getLdapServer( consDirService );
+
+        replicationConsumer = ( ReplicationConsumerImpl ) ServerAnnotationProcessor.createConsumer();
+        replicationConsumer.getConfig().setSnapshotDirectory( snapshotDir.getAbsolutePath() );
+
+        List<ReplicationConsumer> replConsumers = new ArrayList<>();
+        replConsumers.add( replicationConsumer );
+
+        consumerServer.setReplConsumers( replConsumers );
+
+        Dn configDn = new Dn( consDirService.getSchemaManager(), "ads-replConsumerId=localhost,ou=system" );
+        replicationConsumer.getConfig().setConfigEntryDn( configDn );
+
+        Entry consumerConfigEntry = new DefaultEntry( consDirService.getSchemaManager(), configDn,
+            "objectClass: ads-replConsumer",
+            "ads-replConsumerId: localhost",
+            "ads-searchBaseDN", replicationConsumer.getConfig().getBaseDn(),
+            "ads-replProvHostName", replicationConsumer.getConfig().getRemoteHost(),
+            "ads-replProvPort", String.valueOf( replicationConsumer.getConfig().getRemotePort() ),
+            "ads-replRefreshInterval", String.valueOf( replicationConsumer.getConfig().getRefreshInterval() ),
+            "ads-replRefreshNPersist", String.valueOf( replicationConsumer.getConfig().isRefreshNPersist() ),
+            "ads-replSearchScope", replicationConsumer.getConfig().getSearchScope().getLdapUrlValue(),
+            "ads-replSearchFilter", replicationConsumer.getConfig().getFilter(),
+            "ads-replSearchSizeLimit", String.valueOf( replicationConsumer.getConfig().getSearchSizeLimit() ),
+            "ads-replSearchTimeOut", String.valueOf( replicationConsumer.getConfig().getSearchTimeout() ),
+            "ads-replUserDn", replicationConsumer.getConfig().getReplUserDn(),
+            "ads-replUserPassword", replicationConsumer.getConfig().getReplUserPassword() );
+
+        consumerConfigEntry.put( "ads-replAliasDerefMode", replicationConsumer.getConfig().getAliasDerefMode()
+            .getJndiValue() );
+        consumerConfigEntry.put( "ads-replAttributes", replicationConsumer.getConfig().getAttributes() );
+
+        consumerSession = consDirService.getAdminSession();
+        consumerSession.add( consumerConfigEntry );
+
+        consumerServer.startReplicationConsumers();
+    }
+}
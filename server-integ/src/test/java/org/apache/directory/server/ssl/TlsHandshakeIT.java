@@ -0,0 +1,159 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.ssl;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Hashtable;
+
+import javax.naming.Context;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
+import javax.naming.ldap.InitialLdapContext;
+import javax.naming.ldap.LdapContext;
+import javax.naming.ldap.StartTlsRequest;
+import javax.naming.ldap.StartTlsResponse;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.apache.directory.api.util.Network;
+import org.apache.directory.server.annotations.CreateLdapServer;
+import org.apache.directory.server.annotations.CreateTransport;
+import org.apache.directory.server.core.annotations.CreateDS;
+import org.apache.directory.server.core.integ.AbstractLdapTestUnit;
+import org.apache.directory.server.core.integ.ApacheDSTestExtension;
+import org.apache.directory.server.ldap.LdapServer;
+import org.apache.directory.server.ldap.handlers.extended.StartTlsHandler;
+import org.apache.directory.server.ldap.handlers.ssl.TlsHandshakeMetrics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+
+/**
+ * Test the TLS handshakes done out of the I/O processors, and their statistics.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@ExtendWith( { ApacheDSTestExtension.class } )
+@CreateDS(allowAnonAccess = true, name = "TlsHandshakeIT-class")
+@CreateLdapServer(
+    transports =
+        {
+            @CreateTransport(protocol = "LDAP"),
+            @CreateTransport(protocol = "LDAPS")
+    },
+    extendedOpHandlers =
+        { StartTlsHandler.class })
+public class TlsHandshakeIT extends AbstractLdapTestUnit
+{
+    private static final int CONNECT_ITERATIONS = 5;
+
+
+    /**
+     * Restarts the server, with the handshakes done in a dedicated pool
+     */
+    private void restartWithHandshakeThreads( LdapServer server, boolean tls13Enabled ) throws Exception
+    {
+        server.stop();
+        server.setTlsHandshakeThreads( 2 );
+        server.setTls13Enabled( tls13Enabled );
+        server.start();
+    }
+
+
+    /**
+     * Waits for the server to record the handshakes, which are completed when the
+     * client Finished message is received
+     */
+    private void waitForHandshakes( TlsHandshakeMetrics metrics, long expected ) throws Exception
+    {
+        long timeout = System.currentTimeMillis() + 10000L;
+
+        while ( ( metrics.getHandshakeCount() < expected ) && ( System.currentTimeMillis() < timeout ) )
+        {
+            Thread.sleep( 10L );
+        }
+    }
+
+
+    @Test
+    public void testLdapsHandshakes() throws Exception
+    {
+        LdapServer server = getLdapServer();
+        restartWithHandshakeThreads( server, true );
+
+        TlsHandshakeMetrics metrics = server.getTlsHandshakeMetrics();
+        assertNotNull( server.getTlsHandshakeFilter().getExecutor() );
+        long handshakes = metrics.getHandshakeCount();
+        long resumed = metrics.getResumedHandshakeCount();
+
+        for ( int i = 0; i < CONNECT_ITERATIONS; i++ )
+        {
+            // The client SSLContext is shared, so the TLS sessions can be resumed
+            Hashtable<String, Object> env = setDefaultJNDIEnv();
+            env.put( Context.PROVIDER_URL, "ldap://" + Network.LOOPBACK_HOSTNAME + ":"
+                + server.getPortSSL() + "/ou=system" );
+            env.put( "java.naming.ldap.factory.socket", AdsSSLSocketFactory.class.getName() );
+
+            DirContext ctx = new InitialDirContext( env );
+            assertNotNull( ctx.getAttributes( "uid=admin" ) );
+            ctx.close();
+        }
+
+        waitForHandshakes( metrics, handshakes + CONNECT_ITERATIONS );
+
+        assertEquals( handshakes + CONNECT_ITERATIONS, metrics.getHandshakeCount() );
+        assertTrue( metrics.getResumedHandshakeCount() > resumed );
+        assertTrue( metrics.getResumptionRatio() > 0d );
+        assertTrue( metrics.getMaxHandshakeTime() > 0d );
+    }
+
+
+    @Test
+    public void testStartTlsHandshakes() throws Exception
+    {
+        LdapServer server = getLdapServer();
+        restartWithHandshakeThreads( server, false );
+
+        TlsHandshakeMetrics metrics = server.getTlsHandshakeMetrics();
+        long handshakes = metrics.getHandshakeCount();
+        SSLSocketFactory socketFactory = BogusSSLContextFactory.getInstance( false ).getSocketFactory();
+
+        for ( int i = 0; i < CONNECT_ITERATIONS; i++ )
+        {
+            Hashtable<String, Object> env = setDefaultJNDIEnv();
+            env.put( Context.PROVIDER_URL, Network.ldapLoopbackUrl( server.getPort() ) + "/ou=system" );
+
+            LdapContext ctx = new InitialLdapContext( env, null );
+            StartTlsResponse tls = ( StartTlsResponse ) ctx.extendedOperation( new StartTlsRequest() );
+            tls.setHostnameVerifier( ( hostname, session ) -> true );
+            tls.negotiate( socketFactory );
+
+            assertNotNull( ctx.getAttributes( "uid=admin" ) );
+            ctx.close();
+        }
+
+        waitForHandshakes( metrics, handshakes + CONNECT_ITERATIONS );
+
+        assertEquals( handshakes + CONNECT_ITERATIONS, metrics.getHandshakeCount() );
+    }
+}
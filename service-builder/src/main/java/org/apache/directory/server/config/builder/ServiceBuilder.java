@@ -578,6 +578,7 @@ public final class ServiceBuilder
         transport.setAddress( transportBean.getTransportAddress() );
         transport.setBackLog( transportBean.getTransportBackLog() );
         transport.setNbThreads( transportBean.getTransportNbThreads() );
+        transport.setVirtualThreads( transportBean.isTransportVirtualThreads() );
 
         if ( transport instanceof TcpTransport )
         {
@@ -51,12 +51,12 @@ import org.apache.directory.api.ldap.model.schema.syntaxCheckers.GeneralizedTime
 import org.apache.directory.api.ldap.model.schema.syntaxCheckers.UuidSyntaxChecker;
 import org.apache.directory.api.ldap.schema.extractor.SchemaLdifExtractor;
 import org.apache.directory.api.ldap.schema.extractor.impl.DefaultSchemaLdifExtractor;
-import org.apache.directory.api.ldap.schema.loader.LdifSchemaLoader;
 import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
 import org.apache.directory.api.util.DateUtils;
 import org.apache.directory.api.util.exception.Exceptions;
 import org.apache.directory.server.config.ConfigPartitionReader;
 import org.apache.directory.server.config.ConfigPartitionInitializer;
+import org.apache.directory.server.config.ConfigSchemaLoader;
 import org.apache.directory.server.config.beans.ConfigBean;
 import org.apache.directory.server.config.beans.DirectoryServiceBean;
 import org.apache.directory.server.config.beans.HttpServerBean;
@@ -302,7 +302,7 @@ public class ApacheDsService
             isSchemaPartitionFirstExtraction = true;
         }
 
-        SchemaLoader loader = new LdifSchemaLoader( schemaPartitionDirectory );
+        SchemaLoader loader = new ConfigSchemaLoader( schemaPartitionDirectory );
         schemaManager = new DefaultSchemaManager( loader.getAllSchemas() );
         
         // We have to load the schema now, otherwise we won't be able
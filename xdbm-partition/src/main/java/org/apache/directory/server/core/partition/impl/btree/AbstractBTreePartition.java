@@ -24,6 +24,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -40,8 +41,10 @@ import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.cursor.Cursor;
 import org.apache.directory.api.ldap.model.cursor.CursorException;
 import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
 import org.apache.directory.api.ldap.model.entry.Value;
 import org.apache.directory.api.ldap.model.exception.LdapAliasDereferencingException;
 import org.apache.directory.api.ldap.model.exception.LdapAliasException;
@@ -55,6 +58,7 @@ import org.apache.directory.api.ldap.model.exception.LdapOperationErrorException
 import org.apache.directory.api.ldap.model.exception.LdapOtherException;
 import org.apache.directory.api.ldap.model.exception.LdapSchemaViolationException;
 import org.apache.directory.api.ldap.model.exception.LdapUnwillingToPerformException;
+import org.apache.directory.api.ldap.model.message.AliasDerefMode;
 import org.apache.directory.api.ldap.model.message.ResultCodeEnum;
 import org.apache.directory.api.ldap.model.name.Ava;
 import org.apache.directory.api.ldap.model.name.Dn;
@@ -93,10 +97,12 @@ import org.apache.directory.server.xdbm.IndexEntry;
 import org.apache.directory.server.xdbm.IndexNotFoundException;
 import org.apache.directory.server.xdbm.MasterTable;
 import org.apache.directory.server.xdbm.ParentIdAndRdn;
+import org.apache.directory.server.xdbm.SingletonIndexCursor;
 import org.apache.directory.server.xdbm.Store;
 import org.apache.directory.server.xdbm.search.Optimizer;
 import org.apache.directory.server.xdbm.search.PartitionSearchResult;
 import org.apache.directory.server.xdbm.search.SearchEngine;
+import org.apache.directory.server.xdbm.search.cursor.DescendantCursor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -129,6 +135,18 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     /** The Entry cache size for this partition */
     protected int cacheSize = DEFAULT_CACHE_SIZE;
 
+    /** The maximum number of searches kept in the search result cache, 0 to disable it */
+    protected int searchResultCacheSize = 0;
+
+    /** The search result cache, null if disabled */
+    private volatile SearchResultCache searchResultCache;
+
+    /** Tells if the DNs of the entries are kept in a Bloom filter */
+    protected boolean dnFilterEnabled = true;
+
+    /** The Bloom filter telling which entries are absent, null if disabled or not yet built */
+    private volatile DnBloomFilter dnFilter;
+
     /** The alias cache */
     protected Cache<String, Dn> aliasCache;
 
@@ -308,6 +326,73 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     }
 
 
+    /**
+     * @return the maximum number of searches kept in the search result cache, 0 if it's disabled
+     */
+    public int getSearchResultCacheSize()
+    {
+        return searchResultCacheSize;
+    }
+
+
+    /**
+     * Sets the maximum number of searches whose result is kept, so that they don't have to be
+     * computed again while the entries they return aren't updated. The cache is disabled by
+     * default, and it can be enabled or disabled while the partition is running.
+     *
+     * @param searchResultCacheSize the maximum number of cached searches, 0 to disable the cache
+     */
+    public void setSearchResultCacheSize( int searchResultCacheSize )
+    {
+        this.searchResultCacheSize = searchResultCacheSize;
+
+        if ( initialized )
+        {
+            searchResultCache = ( searchResultCacheSize > 0 ) ? new SearchResultCache( searchResultCacheSize ) : null;
+        }
+    }
+
+
+    /**
+     * @return the search result cache, with its statistics, or null if it's disabled
+     */
+    public SearchResultCache getSearchResultCache()
+    {
+        return searchResultCache;
+    }
+
+
+    /**
+     * @return true if the DNs of the entries are kept in a Bloom filter
+     */
+    public boolean isDnFilterEnabled()
+    {
+        return dnFilterEnabled;
+    }
+
+
+    /**
+     * Tells if the DNs of the entries are kept in a Bloom filter, so that looking for an entry which
+     * does not exist does not read the RDN index. The filter is built when the partition is initialized,
+     * so this flag must be set before.
+     *
+     * @param dnFilterEnabled true to enable the Bloom filter
+     */
+    public void setDnFilterEnabled( boolean dnFilterEnabled )
+    {
+        this.dnFilterEnabled = dnFilterEnabled;
+    }
+
+
+    /**
+     * @return the Bloom filter over the entries DNs, with its statistics, or null if it's disabled
+     */
+    public DnBloomFilter getDnFilter()
+    {
+        return dnFilter;
+    }
+
+
     /**
      * Tells if the Optimizer is enabled or not
      * @return true if the optimizer is enabled
@@ -546,6 +631,8 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         aliasCache.invalidateAll();
         piarCache.invalidateAll();
         entryDnCache.invalidateAll();
+        searchResultCache = null;
+        dnFilter = null;
 
         MultiException errors = new MultiException( I18n.err( I18n.ERR_49003_ERRORS_ENCOUNTERED_ON_DESTROY ) );
 
@@ -607,6 +694,153 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     {
         // Do nothing by default
         doRepair();
+
+        // The RDN index may have been rebuilt
+        if ( dnFilter != null )
+        {
+            buildDnFilter();
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void initialize() throws LdapException
+    {
+        if ( initialized )
+        {
+            return;
+        }
+
+        super.initialize();
+
+        // The master table and the indexes are only available once the partition is initialized
+        if ( dnFilterEnabled )
+        {
+            buildDnFilter();
+        }
+    }
+
+
+    /**
+     * Builds the Bloom filter from the RDN index, sized for twice the number of entries
+     */
+    private void buildDnFilter() throws LdapException
+    {
+        try ( PartitionTxn partitionTxn = beginReadTransaction() )
+        {
+            long count = rdnIdx.count( partitionTxn );
+            DnBloomFilter filter = new DnBloomFilter( ( int ) Math.min( count * 2, Integer.MAX_VALUE / 16 ) );
+
+            try ( Cursor<IndexEntry<ParentIdAndRdn, String>> cursor = rdnIdx.forwardCursor( partitionTxn ) )
+            {
+                while ( cursor.next() )
+                {
+                    filter.add( buildEntryDn( partitionTxn, cursor.get().getId() ) );
+                }
+            }
+
+            dnFilter = filter;
+        }
+        catch ( CursorException | IOException e )
+        {
+            throw new LdapOtherException( e.getMessage(), e );
+        }
+    }
+
+
+    /**
+     * Removes a DN from the Bloom filter once the transaction has been committed. Until then the
+     * operation may still be rolled back, and the entry must not be reported as absent. When we
+     * can't tell when the transaction is committed, the DN is kept : it's only a false positive.
+     */
+    private void removeFromDnFilter( PartitionTxn partitionTxn, DnBloomFilter filter, Dn dn )
+    {
+        if ( partitionTxn instanceof PartitionWriteTxn )
+        {
+            ( ( PartitionWriteTxn ) partitionTxn ).addCommitAction( () -> filter.remove( dn ) );
+        }
+    }
+
+
+    /**
+     * Clears the search result cache if the transaction is aborted. The cached searches have been
+     * invalidated when the entry was updated, but the other sessions may have cached since then
+     * results read from the uncommitted changes.
+     */
+    private void clearOnAbort( PartitionTxn partitionTxn, SearchResultCache resultCache )
+    {
+        if ( partitionTxn instanceof PartitionWriteTxn )
+        {
+            ( ( PartitionWriteTxn ) partitionTxn ).addAbortAction( resultCache::clear );
+        }
+    }
+
+
+    /**
+     * Updates the Bloom filter once an entry has been moved or renamed : the new DNs of the entry and
+     * of its descendants are added, and their old DNs are removed when the transaction is committed.
+     */
+    private void updateDnFilter( PartitionTxn partitionTxn, String entryId, Dn oldDn, int nbDescendants )
+        throws LdapException
+    {
+        DnBloomFilter filter = dnFilter;
+
+        if ( filter == null )
+        {
+            return;
+        }
+
+        if ( !oldDn.isSchemaAware() )
+        {
+            oldDn = new Dn( schemaManager, oldDn );
+        }
+
+        Dn newDn = buildEntryDn( partitionTxn, entryId );
+
+        removeFromDnFilter( partitionTxn, filter, oldDn );
+        filter.add( newDn );
+
+        if ( nbDescendants == 0 )
+        {
+            return;
+        }
+
+        ParentIdAndRdn parentIdAndRdn = rdnIdx.reverseLookup( partitionTxn, entryId );
+        IndexEntry<ParentIdAndRdn, String> startingPos = new IndexEntry<>();
+        startingPos.setKey( parentIdAndRdn );
+        startingPos.setId( entryId );
+
+        try ( Cursor<IndexEntry<String, String>> cursor = new DescendantCursor( partitionTxn, this, entryId,
+            parentIdAndRdn.getParentId(), new SingletonIndexCursor<>( partitionTxn, startingPos ) ) )
+        {
+            while ( cursor.next() )
+            {
+                String id = cursor.get().getId();
+
+                if ( !id.equals( entryId ) )
+                {
+                    // The old DN of a descendant only differs by the moved entry DN
+                    Dn descendantDn = buildEntryDn( partitionTxn, id );
+                    int depth = descendantDn.size() - newDn.size();
+                    Rdn[] oldRdns = new Rdn[depth + oldDn.size()];
+
+                    for ( int i = 0; i < oldRdns.length; i++ )
+                    {
+                        oldRdns[i] = ( i < depth ) ? descendantDn.getRdn( i ) : oldDn.getRdn( i - depth );
+                    }
+
+                    removeFromDnFilter( partitionTxn, filter, new Dn( schemaManager, oldRdns ) );
+                    filter.add( descendantDn );
+                }
+            }
+        }
+        catch ( CursorException | IOException e )
+        {
+            throw new LdapOtherException( e.getMessage(), e );
+        }
     }
 
 
@@ -637,6 +871,11 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
 
         entryDnCache = Caffeine.newBuilder().maximumSize( cacheSize ).expireAfterAccess( Duration.ofMinutes( 20 ) )
             .build();
+
+        if ( searchResultCacheSize > 0 )
+        {
+            searchResultCache = new SearchResultCache( searchResultCacheSize );
+        }
     }
 
 
@@ -934,6 +1173,21 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
             {
                 unlockWrite();
             }
+
+            DnBloomFilter filter = dnFilter;
+
+            if ( filter != null )
+            {
+                filter.add( entryDn.isSchemaAware() ? entryDn : buildEntryDn( partitionTxn, id ) );
+            }
+
+            SearchResultCache resultCache = searchResultCache;
+
+            if ( resultCache != null )
+            {
+                resultCache.entryAdded( entryDn );
+                clearOnAbort( partitionTxn, resultCache );
+            }
         }
         catch ( LdapException le )
         {
@@ -1143,6 +1397,11 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
                 }
             }
 
+            // The DN can't be built once the entry is removed from the RDN index
+            SearchResultCache resultCache = searchResultCache;
+            DnBloomFilter filter = dnFilter;
+            Dn deletedDn = ( ( resultCache != null ) || ( filter != null ) ) ? buildEntryDn( partitionTxn, id ) : null;
+
             lockWrite();
 
             try
@@ -1167,6 +1426,17 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
                 unlockWrite();
             }
 
+            if ( filter != null )
+            {
+                removeFromDnFilter( partitionTxn, filter, deletedDn );
+            }
+
+            if ( resultCache != null )
+            {
+                resultCache.entryDeleted( deletedDn );
+                clearOnAbort( partitionTxn, resultCache );
+            }
+
             if ( isSyncOnWrite.get() )
             {
                 sync();
@@ -1216,10 +1486,34 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
                 }
             }
             
+            SearchResultCache resultCache = searchResultCache;
+            SearchResultCache.Query query = null;
+            long generation = 0L;
+
+            if ( ( resultCache != null ) && isCacheable( partitionTxn, searchContext ) )
+            {
+                // Read the generation first, so that an update done while computing the result is noticed
+                generation = resultCache.getGeneration();
+                query = resultCache.newQuery( searchContext );
+
+                String[] ids = ( query != null ) ? resultCache.get( query ) : null;
+
+                if ( ids != null )
+                {
+                    return new EntryFilteringCursorImpl( new CachedEntryCursor( partitionTxn, this, ids ),
+                        searchContext, schemaManager );
+                }
+            }
+
             PartitionSearchResult searchResult = searchEngine.computeResult( partitionTxn, schemaManager, searchContext );
 
             Cursor<Entry> result = new EntryCursorAdaptor( partitionTxn, this, searchResult );
 
+            if ( query != null )
+            {
+                result = new CachingEntryCursor( result, resultCache, query, generation );
+            }
+
             return new EntryFilteringCursorImpl( result, searchContext, schemaManager );
         }
         catch ( LdapException le )
@@ -1234,6 +1528,23 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     }
 
 
+    /**
+     * Tells if the result of a search can be cached. The searches dereferencing aliases may
+     * return entries which are not in their scope, so they are only cached when the partition
+     * has no alias. An alias added later in their scope will invalidate them.
+     */
+    private boolean isCacheable( PartitionTxn partitionTxn, SearchOperationContext searchContext )
+        throws LdapException
+    {
+        if ( searchContext.getAliasDerefMode() == AliasDerefMode.NEVER_DEREF_ALIASES )
+        {
+            return true;
+        }
+
+        return aliasIdx.count( partitionTxn ) == 0;
+    }
+
+
     //---------------------------------------------------------------------------------------------
     // The Lookup operation
     //---------------------------------------------------------------------------------------------
@@ -1433,8 +1744,12 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     public final synchronized Entry modify( PartitionTxn partitionTxn, Dn dn, Modification... mods ) throws LdapException
     {
         String id = getEntryId( partitionTxn, dn );
+
         Entry entry = master.get( partitionTxn, id );
 
+        // The stored entry's attributes may be shared by the entries we have returned
+        copyAttributes( entry );
+
         for ( Modification mod : mods )
         {
             Attribute attrMods = mod.getAttribute();
@@ -1478,10 +1793,36 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         
         master.put( partitionTxn, id, entry );
 
+        SearchResultCache resultCache = searchResultCache;
+
+        if ( resultCache != null )
+        {
+            resultCache.entryModified( dn, mods );
+            clearOnAbort( partitionTxn, resultCache );
+        }
+
         return entry;
     }
 
 
+    /**
+     * Replaces the attributes of an entry by copies, so that the entry can be modified in place
+     * without changing the entries sharing its attributes.
+     *
+     * @param entry the entry which is about to be modified
+     * @throws LdapException if an attribute can't be replaced
+     */
+    private void copyAttributes( Entry entry ) throws LdapException
+    {
+        List<Attribute> attributes = new ArrayList<>( entry.getAttributes() );
+
+        for ( Attribute attribute : attributes )
+        {
+            entry.put( attribute.clone() );
+        }
+    }
+
+
     /**
      * Adds a set of attribute values while affecting the appropriate userIndices.
      * The entry is not persisted: it is only changed in anticipation for a put
@@ -2190,12 +2531,22 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         // Remove the EntryDN
         modifiedEntry.removeAttributes( entryDnAT );
 
-        entryDnCache.invalidateAll();
+        invalidateEntryDnCache( entryId, oldDn, movedEntry.getNbDescendants() );
         
         setContextCsn( modifiedEntry.get( entryCsnAT ).getString() );
 
         master.put( partitionTxn, entryId, modifiedEntry );
 
+        updateDnFilter( partitionTxn, entryId, oldDn, movedEntry.getNbDescendants() );
+
+        SearchResultCache resultCache = searchResultCache;
+
+        if ( resultCache != null )
+        {
+            resultCache.entryMoved( oldDn, newDn );
+            clearOnAbort( partitionTxn, resultCache );
+        }
+
         if ( isSyncOnWrite.get() )
         {
             sync();
@@ -2369,13 +2720,23 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         modifiedEntry.removeAttributes( ApacheSchemaConstants.ENTRY_PARENT_ID_OID );
         modifiedEntry.add( ApacheSchemaConstants.ENTRY_PARENT_ID_OID, newParentId );
         
-        // Doom the DN cache now
-        entryDnCache.invalidateAll();
+        // Doom the cached DN of the moved entry and of its descendants
+        invalidateEntryDnCache( entryId, oldDn, movedEntry.getNbDescendants() );
 
         setContextCsn( modifiedEntry.get( entryCsnAT ).getString() );
 
         // save the modified entry at the new place
         master.put( partitionTxn, entryId, modifiedEntry );
+
+        updateDnFilter( partitionTxn, entryId, oldDn, movedEntry.getNbDescendants() );
+
+        SearchResultCache resultCache = searchResultCache;
+
+        if ( resultCache != null )
+        {
+            resultCache.entryMoved( oldDn, newSuperiorDn.add( newRdn ) );
+            clearOnAbort( partitionTxn, resultCache );
+        }
     }
     
     
@@ -2497,6 +2858,9 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
         if ( entry == null )
         {
             entry = master.get( partitionTxn, oldId );
+
+            // The stored entry's attributes may be shared by the entries we have returned
+            copyAttributes( entry );
         }
 
         Dn updn = entry.getDn();
@@ -2693,7 +3057,17 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
 
         updatePiarCache( parentIdAndRdn, oldId, ADD_CACHE );
 
-        entryDnCache.invalidateAll();
+        invalidateEntryDnCache( oldId, dn, parentIdAndRdn.getNbDescendants() );
+
+        updateDnFilter( partitionTxn, oldId, dn, parentIdAndRdn.getNbDescendants() );
+
+        SearchResultCache resultCache = searchResultCache;
+
+        if ( resultCache != null )
+        {
+            resultCache.entryMoved( dn, dn.getParent().add( newRdn ) );
+            clearOnAbort( partitionTxn, resultCache );
+        }
         
         if ( isSyncOnWrite.get() )
         {
@@ -2779,6 +3153,26 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
     }
 
 
+    /**
+     * Remove the cached Dn of an entry which has been moved or renamed, and the
+     * cached Dn of its descendants. The other entries keep their cached Dn.
+     *
+     * @param id The moved entry ID
+     * @param oldDn The moved entry Dn before the operation
+     * @param nbDescendants The number of descendants of the moved entry
+     */
+    private void invalidateEntryDnCache( String id, Dn oldDn, int nbDescendants )
+    {
+        entryDnCache.invalidate( id );
+
+        if ( nbDescendants > 0 )
+        {
+            // Cheaper than walking the subtree in the RdnIndex, as the cache is bounded
+            entryDnCache.asMap().values().removeIf( cachedDn -> cachedDn.isDescendantOf( oldDn ) );
+        }
+    }
+
+
     // ------------------------------------------------------------------------
     // Index and master table Operations
     // ------------------------------------------------------------------------
@@ -2925,6 +3319,14 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
                 return Partition.ROOT_ID;
             }
 
+            // No need to read the RDN index if the entry is definitely absent
+            DnBloomFilter filter = dnFilter;
+
+            if ( ( filter != null ) && dn.isSchemaAware() && !filter.mightContain( dn ) )
+            {
+                return null;
+            }
+
             ParentIdAndRdn suffixKey = new ParentIdAndRdn( Partition.ROOT_ID, suffixDn.getRdns() );
 
             // Check into the Rdn index, starting with the partition Suffix
@@ -3872,6 +4274,15 @@ public abstract class AbstractBTreePartition extends AbstractPartition implement
             origEntry.add( contextCsnAT, contextCsn );
             
             master.put( partitionTxn, contextEntryId, origEntry );
+
+            SearchResultCache resultCache = searchResultCache;
+
+            if ( resultCache != null )
+            {
+                resultCache.entryModified( getSuffixDn(),
+                    new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE, contextCsnAT ) );
+                clearOnAbort( partitionTxn, resultCache );
+            }
             
             ctxCsnChanged = false;
             
@@ -0,0 +1,223 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree;
+
+
+import org.apache.directory.api.ldap.model.cursor.AbstractCursor;
+import org.apache.directory.api.ldap.model.cursor.CursorException;
+import org.apache.directory.api.ldap.model.cursor.InvalidCursorPositionException;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.i18n.I18n;
+
+
+/**
+ * A cursor returning the entries of a search result found in the {@link SearchResultCache}.
+ * The entries are fetched from the partition, the ones which have been deleted in the
+ * meantime are skipped.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class CachedEntryCursor extends AbstractCursor<Entry>
+{
+    /** The transaction in use */
+    private final PartitionTxn partitionTxn;
+
+    /** The partition the entries are fetched from */
+    private final AbstractBTreePartition partition;
+
+    /** The IDs of the entries to return */
+    private final String[] ids;
+
+    /** The current position, -1 before the first entry */
+    private int index = -1;
+
+    /** The current entry */
+    private Entry entry;
+
+
+    /**
+     * Creates a new instance of CachedEntryCursor
+     *
+     * @param partitionTxn The transaction to use
+     * @param partition The partition the entries are fetched from
+     * @param ids The IDs of the entries to return
+     */
+    public CachedEntryCursor( PartitionTxn partitionTxn, AbstractBTreePartition partition, String[] ids )
+    {
+        this.partitionTxn = partitionTxn;
+        this.partition = partition;
+        this.ids = ids;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean available()
+    {
+        return entry != null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void before( Entry element ) throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_49046_CACHED_CURSOR_NOT_ORDERED ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void after( Entry element ) throws LdapException, CursorException
+    {
+        throw new UnsupportedOperationException( I18n.err( I18n.ERR_49046_CACHED_CURSOR_NOT_ORDERED ) );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void beforeFirst() throws LdapException, CursorException
+    {
+        checkNotClosed();
+        index = -1;
+        entry = null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterLast() throws LdapException, CursorException
+    {
+        checkNotClosed();
+        index = ids.length;
+        entry = null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean first() throws LdapException, CursorException
+    {
+        beforeFirst();
+
+        return next();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean last() throws LdapException, CursorException
+    {
+        afterLast();
+
+        return previous();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean next() throws LdapException, CursorException
+    {
+        checkNotClosed();
+        entry = null;
+
+        while ( index < ids.length - 1 )
+        {
+            index++;
+
+            if ( fetch() )
+            {
+                return true;
+            }
+        }
+
+        index = ids.length;
+
+        return false;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean previous() throws LdapException, CursorException
+    {
+        checkNotClosed();
+        entry = null;
+
+        while ( index > 0 )
+        {
+            index--;
+
+            if ( fetch() )
+            {
+                return true;
+            }
+        }
+
+        index = -1;
+
+        return false;
+    }
+
+
+    private boolean fetch() throws LdapException
+    {
+        entry = partition.fetch( partitionTxn, ids[index] );
+
+        return entry != null;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Entry get() throws CursorException
+    {
+        checkNotClosed();
+
+        if ( entry == null )
+        {
+            throw new InvalidCursorPositionException( I18n.err( I18n.ERR_49021_CURSOR_NOT_POSITIONED ) );
+        }
+
+        return entry;
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree;
+
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.cursor.AbstractCursor;
+import org.apache.directory.api.ldap.model.cursor.ClosureMonitor;
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.cursor.CursorException;
+import org.apache.directory.api.ldap.model.entry.Attribute;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+
+
+/**
+ * A cursor recording the IDs of the entries returned by a search, and storing them in the
+ * {@link SearchResultCache} once all of them have been read, in order. A search which is
+ * abandoned, moved backward or which returns too many entries is not cached.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class CachingEntryCursor extends AbstractCursor<Entry>
+{
+    /** The cursor returning the entries */
+    private final Cursor<Entry> wrapped;
+
+    /** The cache to update */
+    private final SearchResultCache cache;
+
+    /** The search key */
+    private final SearchResultCache.Query query;
+
+    /** The cache generation read before the search has started */
+    private final long generation;
+
+    /** The IDs of the entries returned so far, or null if the result won't be cached */
+    private Set<String> ids = new LinkedHashSet<>();
+
+    /** Tells if the cursor is on an entry which hasn't been read */
+    private boolean skipped;
+
+
+    /**
+     * Creates a new instance of CachingEntryCursor
+     *
+     * @param wrapped The cursor returning the entries
+     * @param cache The cache to update
+     * @param query The search key
+     * @param generation The cache generation read before the search has started
+     */
+    public CachingEntryCursor( Cursor<Entry> wrapped, SearchResultCache cache, SearchResultCache.Query query,
+        long generation )
+    {
+        this.wrapped = wrapped;
+        this.cache = cache;
+        this.query = query;
+        this.generation = generation;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean available()
+    {
+        return wrapped.available();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void before( Entry element ) throws LdapException, CursorException
+    {
+        ids = null;
+        wrapped.before( element );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void after( Entry element ) throws LdapException, CursorException
+    {
+        ids = null;
+        wrapped.after( element );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void beforeFirst() throws LdapException, CursorException
+    {
+        // Reading the entries again from the start is fine
+        if ( ids != null )
+        {
+            ids.clear();
+        }
+
+        skipped = false;
+        wrapped.beforeFirst();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterLast() throws LdapException, CursorException
+    {
+        ids = null;
+        wrapped.afterLast();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean first() throws LdapException, CursorException
+    {
+        beforeFirst();
+
+        return next();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean last() throws LdapException, CursorException
+    {
+        ids = null;
+
+        return wrapped.last();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean next() throws LdapException, CursorException
+    {
+        if ( skipped )
+        {
+            // We don't know if the skipped entry was part of the result
+            ids = null;
+        }
+
+        boolean hasNext = wrapped.next();
+        skipped = hasNext;
+
+        if ( !hasNext && ( ids != null ) )
+        {
+            cache.put( query, generation, ids.toArray( new String[ids.size()] ) );
+            ids = null;
+        }
+
+        return hasNext;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean previous() throws LdapException, CursorException
+    {
+        ids = null;
+
+        return wrapped.previous();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Entry get() throws CursorException
+    {
+        Entry entry = wrapped.get();
+        skipped = false;
+
+        if ( ( entry != null ) && ( ids != null ) )
+        {
+            Attribute entryUuid = entry.get( SchemaConstants.ENTRY_UUID_AT );
+
+            if ( ( entryUuid == null ) || ( ids.size() >= SearchResultCache.MAX_RESULT_SIZE ) )
+            {
+                ids = null;
+            }
+            else
+            {
+                ids.add( entryUuid.get().getString() );
+            }
+        }
+
+        return entry;
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final void setClosureMonitor( ClosureMonitor monitor )
+    {
+        wrapped.setClosureMonitor( monitor );
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isClosed()
+    {
+        return wrapped.isClosed();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException
+    {
+        ids = null;
+        wrapped.close();
+    }
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close( Exception cause ) throws IOException
+    {
+        ids = null;
+        wrapped.close( cause );
+    }
+}
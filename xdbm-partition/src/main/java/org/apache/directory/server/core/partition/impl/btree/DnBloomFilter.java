@@ -0,0 +1,248 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree;
+
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.directory.api.ldap.model.name.Dn;
+
+
+/**
+ * A counting Bloom filter over the DNs of the entries stored in a partition. It tells when an entry
+ * is definitely absent, so that the RDN index does not have to be read when looking for it. The DNs
+ * are hashed using the normalized form of their RDNs, which is what the RDN index compares. The counters are 4 bits wide, so that the DNs can be removed when the entries are deleted
+ * or moved. A counter which has reached its maximum value is never decremented again.
+ * <br>
+ * The filter is sized when it's built : when it holds more DNs than it has been sized for, it
+ * answers "may be present" more often, until it's built again when the partition is restarted.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class DnBloomFilter
+{
+    /** The minimum number of DNs a filter is sized for */
+    public static final int MIN_CAPACITY = 10000;
+
+    /** The number of counters per DN, giving a 1% false positive rate when the filter is full */
+    private static final int COUNTERS_PER_DN = 10;
+
+    /** The number of counters set for each DN */
+    private static final int NB_HASHES = 7;
+
+    /** The maximum value of a counter */
+    private static final int MAX_COUNT = 0x0F;
+
+    /** The counters, two per byte */
+    private final byte[] counters;
+
+    /** The number of counters */
+    private final int nbCounters;
+
+    /** The number of DNs the filter is sized for */
+    private final int capacity;
+
+    /** The number of DNs in the filter */
+    private int size;
+
+    /** The number of lookups the filter has answered without reading the RDN index */
+    private final LongAdder absentCount = new LongAdder();
+
+
+    /**
+     * Creates a new instance of DnBloomFilter.
+     *
+     * @param capacity The number of DNs the filter is sized for
+     */
+    public DnBloomFilter( int capacity )
+    {
+        this.capacity = Math.max( capacity, MIN_CAPACITY );
+        nbCounters = ( int ) Math.min( ( long ) this.capacity * COUNTERS_PER_DN, Integer.MAX_VALUE - 1L );
+        counters = new byte[( nbCounters + 1 ) / 2];
+    }
+
+
+    /**
+     * Computes a 64 bits hash of a schema aware DN : FNV-1a over its normalized RDNs, followed by
+     * the MurmurHash3 finalizer
+     */
+    private static long hash( Dn dn )
+    {
+        long hash = 0xcbf29ce484222325L;
+
+        for ( int i = 0; i < dn.size(); i++ )
+        {
+            String normRdn = dn.getRdn( i ).getNormName();
+
+            for ( int j = 0; j < normRdn.length(); j++ )
+            {
+                hash ^= normRdn.charAt( j );
+                hash *= 0x100000001b3L;
+            }
+
+            hash ^= ',';
+            hash *= 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+
+        return hash;
+    }
+
+
+    /**
+     * Computes the position of the i-th counter of a DN, using double hashing
+     */
+    private int position( long hash, int i )
+    {
+        int hash1 = ( int ) hash;
+        int hash2 = ( int ) ( hash >>> 32 ) | 1;
+
+        return ( ( hash1 + i * hash2 ) & Integer.MAX_VALUE ) % nbCounters;
+    }
+
+
+    private int getCounter( int position )
+    {
+        int value = counters[position >> 1];
+
+        return ( ( position & 1 ) == 0 ) ? ( value & 0x0F ) : ( ( value >> 4 ) & 0x0F );
+    }
+
+
+    private void setCounter( int position, int count )
+    {
+        int index = position >> 1;
+        int value = counters[index];
+
+        if ( ( position & 1 ) == 0 )
+        {
+            counters[index] = ( byte ) ( ( value & 0xF0 ) | count );
+        }
+        else
+        {
+            counters[index] = ( byte ) ( ( value & 0x0F ) | ( count << 4 ) );
+        }
+    }
+
+
+    /**
+     * Adds the DN of an entry
+     *
+     * @param dn The entry schema aware DN
+     */
+    public synchronized void add( Dn dn )
+    {
+        long hash = hash( dn );
+
+        for ( int i = 0; i < NB_HASHES; i++ )
+        {
+            int position = position( hash, i );
+            int count = getCounter( position );
+
+            if ( count < MAX_COUNT )
+            {
+                setCounter( position, count + 1 );
+            }
+        }
+
+        size++;
+    }
+
+
+    /**
+     * Removes the DN of an entry, which must have been added before
+     *
+     * @param dn The entry schema aware DN
+     */
+    public synchronized void remove( Dn dn )
+    {
+        long hash = hash( dn );
+
+        for ( int i = 0; i < NB_HASHES; i++ )
+        {
+            int position = position( hash, i );
+            int count = getCounter( position );
+
+            // A saturated counter may be shared by more DNs than it can count
+            if ( ( count > 0 ) && ( count < MAX_COUNT ) )
+            {
+                setCounter( position, count - 1 );
+            }
+        }
+
+        size--;
+    }
+
+
+    /**
+     * Tells if an entry may be present in the partition
+     *
+     * @param dn The entry schema aware DN
+     * @return false if the entry is definitely absent
+     */
+    public boolean mightContain( Dn dn )
+    {
+        long hash = hash( dn );
+
+        for ( int i = 0; i < NB_HASHES; i++ )
+        {
+            if ( getCounter( position( hash, i ) ) == 0 )
+            {
+                absentCount.increment();
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+
+    /**
+     * @return The number of DNs in the filter
+     */
+    public synchronized int size()
+    {
+        return size;
+    }
+
+
+    /**
+     * @return The number of DNs the filter is sized for
+     */
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+
+    /**
+     * @return The number of lookups answered without reading the RDN index
+     */
+    public long getAbsentCount()
+    {
+        return absentCount.sum();
+    }
+}
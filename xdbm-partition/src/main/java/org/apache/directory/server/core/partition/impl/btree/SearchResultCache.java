@@ -0,0 +1,458 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.core.partition.impl.btree;
+
+
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.directory.api.ldap.model.entry.Modification;
+import org.apache.directory.api.ldap.model.filter.BranchNode;
+import org.apache.directory.api.ldap.model.filter.ExprNode;
+import org.apache.directory.api.ldap.model.filter.LeafNode;
+import org.apache.directory.api.ldap.model.filter.ObjectClassNode;
+import org.apache.directory.api.ldap.model.message.AliasDerefMode;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.AttributeType;
+import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+
+/**
+ * A cache storing the IDs of the entries returned by the searches done in a partition, so that
+ * a search done again does not have to be annotated, to build its cursors and to evaluate the
+ * candidates. A search is identified by its normalized base, scope, filter and alias dereferencing
+ * mode : the access controls and the attribute selection are applied above the partition, on the
+ * fetched entries, so the same IDs can be used for all the users.
+ * <br>
+ * The partition tells the cache about each update, and the cached searches the updated entry may
+ * be part of are removed. A modification only removes the searches whose filter uses one of the
+ * modified attributes.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+public class SearchResultCache
+{
+    /** The maximum number of IDs kept for a search. The larger results are not cached */
+    public static final int MAX_RESULT_SIZE = 1024;
+
+    /** The cached searches */
+    private final Cache<Query, String[]> cache;
+
+    /** Incremented on each update, to avoid caching a result computed while the partition changed */
+    private long generation;
+
+    /** The statistics */
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+
+    /**
+     * Creates a new instance of SearchResultCache.
+     *
+     * @param maxSearches The maximum number of searches to keep
+     */
+    public SearchResultCache( int maxSearches )
+    {
+        cache = Caffeine.newBuilder().maximumSize( maxSearches ).build();
+    }
+
+
+    /**
+     * A cached search. Only the base, the scope, the filter and the alias dereferencing
+     * mode are compared, the other fields are used to find out the searches an update
+     * invalidates.
+     */
+    public static final class Query
+    {
+        private final Dn base;
+        private final String normBase;
+        private final SearchScope scope;
+        private final String filter;
+        private final AliasDerefMode aliasDerefMode;
+
+        /** The attributes used in the filter, or null if we can't tell */
+        private final Set<AttributeType> attributeTypes;
+
+
+        private Query( SearchOperationContext searchContext )
+        {
+            base = searchContext.getDn();
+            normBase = base.getNormName();
+            scope = searchContext.getScope();
+            aliasDerefMode = searchContext.getAliasDerefMode();
+
+            // The filter has not been annotated by the optimizer yet
+            ExprNode filterNode = searchContext.getFilter();
+            filter = filterNode.toString();
+
+            Set<AttributeType> filterAttributeTypes = new HashSet<>();
+            attributeTypes = collectAttributeTypes( filterNode, filterAttributeTypes ) ? filterAttributeTypes : null;
+        }
+
+
+        /**
+         * Tells if an entry is in the scope of the search
+         */
+        private boolean isInScope( Dn dn )
+        {
+            switch ( scope )
+            {
+                case OBJECT:
+                    return dn.equals( base );
+
+                case ONELEVEL:
+                    return ( dn.size() == base.size() + 1 ) && dn.isDescendantOf( base );
+
+                default:
+                    return dn.isDescendantOf( base );
+            }
+        }
+
+
+        /**
+         * Tells if the search base is the given entry or one of its descendants
+         */
+        private boolean isBaseUnder( Dn dn )
+        {
+            return base.isDescendantOf( dn );
+        }
+
+
+        /**
+         * Tells if a modified attribute is used by the filter
+         */
+        private boolean isUsed( AttributeType modified )
+        {
+            if ( attributeTypes == null )
+            {
+                return true;
+            }
+
+            for ( AttributeType attributeType : attributeTypes )
+            {
+                if ( attributeType.equals( modified ) || modified.isDescendantOf( attributeType ) )
+                {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash( normBase, scope, filter, aliasDerefMode );
+        }
+
+
+        @Override
+        public boolean equals( Object obj )
+        {
+            if ( this == obj )
+            {
+                return true;
+            }
+
+            if ( !( obj instanceof Query ) )
+            {
+                return false;
+            }
+
+            Query that = ( Query ) obj;
+
+            return ( scope == that.scope ) && ( aliasDerefMode == that.aliasDerefMode )
+                && normBase.equals( that.normBase ) && filter.equals( that.filter );
+        }
+
+
+        @Override
+        public String toString()
+        {
+            return "Query[" + normBase + ", " + scope + ", " + filter + ", " + aliasDerefMode + "]";
+        }
+    }
+
+
+    /**
+     * Gathers the attributes a filter uses
+     *
+     * @return false if the filter contains a node we don't know about
+     */
+    private static boolean collectAttributeTypes( ExprNode node, Set<AttributeType> attributeTypes )
+    {
+        if ( node instanceof BranchNode )
+        {
+            for ( ExprNode child : ( ( BranchNode ) node ).getChildren() )
+            {
+                if ( !collectAttributeTypes( child, attributeTypes ) )
+                {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+        else if ( node instanceof LeafNode )
+        {
+            AttributeType attributeType = ( ( LeafNode ) node ).getAttributeType();
+
+            if ( attributeType == null )
+            {
+                return false;
+            }
+
+            attributeTypes.add( attributeType );
+
+            return true;
+        }
+        else
+        {
+            // (objectClass=*) matches any entry, whatever its attributes
+            return node instanceof ObjectClassNode;
+        }
+    }
+
+
+    /**
+     * Creates the key of a search. The searches returning their entries in a specific
+     * order aren't cached.
+     *
+     * @param searchContext The search operation context
+     * @return The search key, or null if the search can't be cached
+     */
+    public Query newQuery( SearchOperationContext searchContext )
+    {
+        if ( searchContext.isHierarchicalOrder() || ( searchContext.getFilter() == null ) )
+        {
+            return null;
+        }
+
+        return new Query( searchContext );
+    }
+
+
+    /**
+     * Gets the IDs of the entries a search has returned
+     *
+     * @param query The search key
+     * @return The IDs, or null if the search isn't cached
+     */
+    public String[] get( Query query )
+    {
+        String[] ids = cache.getIfPresent( query );
+
+        if ( ids == null )
+        {
+            misses.incrementAndGet();
+        }
+        else
+        {
+            hits.incrementAndGet();
+        }
+
+        return ids;
+    }
+
+
+    /**
+     * @return The current generation, to be read before computing a search result
+     */
+    public synchronized long getGeneration()
+    {
+        return generation;
+    }
+
+
+    /**
+     * Stores the IDs of the entries a search has returned, unless the partition has
+     * been updated since the search has started.
+     *
+     * @param query The search key
+     * @param searchGeneration The generation read before computing the result
+     * @param ids The IDs of the returned entries
+     */
+    public synchronized void put( Query query, long searchGeneration, String[] ids )
+    {
+        if ( searchGeneration == generation )
+        {
+            cache.put( query, ids );
+        }
+    }
+
+
+    /**
+     * Removes the searches an added entry could be returned by
+     *
+     * @param dn The added entry
+     */
+    public void entryAdded( Dn dn )
+    {
+        invalidate( dn, null, null );
+    }
+
+
+    /**
+     * Removes the searches a deleted entry could have been returned by, or based on
+     *
+     * @param dn The deleted entry
+     */
+    public void entryDeleted( Dn dn )
+    {
+        invalidate( dn, null, null );
+    }
+
+
+    /**
+     * Removes the searches a modified entry could have been returned by, when their filter
+     * uses a modified attribute
+     *
+     * @param dn The modified entry
+     * @param mods The modifications
+     */
+    public void entryModified( Dn dn, Modification... mods )
+    {
+        Set<AttributeType> modified = new HashSet<>();
+
+        for ( Modification mod : mods )
+        {
+            AttributeType attributeType = mod.getAttribute().getAttributeType();
+
+            if ( attributeType == null )
+            {
+                // We can't tell which searches use this attribute
+                invalidate( dn, null, null );
+
+                return;
+            }
+
+            modified.add( attributeType );
+        }
+
+        invalidate( dn, null, modified );
+    }
+
+
+    /**
+     * Removes the searches a moved or renamed entry, or one of its descendants, could have
+     * been returned by, before or after being moved, and the searches based under it.
+     *
+     * @param oldDn The entry DN before the move
+     * @param newDn The entry DN after the move
+     */
+    public void entryMoved( Dn oldDn, Dn newDn )
+    {
+        invalidate( oldDn, newDn, null );
+    }
+
+
+    private synchronized void invalidate( Dn dn, Dn newDn, Set<AttributeType> modified )
+    {
+        generation++;
+
+        cache.asMap().keySet().removeIf( query ->
+        {
+            boolean invalid;
+
+            if ( modified != null )
+            {
+                invalid = query.isInScope( dn ) && modified.stream().anyMatch( query::isUsed );
+            }
+            else
+            {
+                invalid = query.isInScope( dn ) || query.isBaseUnder( dn )
+                    || ( ( newDn != null ) && ( query.isInScope( newDn ) || query.isBaseUnder( newDn ) ) );
+            }
+
+            if ( invalid )
+            {
+                invalidations.incrementAndGet();
+            }
+
+            return invalid;
+        } );
+    }
+
+
+    /**
+     * Removes all the cached searches
+     */
+    public synchronized void clear()
+    {
+        generation++;
+        cache.invalidateAll();
+    }
+
+
+    /**
+     * @return The number of searches found in the cache
+     */
+    public long getHitCount()
+    {
+        return hits.get();
+    }
+
+
+    /**
+     * @return The number of searches not found in the cache
+     */
+    public long getMissCount()
+    {
+        return misses.get();
+    }
+
+
+    /**
+     * @return The ratio of the searches found in the cache, between 0 and 1
+     */
+    public double getHitRatio()
+    {
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+
+        return ( total == 0 ) ? 0d : ( double ) hitCount / total;
+    }
+
+
+    /**
+     * @return The number of cached searches removed because of an update
+     */
+    public long getInvalidationCount()
+    {
+        return invalidations.get();
+    }
+
+
+    /**
+     * @return The number of cached searches
+     */
+    public long size()
+    {
+        return cache.estimatedSize();
+    }
+}
@@ -21,10 +21,13 @@ package org.apache.directory.server.xdbm.search.impl;
 
 
 import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.regex.Pattern;
 
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.cursor.Cursor;
 import org.apache.directory.api.ldap.model.cursor.CursorException;
 import org.apache.directory.api.ldap.model.entry.Value;
@@ -32,6 +35,7 @@ import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.exception.LdapOtherException;
 import org.apache.directory.api.ldap.model.filter.AndNode;
 import org.apache.directory.api.ldap.model.filter.ApproximateNode;
+import org.apache.directory.api.ldap.model.filter.AssertionType;
 import org.apache.directory.api.ldap.model.filter.EqualityNode;
 import org.apache.directory.api.ldap.model.filter.ExprNode;
 import org.apache.directory.api.ldap.model.filter.GreaterEqNode;
@@ -734,6 +738,18 @@ public class CursorBuilder
     {
         List<ExprNode> children = node.getChildren();
 
+        // If any child requires a full scan, so does the Or : don't compute the
+        // candidates of the other children for nothing
+        for ( ExprNode child : children )
+        {
+            Object count = child.get( DefaultOptimizer.COUNT_ANNOTATION );
+
+            if ( ( count != null ) && ( ( Long ) count == Long.MAX_VALUE ) )
+            {
+                return Long.MAX_VALUE;
+            }
+        }
+
         long nbOrResults = 0;
 
         // Recursively create Cursors and Evaluators for each child expression node
@@ -741,20 +757,10 @@ public class CursorBuilder
         {
             Object count = child.get( DefaultOptimizer.COUNT_ANNOTATION );
 
-            if ( count != null )
+            if ( ( count != null ) && ( ( Long ) count == 0L ) )
             {
-                long countLong = ( Long ) count;
-
-                if ( countLong == 0 )
-                {
-                    // We can skip the cursor, it will not return any candidate
-                    continue;
-                }
-                else if ( countLong == Long.MAX_VALUE )
-                {
-                    // We can stop here, we will anyway do a full scan
-                    return countLong;
-                }
+                // We can skip the cursor, it will not return any candidate
+                continue;
             }
 
             long nbResults = build( partitionTxn, child, searchResult );
@@ -823,7 +829,173 @@ public class CursorBuilder
         // Once found we return the number of candidates for this child
         ExprNode minChild = children.get( minIndex );
 
-        return build( partitionTxn, minChild, searchResult );
+        if ( ( minValue == Long.MAX_VALUE ) || ( children.size() == 1 ) )
+        {
+            return build( partitionTxn, minChild, searchResult );
+        }
+
+        // Compute the candidates for the smallest child in a dedicated set, so that
+        // we can drop the ones rejected by the other indexed children before the
+        // entries get fetched and evaluated.
+        Set<String> candidateSet = searchResult.getCandidateSet();
+        Set<String> andCandidates = new HashSet<>();
+        long nbResults;
+
+        searchResult.setCandidateSet( andCandidates );
+
+        try
+        {
+            nbResults = build( partitionTxn, minChild, searchResult );
+        }
+        finally
+        {
+            searchResult.setCandidateSet( candidateSet );
+        }
+
+        if ( nbResults == Long.MAX_VALUE )
+        {
+            return nbResults;
+        }
+
+        for ( int i = 0; i < children.size(); i++ )
+        {
+            if ( andCandidates.isEmpty() )
+            {
+                break;
+            }
+
+            if ( i != minIndex )
+            {
+                retainIndexedCandidates( partitionTxn, children.get( i ), andCandidates );
+            }
+        }
+
+        nbResults = 0L;
+
+        for ( String uuid : andCandidates )
+        {
+            if ( candidateSet.add( uuid ) )
+            {
+                nbResults++;
+            }
+        }
+
+        return nbResults;
+    }
+
+
+    /**
+     * Removes from a set of candidates the entries which can't match an Equality or
+     * a Presence filter, or an Or filter made of such filters, checking the attributes'
+     * indices for each candidate. This is way cheaper than fetching the entry to evaluate
+     * it. Any other kind of filter, or filters on non indexed attributes or attributes
+     * having descendants, are left to the evaluators.
+     */
+    private void retainIndexedCandidates( PartitionTxn partitionTxn, ExprNode node, Set<String> candidates )
+        throws LdapException
+    {
+        if ( node.getAssertionType() == AssertionType.OR )
+        {
+            for ( ExprNode child : ( ( OrNode ) node ).getChildren() )
+            {
+                if ( getProbedAttributeType( child ) == null )
+                {
+                    return;
+                }
+            }
+        }
+        else if ( getProbedAttributeType( node ) == null )
+        {
+            return;
+        }
+
+        try
+        {
+            Iterator<String> iterator = candidates.iterator();
+
+            while ( iterator.hasNext() )
+            {
+                if ( !matchesIndex( partitionTxn, node, iterator.next() ) )
+                {
+                    iterator.remove();
+                }
+            }
+        }
+        catch ( IndexNotFoundException infe )
+        {
+            throw new LdapOtherException( infe.getMessage(), infe );
+        }
+    }
+
+
+    /**
+     * Returns the attribute type of an Equality or Presence filter which can be checked
+     * against an index, or null. The system indices are left aside : the presence index
+     * only holds the user indexed attributes, and the administrativeRole attribute.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> AttributeType getProbedAttributeType( ExprNode node ) throws LdapException
+    {
+        AttributeType attributeType;
+
+        if ( node.getAssertionType() == AssertionType.EQUALITY )
+        {
+            attributeType = ( ( EqualityNode<T> ) node ).getAttributeType();
+        }
+        else if ( node.getAssertionType() == AssertionType.PRESENCE )
+        {
+            attributeType = ( ( PresenceNode ) node ).getAttributeType();
+        }
+        else
+        {
+            return null;
+        }
+
+        boolean indexed = db.hasUserIndexOn( attributeType )
+            || ( ( node.getAssertionType() == AssertionType.PRESENCE )
+                && attributeType.getOid().equals( SchemaConstants.ADMINISTRATIVE_ROLE_AT_OID ) );
+
+        if ( !indexed
+            || evaluatorBuilder.getSchemaManager().getAttributeTypeRegistry().hasDescendants( attributeType ) )
+        {
+            return null;
+        }
+
+        return attributeType;
+    }
+
+
+    /**
+     * Tells if a candidate matches an Equality, a Presence or an Or filter, using the
+     * indices only. The filter must have been checked by getProbedAttributeType() first.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> boolean matchesIndex( PartitionTxn partitionTxn, ExprNode node, String uuid )
+        throws LdapException, IndexNotFoundException
+    {
+        switch ( node.getAssertionType() )
+        {
+            case OR:
+                for ( ExprNode child : ( ( OrNode ) node ).getChildren() )
+                {
+                    if ( matchesIndex( partitionTxn, child, uuid ) )
+                    {
+                        return true;
+                    }
+                }
+
+                return false;
+
+            case EQUALITY:
+                EqualityNode<T> equalityNode = ( EqualityNode<T> ) node;
+                Index<T, String> userIndex = ( Index<T, String> ) db.getIndex( equalityNode.getAttributeType() );
+
+                return userIndex.forward( partitionTxn, ( T ) equalityNode.getValue().getNormalized(), uuid );
+
+            default:
+                return db.getPresenceIndex().forward( partitionTxn,
+                    ( ( PresenceNode ) node ).getAttributeType().getOid(), uuid );
+        }
     }
 
 
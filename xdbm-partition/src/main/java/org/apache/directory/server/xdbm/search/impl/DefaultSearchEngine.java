@@ -43,11 +43,14 @@ import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.core.partition.impl.btree.IndexCursorAdaptor;
 import org.apache.directory.server.i18n.I18n;
 import org.apache.directory.server.xdbm.IndexEntry;
+import org.apache.directory.server.xdbm.ParentIdAndRdn;
+import org.apache.directory.server.xdbm.SingletonIndexCursor;
 import org.apache.directory.server.xdbm.Store;
 import org.apache.directory.server.xdbm.search.Evaluator;
 import org.apache.directory.server.xdbm.search.Optimizer;
 import org.apache.directory.server.xdbm.search.PartitionSearchResult;
 import org.apache.directory.server.xdbm.search.SearchEngine;
+import org.apache.directory.server.xdbm.search.cursor.DescendantCursor;
 import org.apache.directory.server.xdbm.search.evaluator.BaseLevelScopeEvaluator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -245,6 +248,18 @@ public class DefaultSearchEngine implements SearchEngine
         optimizer.annotate( partitionTxn, root );
         Evaluator<? extends ExprNode> evaluator = evaluatorBuilder.build( partitionTxn, root );
 
+        // Stream the entries parents first, walking down the RdnIndex from the base,
+        // instead of collecting the candidates. The aliases would break the order.
+        if ( searchContext.isHierarchicalOrder() && ( scope == SearchScope.SUBTREE )
+            && !aliasDerefMode.isDerefInSearching() )
+        {
+            searchResult.setAliasDerefMode( aliasDerefMode );
+            searchResult.setEvaluator( evaluator );
+            searchResult.setResultCursor( buildHierarchicalCursor( partitionTxn, effectiveBaseId ) );
+
+            return searchResult;
+        }
+
         Set<String> uuidSet = new HashSet<>();
         searchResult.setAliasDerefMode( aliasDerefMode );
         searchResult.setCandidateSet( uuidSet );
@@ -295,6 +310,25 @@ public class DefaultSearchEngine implements SearchEngine
     }
 
 
+    /**
+     * Creates a cursor returning the base entry and its descendants, in a depth-first
+     * traversal of the RdnIndex : each entry is returned before its children.
+     */
+    private Cursor<IndexEntry<String, String>> buildHierarchicalCursor( PartitionTxn partitionTxn, String baseId )
+        throws LdapException
+    {
+        ParentIdAndRdn parentIdAndRdn = db.getRdnIndex().reverseLookup( partitionTxn, baseId );
+        IndexEntry<ParentIdAndRdn, String> startingPos = new IndexEntry<>();
+        startingPos.setKey( parentIdAndRdn );
+        startingPos.setId( baseId );
+
+        Cursor<IndexEntry<ParentIdAndRdn, String>> rdnCursor = new SingletonIndexCursor<>( partitionTxn,
+            startingPos );
+
+        return new DescendantCursor( partitionTxn, db, baseId, parentIdAndRdn.getParentId(), rdnCursor );
+    }
+
+
     /**
      * {@inheritDoc}
      */
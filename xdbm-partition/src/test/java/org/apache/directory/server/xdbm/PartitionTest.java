@@ -58,6 +58,7 @@ import org.apache.directory.server.core.api.DnFactory;
 import org.apache.directory.server.core.api.interceptor.context.ModDnAva;
 import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.core.partition.impl.avl.AvlPartition;
+import org.apache.directory.server.core.partition.impl.btree.DnBloomFilter;
 import org.apache.directory.server.xdbm.impl.avl.AvlIndex;
 import org.apache.directory.server.xdbm.impl.avl.AvlPartitionTest;
 import org.junit.jupiter.api.AfterEach;
@@ -427,6 +428,79 @@ public class PartitionTest
     }
 
 
+    @Test
+    public void testDnFilter() throws Exception
+    {
+        PartitionTxn txn = partition.beginReadTransaction();
+        DnBloomFilter dnFilter = partition.getDnFilter();
+
+        assertNotNull( dnFilter );
+        assertEquals( 11, dnFilter.size() );
+
+        // Absent entries are not looked for in the RDN index
+        Dn board = new Dn( schemaManager, "ou=Board of Directors,o=Good Times Co." );
+        Dn apache = new Dn( schemaManager, "ou=Apache,ou=Board of Directors,o=Good Times Co." );
+        Dn alias = new Dn( schemaManager, "commonName=Jim Bean,ou=Apache,ou=Board of Directors,o=Good Times Co." );
+        Dn absent = new Dn( schemaManager, "ou=Marketing,o=Good Times Co." );
+
+        assertNotNull( partition.getEntryId( txn, board ) );
+        assertNotNull( partition.getEntryId( txn, alias ) );
+        assertNull( partition.getEntryId( txn, absent ) );
+        assertEquals( 1, dnFilter.getAbsentCount() );
+
+        // Renaming an entry updates the DNs of its descendants, the old DNs being removed on commit
+        PartitionTxn writeTxn = partition.beginWriteTransaction();
+        partition.rename( writeTxn, board, new Rdn( schemaManager, "ou=Board" ), false, null );
+
+        Dn newBoard = new Dn( schemaManager, "ou=Board,o=Good Times Co." );
+        Dn newApache = new Dn( schemaManager, "ou=Apache,ou=Board,o=Good Times Co." );
+        Dn newAlias = new Dn( schemaManager, "commonName=Jim Bean,ou=Apache,ou=Board,o=Good Times Co." );
+
+        assertTrue( dnFilter.mightContain( board ) );
+        writeTxn.commit();
+
+        assertFalse( dnFilter.mightContain( board ) );
+        assertFalse( dnFilter.mightContain( apache ) );
+        assertFalse( dnFilter.mightContain( alias ) );
+        assertNotNull( partition.getEntryId( txn, newBoard ) );
+        assertNotNull( partition.getEntryId( txn, newApache ) );
+        assertNotNull( partition.getEntryId( txn, newAlias ) );
+
+        // So does moving it
+        Dn engineering = new Dn( schemaManager, "ou=Engineering,o=Good Times Co." );
+        Dn movedApache = new Dn( schemaManager, "ou=Apache,ou=Engineering,o=Good Times Co." );
+        Dn movedAlias = new Dn( schemaManager, "commonName=Jim Bean,ou=Apache,ou=Engineering,o=Good Times Co." );
+        writeTxn = partition.beginWriteTransaction();
+        partition.move( writeTxn, newApache, engineering, movedApache, null );
+        writeTxn.commit();
+
+        assertFalse( dnFilter.mightContain( newApache ) );
+        assertFalse( dnFilter.mightContain( newAlias ) );
+        assertNotNull( partition.getEntryId( txn, movedApache ) );
+        assertNotNull( partition.getEntryId( txn, movedAlias ) );
+        assertEquals( 11, dnFilter.size() );
+
+        // And deleting it removes it once committed
+        writeTxn = partition.beginWriteTransaction();
+        partition.delete( writeTxn, partition.getEntryId( writeTxn, movedAlias ) );
+
+        assertTrue( dnFilter.mightContain( movedAlias ) );
+        writeTxn.commit();
+
+        assertFalse( dnFilter.mightContain( movedAlias ) );
+        assertNull( partition.getEntryId( txn, movedAlias ) );
+        assertEquals( 10, dnFilter.size() );
+
+        // The filter is built again from the RDN index when the partition is repaired
+        partition.repair();
+
+        assertNotSame( dnFilter, partition.getDnFilter() );
+        assertEquals( 10, partition.getDnFilter().size() );
+        assertNotNull( partition.getEntryId( txn, movedApache ) );
+        assertNull( partition.getEntryId( txn, apache ) );
+    }
+
+
     private Entry verifyParentId( PartitionTxn txn, Dn dn ) throws Exception
     {
         String entryId = partition.getEntryId( txn, dn );
@@ -20,6 +20,7 @@
 package org.apache.directory.server.xdbm.search.impl;
 
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -50,6 +51,7 @@ import org.apache.directory.server.core.api.partition.PartitionTxn;
 import org.apache.directory.server.core.partition.impl.avl.AvlPartition;
 import org.apache.directory.server.xdbm.StoreUtils;
 import org.apache.directory.server.xdbm.impl.avl.AvlIndex;
+import org.apache.directory.server.xdbm.search.PartitionSearchResult;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
@@ -295,4 +297,72 @@ public class AndCursorTest extends AbstractCursorTest
         cursor.close();
         assertTrue( cursor.isClosed() );
     }
+
+
+    @Test
+    public void testAndCandidatesFilteredByIndexedChildren() throws Exception
+    {
+        ExprNode exprNode = FilterParser.parse( schemaManager, "(&(ou=Sales)(cn=JIM BEAN)(ou=*))" );
+        PartitionTxn txn = ( ( Partition ) store ).beginReadTransaction();
+
+        new DefaultOptimizer( store ).annotate( txn, exprNode );
+
+        PartitionSearchResult searchResult = new PartitionSearchResult( schemaManager );
+        Set<String> uuids = new HashSet<String>();
+        searchResult.setCandidateSet( uuids );
+
+        // Only the entry matching all the indexed children is a candidate
+        assertEquals( 1L, cursorBuilder.build( txn, exprNode, searchResult ) );
+        assertEquals( 1, uuids.size() );
+        assertTrue( uuids.contains( Strings.getUUID( 6 ) ) );
+
+        exprNode = FilterParser.parse( schemaManager, "(&(ou=Engineering)(cn=JIM BEAN))" );
+        new DefaultOptimizer( store ).annotate( txn, exprNode );
+        uuids.clear();
+
+        assertEquals( 0L, cursorBuilder.build( txn, exprNode, searchResult ) );
+        assertTrue( uuids.isEmpty() );
+    }
+
+
+    @Test
+    public void testAndCandidatesNotFilteredBySystemIndices() throws Exception
+    {
+        PartitionTxn txn = ( ( Partition ) store ).beginReadTransaction();
+        PartitionSearchResult searchResult = new PartitionSearchResult( schemaManager );
+        Set<String> uuids = new HashSet<String>();
+        searchResult.setCandidateSet( uuids );
+
+        // The presence index doesn't hold the system indexed attributes
+        for ( String filter : new String[]
+            { "(&(ou=Sales)(cn=JIM BEAN)(objectClass=*))", "(&(ou=Sales)(cn=JIM BEAN)(entryCSN=*))" } )
+        {
+            ExprNode exprNode = FilterParser.parse( schemaManager, filter );
+            new DefaultOptimizer( store ).annotate( txn, exprNode );
+            uuids.clear();
+
+            assertEquals( 1L, cursorBuilder.build( txn, exprNode, searchResult ) );
+            assertTrue( uuids.contains( Strings.getUUID( 6 ) ) );
+        }
+    }
+
+
+    @Test
+    public void testAndCandidatesFilteredByIndexedOrChildren() throws Exception
+    {
+        ExprNode exprNode = FilterParser.parse( schemaManager, "(&(ou=Sales)(|(cn=JIM BEAN)(cn=JOhnny WAlkeR)))" );
+        PartitionTxn txn = ( ( Partition ) store ).beginReadTransaction();
+
+        new DefaultOptimizer( store ).annotate( txn, exprNode );
+
+        PartitionSearchResult searchResult = new PartitionSearchResult( schemaManager );
+        Set<String> uuids = new HashSet<String>();
+        searchResult.setCandidateSet( uuids );
+
+        // The ou=Sales entry matches none of the Or children
+        assertEquals( 2L, cursorBuilder.build( txn, exprNode, searchResult ) );
+        assertEquals( 2, uuids.size() );
+        assertTrue( uuids.contains( Strings.getUUID( 5 ) ) );
+        assertTrue( uuids.contains( Strings.getUUID( 6 ) ) );
+    }
 }
@@ -0,0 +1,255 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm.search.impl;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.cursor.SetCursor;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.filter.ExprNode;
+import org.apache.directory.api.ldap.model.filter.FilterParser;
+import org.apache.directory.api.ldap.model.message.AliasDerefMode;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.normalizers.ConcreteNameComponentNormalizer;
+import org.apache.directory.api.ldap.schema.extractor.SchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.extractor.impl.DefaultSchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.loader.LdifSchemaLoader;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.api.util.FileUtils;
+import org.apache.directory.api.util.exception.Exceptions;
+import org.apache.directory.server.core.api.LdapPrincipal;
+import org.apache.directory.server.core.api.MockCoreSession;
+import org.apache.directory.server.core.api.MockDirectoryService;
+import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
+import org.apache.directory.server.core.api.partition.Partition;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.partition.impl.avl.AvlPartition;
+import org.apache.directory.server.core.partition.impl.btree.AbstractBTreePartition;
+import org.apache.directory.server.core.partition.impl.btree.EntryCursorAdaptor;
+import org.apache.directory.server.xdbm.StoreUtils;
+import org.apache.directory.server.xdbm.impl.avl.AvlIndex;
+import org.apache.directory.server.xdbm.search.PartitionSearchResult;
+import org.apache.directory.server.xdbm.search.cursor.DescendantCursor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+
+
+/**
+ * Tests the searches returning the entries in hierarchical order, parents first.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@Execution(ExecutionMode.SAME_THREAD)
+public class HierarchicalOrderTest extends AbstractCursorTest
+{
+    File wkdir;
+    static FilterNormalizingVisitor visitor;
+    DefaultSearchEngine searchEngine;
+
+
+    @BeforeAll
+    static public void setup() throws Exception
+    {
+        // setup the standard registries
+        String workingDirectory = System.getProperty( "workingDirectory" );
+
+        if ( workingDirectory == null )
+        {
+            String path = HierarchicalOrderTest.class.getResource( "" ).getPath();
+            int targetPos = path.indexOf( "target" );
+            workingDirectory = path.substring( 0, targetPos + 6 );
+        }
+
+        File schemaRepository = new File( workingDirectory, "schema" );
+        SchemaLdifExtractor extractor = new DefaultSchemaLdifExtractor( new File( workingDirectory ) );
+        extractor.extractOrCopy( true );
+        LdifSchemaLoader loader = new LdifSchemaLoader( schemaRepository );
+        schemaManager = new DefaultSchemaManager( loader );
+
+        boolean loaded = schemaManager.loadAllEnabled();
+
+        if ( !loaded )
+        {
+            fail( "Schema load failed : " + Exceptions.printErrors( schemaManager.getErrors() ) );
+        }
+
+        visitor = new FilterNormalizingVisitor( new ConcreteNameComponentNormalizer( schemaManager ), schemaManager );
+    }
+
+
+    @BeforeEach
+    public void createStore() throws Exception
+    {
+        directoryService = new MockDirectoryService();
+
+        // setup the working directory for the store
+        wkdir = File.createTempFile( getClass().getSimpleName(), "db" );
+        wkdir.delete();
+        wkdir = new File( wkdir.getParentFile(), getClass().getSimpleName() );
+        wkdir.mkdirs();
+
+        StoreUtils.createdExtraAttributes( schemaManager );
+
+        // initialize the store
+        store = new AvlPartition( schemaManager, directoryService.getDnFactory() );
+        ( ( Partition ) store ).setId( "example" );
+        store.setCacheSize( 10 );
+        store.setPartitionPath( wkdir.toURI() );
+        store.setSyncOnWrite( false );
+
+        store.addIndex( new AvlIndex<String>( SchemaConstants.OU_AT_OID ) );
+        store.addIndex( new AvlIndex<String>( SchemaConstants.CN_AT_OID ) );
+        ( ( Partition ) store ).setSuffixDn( new Dn( schemaManager, "o=Good Times Co." ) );
+        ( ( Partition ) store ).initialize();
+
+        StoreUtils.loadExampleData( store, schemaManager );
+
+        evaluatorBuilder = new EvaluatorBuilder( store, schemaManager );
+        cursorBuilder = new CursorBuilder( store, evaluatorBuilder );
+        searchEngine = new DefaultSearchEngine( store, cursorBuilder, evaluatorBuilder, new DefaultOptimizer( store ) );
+
+        directoryService.setSchemaManager( schemaManager );
+        session = new MockCoreSession( new LdapPrincipal(), directoryService );
+    }
+
+
+    @AfterEach
+    public void destroyStore() throws Exception
+    {
+        if ( store != null )
+        {
+            ( ( Partition ) store ).destroy( null );
+        }
+
+        store = null;
+
+        if ( wkdir != null )
+        {
+            FileUtils.deleteDirectory( wkdir );
+        }
+
+        wkdir = null;
+    }
+
+
+    /**
+     * Searches the entries, and checks that the parent of each entry has been returned before it
+     */
+    private List<Dn> search( String base, String filter, boolean hierarchicalOrder ) throws Exception
+    {
+        ExprNode exprNode = FilterParser.parse( schemaManager, filter );
+        exprNode.accept( visitor );
+
+        SearchOperationContext searchContext = new SearchOperationContext( session );
+        searchContext.setDn( new Dn( schemaManager, base ) );
+        searchContext.setFilter( exprNode );
+        searchContext.setScope( SearchScope.SUBTREE );
+        searchContext.setAliasDerefMode( AliasDerefMode.NEVER_DEREF_ALIASES );
+        searchContext.setHierarchicalOrder( hierarchicalOrder );
+
+        List<Dn> dns = new ArrayList<>();
+
+        try ( PartitionTxn txn = ( ( Partition ) store ).beginReadTransaction() )
+        {
+            PartitionSearchResult searchResult = searchEngine.computeResult( txn, schemaManager, searchContext );
+
+            if ( hierarchicalOrder )
+            {
+                assertTrue( searchResult.getResultSet() instanceof DescendantCursor );
+            }
+            else
+            {
+                assertTrue( searchResult.getResultSet() instanceof SetCursor );
+            }
+
+            EntryCursorAdaptor cursor = new EntryCursorAdaptor( txn, ( AbstractBTreePartition ) store, searchResult );
+            cursor.beforeFirst();
+
+            while ( cursor.next() )
+            {
+                Entry entry = cursor.get();
+
+                if ( entry != null )
+                {
+                    dns.add( entry.getDn() );
+                }
+            }
+
+            cursor.close();
+        }
+
+        return dns;
+    }
+
+
+    @Test
+    public void testAllEntriesParentsFirst() throws Exception
+    {
+        List<Dn> dns = search( "o=Good Times Co.", "(objectClass=*)", true );
+
+        assertEquals( 11, dns.size() );
+        assertEquals( new Dn( schemaManager, "o=Good Times Co." ), dns.get( 0 ) );
+
+        for ( int i = 1; i < dns.size(); i++ )
+        {
+            Dn parent = dns.get( i ).getParent();
+            assertTrue( dns.subList( 0, i ).contains( parent ), dns.get( i ) + " returned before its parent" );
+        }
+    }
+
+
+    @Test
+    public void testSameEntriesAsUnorderedSearch() throws Exception
+    {
+        List<Dn> unordered = search( "o=Good Times Co.", "(|(ou=*)(cn=*))", false );
+        List<Dn> dns = search( "o=Good Times Co.", "(|(ou=*)(cn=*))", true );
+
+        assertFalse( unordered.isEmpty() );
+        assertEquals( unordered.size(), dns.size() );
+        assertTrue( dns.containsAll( unordered ) );
+    }
+
+
+    @Test
+    public void testSubtreeWithFilter() throws Exception
+    {
+        List<Dn> dns = search( "ou=Board of Directors,o=Good Times Co.", "(|(ou=apache)(cn=jim bean))", true );
+
+        assertEquals( 3, dns.size() );
+        assertEquals( new Dn( schemaManager, "ou=Apache,ou=Board of Directors,o=Good Times Co." ), dns.get( 0 ) );
+        assertFalse( dns.contains( new Dn( schemaManager, "ou=Board of Directors,o=Good Times Co." ) ) );
+        assertTrue( dns.indexOf( new Dn( schemaManager,
+            "commonName=Jim Bean,ou=Apache,ou=Board of Directors,o=Good Times Co." ) ) > 0 );
+    }
+}
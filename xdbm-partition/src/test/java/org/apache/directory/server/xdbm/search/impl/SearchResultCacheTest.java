@@ -0,0 +1,302 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ */
+package org.apache.directory.server.xdbm.search.impl;
+
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
+import org.apache.directory.api.ldap.model.cursor.Cursor;
+import org.apache.directory.api.ldap.model.entry.DefaultEntry;
+import org.apache.directory.api.ldap.model.entry.DefaultModification;
+import org.apache.directory.api.ldap.model.entry.Entry;
+import org.apache.directory.api.ldap.model.entry.ModificationOperation;
+import org.apache.directory.api.ldap.model.filter.ExprNode;
+import org.apache.directory.api.ldap.model.filter.FilterParser;
+import org.apache.directory.api.ldap.model.message.AliasDerefMode;
+import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.name.Dn;
+import org.apache.directory.api.ldap.model.schema.normalizers.ConcreteNameComponentNormalizer;
+import org.apache.directory.api.ldap.schema.extractor.SchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.extractor.impl.DefaultSchemaLdifExtractor;
+import org.apache.directory.api.ldap.schema.loader.LdifSchemaLoader;
+import org.apache.directory.api.ldap.schema.manager.impl.DefaultSchemaManager;
+import org.apache.directory.api.util.FileUtils;
+import org.apache.directory.api.util.exception.Exceptions;
+import org.apache.directory.server.core.api.MockDirectoryService;
+import org.apache.directory.server.core.api.interceptor.context.SearchOperationContext;
+import org.apache.directory.server.core.api.partition.PartitionTxn;
+import org.apache.directory.server.core.partition.impl.avl.AvlPartition;
+import org.apache.directory.server.core.partition.impl.btree.SearchResultCache;
+import org.apache.directory.server.xdbm.StoreUtils;
+import org.apache.directory.server.xdbm.impl.avl.AvlIndex;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.parallel.Execution;
+import org.junit.jupiter.api.parallel.ExecutionMode;
+
+
+/**
+ * Tests the search result cache, and its invalidation when the partition is updated.
+ *
+ * @author <a href="mailto:dev@directory.apache.org">Apache Directory Project</a>
+ */
+@Execution(ExecutionMode.SAME_THREAD)
+public class SearchResultCacheTest extends AbstractCursorTest
+{
+    private static final String SUFFIX = "o=Good Times Co.";
+
+    File wkdir;
+    static FilterNormalizingVisitor visitor;
+    AvlPartition partition;
+
+
+    @BeforeAll
+    static public void setup() throws Exception
+    {
+        // setup the standard registries
+        String workingDirectory = System.getProperty( "workingDirectory" );
+
+        if ( workingDirectory == null )
+        {
+            String path = SearchResultCacheTest.class.getResource( "" ).getPath();
+            int targetPos = path.indexOf( "target" );
+            workingDirectory = path.substring( 0, targetPos + 6 );
+        }
+
+        File schemaRepository = new File( workingDirectory, "schema" );
+        SchemaLdifExtractor extractor = new DefaultSchemaLdifExtractor( new File( workingDirectory ) );
+        extractor.extractOrCopy( true );
+        LdifSchemaLoader loader = new LdifSchemaLoader( schemaRepository );
+        schemaManager = new DefaultSchemaManager( loader );
+
+        boolean loaded = schemaManager.loadAllEnabled();
+
+        if ( !loaded )
+        {
+            fail( "Schema load failed : " + Exceptions.printErrors( schemaManager.getErrors() ) );
+        }
+
+        visitor = new FilterNormalizingVisitor( new ConcreteNameComponentNormalizer( schemaManager ), schemaManager );
+    }
+
+
+    @BeforeEach
+    public void createStore() throws Exception
+    {
+        directoryService = new MockDirectoryService();
+
+        // setup the working directory for the store
+        wkdir = File.createTempFile( getClass().getSimpleName(), "db" );
+        wkdir.delete();
+        wkdir = new File( wkdir.getParentFile(), getClass().getSimpleName() );
+        wkdir.mkdirs();
+
+        StoreUtils.createdExtraAttributes( schemaManager );
+
+        // initialize the store
+        partition = new AvlPartition( schemaManager, directoryService.getDnFactory() );
+        partition.setId( "example" );
+        partition.setCacheSize( 10 );
+        partition.setSearchResultCacheSize( 100 );
+        partition.setPartitionPath( wkdir.toURI() );
+        partition.setSyncOnWrite( false );
+
+        partition.addIndex( new AvlIndex<String>( SchemaConstants.OU_AT_OID ) );
+        partition.addIndex( new AvlIndex<String>( SchemaConstants.CN_AT_OID ) );
+        partition.setSuffixDn( new Dn( schemaManager, SUFFIX ) );
+        partition.initialize();
+
+        store = partition;
+        StoreUtils.loadExampleData( store, schemaManager );
+    }
+
+
+    @AfterEach
+    public void destroyStore() throws Exception
+    {
+        if ( partition != null )
+        {
+            partition.destroy( null );
+        }
+
+        partition = null;
+        store = null;
+
+        if ( wkdir != null )
+        {
+            FileUtils.deleteDirectory( wkdir );
+        }
+
+        wkdir = null;
+    }
+
+
+    private Set<Dn> search( String base, SearchScope scope, String filter ) throws Exception
+    {
+        ExprNode exprNode = FilterParser.parse( schemaManager, filter );
+        exprNode.accept( visitor );
+
+        Set<Dn> dns = new HashSet<>();
+
+        try ( PartitionTxn txn = partition.beginReadTransaction() )
+        {
+            SearchOperationContext searchContext = new SearchOperationContext( null );
+            searchContext.setDn( new Dn( schemaManager, base ) );
+            searchContext.setFilter( exprNode );
+            searchContext.setScope( scope );
+            searchContext.setAliasDerefMode( AliasDerefMode.NEVER_DEREF_ALIASES );
+            searchContext.setTransaction( txn );
+
+            try ( Cursor<Entry> cursor = partition.search( searchContext ) )
+            {
+                while ( cursor.next() )
+                {
+                    assertTrue( dns.add( cursor.get().getDn() ) );
+                }
+            }
+        }
+
+        return dns;
+    }
+
+
+    private Dn dn( String dn ) throws Exception
+    {
+        return new Dn( schemaManager, dn );
+    }
+
+
+    @Test
+    public void testRepeatedSearchIsCached() throws Exception
+    {
+        SearchResultCache cache = partition.getSearchResultCache();
+
+        Set<Dn> dns = search( SUFFIX, SearchScope.SUBTREE, "(ou=sales)" );
+
+        assertEquals( 3, dns.size() );
+        assertTrue( dns.contains( dn( "cn=JIM BEAN,ou=Sales,o=Good Times Co." ) ) );
+        assertEquals( 0, cache.getHitCount() );
+        assertEquals( 1, cache.getMissCount() );
+
+        assertEquals( dns, search( SUFFIX, SearchScope.SUBTREE, "(ou=sales)" ) );
+        assertEquals( dns, search( SUFFIX, SearchScope.SUBTREE, "(ou=sales)" ) );
+        assertEquals( 2, cache.getHitCount() );
+        assertEquals( 2d / 3d, cache.getHitRatio(), 0.001d );
+
+        // Another scope or filter is another search
+        assertEquals( 1, search( "ou=Sales,o=Good Times Co.", SearchScope.OBJECT, "(ou=sales)" ).size() );
+        assertTrue( search( SUFFIX, SearchScope.ONELEVEL, "(ou=engineering)" ).contains(
+            dn( "ou=Engineering,o=Good Times Co." ) ) );
+        assertEquals( 2, cache.getHitCount() );
+        assertEquals( 3, cache.size() );
+    }
+
+
+    @Test
+    public void testModifyInvalidatesTheSearchesUsingTheAttribute() throws Exception
+    {
+        SearchResultCache cache = partition.getSearchResultCache();
+        Dn sales = dn( "ou=Sales,o=Good Times Co." );
+
+        search( SUFFIX, SearchScope.SUBTREE, "(ou=sales)" );
+        search( SUFFIX, SearchScope.SUBTREE, "(postalCode=1)" );
+        search( "ou=Engineering,o=Good Times Co.", SearchScope.SUBTREE, "(ou=*)" );
+
+        // The entry is not in the scope of the third search, and the second one doesn't use the ou attribute
+        try ( PartitionTxn txn = partition.beginWriteTransaction() )
+        {
+            partition.modify( txn, sales, new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE,
+                schemaManager.getAttributeType( SchemaConstants.OU_AT ), "Marketing" ) );
+        }
+
+        assertEquals( 1, cache.getInvalidationCount() );
+        assertEquals( 2, cache.size() );
+        assertFalse( search( SUFFIX, SearchScope.SUBTREE, "(ou=sales)" ).contains( sales ) );
+        assertTrue( search( SUFFIX, SearchScope.SUBTREE, "(ou=marketing)" ).contains( sales ) );
+
+        long hits = cache.getHitCount();
+        assertTrue( search( SUFFIX, SearchScope.SUBTREE, "(postalCode=1)" ).contains( sales ) );
+        assertEquals( hits + 1, cache.getHitCount() );
+    }
+
+
+    @Test
+    public void testAddAndDeleteInvalidateTheSearchesInScope() throws Exception
+    {
+        SearchResultCache cache = partition.getSearchResultCache();
+        Dn newEntryDn = dn( "cn=New Guy,ou=Sales,o=Good Times Co." );
+
+        assertFalse( search( SUFFIX, SearchScope.SUBTREE, "(cn=new guy)" ).contains( newEntryDn ) );
+        search( "ou=Engineering,o=Good Times Co.", SearchScope.SUBTREE, "(cn=new guy)" );
+
+        Entry entry = new DefaultEntry( schemaManager, newEntryDn,
+            "objectClass: top",
+            "objectClass: person",
+            "cn: New Guy",
+            "sn: Guy" );
+        StoreUtils.injectEntryInStore( partition, entry, 100L );
+
+        assertEquals( 1, cache.getInvalidationCount() );
+        assertTrue( search( SUFFIX, SearchScope.SUBTREE, "(cn=new guy)" ).contains( newEntryDn ) );
+        assertTrue( search( "ou=Engineering,o=Good Times Co.", SearchScope.SUBTREE, "(cn=new guy)" ).isEmpty() );
+
+        try ( PartitionTxn txn = partition.beginWriteTransaction() )
+        {
+            partition.delete( txn, partition.getEntryId( txn, newEntryDn ) );
+        }
+
+        assertEquals( 2, cache.getInvalidationCount() );
+        assertTrue( search( SUFFIX, SearchScope.SUBTREE, "(cn=new guy)" ).isEmpty() );
+    }
+
+
+    @Test
+    public void testAbortClearsTheSearchesCachedMeanwhile() throws Exception
+    {
+        SearchResultCache cache = partition.getSearchResultCache();
+        Dn sales = dn( "ou=Sales,o=Good Times Co." );
+
+        PartitionTxn txn = partition.beginWriteTransaction();
+        partition.modify( txn, sales, new DefaultModification( ModificationOperation.REPLACE_ATTRIBUTE,
+            schemaManager.getAttributeType( SchemaConstants.OU_AT ), "Marketing" ) );
+
+        // Another session reads the uncommitted modification
+        assertTrue( search( SUFFIX, SearchScope.SUBTREE, "(ou=marketing)" ).contains( sales ) );
+        assertEquals( 1, cache.size() );
+
+        txn.abort();
+
+        assertEquals( 0, cache.size() );
+
+        long misses = cache.getMissCount();
+        search( SUFFIX, SearchScope.SUBTREE, "(ou=marketing)" );
+        assertEquals( misses + 1, cache.getMissCount() );
+    }
+}